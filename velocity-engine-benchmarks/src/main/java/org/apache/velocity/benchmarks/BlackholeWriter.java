@@ -0,0 +1,68 @@
+package org.apache.velocity.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.Writer;
+
+/**
+ * Writer handing the rendered characters over to a JMH {@link Blackhole}, so that
+ * rendering is neither optimized away nor charged with buffer growth.
+ */
+public class BlackholeWriter extends Writer
+{
+    private final Blackhole blackhole;
+
+    public BlackholeWriter(Blackhole blackhole)
+    {
+        this.blackhole = blackhole;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len)
+    {
+        blackhole.consume(cbuf);
+        blackhole.consume(len);
+    }
+
+    @Override
+    public void write(String str, int off, int len)
+    {
+        blackhole.consume(str);
+        blackhole.consume(len);
+    }
+
+    @Override
+    public void write(int c)
+    {
+        blackhole.consume(c);
+    }
+
+    @Override
+    public void flush()
+    {
+    }
+
+    @Override
+    public void close()
+    {
+    }
+}
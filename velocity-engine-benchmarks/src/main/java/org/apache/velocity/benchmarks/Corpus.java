@@ -0,0 +1,132 @@
+package org.apache.velocity.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.runtime.RuntimeConstants;
+import org.apache.velocity.runtime.RuntimeInstance;
+import org.apache.velocity.runtime.resource.loader.ClasspathResourceLoader;
+import org.apache.velocity.runtime.resource.loader.StringResourceLoader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+/**
+ * Access to the checked-in template corpus, and configuration of the benchmarked engines.
+ *
+ * <p>Corpus templates are loaded from the classpath, under the <code>corpus/</code> prefix.
+ * Generated templates can be added to the default string resource repository.</p>
+ */
+public final class Corpus
+{
+    /**
+     * Classpath prefix of the corpus templates
+     */
+    public static final String PREFIX = "corpus/";
+
+    private Corpus()
+    {
+    }
+
+    /**
+     * Build the configuration shared by all the benchmarks: templates are cached and never checked
+     * for modification, so that benchmarks measure rendering and not resource loading.
+     * @param compile whether to render compiled templates
+     * @return configuration
+     */
+    public static Properties configuration(boolean compile)
+    {
+        Properties properties = new Properties();
+        properties.setProperty(RuntimeConstants.RESOURCE_LOADERS, "classpath,string");
+        properties.setProperty("resource.loader.classpath.class", ClasspathResourceLoader.class.getName());
+        properties.setProperty("resource.loader.classpath.cache", "true");
+        properties.setProperty("resource.loader.classpath.modification_check_interval", "0");
+        properties.setProperty("resource.loader.string.class", StringResourceLoader.class.getName());
+        properties.setProperty("resource.loader.string.cache", "true");
+        properties.setProperty("resource.loader.string.modification_check_interval", "0");
+        properties.setProperty(RuntimeConstants.VM_LIBRARY, PREFIX + "macros.vtl");
+        properties.setProperty(RuntimeConstants.RUNTIME_RENDER_COMPILE, String.valueOf(compile));
+        return properties;
+    }
+
+    /**
+     * @param compile whether to render compiled templates
+     * @return initialized engine
+     */
+    public static VelocityEngine createEngine(boolean compile)
+    {
+        VelocityEngine engine = new VelocityEngine(configuration(compile));
+        engine.init();
+        return engine;
+    }
+
+    /**
+     * @param properties engine configuration
+     * @return initialized runtime instance
+     */
+    public static RuntimeInstance createRuntime(Properties properties)
+    {
+        RuntimeInstance runtime = new RuntimeInstance();
+        runtime.setProperties(properties);
+        runtime.init();
+        return runtime;
+    }
+
+    /**
+     * Add a generated template to the default string resource repository. An engine using it
+     * must already have been initialized.
+     * @param name template name
+     * @param body template source
+     */
+    public static void addTemplate(String name, String body)
+    {
+        StringResourceLoader.getRepository().putStringResource(name, body);
+    }
+
+    /**
+     * Read the source of a corpus template
+     * @param name template name, relative to the corpus
+     * @return template source
+     * @throws IOException if the template cannot be read
+     */
+    public static String read(String name) throws IOException
+    {
+        InputStream input = Corpus.class.getClassLoader().getResourceAsStream(PREFIX + name);
+        if (input == null)
+        {
+            throw new IOException("no corpus template: " + name);
+        }
+        StringBuilder builder = new StringBuilder();
+        try (Reader reader = new InputStreamReader(input, StandardCharsets.UTF_8))
+        {
+            char[] buffer = new char[4096];
+            int read;
+            while ((read = reader.read(buffer)) != -1)
+            {
+                builder.append(buffer, 0, read);
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,370 @@
+package org.apache.velocity.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.context.Context;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Deterministic data model merged with the corpus templates. All the
+ * values are derived from their index, so that two runs (or two versions
+ * of the engine) render exactly the same output.
+ */
+public final class Fixtures
+{
+    /**
+     * Number of products of the catalog
+     */
+    public static final int PRODUCTS = 50;
+
+    /**
+     * Number of orders
+     */
+    public static final int ORDERS = 20;
+
+    /**
+     * Length of the linked chain of nodes
+     */
+    public static final int CHAIN_LENGTH = 16;
+
+    private Fixtures()
+    {
+    }
+
+    /**
+     * Build a read-only context containing the whole data model. Benchmarks
+     * should wrap it in a fresh {@link VelocityContext} for each rendering,
+     * so that <code>#set</code> directives do not leak between invocations.
+     * @return populated context
+     */
+    public static Context createContext()
+    {
+        VelocityContext context = new VelocityContext();
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < PRODUCTS; ++i)
+        {
+            products.add(new Product(i));
+        }
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < ORDERS; ++i)
+        {
+            orders.add(new Order(i, products));
+        }
+        Map<String, Object> site = new HashMap<>();
+        site.put("title", "Velocity Store");
+        site.put("baseUrl", "https://store.example.org");
+        site.put("year", 2024);
+        site.put("menu", Arrays.asList("Home", "Catalog", "Orders", "Account", "Help"));
+
+        context.put("site", site);
+        context.put("products", products);
+        context.put("orders", orders);
+        context.put("customer", orders.get(0).getCustomer());
+        context.put("order", orders.get(0));
+        context.put("chain", ChainNode.create(CHAIN_LENGTH));
+        context.put("calc", new Calculator());
+        return context;
+    }
+
+    public static class Country
+    {
+        private final String code;
+        private final String name;
+
+        public Country(String code, String name)
+        {
+            this.code = code;
+            this.name = name;
+        }
+
+        public String getCode()
+        {
+            return code;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+    }
+
+    public static class Address
+    {
+        private static final Country[] COUNTRIES = {
+            new Country("FR", "France"), new Country("DE", "Germany"), new Country("US", "United States")
+        };
+
+        private final int index;
+
+        public Address(int index)
+        {
+            this.index = index;
+        }
+
+        public String getStreet()
+        {
+            return (index + 1) + " Main Street";
+        }
+
+        public String getCity()
+        {
+            return "City" + (index % 7);
+        }
+
+        public Country getCountry()
+        {
+            return COUNTRIES[index % COUNTRIES.length];
+        }
+    }
+
+    public static class Customer
+    {
+        private final int index;
+        private final Address address;
+
+        public Customer(int index)
+        {
+            this.index = index;
+            this.address = new Address(index);
+        }
+
+        public String getName()
+        {
+            return "Customer " + index;
+        }
+
+        public String getEmail()
+        {
+            return "customer" + index + "@example.org";
+        }
+
+        public Address getAddress()
+        {
+            return address;
+        }
+
+        public boolean isPremium()
+        {
+            return index % 3 == 0;
+        }
+    }
+
+    public static class Product
+    {
+        private final int id;
+        private final BigDecimal price;
+        private final List<String> tags;
+
+        public Product(int id)
+        {
+            this.id = id;
+            this.price = BigDecimal.valueOf(100 + id * 37 % 900, 2);
+            this.tags = id % 4 == 0 ? Collections.emptyList() : Arrays.asList("tag" + id % 5, "tag" + id % 7);
+        }
+
+        public int getId()
+        {
+            return id;
+        }
+
+        public String getName()
+        {
+            return "Product #" + id;
+        }
+
+        public String getDescription()
+        {
+            return "A fine product, number " + id + " of our catalog, with <b>many</b> qualities.";
+        }
+
+        public BigDecimal getPrice()
+        {
+            return price;
+        }
+
+        public List<String> getTags()
+        {
+            return tags;
+        }
+
+        public boolean isInStock()
+        {
+            return id % 5 != 0;
+        }
+    }
+
+    public static class Item
+    {
+        private final Product product;
+        private final int quantity;
+
+        public Item(Product product, int quantity)
+        {
+            this.product = product;
+            this.quantity = quantity;
+        }
+
+        public Product getProduct()
+        {
+            return product;
+        }
+
+        public int getQuantity()
+        {
+            return quantity;
+        }
+
+        public BigDecimal getSubtotal()
+        {
+            return product.getPrice().multiply(BigDecimal.valueOf(quantity));
+        }
+    }
+
+    public static class Order
+    {
+        private final int id;
+        private final Customer customer;
+        private final List<Item> items = new ArrayList<>();
+
+        public Order(int id, List<Product> products)
+        {
+            this.id = id;
+            this.customer = new Customer(id);
+            for (int i = 0; i < 1 + id % 6; ++i)
+            {
+                items.add(new Item(products.get((id * 7 + i * 3) % products.size()), 1 + i % 3));
+            }
+        }
+
+        public int getId()
+        {
+            return id;
+        }
+
+        public Customer getCustomer()
+        {
+            return customer;
+        }
+
+        public List<Item> getItems()
+        {
+            return items;
+        }
+
+        public BigDecimal getTotal()
+        {
+            BigDecimal total = BigDecimal.ZERO;
+            for (Item item : items)
+            {
+                total = total.add(item.getSubtotal());
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Linked nodes, used to exercise long reference chains
+     */
+    public static class ChainNode
+    {
+        private final int depth;
+        private final ChainNode next;
+
+        public ChainNode(int depth, ChainNode next)
+        {
+            this.depth = depth;
+            this.next = next;
+        }
+
+        static ChainNode create(int length)
+        {
+            ChainNode node = null;
+            for (int depth = length; depth >= 0; --depth)
+            {
+                node = new ChainNode(depth, node);
+            }
+            return node;
+        }
+
+        public int getDepth()
+        {
+            return depth;
+        }
+
+        public ChainNode getNext()
+        {
+            return next;
+        }
+
+        public String getLabel()
+        {
+            return "node" + depth;
+        }
+    }
+
+    /**
+     * Methods of various arities, used to exercise method invocation
+     */
+    public static class Calculator
+    {
+        public int zero()
+        {
+            return 0;
+        }
+
+        public int one(int a)
+        {
+            return a;
+        }
+
+        public int two(int a, int b)
+        {
+            return a + b;
+        }
+
+        public int three(int a, int b, int c)
+        {
+            return a + b + c;
+        }
+
+        public String pad(String value, int width)
+        {
+            StringBuilder builder = new StringBuilder(value);
+            while (builder.length() < width)
+            {
+                builder.append(' ');
+            }
+            return builder.toString();
+        }
+
+        public BigDecimal percent(BigDecimal value, int percent)
+        {
+            return value.multiply(BigDecimal.valueOf(percent)).movePointLeft(2);
+        }
+    }
+}
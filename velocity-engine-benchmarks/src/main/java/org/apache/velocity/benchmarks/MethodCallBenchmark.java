@@ -0,0 +1,58 @@
+package org.apache.velocity.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.velocity.Template;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Calls methods of a given arity in a tight loop. Run with <code>-prof gc</code>,
+ * the normalized allocation rate gives the allocation per method call.
+ */
+public class MethodCallBenchmark extends TemplateBenchmark
+{
+    /**
+     * Number of calls per rendering
+     */
+    public static final int CALLS = 100;
+
+    private static final String[] METHODS = { "$calc.zero()", "$calc.one($i)", "$calc.two($i, $i)", "$calc.three($i, $i, $i)" };
+
+    @Param({"0", "1", "2", "3"})
+    public int arity;
+
+    private Template template;
+
+    @Override
+    protected void setUpTemplates()
+    {
+        String name = "method-arity-" + arity + ".vtl";
+        Corpus.addTemplate(name, "#foreach( $i in [1.." + CALLS + "] )" + METHODS[arity] + "#end");
+        template = engine.getTemplate(name);
+    }
+
+    @Benchmark
+    public void call(Blackhole blackhole)
+    {
+        merge(template, blackhole);
+    }
+}
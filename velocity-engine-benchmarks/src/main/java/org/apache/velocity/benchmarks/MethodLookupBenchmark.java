@@ -0,0 +1,171 @@
+package org.apache.velocity.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.velocity.util.introspection.ClassMap;
+import org.apache.velocity.util.introspection.TypeConversionHandlerImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.helpers.NOPLogger;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cached lookup of overloaded methods in a {@link ClassMap}, as done
+ * by the uberspector for each call site execution which misses its own cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class MethodLookupBenchmark
+{
+    @Param({"0", "1", "2", "3", "4"})
+    public int arity;
+
+    private ClassMap classMap;
+
+    private Object[] strings;
+
+    private Object[] numbers;
+
+    private Object[] mixed;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        classMap = new ClassMap(Overloads.class, NOPLogger.NOP_LOGGER, new TypeConversionHandlerImpl());
+        strings = new Object[arity];
+        numbers = new Object[arity];
+        mixed = new Object[arity];
+        for (int i = 0; i < arity; ++i)
+        {
+            strings[i] = "s" + i;
+            numbers[i] = i;
+            mixed[i] = i % 2 == 0 ? (Object)("s" + i) : (Object)i;
+        }
+        if (classMap.findMethod("call", strings) == null || classMap.findMethod("call", numbers) == null
+            || classMap.findMethod("call", mixed) == null)
+        {
+            throw new IllegalStateException("could not introspect benchmarked methods");
+        }
+    }
+
+    @Benchmark
+    public Method exactMatch() throws Exception
+    {
+        return classMap.findMethod("call", strings);
+    }
+
+    @Benchmark
+    public Method convertedMatch() throws Exception
+    {
+        return classMap.findMethod("call", numbers);
+    }
+
+    @Benchmark
+    public Method mixedMatch() throws Exception
+    {
+        return classMap.findMethod("call", mixed);
+    }
+
+    /**
+     * Overloads of arity 0 to 4, taking strings, ints, or objects.
+     */
+    public static class Overloads
+    {
+        public String call()
+        {
+            return "";
+        }
+
+        public String call(String a)
+        {
+            return a;
+        }
+
+        public String call(long a)
+        {
+            return String.valueOf(a);
+        }
+
+        public String call(Object a)
+        {
+            return String.valueOf(a);
+        }
+
+        public String call(String a, String b)
+        {
+            return a + b;
+        }
+
+        public String call(long a, long b)
+        {
+            return String.valueOf(a + b);
+        }
+
+        public String call(Object a, Object b)
+        {
+            return String.valueOf(a) + b;
+        }
+
+        public String call(String a, String b, String c)
+        {
+            return a + b + c;
+        }
+
+        public String call(long a, long b, long c)
+        {
+            return String.valueOf(a + b + c);
+        }
+
+        public String call(Object a, Object b, Object c)
+        {
+            return String.valueOf(a) + b + c;
+        }
+
+        public String call(String a, String b, String c, String d)
+        {
+            return a + b + c + d;
+        }
+
+        public String call(long a, long b, long c, long d)
+        {
+            return String.valueOf(a + b + c + d);
+        }
+
+        public String call(Object a, Object b, Object c, Object d)
+        {
+            return String.valueOf(a) + b + c + d;
+        }
+    }
+}
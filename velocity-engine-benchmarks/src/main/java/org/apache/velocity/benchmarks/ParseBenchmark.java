@@ -0,0 +1,80 @@
+package org.apache.velocity.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.velocity.Template;
+import org.apache.velocity.runtime.RuntimeInstance;
+import org.apache.velocity.runtime.parser.ParseException;
+import org.apache.velocity.runtime.parser.node.SimpleNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses corpus templates through {@link RuntimeInstance#parse(java.io.Reader, Template)}, or
+ * in place through {@link RuntimeInstance#parse(CharSequence, Template)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ParseBenchmark
+{
+    @Param({"page.vtl", "report.vtl", "chain.vtl", "macro-page.vtl", "fanout.vtl"})
+    public String name;
+
+    @Param({"reader", "inplace"})
+    public String input;
+
+    private RuntimeInstance runtime;
+
+    private String source;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        runtime = Corpus.createRuntime(Corpus.configuration(false));
+        source = Corpus.read(name);
+    }
+
+    @Benchmark
+    public SimpleNode parse() throws ParseException
+    {
+        Template template = new Template();
+        template.setName(Corpus.PREFIX + name);
+        return "reader".equals(input)
+            ? runtime.parse(new StringReader(source), template)
+            : runtime.parse(source, template);
+    }
+}
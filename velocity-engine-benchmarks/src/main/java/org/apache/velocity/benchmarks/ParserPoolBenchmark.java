@@ -0,0 +1,125 @@
+package org.apache.velocity.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.velocity.Template;
+import org.apache.velocity.runtime.ParserPool;
+import org.apache.velocity.runtime.ParserPoolImpl;
+import org.apache.velocity.runtime.RuntimeConstants;
+import org.apache.velocity.runtime.RuntimeInstance;
+import org.apache.velocity.runtime.RuntimeServices;
+import org.apache.velocity.runtime.parser.CharStream;
+import org.apache.velocity.runtime.parser.ParseException;
+import org.apache.velocity.runtime.parser.Parser;
+import org.apache.velocity.runtime.parser.node.SimpleNode;
+import org.apache.velocity.util.SimplePool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the lock-free {@link ParserPoolImpl} with the former pool built on the synchronized
+ * {@link SimplePool}, with several threads parsing at once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@Threads(8)
+public class ParserPoolBenchmark
+{
+    /**
+     * The parser pool as it was before it became lock-free.
+     */
+    public static class SynchronizedParserPool implements ParserPool
+    {
+        private SimplePool pool;
+
+        @Override
+        public void initialize(RuntimeServices rsvc)
+        {
+            int max = rsvc.getInt(RuntimeConstants.PARSER_POOL_SIZE, RuntimeConstants.NUMBER_OF_PARSERS);
+            pool = new SimplePool(max);
+            for (int i = 0; i < max; i++)
+            {
+                pool.put(rsvc.createNewParser());
+            }
+        }
+
+        @Override
+        public Parser get()
+        {
+            return (Parser) pool.get();
+        }
+
+        @Override
+        public void put(Parser parser)
+        {
+            parser.ReInit((CharStream) null);
+            pool.put(parser);
+        }
+    }
+
+    @Param({"synchronized", "lockfree"})
+    public String pool;
+
+    private RuntimeInstance runtime;
+
+    private String source;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        Properties configuration = Corpus.configuration(false);
+        configuration.setProperty(RuntimeConstants.PARSER_POOL_CLASS,
+            "synchronized".equals(pool) ? SynchronizedParserPool.class.getName() : ParserPoolImpl.class.getName());
+        runtime = Corpus.createRuntime(configuration);
+        source = Corpus.read("evaluate.vtl");
+    }
+
+    /**
+     * Parses a small template, as evaluate() calls do.
+     * @return parsed tree
+     * @throws ParseException if the template is invalid
+     */
+    @Benchmark
+    public SimpleNode parse() throws ParseException
+    {
+        Template template = new Template();
+        template.setName(Corpus.PREFIX + "evaluate.vtl");
+        return runtime.parse(new StringReader(source), template);
+    }
+}
@@ -0,0 +1,85 @@
+package org.apache.velocity.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.velocity.Template;
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.context.Context;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base class of the benchmarks rendering templates, run with both the
+ * interpreted and the compiled renderers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public abstract class TemplateBenchmark
+{
+    /**
+     * Whether templates are compiled
+     */
+    @Param({"false", "true"})
+    public boolean compile;
+
+    protected VelocityEngine engine;
+
+    protected Context data;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        engine = Corpus.createEngine(compile);
+        data = Fixtures.createContext();
+        setUpTemplates();
+    }
+
+    /**
+     * Load the benchmarked templates, once the engine is initialized
+     * @throws Exception if templates cannot be loaded
+     */
+    protected abstract void setUpTemplates() throws Exception;
+
+    /**
+     * Render a template with a fresh context wrapping the data model
+     * @param template template to render
+     * @param blackhole sink of the rendered output
+     */
+    protected void merge(Template template, Blackhole blackhole)
+    {
+        template.merge(new VelocityContext(data), new BlackholeWriter(blackhole));
+    }
+}
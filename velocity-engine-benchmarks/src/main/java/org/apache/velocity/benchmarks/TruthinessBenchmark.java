@@ -0,0 +1,62 @@
+package org.apache.velocity.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.velocity.Template;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Evaluates <code>#if($value)</code> truthiness checks of collections, maps, strings and numbers,
+ * which go through the duck typing of <code>isEmpty()</code>, <code>length()</code> and <code>size()</code>.
+ */
+public class TruthinessBenchmark extends TemplateBenchmark
+{
+    private static final String TEMPLATE =
+        "#foreach($i in [1..20])#foreach($value in $truthiness)#if($value)1#else0#end#end\n#end";
+
+    private Template template;
+
+    @Override
+    protected void setUpTemplates()
+    {
+        List<Object> values = Arrays.asList(
+            new ArrayList<>(), new ArrayList<>(Arrays.asList(1, 2)), Collections.emptyList(),
+            Collections.unmodifiableList(Arrays.asList("a")), new LinkedHashSet<>(Arrays.asList("a")),
+            new HashMap<>(), Collections.singletonMap("a", 1), "", "text", new StringBuilder("text"),
+            0, 1.5, new int[0]);
+        data.put("truthiness", values);
+        Corpus.addTemplate("truthiness.vtl", TEMPLATE);
+        template = engine.getTemplate("truthiness.vtl");
+    }
+
+    @Benchmark
+    public void render(Blackhole blackhole)
+    {
+        merge(template, blackhole);
+    }
+}
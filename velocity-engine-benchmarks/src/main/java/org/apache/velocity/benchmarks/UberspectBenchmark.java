@@ -0,0 +1,105 @@
+package org.apache.velocity.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.velocity.runtime.RuntimeConstants;
+import org.apache.velocity.runtime.RuntimeInstance;
+import org.apache.velocity.util.introspection.Info;
+import org.apache.velocity.util.introspection.MethodHandleUberspector;
+import org.apache.velocity.util.introspection.Uberspect;
+import org.apache.velocity.util.introspection.UberspectImpl;
+import org.apache.velocity.util.introspection.VelMethod;
+import org.apache.velocity.util.introspection.VelPropertyGet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares method and getter invocation through the reflection based uberspector
+ * and through the method handles based one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class UberspectBenchmark
+{
+    @Param({"reflection", "methodhandle"})
+    public String uberspect;
+
+    private Fixtures.Calculator calculator;
+
+    private Fixtures.Product product;
+
+    private Object[] arguments;
+
+    private VelMethod method;
+
+    private VelPropertyGet getter;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        Properties properties = Corpus.configuration(false);
+        String uberspectors = UberspectImpl.class.getName();
+        if ("methodhandle".equals(uberspect))
+        {
+            uberspectors += "," + MethodHandleUberspector.class.getName();
+        }
+        properties.setProperty(RuntimeConstants.UBERSPECT_CLASSNAME, uberspectors);
+        RuntimeInstance runtime = Corpus.createRuntime(properties);
+        Uberspect introspector = runtime.getUberspect();
+        Info info = new Info("uberspect", 1, 1);
+        calculator = new Fixtures.Calculator();
+        product = new Fixtures.Product(1);
+        arguments = new Object[] { 1, 2 };
+        method = introspector.getMethod(calculator, "two", arguments, info);
+        getter = introspector.getPropertyGet(product, "name", info);
+        if (method == null || getter == null)
+        {
+            throw new IllegalStateException("could not introspect benchmarked methods");
+        }
+    }
+
+    @Benchmark
+    public Object invokeMethod() throws Exception
+    {
+        return method.invoke(calculator, arguments);
+    }
+
+    @Benchmark
+    public Object invokeGetter() throws Exception
+    {
+        return getter.invoke(product);
+    }
+}
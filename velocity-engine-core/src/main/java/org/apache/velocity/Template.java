@@ -26,19 +26,27 @@
 import org.apache.velocity.exception.ResourceNotFoundException;
 import org.apache.velocity.exception.TemplateInitException;
 import org.apache.velocity.exception.VelocityException;
+import org.apache.velocity.runtime.Renderable;
+import org.apache.velocity.runtime.RuntimeConstants;
 import org.apache.velocity.runtime.directive.Scope;
 import org.apache.velocity.runtime.directive.StopCommand;
 import org.apache.velocity.runtime.parser.ParseException;
+import org.apache.velocity.runtime.parser.node.NodeCompiler;
 import org.apache.velocity.runtime.parser.node.SimpleNode;
+import org.apache.velocity.runtime.resource.ASTDiskCache;
 import org.apache.velocity.runtime.resource.Resource;
 import org.apache.velocity.runtime.resource.ResourceManager;
+import org.apache.velocity.runtime.visitor.ConstantFolder;
+import org.apache.velocity.runtime.visitor.PartialEvaluator;
+import org.apache.velocity.runtime.visitor.SlotResolver;
 import org.slf4j.Logger;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -77,6 +85,16 @@ public class Template extends Resource implements Cloneable
 
     private VelocityException errorCondition = null;
 
+    /*
+     * compiled form of the AST, if enabled
+     */
+    private Renderable compiled = null;
+
+    /*
+     * persistent cache of parsed templates, if enabled
+     */
+    private ASTDiskCache astCache = null;
+
     /** Default constructor */
     public Template()
     {
@@ -94,6 +112,17 @@ public Map<String, Object> getMacros()
         return macros;
     }
 
+    /**
+     * Sets the persistent cache in which {@link #process()} looks for the parsed
+     * template before parsing it, and stores it after parsing it.
+     * @param astCache persistent cache of parsed templates, or null
+     * @since 2.6
+     */
+    public void setASTCache(ASTDiskCache astCache)
+    {
+        this.astCache = astCache;
+    }
+
     /**
      *  gets the named resource as a stream, parses and inits
      *
@@ -108,6 +137,7 @@ public boolean process()
         throws ResourceNotFoundException, ParseErrorException
     {
         data = null;
+        compiled = null;
         Reader reader = null;
         errorCondition = null;
 
@@ -141,11 +171,25 @@ public boolean process()
 
             try
             {
-                BufferedReader br = new BufferedReader( reader );
-                data = rsvc.parse( br, this);
+                CharBuffer source = read( reader );
+                data = astCache == null ? null : astCache.load( this, source );
+                if (data == null)
+                {
+                    data = rsvc.parse( source, this);
+                    if (astCache != null)
+                    {
+                        astCache.store( this, source, (SimpleNode)data );
+                    }
+                }
                 initDocument();
                 return true;
             }
+            catch ( IOException ioe )
+            {
+                errorCondition = new VelocityException("Exception reading Template "
+                    +getName(), ioe, rsvc.getLogContext().getStackTrace());
+                throw errorCondition;
+            }
             catch ( ParseException pex )
             {
                 /*
@@ -198,6 +242,28 @@ public boolean process()
         }
     }
 
+    /**
+     * Reads the whole template source, so that the parser can scan it in place.
+     * @param reader template reader
+     * @return template source
+     * @throws IOException if the source cannot be read
+     */
+    private static CharBuffer read(Reader reader) throws IOException
+    {
+        char[] buffer = new char[8192];
+        int length = 0;
+        int count;
+        while ((count = reader.read(buffer, length, buffer.length - length)) != -1)
+        {
+            length += count;
+            if (length == buffer.length)
+            {
+                buffer = Arrays.copyOf(buffer, length * 2);
+            }
+        }
+        return CharBuffer.wrap(buffer, 0, length);
+    }
+
     /**
      *  initializes the document.  init() is not longer
      *  dependant upon context, but we need to let the
@@ -230,6 +296,18 @@ public void initDocument()
             ((SimpleNode)data).init( ica, rsvc);
 
             provideScope = rsvc.isScopeControlEnabled(scopeName);
+
+            if (rsvc.getBoolean(RuntimeConstants.RUNTIME_RENDER_OPTIMIZE, false))
+            {
+                new ConstantFolder(rsvc).fold((SimpleNode)data, ica);
+            }
+
+            if (rsvc.getBoolean(RuntimeConstants.RUNTIME_RENDER_SLOTS, false))
+            {
+                new SlotResolver().resolve((SimpleNode)data);
+            }
+
+            compile();
         }
         finally
         {
@@ -355,7 +433,14 @@ public void merge( Context context, Writer writer, List<String> macroLibraries)
                     ica.pushCurrentTemplateName(name);
                     ica.setCurrentResource(this);
 
-                    ((SimpleNode) data).render(ica, writer);
+                    if (compiled != null)
+                    {
+                        compiled.render(ica, writer);
+                    }
+                    else
+                    {
+                        ((SimpleNode) data).render(ica, writer);
+                    }
                 }
                 catch (StopCommand stop)
                 {
@@ -434,8 +519,65 @@ else if (scope.getReplaced() != null)
         }
     }
 
+    /**
+     * <p>Returns a copy of this template specialized for constant data, such as per-site settings:
+     * the expressions and directive arguments which only depend on the given constants are
+     * evaluated once, and the <code>#if</code> branches which cannot be taken any more are removed.
+     * Constant rendered references are rendered once as well, unless reference insertion event
+     * handlers are configured on the engine or attached to the constants: the handlers attached to
+     * the merge contexts only see the references which could not be specialized. See
+     * {@link PartialEvaluator} for the exact rules.</p>
+     * <p>The returned template is not managed by the resource cache, and has to be merged with
+     * contexts which still provide the same constants, for instance by chaining them with
+     * <code>new VelocityContext(requestData, constants)</code>, since the parts which could not
+     * be specialized look them up at render time.</p>
+     *
+     * @param constants values which are the same for every merge of the returned template
+     * @return residual template
+     * @since 2.6
+     */
+    public Template specialize(Context constants)
+    {
+        if (errorCondition != null)
+        {
+            throw errorCondition;
+        }
+
+        Template residual = (Template)clone();
+        InternalContextAdapterImpl ica = new InternalContextAdapterImpl(new VelocityContext(constants));
+        try
+        {
+            ica.pushCurrentTemplateName(name);
+            ica.setCurrentResource(residual);
+            new PartialEvaluator(rsvc, constants).specialize((SimpleNode)residual.data, ica);
+            residual.compile();
+        }
+        finally
+        {
+            ica.popCurrentTemplateName();
+            ica.setCurrentResource(null);
+        }
+        return residual;
+    }
+
+    /**
+     * (Re)builds the compiled form of the AST, if enabled.
+     */
+    private void compile()
+    {
+        compiled = null;
+        if (rsvc.getBoolean(RuntimeConstants.RUNTIME_RENDER_COMPILE, false))
+        {
+            compiled = new NodeCompiler(rsvc).compile((SimpleNode)data);
+        }
+    }
+
     @Override
     protected void deepCloneData() throws CloneNotSupportedException {
         setData(((SimpleNode)data).clone(this));
+        if (compiled != null)
+        {
+            compile();
+        }
     }
 }
@@ -0,0 +1,178 @@
+package org.apache.velocity.app;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of {@link VelocityEngine#preload(java.util.Collection)}: one result per loaded template,
+ * with its loading time or the reason of its failure.
+ *
+ * @since 2.6
+ */
+public class PreloadReport
+{
+    /**
+     * Outcome of the preloading of one template
+     */
+    public static class Result
+    {
+        private final String name;
+        private final String referrer;
+        private final List<String> references;
+        private final long nanos;
+        private final RuntimeException failure;
+
+        Result(String name, String referrer, List<String> references, long nanos, RuntimeException failure)
+        {
+            this.name = name;
+            this.referrer = referrer;
+            this.references = Collections.unmodifiableList(references);
+            this.nanos = nanos;
+            this.failure = failure;
+        }
+
+        /**
+         * @return template name
+         */
+        public String getName()
+        {
+            return name;
+        }
+
+        /**
+         * @return name of the template whose <code>#parse</code> directive referenced this template,
+         *         or null if the template was explicitly requested
+         */
+        public String getReferrer()
+        {
+            return referrer;
+        }
+
+        /**
+         * @return constant <code>#parse</code> targets found in this template
+         */
+        public List<String> getReferences()
+        {
+            return references;
+        }
+
+        /**
+         * @param unit time unit
+         * @return time spent loading, parsing and initializing the template
+         */
+        public long getTime(TimeUnit unit)
+        {
+            return unit.convert(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * @return exception thrown while loading the template, or null
+         */
+        public RuntimeException getFailure()
+        {
+            return failure;
+        }
+
+        /**
+         * @return whether the template was successfully loaded
+         */
+        public boolean isSuccessful()
+        {
+            return failure == null;
+        }
+
+        @Override
+        public String toString()
+        {
+            return name + (failure == null
+                ? " loaded in " + getTime(TimeUnit.MILLISECONDS) + " ms"
+                : " failed: " + failure.getMessage());
+        }
+    }
+
+    private final List<Result> results;
+
+    private final long nanos;
+
+    PreloadReport(List<Result> results, long nanos)
+    {
+        this.results = Collections.unmodifiableList(results);
+        this.nanos = nanos;
+    }
+
+    /**
+     * @return results, in completion order
+     */
+    public List<Result> getResults()
+    {
+        return results;
+    }
+
+    /**
+     * @return results of the templates which could not be loaded
+     */
+    public List<Result> getFailures()
+    {
+        List<Result> failures = new ArrayList<>();
+        for (Result result : results)
+        {
+            if (!result.isSuccessful())
+            {
+                failures.add(result);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * @return whether all templates were successfully loaded
+     */
+    public boolean isSuccessful()
+    {
+        for (Result result : results)
+        {
+            if (!result.isSuccessful())
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param unit time unit
+     * @return total elapsed time of the preloading
+     */
+    public long getElapsedTime(TimeUnit unit)
+    {
+        return unit.convert(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "preloaded " + results.size() + " templates in " + getElapsedTime(TimeUnit.MILLISECONDS)
+            + " ms, " + getFailures().size() + " failures";
+    }
+}
@@ -0,0 +1,214 @@
+package org.apache.velocity.app;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.velocity.Template;
+import org.apache.velocity.exception.VelocityException;
+import org.apache.velocity.runtime.RuntimeInstance;
+import org.apache.velocity.runtime.directive.Parse;
+import org.apache.velocity.runtime.parser.node.ASTDirective;
+import org.apache.velocity.runtime.parser.node.ASTStringLiteral;
+import org.apache.velocity.runtime.parser.node.ConstantNode;
+import org.apache.velocity.runtime.parser.node.Node;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.regex.Pattern;
+
+/**
+ * Loads templates in parallel, following their constant <code>#parse</code> targets.
+ *
+ * @see VelocityEngine#preload(Collection, Executor)
+ * @since 2.6
+ */
+class TemplatePreloader
+{
+    private final RuntimeInstance runtime;
+
+    private final Executor executor;
+
+    TemplatePreloader(RuntimeInstance runtime, Executor executor)
+    {
+        this.runtime = runtime;
+        this.executor = executor;
+    }
+
+    /**
+     * Converts a glob to a regular expression: <code>*</code> and <code>?</code> match within
+     * a path segment, <code>**</code> matches across segments.
+     * @param glob glob
+     * @return pattern
+     */
+    static Pattern compileGlob(String glob)
+    {
+        StringBuilder regex = new StringBuilder();
+        int length = glob.length();
+        for (int i = 0; i < length; ++i)
+        {
+            char c = glob.charAt(i);
+            if (c == '*')
+            {
+                if (i + 1 < length && glob.charAt(i + 1) == '*')
+                {
+                    ++i;
+                    if (i + 1 < length && glob.charAt(i + 1) == '/')
+                    {
+                        ++i;
+                        regex.append("(?:.*/)?");
+                    }
+                    else
+                    {
+                        regex.append(".*");
+                    }
+                }
+                else
+                {
+                    regex.append("[^/]*");
+                }
+            }
+            else if (c == '?')
+            {
+                regex.append("[^/]");
+            }
+            else
+            {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * Lists the resources matching a glob.
+     * @param glob glob
+     * @return matching resource names
+     */
+    List<String> match(String glob)
+    {
+        Pattern pattern = compileGlob(glob);
+        List<String> names = new ArrayList<>();
+        for (String name : runtime.getResourceNames())
+        {
+            if (pattern.matcher(name).matches())
+            {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Loads the given templates and the templates they <code>#parse</code>, and waits for completion.
+     * @param names template names
+     * @return report
+     */
+    PreloadReport preload(Collection<String> names)
+    {
+        long start = System.nanoTime();
+        CompletionService<PreloadReport.Result> completion = new ExecutorCompletionService<>(executor);
+        Set<String> submitted = new HashSet<>();
+        List<PreloadReport.Result> results = new ArrayList<>();
+        int pending = 0;
+        for (String name : names)
+        {
+            if (submitted.add(name))
+            {
+                completion.submit(() -> load(name, null));
+                ++pending;
+            }
+        }
+        try
+        {
+            while (pending > 0)
+            {
+                PreloadReport.Result result = completion.take().get();
+                --pending;
+                results.add(result);
+                for (String reference : result.getReferences())
+                {
+                    if (submitted.add(reference))
+                    {
+                        completion.submit(() -> load(reference, result.getName()));
+                        ++pending;
+                    }
+                }
+            }
+        }
+        catch (InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+            throw new VelocityException("Preloading interrupted", ie);
+        }
+        catch (ExecutionException ee)
+        {
+            throw new VelocityException("Preloading failed", ee.getCause());
+        }
+        return new PreloadReport(results, System.nanoTime() - start);
+    }
+
+    private PreloadReport.Result load(String name, String referrer)
+    {
+        long start = System.nanoTime();
+        try
+        {
+            Template template = runtime.getTemplate(name);
+            List<String> references = new ArrayList<>();
+            if (template.getData() instanceof Node)
+            {
+                collectReferences((Node)template.getData(), references);
+            }
+            return new PreloadReport.Result(name, referrer, references, System.nanoTime() - start, null);
+        }
+        catch (RuntimeException e)
+        {
+            return new PreloadReport.Result(name, referrer, Collections.<String>emptyList(), System.nanoTime() - start, e);
+        }
+    }
+
+    private static void collectReferences(Node node, List<String> references)
+    {
+        if (node instanceof ASTDirective && ((ASTDirective)node).getDirective() instanceof Parse
+            && node.jjtGetNumChildren() > 0)
+        {
+            Node target = node.jjtGetChild(0);
+            if (target instanceof ASTStringLiteral && ((ASTStringLiteral)target).isConstant()
+                || target instanceof ConstantNode)
+            {
+                Object value = target.value(null);
+                if (value != null)
+                {
+                    references.add(value.toString());
+                }
+            }
+        }
+        for (int i = 0; i < node.jjtGetNumChildren(); ++i)
+        {
+            collectReferences(node.jjtGetChild(i), references);
+        }
+    }
+}
@@ -30,7 +30,11 @@
 
 import java.io.Reader;
 import java.io.Writer;
+import java.util.Collection;
 import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * <p>
@@ -333,6 +337,76 @@ public Template getTemplate(String name, String encoding)
         return ri.getTemplate( name, encoding );
     }
 
+    /**
+     * Loads, parses and initializes the given templates in parallel, as well as the templates
+     * they include through a <code>#parse</code> directive with a constant argument, so that
+     * they are ready (and cached, for the resource loaders with caching on) before the first
+     * requests arrive. Macro libraries can be listed among the templates. Failures do not stop
+     * the preloading and are reported along with the loading time of each template.
+     *
+     * @param names template names
+     * @return report
+     * @since 2.6
+     */
+    public PreloadReport preload(Collection<String> names)
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try
+        {
+            return preload(names, executor);
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Loads, parses and initializes the given templates, and the templates they <code>#parse</code>,
+     * using the given executor. Waits for completion.
+     *
+     * @param names template names
+     * @param executor executor running the loading tasks
+     * @return report
+     * @see #preload(Collection)
+     * @since 2.6
+     */
+    public PreloadReport preload(Collection<String> names, Executor executor)
+    {
+        return new TemplatePreloader(ri, executor).preload(names);
+    }
+
+    /**
+     * Preloads the templates whose names match a glob, in which <code>*</code> and <code>?</code>
+     * match within a path segment and <code>**</code> matches any number of segments (for instance
+     * <code>"**&#47;*.vm"</code>). Only resource loaders able to list their resources, such as the
+     * file resource loader, contribute names.
+     *
+     * @param glob glob matched against the loader-relative template names
+     * @return report
+     * @see #preload(Collection)
+     * @since 2.6
+     */
+    public PreloadReport preload(String glob)
+    {
+        return preload(new TemplatePreloader(ri, null).match(glob));
+    }
+
+    /**
+     * Preloads the templates whose names match a glob, using the given executor.
+     *
+     * @param glob glob matched against the loader-relative template names
+     * @param executor executor running the loading tasks
+     * @return report
+     * @see #preload(String)
+     * @since 2.6
+     */
+    public PreloadReport preload(String glob, Executor executor)
+    {
+        TemplatePreloader preloader = new TemplatePreloader(ri, executor);
+        return preloader.preload(preloader.match(glob));
+    }
+
     /**
      *   Determines if a resource is accessible via the currently
      *   configured resource loaders.
@@ -284,6 +284,17 @@ public Object referenceInsert(InternalContextAdapter context, String reference,
         return value;
     }
 
+    /**
+     * Check whether this event cartridge has reference insertion event handlers
+     *
+     * @return true if a reference insertion event handler has been registered
+     * @since 2.6
+     */
+    public boolean hasReferenceInsertionEventHandler()
+    {
+        return !referenceHandlers.isEmpty();
+    }
+
     /**
      * Check whether this event cartridge has a method exception event handler
      *
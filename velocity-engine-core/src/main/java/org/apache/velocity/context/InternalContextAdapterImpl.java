@@ -24,7 +24,10 @@
 import org.apache.velocity.runtime.resource.Resource;
 import org.apache.velocity.util.introspection.IntrospectionCacheData;
 
+import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  *  This adapter class is the container for all context types for internal
@@ -85,6 +88,20 @@ public final class InternalContextAdapterImpl implements InternalContextAdapter
      */
     InternalEventContext iec = null;
 
+    /**
+     *  frame of the loop variables resolved to slots at init time
+     */
+    private Object[] slots = null;
+
+    /**
+     *  variables bound by the pushed frames, in push order, and start index of each frame
+     */
+    private String[] boundNames = null;
+    private Object[] boundValues = null;
+    private int boundCount = 0;
+    private int[] frameStarts = null;
+    private int frameDepth = 0;
+
     /**
      *  CTOR takes a Context and wraps it, delegating all 'data' calls
      *  to it.
@@ -256,6 +273,101 @@ public List<Template> getMacroLibraries()
         return icb.getMacroLibraries();
     }
 
+    /* ---  Rendering frame methods --- */
+
+    /**
+     * Get the value bound to a slot of the rendering frame.
+     * @param slot slot index
+     * @return slot value, or null if not bound
+     * @see org.apache.velocity.runtime.visitor.SlotResolver
+     * @since 2.6
+     */
+    public Object getSlot(int slot)
+    {
+        return slots == null || slot >= slots.length ? null : slots[slot];
+    }
+
+    /**
+     * Bind a value to a slot of the rendering frame.
+     * @param slot slot index
+     * @param value slot value
+     * @see org.apache.velocity.runtime.visitor.SlotResolver
+     * @since 2.6
+     */
+    public void setSlot(int slot, Object value)
+    {
+        if (slots == null)
+        {
+            slots = new Object[Math.max(4, slot + 1)];
+        }
+        else if (slot >= slots.length)
+        {
+            slots = Arrays.copyOf(slots, Math.max(2 * slots.length, slot + 1));
+        }
+        slots[slot] = value;
+    }
+
+    /**
+     * Push a frame of variables, which shadow the context variables of the same names
+     * until the frame is popped. Reads and writes of a bound name go to the topmost frame
+     * binding it, and never reach the user context.
+     * @param names names of the bound variables
+     * @param values initial values of the bound variables
+     * @since 2.6
+     */
+    public void pushFrame(String[] names, Object[] values)
+    {
+        int count = boundCount + names.length;
+        if (boundNames == null)
+        {
+            boundNames = new String[Math.max(16, count)];
+            boundValues = new Object[boundNames.length];
+            frameStarts = new int[8];
+        }
+        else if (count > boundNames.length)
+        {
+            boundNames = Arrays.copyOf(boundNames, Math.max(2 * boundNames.length, count));
+            boundValues = Arrays.copyOf(boundValues, boundNames.length);
+        }
+        if (frameDepth == frameStarts.length)
+        {
+            frameStarts = Arrays.copyOf(frameStarts, 2 * frameDepth);
+        }
+        frameStarts[frameDepth++] = boundCount;
+        System.arraycopy(names, 0, boundNames, boundCount, names.length);
+        System.arraycopy(values, 0, boundValues, boundCount, names.length);
+        boundCount = count;
+    }
+
+    /**
+     * Pop the topmost frame of variables
+     * @since 2.6
+     */
+    public void popFrame()
+    {
+        int start = frameStarts[--frameDepth];
+        Arrays.fill(boundNames, start, boundCount, null);
+        Arrays.fill(boundValues, start, boundCount, null);
+        boundCount = start;
+    }
+
+    /**
+     * Find the topmost binding of a name
+     * @param key variable name
+     * @return binding index, or -1 if the name is not bound
+     */
+    private int findBinding(String key)
+    {
+        for (int i = boundCount - 1; i >= 0; --i)
+        {
+            if (key.equals(boundNames[i]))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     /* ---  Context interface methods --- */
 
     /**
@@ -264,6 +376,16 @@ public List<Template> getMacroLibraries()
     @Override
     public Object put(String key, Object value)
     {
+        if (boundCount > 0 && key != null)
+        {
+            int binding = findBinding(key);
+            if (binding >= 0)
+            {
+                Object old = boundValues[binding];
+                boundValues[binding] = value;
+                return old;
+            }
+        }
         return context.put( key , value );
     }
 
@@ -273,6 +395,14 @@ public Object put(String key, Object value)
     @Override
     public Object get(String key)
     {
+        if (boundCount > 0 && key != null)
+        {
+            int binding = findBinding(key);
+            if (binding >= 0)
+            {
+                return boundValues[binding];
+            }
+        }
         return context.get( key );
     }
 
@@ -282,6 +412,10 @@ public Object get(String key)
     @Override
     public boolean containsKey(String key)
     {
+        if (boundCount > 0 && key != null && findBinding(key) >= 0)
+        {
+            return true;
+        }
         return context.containsKey( key );
     }
 
@@ -291,6 +425,12 @@ public boolean containsKey(String key)
     @Override
     public String[] getKeys()
     {
+        if (boundCount > 0)
+        {
+            Set<String> keys = new LinkedHashSet<>(Arrays.asList(context.getKeys()));
+            keys.addAll(Arrays.asList(boundNames).subList(0, boundCount));
+            return keys.toArray(new String[0]);
+        }
         return context.getKeys();
     }
 
@@ -300,6 +440,17 @@ public String[] getKeys()
     @Override
     public Object remove(String key)
     {
+        if (boundCount > 0 && key != null)
+        {
+            int binding = findBinding(key);
+            if (binding >= 0)
+            {
+                /* the name stays bound, with a null value, until the frame is popped */
+                Object old = boundValues[binding];
+                boundValues[binding] = null;
+                return old;
+            }
+        }
         return context.remove( key );
     }
 
@@ -21,12 +21,15 @@
 
 import org.apache.velocity.runtime.parser.CharStream;
 import org.apache.velocity.runtime.parser.Parser;
-import org.apache.velocity.util.SimplePool;
 import org.slf4j.Logger;
 
+import java.util.concurrent.atomic.AtomicReference;
+
 /**
- * This wraps the original parser SimplePool class.  It also handles
- * instantiating ad-hoc parsers if none are available.
+ * Default parser pool: a bounded lock-free stack of parsers. Neither get() nor put()
+ * holds a lock, so that threads parsing concurrently, including virtual threads, never
+ * wait for each other. When the pool is empty, get() creates a new parser, which put()
+ * keeps if fewer than <code>parser.pool.size</code> parsers are pooled.
  *
  * @author <a href="mailto:sergek@lokitech.com">Serge Knystautas</a>
  * @version $Id: RuntimeInstance.java 384374 2006-03-08 23:19:30Z nbubna $
@@ -34,48 +37,87 @@
  */
 public class ParserPoolImpl implements ParserPool {
 
-    SimplePool pool = null;
+    /**
+     * Stack entry, which knows the stack size below it
+     */
+    private static final class Entry
+    {
+        final Parser parser;
+        final Entry next;
+        final int size;
+
+        Entry(Parser parser, Entry next)
+        {
+            this.parser = parser;
+            this.next = next;
+            this.size = next == null ? 1 : next.size + 1;
+        }
+    }
+
+    private final AtomicReference<Entry> top = new AtomicReference<>();
     int max = RuntimeConstants.NUMBER_OF_PARSERS;
     Logger log;
+    private RuntimeServices rsvc;
 
     /**
-     * Create the underlying "pool".
+     * Create the initial parsers.
      * @param rsvc
      */
     @Override
     public void initialize(RuntimeServices rsvc)
     {
+        this.rsvc = rsvc;
         log = rsvc.getLog("parser");
         max = rsvc.getInt(RuntimeConstants.PARSER_POOL_SIZE, RuntimeConstants.NUMBER_OF_PARSERS);
-        pool = new SimplePool(max);
 
         for (int i = 0; i < max; i++)
         {
-            pool.put(rsvc.createNewParser());
+            top.set(new Entry(rsvc.createNewParser(), top.get()));
         }
 
         log.debug("Created {} parsers.", max);
     }
 
     /**
-     * Call the wrapped pool.  If none are available, it will create a new
-     * temporary one.
+     * Pop a parser from the pool.  If none are available, it will create a new
+     * one.
      * @return A parser Object.
      */
     @Override
     public Parser get()
     {
-        return (Parser) pool.get();
+        Entry entry;
+        do
+        {
+            entry = top.get();
+            if (entry == null)
+            {
+                log.debug("Ran out of parsers, creating a new one. Please increment"
+                          + " the parser.pool.size property if this happens often.");
+                return rsvc.createNewParser();
+            }
+        }
+        while (!top.compareAndSet(entry, entry.next));
+        return entry.parser;
     }
 
     /**
-     * Call the wrapped pool.
+     * Push a parser on the pool, unless the pool is full.
      * @param parser
      */
     @Override
     public void put(Parser parser)
     {
         parser.ReInit((CharStream) null);
-        pool.put(parser);
+        Entry entry;
+        do
+        {
+            entry = top.get();
+            if ((entry == null ? 0 : entry.size) >= max)
+            {
+                return;
+            }
+        }
+        while (!top.compareAndSet(entry, new Entry(parser, entry)));
     }
 }
@@ -66,6 +66,13 @@ public interface RuntimeConstants extends DeprecatedRuntimeConstants
      */
     String RUNTIME_LOG_TRACK_LOCATION = "runtime.log.track_location";
 
+    /**
+     * Whether the location tracking should only populate slf4j's MDC on demand, that is when a VTL
+     * stack trace is built or when {@link org.apache.velocity.runtime.parser.LogContext#updateMDC()} is called.
+     * @since 2.6
+     */
+    String RUNTIME_LOG_TRACK_LOCATION_LAZY = "runtime.log.track_location.lazy";
+
     /*
      * ----------------------------------------------------------------------
      * D I R E C T I V E  C O N F I G U R A T I O N
@@ -161,6 +168,42 @@ public interface RuntimeConstants extends DeprecatedRuntimeConstants
     /** The <code>resource.manager.cache.size</code> property specifies the cache upper bound (if relevant). */
     String RESOURCE_MANAGER_DEFAULTCACHE_SIZE = "resource.manager.cache.default_size";
 
+    /**
+     * The <code>resource.manager.cache.weigher.class</code> property specifies the name of the
+     * {@link org.apache.velocity.runtime.resource.ResourceWeigher} implementation used by caches bounded by weight.
+     * @since 2.6
+     */
+    String RESOURCE_MANAGER_CACHE_WEIGHER_CLASS = "resource.manager.cache.weigher.class";
+
+    /**
+     * The <code>resource.manager.cache.max_weight</code> property specifies the cache upper bound
+     * when a weigher is used.
+     * @since 2.6
+     */
+    String RESOURCE_MANAGER_CACHE_MAX_WEIGHT = "resource.manager.cache.max_weight";
+
+    /**
+     * The <code>resource.manager.background_check</code> property specifies whether cached resources
+     * are checked for modification by a background thread rather than by rendering threads.
+     * @since 2.6
+     */
+    String RESOURCE_MANAGER_BACKGROUND_CHECK = "resource.manager.background_check";
+
+    /**
+     * The <code>resource.manager.background_check.interval</code> property specifies the interval,
+     * in seconds, between two background checks.
+     * @since 2.6
+     */
+    String RESOURCE_MANAGER_BACKGROUND_CHECK_INTERVAL = "resource.manager.background_check.interval";
+
+    /**
+     * The <code>resource.manager.ast_cache.directory</code> property specifies a directory where parsed
+     * templates are persisted, so that they are not parsed again after a restart while their source is
+     * unchanged. Not set by default.
+     * @since 2.6
+     */
+    String RESOURCE_MANAGER_AST_CACHE_DIRECTORY = "resource.manager.ast_cache.directory";
+
     /*
      * ----------------------------------------------------------------------
      * R E S O U R C E  L O A D E R  C O N F I G U R A T I O N
@@ -217,6 +260,13 @@ public interface RuntimeConstants extends DeprecatedRuntimeConstants
      */
     String RESOURCE_LOADER_CHECK_INTERVAL = "modification_check_interval";
 
+    /**
+     * File resource loader watch service property suffix: when true, the loader paths
+     * are watched for changes instead of polling each template file.
+     * @since 2.6
+     */
+    String RESOURCE_LOADER_WATCH = "watch";
+
     /**
      * Datasource loader datasource url
      */
@@ -364,6 +414,30 @@ public interface RuntimeConstants extends DeprecatedRuntimeConstants
      */
     String VM_MAX_DEPTH = "velocimacro.max_depth";
 
+    /**
+     * If true, macro arguments and the body reference are bound in a frame pushed on the rendering
+     * context instead of being put in the user context and restored afterwards: default false.
+     * Assigning a macro argument with <code>#set</code> then only has an effect inside the macro.
+     * Ignored in backward compatibility mode.
+     * @since 2.6
+     */
+    String VM_ARGUMENTS_FRAME = "velocimacro.arguments.frame";
+
+    /**
+     * If true, calls to small macros which call no other macro are rendered in place, without
+     * the macro lookup and call stack bookkeeping: default false. Only applies when macros are
+     * resolved from the global namespace alone, that is when local scope, global replacement
+     * and library autoreload are all disabled.
+     * @since 2.6
+     */
+    String VM_INLINING = "velocimacro.inlining";
+
+    /**
+     * Maximum number of AST nodes of a macro body for its calls to be rendered in place: default 50.
+     * @since 2.6
+     */
+    String VM_INLINING_MAX_NODES = "velocimacro.inlining.max_nodes";
+
     /**
      * Defines name of the reference that can be used to get the AST block passed to block macro calls.
      * @since 1.7
@@ -479,6 +553,33 @@ public interface RuntimeConstants extends DeprecatedRuntimeConstants
     /** Switch for ignoring nulls in math equations vs throwing exceptions. */
     String STRICT_MATH = "runtime.strict_math";
 
+    /**
+     * Whether templates are compiled, after initialization, into a generated JVM class which renders
+     * static text, references, <code>#set</code>, <code>#if</code> chains and <code>#foreach</code> loops
+     * through direct calls instead of walking the AST (defaults to false). Other directives are still
+     * rendered by the interpreter. Requires the optional ASM library; templates are interpreted without it.
+     * @since 2.6
+     */
+    String RUNTIME_RENDER_COMPILE = "runtime.render.compile";
+
+    /**
+     * Whether <code>#foreach</code> loop variables and macro arguments are bound, after initialization,
+     * to slots of the rendering frame instead of being written to the context (defaults to false). Only
+     * the loop and macro bodies which cannot see them by name, because they contain no directive other
+     * than <code>#foreach</code> and <code>#break</code>, are concerned; tools and event handlers
+     * holding the context do not see the bound variables either.
+     * @since 2.6
+     */
+    String RUNTIME_RENDER_SLOTS = "runtime.render.slots";
+
+    /**
+     * Whether the AST of templates is optimized after initialization (defaults to false): constant
+     * expressions are folded, unreachable <code>#if</code> branches are removed and adjacent text
+     * nodes are merged.
+     * @since 2.6
+     */
+    String RUNTIME_RENDER_OPTIMIZE = "runtime.render.optimize";
+
     /** Key upon which a context should be accessible within itself */
     String CONTEXT_AUTOREFERENCE_KEY = "context.self_reference_key";
 
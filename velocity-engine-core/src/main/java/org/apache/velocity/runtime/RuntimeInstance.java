@@ -59,7 +59,6 @@
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
-import java.io.StringReader;
 import java.io.Writer;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
@@ -1015,7 +1014,8 @@ private void initializeLog()
 
             /* Initialize LogContext */
             boolean trackLocation = getBoolean(RUNTIME_LOG_TRACK_LOCATION, false);
-            logContext = new LogContext(trackLocation);
+            boolean lazyLocation = getBoolean(RUNTIME_LOG_TRACK_LOCATION_LAZY, false);
+            logContext = new LogContext(trackLocation, lazyLocation);
         }
         catch (Exception e)
         {
@@ -1335,6 +1335,30 @@ public Parser createNewParser()
     @Override
     public SimpleNode parse(Reader reader, Template template)
         throws ParseException
+    {
+        return parse(reader, null, template);
+    }
+
+    /**
+     * Parse a template source which is already in memory and return the root of
+     * AST node structure. The source is read in place, without the buffering
+     * and per-character position tracking done when parsing from a Reader.
+     *
+     * @param source template source
+     * @param template template being parsed
+     * @return A root node representing the template as an AST tree.
+     * @throws ParseException When the template could not be parsed.
+     * @since 2.6
+     */
+    @Override
+    public SimpleNode parse(CharSequence source, Template template)
+        throws ParseException
+    {
+        return parse(null, source, template);
+    }
+
+    private SimpleNode parse(Reader reader, CharSequence source, Template template)
+        throws ParseException
     {
         requireInitialization();
 
@@ -1354,7 +1378,7 @@ public SimpleNode parse(Reader reader, Template template)
 
         try
         {
-            return parser.parse(reader, template);
+            return source == null ? parser.parse(reader, template) : parser.parse(source, template);
         }
         finally
         {
@@ -1408,7 +1432,7 @@ private void initializeScopeSettings()
     public boolean evaluate(Context context, Writer out,
                             String logTag, String instring)
     {
-        return evaluate(context, out, logTag, new StringReader(instring));
+        return evaluate(context, out, logTag, null, instring);
     }
 
     /**
@@ -1435,6 +1459,12 @@ public boolean evaluate(Context context, Writer out,
     @Override
     public boolean evaluate(Context context, Writer writer,
                             String logTag, Reader reader)
+    {
+        return evaluate(context, writer, logTag, reader, null);
+    }
+
+    private boolean evaluate(Context context, Writer writer,
+                             String logTag, Reader reader, String source)
     {
         if (logTag == null)
         {
@@ -1446,7 +1476,7 @@ public boolean evaluate(Context context, Writer writer,
         t.setName(logTag);
         try
         {
-            nodeTree = parse(reader, t);
+            nodeTree = source == null ? parse(reader, t) : parse(source, t);
         }
         catch (ParseException pex)
         {
@@ -1773,6 +1803,20 @@ public String getLoaderNameForResource(String resourceName)
         return resourceManager.getLoaderNameForResource(resourceName);
     }
 
+    /**
+     * Lists the names of the resources provided by the resource loaders which are able to
+     * enumerate them.
+     *
+     * @return resource names
+     * @since 2.6
+     */
+    public List<String> getResourceNames()
+    {
+        requireInitialization();
+
+        return resourceManager.getResourceNames();
+    }
+
     /**
      * Returns the configured logger.
      *
@@ -39,6 +39,7 @@
 import org.slf4j.Logger;
 
 import java.io.Reader;
+import java.io.StringReader;
 import java.io.Writer;
 import java.util.List;
 import java.util.Properties;
@@ -166,6 +167,23 @@
     SimpleNode parse(Reader reader, Template template)
         throws ParseException;
 
+    /**
+     * Parse a template source which is already in memory and return the root of
+     * AST node structure. The default implementation reads it through a Reader,
+     * implementations can read it in place.
+     *
+     * @param source template source
+     * @param template template being parsed
+     * @return The AST representing the template.
+     * @throws ParseException
+     * @since 2.6
+     */
+    default SimpleNode parse(CharSequence source, Template template)
+        throws ParseException
+    {
+        return parse(new StringReader(source.toString()), template);
+    }
+
     /**
      * Renders the input string using the context into the output writer.
      * To be used when a template is dynamically constructed, or want to use
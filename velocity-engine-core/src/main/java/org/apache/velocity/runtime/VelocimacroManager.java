@@ -157,6 +157,15 @@ public boolean addVM(final String vmName, final Node macroBody, List<Macro.Macro
 
             globalNamespace.put(vmName, me);
 
+            /*
+             *  call sites which render the replaced definition in place
+             *  have to look the macro up again
+             */
+
+            if (exist != null)
+            {
+                exist.getProxy().setReplaced();
+            }
         }
         return true;
     }
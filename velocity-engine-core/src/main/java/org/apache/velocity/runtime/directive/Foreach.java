@@ -20,8 +20,10 @@
  */
 
 import org.apache.velocity.context.InternalContextAdapter;
+import org.apache.velocity.context.InternalContextAdapterImpl;
 import org.apache.velocity.exception.TemplateInitException;
 import org.apache.velocity.exception.VelocityException;
+import org.apache.velocity.runtime.Renderable;
 import org.apache.velocity.runtime.RuntimeConstants;
 import org.apache.velocity.runtime.RuntimeServices;
 import org.apache.velocity.runtime.parser.ParseException;
@@ -89,6 +91,12 @@ public int getType()
      */
     private String elementKey;
 
+    /**
+     * Slot of the rendering frame holding the current element,
+     * or -1 if the element is put in the context.
+     */
+    private int slot = -1;
+
     /**
      *  immutable, so create in init
      */
@@ -150,6 +158,27 @@ public void init(RuntimeServices rs, InternalContextAdapter context, Node node)
                 getLine(),getColumn());
     }
 
+    /**
+     * Bind the loop variable to a slot of the rendering frame, so that it is no longer
+     * put in the context, and the references to it in the loop body read the slot instead.
+     * @param slot slot index, or -1
+     * @see org.apache.velocity.runtime.visitor.SlotResolver
+     * @since 2.6
+     */
+    public void setSlot(int slot)
+    {
+        this.slot = slot;
+    }
+
+    /**
+     * @return slot of the rendering frame holding the current element, or -1
+     * @since 2.6
+     */
+    public int getSlot()
+    {
+        return slot;
+    }
+
     /**
      * Extension hook to allow subclasses to control whether loop vars
      * are set locally or not. So, those in favor of VELOCITY-285, can
@@ -220,6 +249,24 @@ protected Iterator getIterator(Object iterable, Node node)
     @Override
     public boolean render(InternalContextAdapter context, Writer writer, Node node)
         throws IOException
+    {
+        return render(context, writer, node, null, null);
+    }
+
+    /**
+     *  renders the #foreach() block, using compiled forms of the loop body and of the #else block
+     * @param context
+     * @param writer
+     * @param node
+     * @param body compiled loop body, or null to render the body node
+     * @param elseBody compiled #else block, or null to render the #else node
+     * @return True if the directive rendered successfully.
+     * @throws IOException
+     * @see org.apache.velocity.runtime.parser.node.NodeCompiler
+     * @since 2.6
+     */
+    public boolean render(InternalContextAdapter context, Writer writer, Node node, Renderable body, Renderable elseBody)
+        throws IOException
     {
         // Get the block ast tree which is always the last child ...
         Node block = node.jjtGetChild(node.jjtGetNumChildren()-1);
@@ -238,7 +285,11 @@ public boolean render(InternalContextAdapter context, Writer writer, Node node)
         Iterator i = getIterator(iterable, iterableNode);
         if (i == null || !i.hasNext())
         {
-            if (elseBlock != null)
+            if (elseBody != null)
+            {
+                elseBody.render(context, writer);
+            }
+            else if (elseBlock != null)
             {
                 renderBlock(context, writer, elseBlock);
             }
@@ -246,9 +297,19 @@ public boolean render(InternalContextAdapter context, Writer writer, Node node)
         }
 
         /*
-         * save the element key if there is one
+         * a loop variable bound to a slot of the rendering frame is not put in the context
          */
-        Object o = context.get(elementKey);
+        InternalContextAdapterImpl frame = null;
+        if (slot >= 0 && context instanceof InternalContextAdapterImpl)
+        {
+            frame = (InternalContextAdapterImpl)context;
+        }
+
+        /*
+         * save the element key if there is one, or the slot value,
+         * which may be used by a loop rendered through another node tree
+         */
+        Object o = frame == null ? context.get(elementKey) : frame.getSlot(slot);
 
         /*
          * roll our own scope class instead of using preRender(ctx)'s
@@ -266,7 +327,14 @@ public boolean render(InternalContextAdapter context, Writer writer, Node node)
         {
             count++;
 
-            put(context, elementKey, i.next());
+            if (frame == null)
+            {
+                put(context, elementKey, i.next());
+            }
+            else
+            {
+                frame.setSlot(slot, i.next());
+            }
             if (isScopeProvided())
             {
                 // update the scope control
@@ -276,7 +344,14 @@ public boolean render(InternalContextAdapter context, Writer writer, Node node)
 
             try
             {
-                renderBlock(context, writer, block);
+                if (body != null)
+                {
+                    body.render(context, writer);
+                }
+                else
+                {
+                    renderBlock(context, writer, block);
+                }
             }
             catch (StopCommand stop)
             {
@@ -287,12 +362,12 @@ public boolean render(InternalContextAdapter context, Writer writer, Node node)
                 else
                 {
                     // clean up first
-                    clean(context, o);
+                    clean(context, frame, o);
                     throw stop;
                 }
             }
         }
-        clean(context, o);
+        clean(context, frame, o);
         /*
          * closes the iterator if it implements the Closeable interface
          */
@@ -309,6 +384,25 @@ protected void renderBlock(InternalContextAdapter context, Writer writer, Node b
         block.render(context, writer);
     }
 
+    /**
+     * Restores the loop variable, in the context or in its slot of the rendering frame
+     * @param context
+     * @param frame rendering frame if the loop variable is bound to a slot, null otherwise
+     * @param o saved value
+     */
+    private void clean(InternalContextAdapter context, InternalContextAdapterImpl frame, Object o)
+    {
+        if (frame == null)
+        {
+            clean(context, o);
+        }
+        else
+        {
+            frame.setSlot(slot, o);
+            postRender(context);
+        }
+    }
+
     protected void clean(InternalContextAdapter context, Object o)
     {
         /*
@@ -80,6 +80,17 @@ public class RuntimeMacro extends Directive
      */
     private String badArgsErrorMsg = null;
 
+    /**
+     * Maximum number of nodes of the body of a macro rendered in place, or -1 when calls
+     * of this node cannot be rendered in place.
+     */
+    private int inlineMaxNodes = -1;
+
+    /**
+     * Statically resolved macro, rendered in place as long as it is not replaced.
+     */
+    private volatile VelocimacroProxy inlined = null;
+
     /**
      * Return name of this Velocimacro.
      *
@@ -169,6 +180,19 @@ public void init(RuntimeServices rs, String name, InternalContextAdapter context
                 }
             }
         }
+        /*
+         * Calls can only be rendered in place when the macro lookup does not depend
+         * on the rendering or defining templates, nor on the library modification times
+         */
+        if (badArgsErrorMsg == null && !isScopeProvided()
+            && rsvc.getBoolean(RuntimeConstants.VM_INLINING, false)
+            && !rsvc.getBoolean(RuntimeConstants.VM_PERM_INLINE_LOCAL, false)
+            && !rsvc.getBoolean(RuntimeConstants.VM_PERM_ALLOW_INLINE_REPLACE_GLOBAL, false)
+            && !rsvc.getBoolean(RuntimeConstants.VM_LIBRARY_AUTORELOAD, false))
+        {
+            inlineMaxNodes = rsvc.getInt(RuntimeConstants.VM_INLINING_MAX_NODES, 50);
+        }
+
         // TODO: Improve this
         // this is only needed if the macro does not exist during runtime
         // since tokens are eliminated after this init call, we have to create a cached version of the
@@ -279,7 +303,30 @@ public boolean render(InternalContextAdapter context, Writer writer,
             throws IOException, ResourceNotFoundException,
             ParseErrorException, MethodInvocationException
     {
-        VelocimacroProxy vmProxy = null;
+        VelocimacroProxy vmProxy = inlined;
+        if (vmProxy != null && body == null && !vmProxy.isReplaced())
+        {
+            try
+            {
+                return vmProxy.renderInline(context, writer, node);
+            }
+            catch (StopCommand stop)
+            {
+                if (!stop.isFor(this))
+                {
+                    throw stop;
+                }
+                return true;
+            }
+            catch (RuntimeException | IOException e)
+            {
+                log.error("Exception in macro #{} called at {}",
+                          macroName, StringUtils.formatFileString(node));
+                throw e;
+            }
+        }
+
+        vmProxy = null;
         Template renderingTemplate = (Template)context.getCurrentResource();
 
         /*
@@ -292,6 +339,16 @@ public boolean render(InternalContextAdapter context, Writer writer,
             // getVelocimacro can only return a VelocimacroProxy so we don't need the
             // costly instanceof check
             vmProxy = (VelocimacroProxy)o;
+
+            // remember small leaf macros to render them in place from now on
+            if (inlineMaxNodes >= 0 && body == null && vmProxy.isInlinable(inlineMaxNodes))
+            {
+                inlined = vmProxy;
+            }
+            else if (inlined != null)
+            {
+                inlined = null;
+            }
         }
 
         /*
@@ -20,20 +20,25 @@
  */
 
 import org.apache.velocity.context.InternalContextAdapter;
+import org.apache.velocity.context.InternalContextAdapterImpl;
 import org.apache.velocity.exception.MacroOverflowException;
 import org.apache.velocity.exception.VelocityException;
 import org.apache.velocity.runtime.Renderable;
 import org.apache.velocity.runtime.RuntimeConstants;
 import org.apache.velocity.runtime.RuntimeServices;
 import org.apache.velocity.runtime.directive.Macro.MacroArg;
+import org.apache.velocity.runtime.parser.node.ASTDirective;
 import org.apache.velocity.runtime.parser.node.ASTReference;
+import org.apache.velocity.runtime.parser.node.ASTSetDirective;
 import org.apache.velocity.runtime.parser.node.ASTStringLiteral;
 import org.apache.velocity.runtime.parser.node.Node;
 import org.apache.velocity.runtime.parser.node.SimpleNode;
+import org.apache.velocity.runtime.visitor.SlotResolver;
 import org.apache.velocity.util.StringUtils;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.util.Arrays;
 import java.util.Deque;
 import java.util.LinkedList;
 import java.util.List;
@@ -57,6 +62,22 @@ public class VelocimacroProxy extends Directive
     private int maxCallDepth;
     private String bodyReference;
     private boolean enableBCmode;
+    private boolean argumentsFrame;
+    private String[] frameNames = null;
+    private boolean renderSlots;
+
+    /*
+     * whether the arguments are bound to slots of the rendering frame, see SlotResolver:
+     * 1 if they are, 0 if they are not, -1 if the macro body is not resolved yet
+     */
+    private volatile int argumentSlots = -1;
+    private volatile boolean replaced = false;
+
+    /*
+     * number of nodes of the macro body if its calls can be rendered in place,
+     * -1 if they cannot, -2 if not computed yet
+     */
+    private int inlineSize = -2;
 
     private static final Object NULL_VALUE_MARKER = new Object();
 
@@ -116,6 +137,14 @@ public void setMacroArgs(List<Macro.MacroArg> args)
          */
 
         numMacroArgs = macroArgs.size() - 1;
+
+        // names bound by the arguments frame: the arguments, then the body reference
+        frameNames = new String[macroArgs.size()];
+        for (int i = 1; i < macroArgs.size(); i++)
+        {
+            frameNames[i - 1] = macroArgs.get(i).name;
+        }
+        frameNames[numMacroArgs] = bodyReference;
     }
 
     /**
@@ -135,6 +164,76 @@ public void setNodeTree(SimpleNode tree)
         nodeTree = tree;
     }
 
+    /**
+     * Flags this macro as replaced by a new definition of the same name.
+     * @since 2.6
+     */
+    public void setReplaced()
+    {
+        replaced = true;
+    }
+
+    /**
+     * Whether this macro has been replaced by a new definition of the same name.
+     * @return true if this definition is stale
+     * @since 2.6
+     */
+    public boolean isReplaced()
+    {
+        return replaced;
+    }
+
+    /**
+     * Whether calls to this macro can be rendered in place by {@link #renderInline}: the macro body
+     * must hold at most <code>maxNodes</code> nodes, and must not contain any directive
+     * other than #foreach and #break, so that it neither calls another macro nor assigns references.
+     * @param maxNodes maximum number of nodes of the macro body
+     * @return true if calls can be rendered in place
+     * @since 2.6
+     */
+    public boolean isInlinable(int maxNodes)
+    {
+        int size = inlineSize;
+        if (size == -2)
+        {
+            size = enableBCmode ? -1 : countInlinableNodes(nodeTree);
+            inlineSize = size;
+        }
+        return size >= 0 && size <= maxNodes;
+    }
+
+    /**
+     * Count the nodes of a subtree, or return -1 if it cannot be rendered in place
+     * @param node
+     * @return number of nodes or -1
+     */
+    private static int countInlinableNodes(Node node)
+    {
+        if (node instanceof ASTSetDirective)
+        {
+            return -1;
+        }
+        if (node instanceof ASTDirective)
+        {
+            Directive directive = ((ASTDirective)node).getDirective();
+            if (directive == null || directive.getClass() != Foreach.class && directive.getClass() != Break.class)
+            {
+                return -1;
+            }
+        }
+        int count = 1;
+        for (int i = 0; i < node.jjtGetNumChildren(); i++)
+        {
+            int childCount = countInlinableNodes(node.jjtGetChild(i));
+            if (childCount < 0)
+            {
+                return -1;
+            }
+            count += childCount;
+        }
+        return count;
+    }
+
     /**
      * returns the number of ars needed for this VM
      * @return The number of ars needed for this VM
@@ -163,6 +262,44 @@ public void init(RuntimeServices rs)
         bodyReference = rsvc.getString(RuntimeConstants.VM_BODY_REFERENCE, "bodyContent");
 
         enableBCmode = rsvc.getBoolean(RuntimeConstants.VM_ENABLE_BC_MODE, false);
+
+        // the backward compatibility mode needs the arguments literals in the context
+        argumentsFrame = !enableBCmode && rsvc.getBoolean(RuntimeConstants.VM_ARGUMENTS_FRAME, false);
+
+        renderSlots = rsvc.getBoolean(RuntimeConstants.RUNTIME_RENDER_SLOTS, false);
+    }
+
+    /**
+     * Resolves the macro body the first time it is rendered, since the nodes of its
+     * directives are only initialized once the whole defining template is.
+     * @return whether the arguments are bound to slots of the rendering frame
+     */
+    private boolean hasArgumentSlots()
+    {
+        int resolved = argumentSlots;
+        if (resolved < 0)
+        {
+            synchronized (this)
+            {
+                resolved = argumentSlots;
+                if (resolved < 0)
+                {
+                    resolved = 0;
+                    if (renderSlots)
+                    {
+                        // the backward compatibility mode needs the arguments literals in the context
+                        List<String> names = null;
+                        if (!enableBCmode)
+                        {
+                            names = Arrays.asList(frameNames).subList(0, numMacroArgs);
+                        }
+                        resolved = new SlotResolver().resolveMacro(nodeTree, names, bodyReference) ? 1 : 0;
+                    }
+                    argumentSlots = resolved;
+                }
+            }
+        }
+        return resolved == 1;
     }
 
     /**
@@ -194,6 +331,38 @@ public boolean render(InternalContextAdapter context, Writer writer,
                           Node node, Renderable body)
         throws IOException
     {
+        return render(context, writer, node, body, false);
+    }
+
+    /**
+     * Renders the macro, binding its arguments in slots, in a frame or in the context depending on the configuration.
+     *
+     * @param context Current rendering context
+     * @param writer Writer for output
+     * @param node AST that calls the macro
+     * @param body the macro body
+     * @param inline whether the call is rendered in place, without being pushed on the macro call stack
+     * @return true if the directive rendered successfully.
+     * @throws IOException
+     */
+    private boolean render(InternalContextAdapter context, Writer writer,
+                           Node node, Renderable body, boolean inline)
+        throws IOException
+    {
+        if (hasArgumentSlots() && context instanceof InternalContextAdapterImpl)
+        {
+            return renderInSlots((InternalContextAdapterImpl)context, writer, node, body, inline);
+        }
+
+        if (argumentsFrame)
+        {
+            InternalContextAdapter base = context.getBaseContext();
+            if (base instanceof InternalContextAdapterImpl)
+            {
+                return renderInFrame((InternalContextAdapterImpl)base, context, writer, node, body, inline);
+            }
+        }
+
         int callArgNum = node.jjtGetNumChildren();
 
         // if this macro was invoked by a call directive, we might have a body AST here.
@@ -213,7 +382,10 @@ public boolean render(InternalContextAdapter context, Writer writer,
         try
         {
             // render the velocity macro
-            context.pushCurrentMacroName(macroName);
+            if (!inline)
+            {
+                context.pushCurrentMacroName(macroName);
+            }
             nodeTree.render(context, writer);
         }
         catch (RuntimeException e)
@@ -230,7 +402,7 @@ public boolean render(InternalContextAdapter context, Writer writer,
         {
             // if MacroOverflowException was thrown then it already empties the stack
             // for everything else - e.g. other exceptions - we clean up after ourself
-            if (context.getCurrentMacroCallDepth() > 0)
+            if (!inline && context.getCurrentMacroCallDepth() > 0)
                 context.popCurrentMacroName();
 
             // clean up after the args and bodyRef
@@ -289,6 +461,158 @@ else if (old == NULL_VALUE_MARKER)
         return true;
     }
 
+    /**
+     * Renders the macro with its arguments bound in a frame pushed on the base context,
+     * so that nothing is written in the user context.
+     *
+     * @param frame base context, holding the frames
+     * @param context Current rendering context
+     * @param writer Writer for output
+     * @param node AST that calls the macro
+     * @param body the macro body
+     * @param inline whether the call is rendered in place, without being pushed on the macro call stack
+     * @return true if the directive rendered successfully.
+     * @throws IOException
+     */
+    protected boolean renderInFrame(InternalContextAdapterImpl frame, InternalContextAdapter context,
+                                    Writer writer, Node node, Renderable body, boolean inline)
+        throws IOException
+    {
+        int callArgNum = node.jjtGetNumChildren();
+        if (body != null)
+        {
+            callArgNum--;  // Remove the body AST from the arg count
+        }
+
+        // is everything copacetic?
+        checkArgumentCount(node, callArgNum);
+        checkDepth(context);
+
+        // arguments are evaluated in the caller scope, before the frame is pushed
+        Object[] values = getArgValues(context, node, callArgNum);
+        values[numMacroArgs] = body;
+        frame.pushFrame(frameNames, values);
+        try
+        {
+            // render the velocity macro
+            if (!inline)
+            {
+                context.pushCurrentMacroName(macroName);
+            }
+            nodeTree.render(context, writer);
+        }
+        catch (RuntimeException e)
+        {
+            throw e;
+        }
+        catch (Exception e)
+        {
+            String msg = "VelocimacroProxy.render() : exception VM = #" + macroName + "()";
+            log.error(msg, e);
+            throw new VelocityException(msg, e, rsvc.getLogContext().getStackTrace());
+        }
+        finally
+        {
+            // if MacroOverflowException was thrown then it already empties the stack
+            if (!inline && context.getCurrentMacroCallDepth() > 0)
+                context.popCurrentMacroName();
+
+            frame.popFrame();
+        }
+        return true;
+    }
+
+    /**
+     * Renders the macro with its arguments bound to the first slots of the rendering frame,
+     * as resolved by {@link SlotResolver}, so that nothing is written in the context. The
+     * slots values are restored afterwards, since they may be used by the caller.
+     *
+     * @param context Current rendering context, holding the rendering frame
+     * @param writer Writer for output
+     * @param node AST that calls the macro
+     * @param body the macro body, which the macro does not render
+     * @param inline whether the call is rendered in place, without being pushed on the macro call stack
+     * @return true if the directive rendered successfully.
+     * @throws IOException
+     * @since 2.6
+     */
+    protected boolean renderInSlots(InternalContextAdapterImpl context, Writer writer, Node node,
+                                    Renderable body, boolean inline)
+        throws IOException
+    {
+        int callArgNum = node.jjtGetNumChildren();
+        if (body != null)
+        {
+            callArgNum--;  // Remove the body AST from the arg count
+        }
+
+        // is everything copacetic?
+        checkArgumentCount(node, callArgNum);
+        checkDepth(context);
+
+        // arguments are evaluated in the caller scope, then swapped with the saved slots values
+        Object[] values = getArgValues(context, node, callArgNum);
+        for (int i = 0; i < numMacroArgs; i++)
+        {
+            Object saved = context.getSlot(i);
+            context.setSlot(i, values[i]);
+            values[i] = saved;
+        }
+        try
+        {
+            // render the velocity macro
+            if (!inline)
+            {
+                context.pushCurrentMacroName(macroName);
+            }
+            nodeTree.render(context, writer);
+        }
+        catch (RuntimeException e)
+        {
+            throw e;
+        }
+        catch (Exception e)
+        {
+            String msg = "VelocimacroProxy.render() : exception VM = #" + macroName + "()";
+            log.error(msg, e);
+            throw new VelocityException(msg, e, rsvc.getLogContext().getStackTrace());
+        }
+        finally
+        {
+            // if MacroOverflowException was thrown then it already empties the stack
+            if (!inline && context.getCurrentMacroCallDepth() > 0)
+                context.popCurrentMacroName();
+
+            for (int i = 0; i < numMacroArgs; i++)
+            {
+                context.setSlot(i, values[i]);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Renders the body of a macro accepted by {@link #isInlinable} in place of its call: the
+     * call is not pushed on the macro call stack, and the arguments are bound as for
+     * {@link #render(InternalContextAdapter, Writer, Node, Renderable)}, in slots, in a frame or in
+     * the context depending on <code>runtime.render.slots</code> and <code>velocimacro.arguments.frame</code>.
+     * Since the body cannot assign
+     * references nor call macros, the rendering is the same as with a regular call.
+     *
+     * @param context Current rendering context
+     * @param writer Writer for output
+     * @param node AST that calls the macro
+     * @return true if the directive rendered successfully.
+     * @throws IOException
+     * @since 2.6
+     */
+    public boolean renderInline(InternalContextAdapter context, Writer writer, Node node)
+        throws IOException
+    {
+        // the call is not pushed, but a macro at the max depth still cannot be called
+        return render(context, writer, node, null, true);
+    }
+
     /**
      * Check whether the number of arguments given matches the number defined.
      * @param node
@@ -392,15 +716,7 @@ else if (strictArguments)
             {
                 // We come to this point if we don't have a calling value, and
                 // there is no default value. Not enough arguments defined.
-                int minArgNum = -1; //start at -1 to skip the macro name
-                // Calculate minimum number of args required for macro
-                for (MacroArg marg : macroArgs)
-                {
-                    if (marg.defaultVal == null) minArgNum++;
-                }
-                throw new VelocityException("Need at least " + minArgNum + " argument for macro #"
-                    + macroArgs.get(0).name + " but only " + callArgNum + " where provided at "
-                    + StringUtils.formatFileString(node), null, rsvc.getLogContext().getStackTrace());
+                throw missingArguments(node, callArgNum);
             }
             else
             {
@@ -455,4 +771,62 @@ else if (strictArguments)
         // return the array of replaced and new values
         return values;
     }
+
+    /**
+     * Gets the macro argument values, in the order of the macro definition, without
+     * putting them in the context. The returned array has an additional trailing slot.
+     * @param context
+     * @param node
+     * @param callArgNum
+     * @return macro arguments values
+     * @since 2.6
+     */
+    protected Object[] getArgValues(InternalContextAdapter context, Node node, int callArgNum)
+    {
+        Object[] values = new Object[macroArgs.size()];
+        boolean warnedMissingArguments = false;
+        for (int i = 1; i < macroArgs.size(); i++)
+        {
+            MacroArg macroArg = macroArgs.get(i);
+            if (i - 1 < callArgNum)
+            {
+                values[i - 1] = node.jjtGetChild(i - 1).value(context);
+            }
+            else if (macroArg.defaultVal != null)
+            {
+                values[i - 1] = macroArg.defaultVal.value(context);
+            }
+            else if (strictArguments)
+            {
+                throw missingArguments(node, callArgNum);
+            }
+            else if (!warnedMissingArguments)
+            {
+                // Backward compatibility logging, Mainly for MacroForwardDefinedTestCase
+                log.debug("VM #{}: too few arguments to macro. Wanted {} got {}",
+                    macroArgs.get(0).name, macroArgs.size() - 1, callArgNum);
+                warnedMissingArguments = true;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Build the exception thrown for missing arguments in strict mode
+     * @param node
+     * @param callArgNum
+     * @return exception to throw
+     */
+    private VelocityException missingArguments(Node node, int callArgNum)
+    {
+        int minArgNum = -1; //start at -1 to skip the macro name
+        // Calculate minimum number of args required for macro
+        for (MacroArg marg : macroArgs)
+        {
+            if (marg.defaultVal == null) minArgNum++;
+        }
+        return new VelocityException("Need at least " + minArgNum + " argument for macro #"
+            + macroArgs.get(0).name + " but only " + callArgNum + " where provided at "
+            + StringUtils.formatFileString(node), null, rsvc.getLogContext().getStackTrace());
+    }
 }
@@ -0,0 +1,358 @@
+package org.apache.velocity.runtime.parser;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * <p>A {@link CharStream} over a template source which is already fully in memory, either as a
+ * <code>char[]</code> or as a {@link CharSequence}. Characters are read in place, without being
+ * copied into a sliding buffer, and backing up is a mere index decrement.</p>
+ *
+ * <p>Unlike {@link VelocityCharStream}, which records the line and column of every character as it
+ * is read, this stream only computes positions when they are asked for, from a table of line
+ * offsets built on first use. Columns are obtained by counting from the start of the line (tab
+ * stops are every eight columns, as for <code>VelocityCharStream</code>), resuming from the
+ * last computed position, since the lexer asks for positions in increasing order.</p>
+ *
+ * <p>As <code>VelocityCharStream</code> does, the stream returns an ASCII 'file separator' character
+ * just before reaching the end of input, so that the lexer can handle the end of file.</p>
+ *
+ * @since 2.6
+ */
+public final class ArrayCharStream implements CharStream
+{
+    private static final char END_OF_FILE = '\u001C';
+
+    private char[] chars;
+    private int offset;
+    private CharSequence text;
+    private int length;
+
+    private int bufpos;
+    private int tokenBegin;
+
+    /* line offsets, computed lazily */
+    private int[] lineStarts;
+    private int lineCount;
+    private boolean tabs;
+
+    /* last computed position */
+    private int located;
+    private int locatedLine;
+    private int locatedColumn;
+
+    /**
+     * Stream over a range of a character array.
+     * @param chars characters (not copied)
+     * @param offset index of the first character
+     * @param length number of characters
+     */
+    public ArrayCharStream(char[] chars, int offset, int length)
+    {
+        ReInit(chars, offset, length);
+    }
+
+    /**
+     * Stream over a character sequence.
+     * @param text characters (not copied)
+     */
+    public ArrayCharStream(CharSequence text)
+    {
+        ReInit(text);
+    }
+
+    /**
+     * Reinitializes the stream over a range of a character array.
+     * @param chars characters (not copied)
+     * @param offset index of the first character
+     * @param length number of characters
+     */
+    public void ReInit(char[] chars, int offset, int length)
+    {
+        if (offset < 0 || length < 0 || offset + length > chars.length)
+        {
+            throw new IndexOutOfBoundsException("invalid range [" + offset + ", " + (offset + length) + ") of " + chars.length + " chars");
+        }
+        this.chars = chars;
+        this.offset = offset;
+        this.text = null;
+        this.length = length;
+        reset();
+    }
+
+    /**
+     * Reinitializes the stream over a character sequence. A {@link CharBuffer} backed
+     * by an array is read through its array.
+     * @param text characters (not copied)
+     */
+    public void ReInit(CharSequence text)
+    {
+        if (text instanceof CharBuffer && ((CharBuffer)text).hasArray())
+        {
+            CharBuffer buffer = (CharBuffer)text;
+            ReInit(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            return;
+        }
+        this.chars = null;
+        this.offset = 0;
+        this.text = text;
+        this.length = text.length();
+        reset();
+    }
+
+    private void reset()
+    {
+        bufpos = -1;
+        tokenBegin = 0;
+        lineStarts = null;
+        lineCount = 0;
+        tabs = false;
+        located = -1;
+    }
+
+    private char charAt(int index)
+    {
+        if (index == length)
+        {
+            return END_OF_FILE;
+        }
+        return chars != null ? chars[offset + index] : text.charAt(index);
+    }
+
+    /**
+     * @see org.apache.velocity.runtime.parser.CharStream#readChar()
+     */
+    @Override
+    public char readChar() throws IOException
+    {
+        if (bufpos >= length)
+        {
+            if (tokenBegin == -1)
+            {
+                tokenBegin = bufpos;
+            }
+            throw new IOException();
+        }
+        return charAt(++bufpos);
+    }
+
+    /**
+     * @see org.apache.velocity.runtime.parser.CharStream#BeginToken()
+     */
+    @Override
+    public char BeginToken() throws IOException
+    {
+        tokenBegin = -1;
+        char c = readChar();
+        tokenBegin = bufpos;
+        return c;
+    }
+
+    /**
+     * @see org.apache.velocity.runtime.parser.CharStream#backup(int)
+     */
+    @Override
+    public void backup(int amount)
+    {
+        bufpos -= amount;
+    }
+
+    /**
+     * @see org.apache.velocity.runtime.parser.CharStream#getBeginLine()
+     */
+    @Override
+    public int getBeginLine()
+    {
+        locate(tokenBegin);
+        return locatedLine;
+    }
+
+    /**
+     * @see org.apache.velocity.runtime.parser.CharStream#getBeginColumn()
+     */
+    @Override
+    public int getBeginColumn()
+    {
+        locate(tokenBegin);
+        return locatedColumn;
+    }
+
+    /**
+     * @see org.apache.velocity.runtime.parser.CharStream#getEndLine()
+     */
+    @Override
+    public int getEndLine()
+    {
+        locate(bufpos);
+        return locatedLine;
+    }
+
+    /**
+     * @see org.apache.velocity.runtime.parser.CharStream#getEndColumn()
+     */
+    @Override
+    public int getEndColumn()
+    {
+        locate(bufpos);
+        return locatedColumn;
+    }
+
+    /**
+     * Builds the table of line start offsets. A line starts after a '\n', or after a '\r' which
+     * is not followed by a '\n'.
+     */
+    private void indexLines()
+    {
+        int[] starts = new int[Math.max(16, length / 32)];
+        int count = 0;
+        starts[count++] = 0;
+        for (int i = 0; i < length; ++i)
+        {
+            char c = charAt(i);
+            if (c == '\n' || c == '\r' && (i + 1 == length || charAt(i + 1) != '\n'))
+            {
+                if (count == starts.length)
+                {
+                    starts = Arrays.copyOf(starts, count * 2);
+                }
+                starts[count++] = i + 1;
+            }
+            else if (c == '\t')
+            {
+                tabs = true;
+            }
+        }
+        lineStarts = starts;
+        lineCount = count;
+    }
+
+    /**
+     * Computes the line and column of the character at the given index.
+     * @param index character index
+     */
+    private void locate(int index)
+    {
+        if (index < 0)
+        {
+            index = 0;
+        }
+        if (index == located)
+        {
+            return;
+        }
+        if (lineStarts == null)
+        {
+            indexLines();
+        }
+
+        int line;
+        if (located >= 0 && located < index
+            && (locatedLine == lineCount || index < lineStarts[locatedLine]))
+        {
+            /* same line as the last computed position, further on */
+            line = locatedLine;
+        }
+        else
+        {
+            line = Arrays.binarySearch(lineStarts, 0, lineCount, index);
+            if (line < 0)
+            {
+                line = -line - 2;
+            }
+            ++line;
+        }
+
+        int lineStart = lineStarts[line - 1];
+        int column;
+        if (!tabs)
+        {
+            column = index - lineStart + 1;
+        }
+        else
+        {
+            int from;
+            if (line == locatedLine && located >= lineStart && located < index)
+            {
+                from = located + 1;
+                column = locatedColumn;
+            }
+            else
+            {
+                from = lineStart;
+                column = 0;
+            }
+            for (int i = from; i <= index; ++i)
+            {
+                column++;
+                if (charAt(i) == '\t')
+                {
+                    column--;
+                    column += (8 - (column & 07));
+                }
+            }
+        }
+
+        located = index;
+        locatedLine = line;
+        locatedColumn = column;
+    }
+
+    /**
+     * @see org.apache.velocity.runtime.parser.CharStream#GetImage()
+     */
+    @Override
+    public String GetImage()
+    {
+        int end = Math.min(bufpos + 1, length);
+        String image = chars != null
+            ? new String(chars, offset + tokenBegin, end - tokenBegin)
+            : text.subSequence(tokenBegin, end).toString();
+        return bufpos < length ? image : image + END_OF_FILE;
+    }
+
+    /**
+     * @see org.apache.velocity.runtime.parser.CharStream#GetSuffix(int)
+     */
+    @Override
+    public char[] GetSuffix(int len)
+    {
+        char[] ret = new char[len];
+        int start = bufpos - len + 1;
+        for (int i = 0; i < len; ++i)
+        {
+            ret[i] = charAt(start + i);
+        }
+        return ret;
+    }
+
+    /**
+     * @see org.apache.velocity.runtime.parser.CharStream#Done()
+     */
+    @Override
+    public void Done()
+    {
+        chars = null;
+        text = null;
+        lineStarts = null;
+    }
+}
@@ -25,10 +25,7 @@
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 
-import java.util.ArrayDeque;
-import java.util.ArrayList;
-import java.util.Deque;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * <p>Track location in template files during rendering by populating the slf4j MDC tags <code>file</code>, <code>line</code> and <code>column</code>.</p>
@@ -37,6 +34,12 @@
  * <p>Since this feature can have a performance impact, it has to be enabled in <code>velocity.properties</code> using:</p>
  * <pre><code>runtime.log.track_location = true</code></pre>
  * <p>(typically in a development environment)</p>
+ * <p>When <code>runtime.log.track_location.lazy</code> is also true, the rendering stack is maintained without
+ * touching the MDC, and the MDC tags are only populated when a VTL stack trace is requested (that is, when an exception
+ * is thrown) or when {@link #updateMDC()} is called explicitly. They are then cleared as soon as the element they
+ * locate is popped.</p>
+ * <p>Each thread keeps its rendering stack across renderings, so that pushing and popping elements never allocates.
+ * Popped levels are cleared, so that the stack does not retain nodes once the rendering is over.</p>
  *
  * @author Claude Brisson
  * @version $Id:$
@@ -53,85 +56,171 @@
 
     private boolean trackLocation;
 
+    private boolean lazy;
+
     public LogContext(boolean trackLocation)
+    {
+        this(trackLocation, false);
+    }
+
+    /**
+     * @param trackLocation whether to track location
+     * @param lazy whether to populate the MDC only on demand
+     * @since 2.6
+     */
+    public LogContext(boolean trackLocation, boolean lazy)
     {
         this.trackLocation = trackLocation;
+        this.lazy = lazy;
     }
 
-    private static ThreadLocal<Deque<StackElement>> contextStack = new ThreadLocal<Deque<StackElement>>()
+    private static ThreadLocal<RenderStack> contextStack = ThreadLocal.withInitial(RenderStack::new);
+
+    /**
+     * Rendering stack, as parallel arrays to avoid allocating an element per level
+     */
+    private static class RenderStack
     {
-        @Override
-        public Deque<StackElement> initialValue()
+        private static final int INITIAL_CAPACITY = 16;
+
+        protected SimpleNode[] src = new SimpleNode[INITIAL_CAPACITY];
+        protected Info[] info = new Info[INITIAL_CAPACITY];
+        protected int[] count = new int[INITIAL_CAPACITY];
+        protected int size = 0;
+
+        /* depth of the stack when the MDC was populated in lazy mode, or 0 */
+        protected int mdcDepth = 0;
+
+        protected void push(SimpleNode node, Info nodeInfo)
         {
-            return new ArrayDeque<>();
+            if (size == src.length)
+            {
+                int capacity = size * 2;
+                src = Arrays.copyOf(src, capacity);
+                info = Arrays.copyOf(info, capacity);
+                count = Arrays.copyOf(count, capacity);
+            }
+            src[size] = node;
+            info[size] = nodeInfo;
+            count[size] = 1;
+            ++size;
         }
-    };
 
-    private static class StackElement
-    {
-        protected StackElement(SimpleNode src, Info info)
+        protected void pop()
         {
-            this.src = src;
-            this.info = info;
+            --size;
+            src[size] = null;
+            info[size] = null;
         }
-
-        protected SimpleNode src;
-        protected int count = 1;
-        protected Info info;
     }
 
+    /**
+     * Push a rendering element, located by the provided info.
+     * @param src rendered node
+     * @param info node location, or null to use the node location
+     */
     public void pushLogContext(SimpleNode src, Info info)
     {
         if (!trackLocation)
         {
             return;
         }
-        Deque<StackElement> stack = contextStack.get();
-        StackElement last = stack.peek();
-        if (last != null && last.src == src)
+        RenderStack stack = contextStack.get();
+        int top = stack.size - 1;
+        if (top >= 0 && stack.src[top] == src)
         {
-            ++last.count;
+            ++stack.count[top];
         }
         else
         {
-            stack.push(new StackElement(src, info));
-            setLogContext(info);
+            stack.push(src, info);
+            if (!lazy)
+            {
+                setLogContext(src, info);
+            }
         }
     }
 
+    /**
+     * Push a rendering element, located by its node.
+     * @param src rendered node
+     * @since 2.6
+     */
+    public void pushLogContext(SimpleNode src)
+    {
+        pushLogContext(src, null);
+    }
+
     public void popLogContext()
     {
         if (!trackLocation)
         {
             return;
         }
-        Deque<StackElement> stack = contextStack.get();
-        StackElement last = stack.peek();
-        if (last == null)
+        RenderStack stack = contextStack.get();
+        if (stack.size == 0)
         {
             logger.error("log context is already empty");
             return;
         }
-        if (--last.count == 0)
+        int top = stack.size - 1;
+        if (--stack.count[top] == 0)
         {
             stack.pop();
-            last = stack.peek();
-            if (last == null)
+            if (lazy)
+            {
+                /* the MDC is stale once the element it locates is popped */
+                if (stack.mdcDepth > stack.size)
+                {
+                    clearLogContext();
+                    stack.mdcDepth = 0;
+                }
+            }
+            else if (stack.size == 0)
             {
                 clearLogContext();
             }
             else
             {
-                setLogContext(last.info);
+                setLogContext(stack.src[top - 1], stack.info[top - 1]);
             }
         }
     }
 
-    private void setLogContext(Info info)
+    /**
+     * Populate the MDC tags with the current rendering location. This is only needed in lazy mode, before logging
+     * messages which should display the template location.
+     * @since 2.6
+     */
+    public void updateMDC()
     {
-        MDC.put(MDC_FILE, info.getTemplateName());
-        MDC.put(MDC_LINE, String.valueOf(info.getLine()));
-        MDC.put(MDC_COLUMN, String.valueOf(info.getColumn()));
+        if (!trackLocation)
+        {
+            return;
+        }
+        RenderStack stack = contextStack.get();
+        if (stack.size > 0)
+        {
+            int top = stack.size - 1;
+            setLogContext(stack.src[top], stack.info[top]);
+            stack.mdcDepth = stack.size;
+        }
+    }
+
+    private void setLogContext(SimpleNode src, Info info)
+    {
+        if (info == null)
+        {
+            MDC.put(MDC_FILE, src.getTemplateName());
+            MDC.put(MDC_LINE, String.valueOf(src.getLine()));
+            MDC.put(MDC_COLUMN, String.valueOf(src.getColumn()));
+        }
+        else
+        {
+            MDC.put(MDC_FILE, info.getTemplateName());
+            MDC.put(MDC_LINE, String.valueOf(info.getLine()));
+            MDC.put(MDC_COLUMN, String.valueOf(info.getColumn()));
+        }
     }
 
     private void clearLogContext()
@@ -149,17 +238,25 @@ public String[] getStackTrace()
         {
             return null;
         }
-        Deque<StackElement> stack = contextStack.get();
-        List<String> levels = new ArrayList<>();
-        for (StackElement level : stack)
+        RenderStack stack = contextStack.get();
+        if (stack.size == 0)
+        {
+            return null;
+        }
+        if (lazy)
+        {
+            updateMDC();
+        }
+        String[] levels = new String[stack.size];
+        for (int i = 0; i < stack.size; ++i)
         {
-            String line = String.format(STACKTRACE_LINE,
-                level.src.literal(),
-                level.info.getTemplateName(),
-                level.info.getLine(),
-                level.info.getColumn());
-            levels.add(line);
+            int level = stack.size - 1 - i;
+            SimpleNode src = stack.src[level];
+            Info info = stack.info[level];
+            levels[i] = info == null
+                ? String.format(STACKTRACE_LINE, src.literal(), src.getTemplateName(), src.getLine(), src.getColumn())
+                : String.format(STACKTRACE_LINE, src.literal(), info.getTemplateName(), info.getLine(), info.getColumn());
         }
-        return levels.size() > 0 ? levels.toArray(new String[levels.size()]) : null;
+        return levels;
     }
 }
@@ -25,11 +25,25 @@
 import org.apache.velocity.runtime.parser.node.SimpleNode;
 
 import java.io.Reader;
+import java.io.StringReader;
 
 public interface Parser
 {
     RuntimeServices getRuntimeServices();
     SimpleNode parse(Reader reader, Template template) throws ParseException;
+
+    /**
+     * Parses a template source which is already in memory.
+     * @param source template source
+     * @param template template being parsed
+     * @return root node
+     * @throws ParseException if the source is invalid
+     * @since 2.6
+     */
+    default SimpleNode parse(CharSequence source, Template template) throws ParseException
+    {
+        return parse(new StringReader(source.toString()), template);
+    }
     void resetCurrentTemplate();
     Template getCurrentTemplate();
     Token getToken(int index);
@@ -108,6 +108,16 @@ public void setMorePostfix(String morePosffix)
         this.morePostfix = morePosffix;
     }
 
+    /**
+     * get '#' and '$' prefix characters eaten by javacc MORE mode
+     * @return more postfix
+     * @since 2.6
+     */
+    public String getMorePostfix()
+    {
+        return morePostfix;
+    }
+
     /**
      * set indentation postfix
      * @param postfix
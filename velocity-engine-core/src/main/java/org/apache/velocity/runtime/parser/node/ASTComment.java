@@ -95,6 +95,17 @@ public Object init(InternalContextAdapter context, Object data)
         return data;
     }
 
+    /**
+     * Get the characters rendered in place of the comment, that is
+     * the prefix eaten by the comment token.
+     * @return rendered characters
+     * @since 2.6
+     */
+    public char[] getCarr()
+    {
+        return carr;
+    }
+
     /**
      * @see org.apache.velocity.runtime.parser.node.SimpleNode#render(org.apache.velocity.context.InternalContextAdapter, java.io.Writer)
      */
@@ -33,7 +33,6 @@
 import org.apache.velocity.runtime.parser.Parser;
 import org.apache.velocity.runtime.parser.StandardParserConstants;
 import org.apache.velocity.runtime.parser.Token;
-import org.apache.velocity.util.introspection.Info;
 
 import java.io.IOException;
 import java.io.Writer;
@@ -300,7 +299,7 @@ public boolean render(InternalContextAdapter context, Writer writer)
 
             try
             {
-                rsvc.getLogContext().pushLogContext(this, new Info(getTemplateName(), getLine(), getColumn()));
+                rsvc.getLogContext().pushLogContext(this);
                 directive.render(context, writer, this);
             }
             finally
@@ -344,6 +343,16 @@ public String getDirectiveName()
         return directiveName;
     }
 
+    /**
+     *  Gets the directive instance, once this node is initialized.
+     *  @return The directive, or null if this node is not initialized or does not hold a directive.
+     *  @since 2.6
+     */
+    public Directive getDirective()
+    {
+        return directive;
+    }
+
     @Override
     public String toString()
     {
@@ -26,6 +26,7 @@
 import org.apache.velocity.exception.VelocityException;
 import org.apache.velocity.runtime.RuntimeConstants;
 import org.apache.velocity.runtime.parser.Parser;
+import org.apache.velocity.util.introspection.CallSiteCache;
 import org.apache.velocity.util.introspection.Info;
 import org.apache.velocity.util.introspection.IntrospectionCacheData;
 import org.apache.velocity.util.introspection.VelPropertyGet;
@@ -62,6 +63,11 @@ public class ASTIdentifier extends SimpleNode
      */
     protected boolean strictRef = false;
 
+    /**
+     * Getters cache shared by all merges
+     */
+    private final CallSiteCache<VelPropertyGet> getterCache = new CallSiteCache<>();
+
     /**
      * @param id
      */
@@ -134,59 +140,70 @@ public Object execute(Object o, InternalContextAdapter context)
         {
             rsvc.getLogContext().pushLogContext(this, uberInfo);
 
-            VelPropertyGet vg = null;
-
-            try
-            {
-                /*
-                 *  first, see if we have this information cached.
-                 */
-
-                IntrospectionCacheData icd = context.icacheGet(this);
-                Class<?> clazz = o instanceof Class<?> ? (Class<?>)o : o.getClass();
+            boolean classObject = o instanceof Class<?>;
+            Class<?> clazz = classObject ? (Class<?>)o : o.getClass();
 
-                /*
-                 * if we have the cache data and the class of the object we are
-                 * invoked with is the same as that in the cache, then we must
-                 * be all right.  The last 'variable' is the method name, and
-                 * that is fixed in the template :)
-                 */
+            /*
+             *  first, check the call site cache, shared among merges
+             */
+            long generation = rsvc.getUberspect().getCacheGeneration();
+            VelPropertyGet cached = getterCache.get(generation, clazz, classObject);
+            VelPropertyGet vg = cached;
 
-                if ( icd != null && (icd.contextData == clazz) )
-                {
-                    vg = (VelPropertyGet) icd.thingy;
-                }
-                else
+            if (vg == null)
+            {
+                try
                 {
                     /*
-                     *  otherwise, do the introspection, and cache it.  Use the
-                     *  uberspector
+                     *  then, see if we have this information cached for this merge.
                      */
 
-                    vg = rsvc.getUberspect().getPropertyGet(o, identifier, uberInfo);
+                    IntrospectionCacheData icd = context.icacheGet(this);
 
-                    if (vg != null && vg.isCacheable())
+                    /*
+                     * if we have the cache data and the class of the object we are
+                     * invoked with is the same as that in the cache, then we must
+                     * be all right.  The last 'variable' is the method name, and
+                     * that is fixed in the template :)
+                     */
+
+                    if ( icd != null && (icd.contextData == clazz) )
+                    {
+                        vg = (VelPropertyGet) icd.thingy;
+                    }
+                    else
                     {
-                        icd = new IntrospectionCacheData();
-                        icd.contextData = clazz;
-                        icd.thingy = vg;
-                        context.icachePut(this,icd);
+                        /*
+                         *  otherwise, do the introspection, and cache it.  Use the
+                         *  uberspector
+                         */
+
+                        vg = rsvc.getUberspect().getPropertyGet(o, identifier, uberInfo);
+
+                        if (vg != null && vg.isCacheable())
+                        {
+                            icd = new IntrospectionCacheData();
+                            icd.contextData = clazz;
+                            icd.thingy = vg;
+                            context.icachePut(this,icd);
+                            getterCache.put(generation, clazz, classObject, vg);
+                        }
                     }
                 }
-            }
 
-            /*
-             * pass through application level runtime exceptions
-             */
-            catch( RuntimeException e )
-            {
-                throw e;
-            }
-            catch(Exception e)
-            {
-                String msg = "ASTIdentifier.execute() : identifier = "+identifier;
-                log.error(msg, e);
-                throw new VelocityException(msg, e, rsvc.getLogContext().getStackTrace());
+                /*
+                 * pass through application level runtime exceptions
+                 */
+                catch( RuntimeException e )
+                {
+                    throw e;
+                }
+                catch(Exception e)
+                {
+                    String msg = "ASTIdentifier.execute() : identifier = "+identifier;
+                    log.error(msg, e);
+                    throw new VelocityException(msg, e, rsvc.getLogContext().getStackTrace());
+                }
             }
 
             /*
@@ -214,7 +231,19 @@ public Object execute(Object o, InternalContextAdapter context)
              */
             try
             {
-                return vg.invoke(o);
+                Object result = vg.invoke(o);
+                if (result == null && cached != null && context.icacheGet(this) == null)
+                {
+                    /*
+                     * ASTReference relies on the icache entry under 'this' key
+                     * to distinguish a valid null result from a non-existent getter.
+                     */
+                    IntrospectionCacheData icd = new IntrospectionCacheData();
+                    icd.contextData = clazz;
+                    icd.thingy = vg;
+                    context.icachePut(this, icd);
+                }
+                return result;
             }
             catch(InvocationTargetException ite)
             {
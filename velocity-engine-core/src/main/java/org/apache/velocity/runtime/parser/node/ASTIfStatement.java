@@ -146,6 +146,16 @@ public String getPostfix()
         return postfix;
     }
 
+    /**
+     * get '#' and '$' prefix characters eaten by javacc MORE mode
+     * @return more prefix
+     * @since 2.6
+     */
+    public String getMorePrefix()
+    {
+        return morePrefix;
+    }
+
     /**
      * @see org.apache.velocity.runtime.parser.node.SimpleNode#render(org.apache.velocity.context.InternalContextAdapter, java.io.Writer)
      */
@@ -29,6 +29,7 @@
 import org.apache.velocity.runtime.directive.StopCommand;
 import org.apache.velocity.runtime.parser.Parser;
 import org.apache.velocity.util.ClassUtils;
+import org.apache.velocity.util.introspection.CallSiteCache;
 import org.apache.velocity.util.introspection.Info;
 import org.apache.velocity.util.introspection.IntrospectionCacheData;
 import org.apache.velocity.util.introspection.VelMethod;
@@ -58,6 +59,11 @@ public class ASTMethod extends SimpleNode
      */
     private static final Class<?>[] EMPTY_CLASS_ARRAY = new Class<?>[0];
 
+    /**
+     * An empty immutable <code>Object</code> array.
+     */
+    private static final Object[] EMPTY_OBJECT_ARRAY = new Object[0];
+
     private String methodName = "";
     private int paramCount = 0;
     private boolean logOnInvalid = true;
@@ -69,6 +75,11 @@ public class ASTMethod extends SimpleNode
      */
     protected boolean strictRef = false;
 
+    /**
+     * Methods cache shared by all merges
+     */
+    private final CallSiteCache<VelMethod> methodCache = new CallSiteCache<>();
+
     /**
      * @param id
      */
@@ -150,33 +161,92 @@ public Object execute(Object o, InternalContextAdapter context)
             /*
              *  new strategy (strategery!) for introspection. Since we want
              *  to be thread- as well as context-safe, we *must* do it now,
-             *  at execution time.  There can be no in-node caching,
-             *  but if we are careful, we can do it in the context.
+             *  at execution time.  The in-node cache is keyed by the
+             *  receiver and arguments classes, and falls back to the
+             *  context cache.
              */
-            Object [] params = new Object[paramCount];
-
-              /*
-               * sadly, we do need recalc the values of the args, as this can
-               * change from visit to visit
-               */
-            final Class<?>[] paramClasses =
-                paramCount > 0 ? new Class[paramCount] : EMPTY_CLASS_ARRAY;
-
-            for (int j = 0; j < paramCount; j++)
+            /*
+             * sadly, we do need recalc the values of the args, as this can
+             * change from visit to visit. Calls with up to two arguments
+             * keep them in locals: on call site cache hits, they are
+             * looked up and invoked without allocating the arguments
+             * array nor the arguments classes array, and calls without
+             * arguments share an empty arguments array.
+             */
+            Object [] params = null;
+            Class<?>[] paramClasses = null;
+            Object arg0 = null, arg1 = null;
+            boolean classObject = o instanceof Class;
+            Class<?> clazz = o == null ? null : classObject ? (Class<?>)o : o.getClass();
+            VelMethod method = null;
+            long generation = rsvc.getUberspect().getCacheGeneration();
+
+            switch (paramCount)
             {
-                params[j] = jjtGetChild(j + 1).value(context);
-                if (params[j] != null)
+                case 0:
+                    params = EMPTY_OBJECT_ARRAY;
+                    paramClasses = EMPTY_CLASS_ARRAY;
+                    if (clazz != null)
+                    {
+                        method = methodCache.get(generation, clazz, classObject);
+                    }
+                    break;
+                case 1:
+                    arg0 = jjtGetChild(1).value(context);
+                    if (clazz != null)
+                    {
+                        method = methodCache.get(generation, clazz, classObject, classOf(arg0));
+                    }
+                    break;
+                case 2:
+                    arg0 = jjtGetChild(1).value(context);
+                    arg1 = jjtGetChild(2).value(context);
+                    if (clazz != null)
+                    {
+                        method = methodCache.get(generation, clazz, classObject, classOf(arg0), classOf(arg1));
+                    }
+                    break;
+                default:
                 {
-                    paramClasses[j] = params[j].getClass();
+                    params = new Object[paramCount];
+                    for (int j = 0; j < paramCount; j++)
+                    {
+                        params[j] = jjtGetChild(j + 1).value(context);
+                    }
+                    paramClasses = getParamClasses(params);
+                    if (clazz != null)
+                    {
+                        method = methodCache.get(generation, clazz, classObject, paramClasses);
+                    }
+                    break;
                 }
             }
 
-            VelMethod method = ClassUtils.getMethod(methodName, params, paramClasses,
-                o, context, this, strictRef);
+            if (method == null)
+            {
+                if (params == null)
+                {
+                    params = paramCount == 1 ? new Object[] { arg0 } : new Object[] { arg0, arg1 };
+                }
+                if (paramClasses == null)
+                {
+                    paramClasses = getParamClasses(params);
+                }
+                method = ClassUtils.getMethod(methodName, params, paramClasses,
+                    o, context, this, strictRef, uberInfo);
+                if (method != null && method.isCacheable())
+                {
+                    methodCache.put(generation, clazz, classObject, paramClasses, method);
+                }
+            }
 
             // warn if method wasn't found (if strictRef is true, then ClassUtils did throw an exception)
             if (o != null && method == null && logOnInvalid)
             {
+                if (paramClasses == null)
+                {
+                    paramClasses = getParamClasses(params);
+                }
                 StringBuilder plist = new StringBuilder();
                 for (int i = 0; i < params.length; i++)
                 {
@@ -218,7 +288,19 @@ else if (prevICD == null)
                  *  all is well.
                  */
 
-                Object obj = method.invoke(o, params);
+                Object obj;
+                switch (paramCount)
+                {
+                    case 1:
+                        obj = method.invoke(o, arg0);
+                        break;
+                    case 2:
+                        obj = method.invoke(o, arg0, arg1);
+                        break;
+                    default:
+                        obj = method.invoke(o, params);
+                        break;
+                }
 
                 if (obj == null)
                 {
@@ -262,6 +344,25 @@ else if (prevICD == null)
         }
     }
 
+    private static Class<?> classOf(Object param)
+    {
+        return param == null ? null : param.getClass();
+    }
+
+    private static Class<?>[] getParamClasses(Object[] params)
+    {
+        if (params.length == 0)
+        {
+            return EMPTY_CLASS_ARRAY;
+        }
+        Class<?>[] paramClasses = new Class<?>[params.length];
+        for (int j = 0; j < params.length; j++)
+        {
+            paramClasses[j] = classOf(params[j]);
+        }
+        return paramClasses;
+    }
+
     private Object handleInvocationException(Object o, InternalContextAdapter context, Throwable t)
     {
         /*
@@ -20,7 +20,10 @@
  */
 
 import org.apache.velocity.app.event.EventHandlerUtil;
+import org.apache.velocity.context.AbstractContext;
+import org.apache.velocity.context.Context;
 import org.apache.velocity.context.InternalContextAdapter;
+import org.apache.velocity.context.InternalContextAdapterImpl;
 import org.apache.velocity.exception.MethodInvocationException;
 import org.apache.velocity.exception.TemplateInitException;
 import org.apache.velocity.exception.VelocityException;
@@ -73,6 +76,12 @@ public class ASTReference extends SimpleNode
     private boolean lookupAlternateLiteral = false;
     private String escPrefix = "";
     private String morePrefix = "";
+
+    /**
+     * Slot of the rendering frame holding the root value, or -1 if the root is looked up in the context.
+     * A root bound to a slot is neither read from nor written to the context.
+     */
+    private int slot = -1;
     private String identifier = "";
 
     private boolean checkEmpty;
@@ -178,6 +187,24 @@ public void setExtraDollar(boolean extraDollar)
         this.extraDollar = extraDollar;
     }
 
+    /**
+     * @return whether this reference uses the formal curly-brace notation
+     * @since 2.6
+     */
+    public boolean isFormal()
+    {
+        return formal;
+    }
+
+    /**
+     * @return whether this reference carries the deprecated extra '$' after '{'
+     * @since 2.6
+     */
+    public boolean hasExtraDollar()
+    {
+        return extraDollar;
+    }
+
     /**
      * @see org.apache.velocity.runtime.parser.node.SimpleNode#init(org.apache.velocity.context.InternalContextAdapter, java.lang.Object)
      */
@@ -332,6 +359,75 @@ public String getRootString()
         return rootString;
      }
 
+    /**
+     * Bind the root of this reference to a slot of the rendering frame.
+     * @param slot slot index, or -1 to look the root up in the context
+     * @see org.apache.velocity.runtime.visitor.SlotResolver
+     * @since 2.6
+     */
+    public void setSlot(int slot)
+    {
+        this.slot = slot;
+    }
+
+    /**
+     * @return slot of the rendering frame holding the root value, or -1
+     * @since 2.6
+     */
+    public int getSlot()
+    {
+        return slot;
+    }
+
+    /**
+     * Whether the root of this reference is defined, even with a null value: bound
+     * to a slot of the rendering frame, or present in the context.
+     * @param context
+     * @return true if the root is defined
+     */
+    private boolean isRootDefined(InternalContextAdapter context)
+    {
+        return slot >= 0 && context instanceof InternalContextAdapterImpl || context.containsKey(rootString);
+    }
+
+    /**
+     * Whether compiled templates can resolve and render this reference by themselves, with
+     * {@link #getRootVariableValue}, the children <code>execute()</code> methods, {@link #resolveNull}
+     * and {@link #renderValue}: the reference must be neither escaped nor a runt, must not have an
+     * alternate value, and strict mode must be off.
+     * @return whether the reference can be compiled
+     * @see NodeCompiler
+     * @since 2.6
+     */
+    boolean isCompilable()
+    {
+        return referenceType != RUNT && !escaped && !strictRef && astAlternateValue == null;
+    }
+
+    /**
+     * Builds the node rendering this reference for a constant value, as {@link #render} does when
+     * no reference insertion event handler is configured, so that the value is only converted to a
+     * string once.
+     * @param value constant value of this reference
+     * @param truth boolean evaluation of this reference
+     * @return constant node, or null if the rendering depends on more than the value
+     * @see org.apache.velocity.runtime.visitor.PartialEvaluator
+     * @since 2.6
+     */
+    public ConstantNode renderConstant(Object value, boolean truth)
+    {
+        if (referenceType == RUNT || escaped || value == null || value instanceof Renderable)
+        {
+            return null;
+        }
+        String toString = DuckType.asString(value);
+        if (toString == null)
+        {
+            return null;
+        }
+        return new ConstantNode(this, value, truth, escPrefix + morePrefix, toString);
+    }
+
     /**
      *   gets an Object that 'is' the value of the reference
      *
@@ -368,25 +464,7 @@ public Object execute(Object o, InternalContextAdapter context)
 
             if (result == null && !strictRef)
             {
-                /*
-                 * do not trigger an invalid reference if the reference is present, but with a null value
-                 * don't either for a quiet reference or inside an #if/#elseif evaluation context
-                 */
-                if ((referenceType != QUIET_REFERENCE || warnInvalidQuietReferences) &&
-                    (numChildren > 0 ||
-                        (!context.containsKey(rootString) || warnInvalidNullReferences) &&
-                            (!onlyTestingReference || warnInvalidTestedReferences)))
-                {
-                    result = EventHandlerUtil.invalidGetMethod(rsvc, context,
-                            rsvc.getParserConfiguration().getDollarChar() + rootString, null, null, uberInfo);
-                }
-
-                if (astAlternateValue != null && (!DuckType.asBoolean(result, true)))
-                {
-                    result = astAlternateValue.value(context);
-                }
-
-                return result;
+                return resolveNull(context, null, -1, onlyTestingReference);
             }
 
             /*
@@ -441,7 +519,7 @@ public Object execute(Object o, InternalContextAdapter context)
                          * don't either for a quiet reference,
                          * or inside an #if/#elseif evaluation context when there's no child
                          */
-                        if ((!context.containsKey(rootString) || warnInvalidNullReferences) &&
+                        if ((!isRootDefined(context) || warnInvalidNullReferences) &&
                             (referenceType != QUIET_REFERENCE || warnInvalidQuietReferences) &&
                             (!onlyTestingReference || warnInvalidTestedReferences || numChildren > 0))
                         {
@@ -451,42 +529,7 @@ public Object execute(Object o, InternalContextAdapter context)
                     }
                     else
                     {
-                        Node child = jjtGetChild(failedChild);
-                        // do not call bad reference handler if the getter is present
-                        // (it means the getter has been called and returned null)
-                        // do not either for a quiet reference or if the *last* child failed while testing the reference
-                        Object getter = context.icacheGet(child);
-                        if ((getter == null || warnInvalidNullReferences) &&
-                            (referenceType != QUIET_REFERENCE || warnInvalidQuietReferences) &&
-                            (!onlyTestingReference || warnInvalidTestedReferences || failedChild < numChildren - 1))
-                        {
-                            StringBuilder name = new StringBuilder(String.valueOf(rsvc.getParserConfiguration().getDollarChar())).append(rootString);
-                            for (int i = 0; i <= failedChild; i++)
-                            {
-                                Node node = jjtGetChild(i);
-                                if (node instanceof ASTMethod)
-                                {
-                                    name.append(".").append(((ASTMethod) node).getMethodName()).append("()");
-                                }
-                                else
-                                {
-                                    name.append(".").append(node.getFirstTokenImage());
-                                }
-                            }
-
-                            if (child instanceof ASTMethod)
-                            {
-                                String methodName = ((ASTMethod) jjtGetChild(failedChild)).getMethodName();
-                                result = EventHandlerUtil.invalidMethod(rsvc, context,
-                                    name.toString(), previousResult, methodName, uberInfo);
-                            }
-                            else
-                            {
-                                String property = jjtGetChild(failedChild).getFirstTokenImage();
-                                result = EventHandlerUtil.invalidGetMethod(rsvc, context,
-                                    name.toString(), previousResult, property, uberInfo);
-                            }
-                        }
+                        return resolveNull(context, previousResult, failedChild, onlyTestingReference);
                     }
                 }
 
@@ -510,6 +553,88 @@ public Object execute(Object o, InternalContextAdapter context)
         }
     }
 
+    /**
+     * Resolves the value of this reference when its root value, or the value returned by one of its
+     * children, is null: fires the invalid reference events as needed, then applies the alternate value.
+     * This is the non strict null handling of {@link #execute(Object, InternalContextAdapter)}, made
+     * available to compiled templates, which walk the reference children themselves.
+     *
+     * @param context context used to generate value
+     * @param previousResult value the failed child was applied to, unused if the root value is null
+     * @param failedChild index of the child which returned null, or -1 if the root value is null
+     * @param onlyTestingReference whether the reference is evaluated inside an #if/#elseif condition
+     * @return The execution result.
+     * @throws MethodInvocationException
+     * @since 2.6
+     */
+    public Object resolveNull(InternalContextAdapter context, Object previousResult, int failedChild,
+                              boolean onlyTestingReference)
+        throws MethodInvocationException
+    {
+        Object result = null;
+        if (failedChild == -1)
+        {
+            /*
+             * do not trigger an invalid reference if the reference is present, but with a null value
+             * don't either for a quiet reference or inside an #if/#elseif evaluation context
+             */
+            if ((referenceType != QUIET_REFERENCE || warnInvalidQuietReferences) &&
+                (numChildren > 0 ||
+                    (!isRootDefined(context) || warnInvalidNullReferences) &&
+                        (!onlyTestingReference || warnInvalidTestedReferences)))
+            {
+                result = EventHandlerUtil.invalidGetMethod(rsvc, context,
+                        rsvc.getParserConfiguration().getDollarChar() + rootString, null, null, uberInfo);
+            }
+        }
+        else
+        {
+            Node child = jjtGetChild(failedChild);
+            // do not call bad reference handler if the getter is present
+            // (it means the getter has been called and returned null)
+            // do not either for a quiet reference or if the *last* child failed while testing the reference
+            Object getter = context.icacheGet(child);
+            if ((getter == null || warnInvalidNullReferences) &&
+                (referenceType != QUIET_REFERENCE || warnInvalidQuietReferences) &&
+                (!onlyTestingReference || warnInvalidTestedReferences || failedChild < numChildren - 1))
+            {
+                StringBuilder name = new StringBuilder(String.valueOf(rsvc.getParserConfiguration().getDollarChar())).append(rootString);
+                for (int i = 0; i <= failedChild; i++)
+                {
+                    Node node = jjtGetChild(i);
+                    if (node instanceof ASTMethod)
+                    {
+                        name.append(".").append(((ASTMethod) node).getMethodName()).append("()");
+                    }
+                    else
+                    {
+                        name.append(".").append(node.getFirstTokenImage());
+                    }
+                }
+
+                if (child instanceof ASTMethod)
+                {
+                    String methodName = ((ASTMethod) child).getMethodName();
+                    result = EventHandlerUtil.invalidMethod(rsvc, context,
+                        name.toString(), previousResult, methodName, uberInfo);
+                }
+                else
+                {
+                    String property = child.getFirstTokenImage();
+                    result = EventHandlerUtil.invalidGetMethod(rsvc, context,
+                        name.toString(), previousResult, property, uberInfo);
+                }
+            }
+        }
+
+        if (astAlternateValue != null && (!DuckType.asBoolean(result, true)))
+        {
+            result = astAlternateValue.value(context);
+        }
+
+        return result;
+    }
+
     /**
      *  gets the value of the reference and outputs it to the
      *  writer.
@@ -550,8 +675,6 @@ public boolean render(InternalContextAdapter context, Writer writer) throws IOEx
               value = execute(null, context);
             }
 
-            String localNullString = null;
-
             /*
              * if this reference is escaped (\$foo) then we want to do one of two things: 1) if this is
              * a reference in the context, then we want to print $foo 2) if not, then \$foo (its
@@ -560,7 +683,7 @@ public boolean render(InternalContextAdapter context, Writer writer) throws IOEx
 
             if (escaped)
             {
-                localNullString = getNullString(context);
+                String localNullString = getNullString(context);
 
                 if (value == null)
                 {
@@ -576,120 +699,140 @@ public boolean render(InternalContextAdapter context, Writer writer) throws IOEx
                 return true;
             }
 
-            /*
-             * the normal processing
-             *
-             * if we have an event cartridge, get a new value object
-             */
-
-            value = EventHandlerUtil.referenceInsert(rsvc, context, literal, value);
+            return renderValue(context, writer, value);
+        }
+        finally
+        {
+            rsvc.getLogContext().popLogContext();
+        }
+    }
 
-            String toString = null;
-            if (value != null)
-            {
-                if (value instanceof Renderable)
-                {
-                    Renderable renderable = (Renderable)value;
-                    try
-                    {
-                        writer.write(escPrefix);
-                        writer.write(morePrefix);
-                        if (renderable.render(context,writer))
-                        {
-                          return true;
-                        }
-                    }
-                    catch(RuntimeException e)
-                    {
-                        // We commonly get here when an error occurs within a block reference.
-                        // We want to log where the reference is at so that a developer can easily
-                        // know where the offending call is located.  This can be seen
-                        // as another element of the error stack we report to log.
-                        log.error("Exception rendering "
-                            + ((renderable instanceof Reference)? "block ":"Renderable ")
-                            + rootString + " at " + StringUtils.formatFileString(this));
-                        throw e;
-                    }
-                }
+    /**
+     * Outputs the value of this (non escaped) reference to the writer, as {@link #render(InternalContextAdapter, Writer)}
+     * does once the value is known: the value goes through the reference insertion event handlers,
+     * then is rendered or written, or the null string is written. Made available to compiled templates,
+     * which compute the value themselves.
+     *
+     * @param context context of data to use
+     * @param writer writer to render to
+     * @param value reference value
+     * @return True if rendering was successful.
+     * @throws IOException
+     * @throws MethodInvocationException
+     * @since 2.6
+     */
+    public boolean renderValue(InternalContextAdapter context, Writer writer, Object value)
+        throws IOException, MethodInvocationException
+    {
+        /*
+         * the normal processing
+         *
+         * if we have an event cartridge, get a new value object
+         */
 
-                toString = DuckType.asString(value);
-            }
+        value = EventHandlerUtil.referenceInsert(rsvc, context, literal, value);
 
-            if (value == null || toString == null)
+        String toString = null;
+        if (value != null)
+        {
+            if (value instanceof Renderable)
             {
-                if (strictRef)
+                Renderable renderable = (Renderable)value;
+                try
                 {
-                    if (referenceType != QUIET_REFERENCE)
+                    writer.write(escPrefix);
+                    writer.write(morePrefix);
+                    if (renderable.render(context,writer))
                     {
-                      log.error("Prepend the reference with '$!' e.g., $!{}" +
-                                " if you want Velocity to ignore the reference when it evaluates to null",
-                                literal().substring(1));
-                      if (value == null)
-                      {
-                        throw new VelocityException("Reference " + literal()
-                            + " evaluated to null when attempting to render at "
-                            + StringUtils.formatFileString(this)
-                        , null, rsvc.getLogContext().getStackTrace());
-                      }
-                      else  // toString == null
-                      {
-                        // This will probably rarely happen, but when it does we want to
-                        // inform the user that toString == null so they don't pull there
-                        // hair out wondering why Velocity thinks the value is null.
-                        throw new VelocityException("Reference " + literal()
-                            + " evaluated to object " + value.getClass().getName()
-                            + " whose toString() method returned null at "
-                            + StringUtils.formatFileString(this)
-                            , null, rsvc.getLogContext().getStackTrace());
-                      }
+                      return true;
                     }
-                    return true;
                 }
-
-                /*
-                 * write prefix twice, because it's schmoo, so the \ don't escape each
-                 * other...
-                 */
-                localNullString = getNullString(context);
-                if (!strictEscape)
+                catch(RuntimeException e)
                 {
-                    // If in strict escape mode then we only print escape once.
-                    // Yea, I know.. brittle stuff
-                    writer.write(escPrefix);
+                    // We commonly get here when an error occurs within a block reference.
+                    // We want to log where the reference is at so that a developer can easily
+                    // know where the offending call is located.  This can be seen
+                    // as another element of the error stack we report to log.
+                    log.error("Exception rendering "
+                        + ((renderable instanceof Reference)? "block ":"Renderable ")
+                        + rootString + " at " + StringUtils.formatFileString(this));
+                    throw e;
                 }
-                writer.write(escPrefix);
-                writer.write(morePrefix);
-                writer.write(localNullString);
+            }
+
+            toString = DuckType.asString(value);
+        }
 
-                if (logOnNull && referenceType != QUIET_REFERENCE)
+        if (value == null || toString == null)
+        {
+            if (strictRef)
+            {
+                if (referenceType != QUIET_REFERENCE)
                 {
-                    log.debug("Null reference [template '{}', line {}, column {}]: {} cannot be resolved.",
-                              getTemplateName(), this.getLine(), this.getColumn(), this.literal());
+                  log.error("Prepend the reference with '$!' e.g., $!{}" +
+                            " if you want Velocity to ignore the reference when it evaluates to null",
+                            literal().substring(1));
+                  if (value == null)
+                  {
+                    throw new VelocityException("Reference " + literal()
+                        + " evaluated to null when attempting to render at "
+                        + StringUtils.formatFileString(this)
+                    , null, rsvc.getLogContext().getStackTrace());
+                  }
+                  else  // toString == null
+                  {
+                    // This will probably rarely happen, but when it does we want to
+                    // inform the user that toString == null so they don't pull there
+                    // hair out wondering why Velocity thinks the value is null.
+                    throw new VelocityException("Reference " + literal()
+                        + " evaluated to object " + value.getClass().getName()
+                        + " whose toString() method returned null at "
+                        + StringUtils.formatFileString(this)
+                        , null, rsvc.getLogContext().getStackTrace());
+                  }
                 }
+                return true;
             }
-            else
+
+            /*
+             * write prefix twice, because it's schmoo, so the \ don't escape each
+             * other...
+             */
+            String localNullString = getNullString(context);
+            if (!strictEscape)
             {
-                /*
-                 * non-null processing
-                 */
+                // If in strict escape mode then we only print escape once.
+                // Yea, I know.. brittle stuff
                 writer.write(escPrefix);
-                writer.write(morePrefix);
-                if (writer instanceof Filter)
-                {
-                    ((Filter)writer).writeReference(toString);
-                }
-                else
-                {
-                    writer.write(toString);
-                }
+            }
+            writer.write(escPrefix);
+            writer.write(morePrefix);
+            writer.write(localNullString);
 
+            if (logOnNull && referenceType != QUIET_REFERENCE)
+            {
+                log.debug("Null reference [template '{}', line {}, column {}]: {} cannot be resolved.",
+                          getTemplateName(), this.getLine(), this.getColumn(), this.literal());
             }
-            return true;
         }
-        finally
+        else
         {
-            rsvc.getLogContext().popLogContext();
+            /*
+             * non-null processing
+             */
+            writer.write(escPrefix);
+            writer.write(morePrefix);
+            if (writer instanceof Filter)
+            {
+                ((Filter)writer).writeReference(toString);
+            }
+            else
+            {
+                writer.write(toString);
+            }
+
         }
+        return true;
     }
 
     /**
@@ -801,7 +944,14 @@ public boolean setValue(InternalContextAdapter context, Object value)
 
             if (numChildren == 0)
             {
-                context.put(rootString, value);
+                if (slot >= 0 && context instanceof InternalContextAdapterImpl)
+                {
+                    ((InternalContextAdapterImpl)context).setSlot(slot, value);
+                }
+                else
+                {
+                    context.put(rootString, value);
+                }
                 return true;
             }
 
@@ -1201,6 +1351,23 @@ else if (t.image.startsWith("$"))
     public Object getRootVariableValue(InternalContextAdapter context)
     {
         Object obj = null;
+        if (slot >= 0 && context instanceof InternalContextAdapterImpl)
+        {
+            obj = ((InternalContextAdapterImpl)context).getSlot(slot);
+            if (obj == null)
+            {
+                /*
+                 * as for a null value put in a chaining context, which only
+                 * lets the chained context values show through
+                 */
+                Context userContext = context.getInternalUserContext();
+                if (userContext instanceof AbstractContext && ((AbstractContext)userContext).getChainedContext() != null)
+                {
+                    obj = ((AbstractContext)userContext).getChainedContext().get(rootString);
+                }
+            }
+            return obj;
+        }
         try
         {
             obj = context.get(rootString);
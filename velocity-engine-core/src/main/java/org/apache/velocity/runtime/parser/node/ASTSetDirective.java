@@ -205,6 +205,16 @@ public String getPostfix()
         return postfix;
     }
 
+    /**
+     * get '#' and '$' prefix characters eaten by javacc MORE mode
+     * @return more prefix
+     * @since 2.6
+     */
+    public String getMorePrefix()
+    {
+        return morePrefix;
+    }
+
     /**
      *   puts the value of the RHS into the context under the key of the LHS
      * @param context
@@ -241,14 +251,9 @@ public boolean render(InternalContextAdapter context, Writer writer)
 
             Object value = right.value(context);
 
-            if ( value == null && !strictRef)
+            if (value == null)
             {
-                String rightReference = null;
-                if (right instanceof ASTExpression)
-                {
-                    rightReference = ((ASTExpression) right).lastImage;
-                }
-                EventHandlerUtil.invalidSetMethod(rsvc, context, leftReference, rightReference, uberInfo);
+                invalidSet(context);
             }
 
             if (morePrefix.length() > 0 || spaceGobbling == SpaceGobbling.NONE)
@@ -265,6 +270,25 @@ public boolean render(InternalContextAdapter context, Writer writer)
         }
     }
 
+    /**
+     * Fires the invalid set event, as {@link #render(InternalContextAdapter, Writer)} does when the right hand
+     * side evaluates to null, unless in strict mode. Made available to compiled templates.
+     * @param context
+     * @since 2.6
+     */
+    public void invalidSet(InternalContextAdapter context)
+    {
+        if (!strictRef)
+        {
+            String rightReference = null;
+            if (right instanceof ASTExpression)
+            {
+                rightReference = ((ASTExpression) right).lastImage;
+            }
+            EventHandlerUtil.invalidSetMethod(rsvc, context, leftReference, rightReference, uberInfo);
+        }
+    }
+
     /**
      * Returns the string "#set($<i>reference</i> = ...)". RHS is not rendered. This method is only
      * used for displaying the VTL stacktrace when a rendering error is encountered when runtime.log.track_location is true.
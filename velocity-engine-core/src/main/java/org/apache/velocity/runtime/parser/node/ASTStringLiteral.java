@@ -297,6 +297,16 @@ public boolean isConstant()
         return !interpolate;
     }
 
+    /**
+     * Gets the tree rendered to interpolate this string, once initialized.
+     * @return interpolated tree, or null if this is a constant string
+     * @since 2.6
+     */
+    public SimpleNode getInterpolatedTree()
+    {
+        return interpolate ? nodeTree : null;
+    }
+
     /**
      * renders the value of the string literal If the properties allow, and the
      * string literal contains a $ or a # the literal is rendered against the
@@ -0,0 +1,136 @@
+package org.apache.velocity.runtime.parser.node;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.velocity.context.InternalContextAdapter;
+import org.apache.velocity.io.Filter;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Node holding the value of a constant expression, computed once after
+ * initialization in place of the expression subtree it replaces. A constant
+ * replacing a rendered reference also holds the rendering of its value.
+ *
+ * @see org.apache.velocity.runtime.visitor.ConstantFolder
+ * @since 2.6
+ */
+public class ConstantNode extends SimpleNode
+{
+    private final Node node;
+    private final Object value;
+    private final boolean truth;
+    private final String prefix;
+    private final String text;
+
+    /**
+     * @param node initialized node replaced by this constant
+     * @param value value of the node
+     * @param truth boolean evaluation of the node
+     */
+    public ConstantNode(SimpleNode node, Object value, boolean truth)
+    {
+        this(node, value, truth, null, null);
+    }
+
+    /**
+     * @param node initialized node replaced by this constant
+     * @param value value of the node
+     * @param truth boolean evaluation of the node
+     * @param prefix text rendered before the value, or null if the node is not rendered
+     * @param text rendered value, or null if the node is not rendered
+     */
+    public ConstantNode(SimpleNode node, Object value, boolean truth, String prefix, String text)
+    {
+        super(node.getType());
+        this.node = node;
+        this.value = value;
+        this.truth = truth;
+        this.prefix = prefix;
+        this.text = text;
+        rsvc = node.getRuntimeServices();
+        log = node.log;
+        template = node.getTemplate();
+        line = node.getLine();
+        column = node.getColumn();
+        parent = node.jjtGetParent();
+    }
+
+    /**
+     * @see org.apache.velocity.runtime.parser.node.SimpleNode#init(org.apache.velocity.context.InternalContextAdapter, java.lang.Object)
+     */
+    @Override
+    public Object init(InternalContextAdapter context, Object data)
+    {
+        return data;
+    }
+
+    /**
+     * @see org.apache.velocity.runtime.parser.node.SimpleNode#literal()
+     */
+    @Override
+    public String literal()
+    {
+        return node.literal();
+    }
+
+    /**
+     * @see org.apache.velocity.runtime.parser.node.SimpleNode#evaluate(org.apache.velocity.context.InternalContextAdapter)
+     */
+    @Override
+    public boolean evaluate(InternalContextAdapter context)
+    {
+        return truth;
+    }
+
+    /**
+     * @see org.apache.velocity.runtime.parser.node.SimpleNode#value(org.apache.velocity.context.InternalContextAdapter)
+     */
+    @Override
+    public Object value(InternalContextAdapter context)
+    {
+        return value;
+    }
+
+    /**
+     * Writes the rendered value, as a reference to {@link Filter} writers
+     * @see org.apache.velocity.runtime.parser.node.SimpleNode#render(org.apache.velocity.context.InternalContextAdapter, java.io.Writer)
+     */
+    @Override
+    public boolean render(InternalContextAdapter context, Writer writer)
+        throws IOException
+    {
+        if (text == null)
+        {
+            return super.render(context, writer);
+        }
+        writer.write(prefix);
+        if (writer instanceof Filter)
+        {
+            ((Filter)writer).writeReference(text);
+        }
+        else
+        {
+            writer.write(text);
+        }
+        return true;
+    }
+}
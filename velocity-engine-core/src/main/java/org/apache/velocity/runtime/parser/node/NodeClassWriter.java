@@ -0,0 +1,753 @@
+package org.apache.velocity.runtime.parser.node;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.velocity.context.InternalContextAdapter;
+import org.apache.velocity.exception.MethodInvocationException;
+import org.apache.velocity.exception.VelocityException;
+import org.apache.velocity.runtime.Renderable;
+import org.apache.velocity.runtime.directive.Foreach;
+import org.apache.velocity.runtime.parser.LogContext;
+import org.apache.velocity.runtime.parser.node.NodeCompiler.Assignment;
+import org.apache.velocity.runtime.parser.node.NodeCompiler.Conditional;
+import org.apache.velocity.runtime.parser.node.NodeCompiler.Interpreted;
+import org.apache.velocity.runtime.parser.node.NodeCompiler.Loop;
+import org.apache.velocity.runtime.parser.node.NodeCompiler.Part;
+import org.apache.velocity.runtime.parser.node.NodeCompiler.Reference;
+import org.apache.velocity.runtime.parser.node.NodeCompiler.Text;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Writes and loads the class compiled by {@link NodeCompiler} for a template. This class is
+ * kept apart from NodeCompiler so that the ASM library is only needed when templates are compiled.</p>
+ * <p>The generated class implements {@link Renderable}. Each instance renders one entry point: the
+ * template itself, or the body or <code>#else</code> block of one of its <code>#foreach</code> loops.
+ * The AST nodes, the static text and the entry point instances are held in typed fields, so that
+ * the generated code calls the node methods directly. Large blocks are split in several methods
+ * to stay below the JVM method size limit.</p>
+ * <p>The class is defined by its own class loader, a child of the Velocity class loader, so that
+ * it is unloaded with the template. It only uses public classes and methods.</p>
+ *
+ * @since 2.6
+ */
+final class NodeClassWriter implements Opcodes
+{
+    /**
+     * blocks heavier than this are rendered by their own method
+     */
+    static final int INLINE_WEIGHT = 64;
+
+    /**
+     * maximum weight of the parts rendered by a single method
+     */
+    private static final int METHOD_WEIGHT = 512;
+
+    /**
+     * maximum number of fields initialized by a single method
+     */
+    private static final int FIELDS_PER_METHOD = 1024;
+
+    private static final AtomicLong classCount = new AtomicLong();
+
+    private static final String OBJECT = Type.getInternalName(Object.class);
+    private static final String WRITER = Type.getInternalName(Writer.class);
+    private static final String CONTEXT = Type.getInternalName(InternalContextAdapter.class);
+    private static final String REFERENCE = Type.getInternalName(ASTReference.class);
+    private static final String SET = Type.getInternalName(ASTSetDirective.class);
+    private static final String LOG_CONTEXT = Type.getInternalName(LogContext.class);
+    private static final String RENDER_DESC = "(L" + CONTEXT + ";L" + WRITER + ";)V";
+    private static final String NODE_RENDER_DESC = "(L" + CONTEXT + ";L" + WRITER + ";)Z";
+    private static final String[] EXCEPTIONS = { Type.getInternalName(IOException.class) };
+
+    /* local variables of the rendering methods */
+    private static final int CONTEXT_VAR = 1;
+    private static final int WRITER_VAR = 2;
+    private static final int VALUE_VAR = 3;
+    private static final int PREVIOUS_VAR = 4;
+    private static final int THROWABLE_VAR = 5;
+
+    private final String className;
+    private final String sourceName;
+    private final LogContext logContext;
+    private final ClassLoader parent = NodeClassWriter.class.getClassLoader();
+    private ClassWriter classWriter;
+
+    /* constant values, held in the fields of the generated class */
+    private final List<Object> constants = new ArrayList<>();
+    private final List<String> constantTypes = new ArrayList<>();
+    private final Map<Object, Integer> constantIndexes = new IdentityHashMap<>();
+    private final Map<String, Integer> textIndexes = new HashMap<>();
+    private int[] entryFields;
+    private int logContextField = -1;
+
+    /* methods which remain to be written */
+    private final Deque<Object[]> pendingMethods = new ArrayDeque<>();
+    private int methodCount = 0;
+
+    /**
+     * @param sourceName template name
+     * @param logContext log context to push the rendered nodes on, or null if the location is not tracked
+     */
+    NodeClassWriter(String sourceName, LogContext logContext)
+    {
+        this.sourceName = sourceName == null ? "template" : sourceName;
+        this.logContext = logContext;
+        String simpleName = this.sourceName.replaceAll("[^A-Za-z0-9_]", "_");
+        if (simpleName.length() > 48)
+        {
+            simpleName = simpleName.substring(simpleName.length() - 48);
+        }
+        className = "org/apache/velocity/runtime/compiled/Template_" + simpleName + "_" + classCount.incrementAndGet();
+    }
+
+    /**
+     * Write, load and instantiate the compiled class
+     * @param entries compiled entry points, the first one being the template
+     * @return renderer of the first entry point
+     */
+    Renderable define(List<List<Part>> entries)
+    {
+        classWriter = new ClassWriter(ClassWriter.COMPUTE_FRAMES)
+        {
+            /* locals and stack values are only used as objects at merge points */
+            @Override
+            protected String getCommonSuperClass(String type1, String type2)
+            {
+                return OBJECT;
+            }
+        };
+        classWriter.visit(V1_8, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, className, null, OBJECT,
+            new String[] { Type.getInternalName(Renderable.class) });
+        classWriter.visitSource(sourceName, null);
+
+        entryFields = new int[entries.size()];
+        for (int i = 0; i < entries.size(); ++i)
+        {
+            entryFields[i] = constants.size();
+            constants.add(null);
+            constantTypes.add("L" + className + ";");
+        }
+        if (logContext != null)
+        {
+            logContextField = constant(logContext, LogContext.class);
+        }
+
+        writeRender(entries.size());
+        for (int i = 0; i < entries.size(); ++i)
+        {
+            pendingMethods.add(new Object[] { "entry" + i, entries.get(i) });
+        }
+        while (!pendingMethods.isEmpty())
+        {
+            Object[] method = pendingMethods.poll();
+            @SuppressWarnings("unchecked")
+            List<Part> parts = (List<Part>)method[1];
+            writeMethod((String)method[0], parts);
+        }
+        writeFields();
+        classWriter.visitEnd();
+
+        try
+        {
+            Class<?> compiled = new CompiledClassLoader(parent).define(className.replace('/', '.'), classWriter.toByteArray());
+            Constructor<?> constructor = compiled.getConstructor(Integer.TYPE, Object[].class);
+            Object[] values = constants.toArray();
+            /* loop bodies have greater indices than their enclosing entry point */
+            for (int i = entries.size() - 1; i >= 0; --i)
+            {
+                values[entryFields[i]] = constructor.newInstance(i, values);
+            }
+            return (Renderable)values[entryFields[0]];
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new VelocityException("could not instantiate compiled template " + sourceName, e);
+        }
+    }
+
+    /*
+     * public boolean render(InternalContextAdapter context, Writer writer): dispatch to the entry point
+     */
+    private void writeRender(int entries)
+    {
+        MethodVisitor mv = classWriter.visitMethod(ACC_PUBLIC, "render", NODE_RENDER_DESC, null, EXCEPTIONS);
+        mv.visitCode();
+        Label done = new Label();
+        if (entries == 1)
+        {
+            callMethod(mv, "entry0");
+        }
+        else
+        {
+            Label[] labels = new Label[entries];
+            for (int i = 0; i < entries; ++i)
+            {
+                labels[i] = new Label();
+            }
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitFieldInsn(GETFIELD, className, "entry", "I");
+            mv.visitTableSwitchInsn(0, entries - 1, done, labels);
+            for (int i = 0; i < entries; ++i)
+            {
+                mv.visitLabel(labels[i]);
+                callMethod(mv, "entry" + i);
+                mv.visitJumpInsn(GOTO, done);
+            }
+        }
+        mv.visitLabel(done);
+        mv.visitInsn(ICONST_1);
+        mv.visitInsn(IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /*
+     * private void <name>(InternalContextAdapter context, Writer writer): render parts
+     */
+    private void writeMethod(String name, List<Part> parts)
+    {
+        MethodVisitor mv = classWriter.visitMethod(ACC_PRIVATE, name, RENDER_DESC, null, EXCEPTIONS);
+        mv.visitCode();
+        if (parts.size() == 1 || NodeCompiler.weight(parts) <= METHOD_WEIGHT)
+        {
+            writeParts(mv, parts);
+        }
+        else
+        {
+            /* split the parts in several methods */
+            List<Part> chunk = new ArrayList<>();
+            int weight = 0;
+            for (Part part : parts)
+            {
+                if (!chunk.isEmpty() && weight + part.weight() > METHOD_WEIGHT)
+                {
+                    outline(mv, chunk);
+                    chunk = new ArrayList<>();
+                    weight = 0;
+                }
+                chunk.add(part);
+                weight += part.weight();
+            }
+            outline(mv, chunk);
+        }
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /*
+     * call a new method rendering the given parts
+     */
+    private void outline(MethodVisitor mv, List<Part> parts)
+    {
+        String name = "part" + methodCount++;
+        pendingMethods.add(new Object[] { name, parts });
+        callMethod(mv, name);
+    }
+
+    private void callMethod(MethodVisitor mv, String name)
+    {
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(ALOAD, CONTEXT_VAR);
+        mv.visitVarInsn(ALOAD, WRITER_VAR);
+        mv.visitMethodInsn(INVOKESPECIAL, className, name, RENDER_DESC, false);
+    }
+
+    private void writeParts(MethodVisitor mv, List<Part> parts)
+    {
+        for (Part part : parts)
+        {
+            Node node = part.node();
+            if (node != null && node.getLine() > 0)
+            {
+                Label line = new Label();
+                mv.visitLabel(line);
+                mv.visitLineNumber(node.getLine(), line);
+            }
+            if (part instanceof Text)
+            {
+                writeText(mv, ((Text)part).text);
+            }
+            else if (part instanceof Reference)
+            {
+                writeReference(mv, ((Reference)part).reference);
+            }
+            else if (part instanceof Assignment)
+            {
+                writeAssignment(mv, (Assignment)part);
+            }
+            else if (part instanceof Conditional)
+            {
+                writeConditional(mv, (Conditional)part);
+            }
+            else if (part instanceof Loop)
+            {
+                writeLoop(mv, (Loop)part);
+            }
+            else
+            {
+                writeInterpreted(mv, ((Interpreted)part).node);
+            }
+        }
+    }
+
+    /*
+     * writer.write(text)
+     */
+    private void writeText(MethodVisitor mv, String text)
+    {
+        if (text.length() == 0)
+        {
+            return;
+        }
+        Integer index = textIndexes.get(text);
+        if (index == null)
+        {
+            index = constants.size();
+            constants.add(text.toCharArray());
+            constantTypes.add("[C");
+            textIndexes.put(text, index);
+        }
+        mv.visitVarInsn(ALOAD, WRITER_VAR);
+        loadConstant(mv, index);
+        mv.visitMethodInsn(INVOKEVIRTUAL, WRITER, "write", "([C)V", false);
+    }
+
+    /*
+     * node.render(context, writer)
+     */
+    private void writeInterpreted(MethodVisitor mv, Node node)
+    {
+        int index = node(node, Node.class);
+        loadConstant(mv, index);
+        mv.visitVarInsn(ALOAD, CONTEXT_VAR);
+        mv.visitVarInsn(ALOAD, WRITER_VAR);
+        invoke(mv, index, "render", NODE_RENDER_DESC);
+        mv.visitInsn(POP);
+    }
+
+    /*
+     * value = reference.getRootVariableValue(context);
+     * if (value == null) value = reference.resolveNull(context, null, -1, false);
+     * else
+     * {
+     *     try
+     *     {
+     *         previous = value; value = child0.execute(value, context);
+     *         if (value == null) value = reference.resolveNull(context, previous, 0, false);
+     *         else ... next children
+     *     }
+     *     catch (MethodInvocationException mie) { mie.setReferenceName(root); throw mie; }
+     * }
+     * reference.renderValue(context, writer, value);
+     */
+    private void writeReference(MethodVisitor mv, ASTReference reference)
+    {
+        int index = node(reference, ASTReference.class);
+        int children = reference.jjtGetNumChildren();
+        Label childrenStart = new Label(), childrenEnd = new Label(), handler = new Label();
+        if (children > 0)
+        {
+            mv.visitTryCatchBlock(childrenStart, childrenEnd, handler, Type.getInternalName(MethodInvocationException.class));
+        }
+        Label[] tracked = pushLogContext(mv, reference);
+
+        loadConstant(mv, index);
+        mv.visitVarInsn(ALOAD, CONTEXT_VAR);
+        mv.visitMethodInsn(INVOKEVIRTUAL, REFERENCE, "getRootVariableValue", "(L" + CONTEXT + ";)Ljava/lang/Object;", false);
+        mv.visitVarInsn(ASTORE, VALUE_VAR);
+        Label resolved = new Label();
+        mv.visitVarInsn(ALOAD, VALUE_VAR);
+        mv.visitJumpInsn(IFNONNULL, childrenStart);
+        resolveNull(mv, index, -1);
+        mv.visitJumpInsn(GOTO, resolved);
+
+        mv.visitLabel(childrenStart);
+        for (int i = 0; i < children; ++i)
+        {
+            int child = node(reference.jjtGetChild(i), Node.class);
+            mv.visitVarInsn(ALOAD, VALUE_VAR);
+            mv.visitVarInsn(ASTORE, PREVIOUS_VAR);
+            loadConstant(mv, child);
+            mv.visitVarInsn(ALOAD, VALUE_VAR);
+            mv.visitVarInsn(ALOAD, CONTEXT_VAR);
+            invoke(mv, child, "execute", "(Ljava/lang/Object;L" + CONTEXT + ";)Ljava/lang/Object;");
+            mv.visitVarInsn(ASTORE, VALUE_VAR);
+            Label next = new Label();
+            mv.visitVarInsn(ALOAD, VALUE_VAR);
+            mv.visitJumpInsn(IFNONNULL, next);
+            resolveNull(mv, index, i);
+            mv.visitJumpInsn(GOTO, resolved);
+            mv.visitLabel(next);
+        }
+        mv.visitLabel(childrenEnd);
+
+        mv.visitLabel(resolved);
+        loadConstant(mv, index);
+        mv.visitVarInsn(ALOAD, CONTEXT_VAR);
+        mv.visitVarInsn(ALOAD, WRITER_VAR);
+        mv.visitVarInsn(ALOAD, VALUE_VAR);
+        mv.visitMethodInsn(INVOKEVIRTUAL, REFERENCE, "renderValue", "(L" + CONTEXT + ";L" + WRITER + ";Ljava/lang/Object;)Z", false);
+        mv.visitInsn(POP);
+
+        if (children > 0)
+        {
+            Label done = new Label();
+            mv.visitJumpInsn(GOTO, done);
+            mv.visitLabel(handler);
+            mv.visitInsn(DUP);
+            mv.visitLdcInsn(reference.getRootString());
+            mv.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(MethodInvocationException.class), "setReferenceName", "(Ljava/lang/String;)V", false);
+            mv.visitInsn(ATHROW);
+            mv.visitLabel(done);
+        }
+        popLogContext(mv, tracked);
+    }
+
+    /*
+     * value = reference.resolveNull(context, failedChild == -1 ? null : previous, failedChild, false)
+     */
+    private void resolveNull(MethodVisitor mv, int reference, int failedChild)
+    {
+        loadConstant(mv, reference);
+        mv.visitVarInsn(ALOAD, CONTEXT_VAR);
+        if (failedChild == -1)
+        {
+            mv.visitInsn(ACONST_NULL);
+        }
+        else
+        {
+            mv.visitVarInsn(ALOAD, PREVIOUS_VAR);
+        }
+        push(mv, failedChild);
+        mv.visitInsn(ICONST_0);
+        mv.visitMethodInsn(INVOKEVIRTUAL, REFERENCE, "resolveNull", "(L" + CONTEXT + ";Ljava/lang/Object;IZ)Ljava/lang/Object;", false);
+        mv.visitVarInsn(ASTORE, VALUE_VAR);
+    }
+
+    /*
+     * value = right.value(context);
+     * if (value == null) set.invalidSet(context);
+     * writer.write(postfix);
+     * left.setValue(context, value);
+     */
+    private void writeAssignment(MethodVisitor mv, Assignment assignment)
+    {
+        int set = node(assignment.set, ASTSetDirective.class);
+        int right = node(assignment.right, Node.class);
+        int left = node(assignment.left, ASTReference.class);
+        Label[] tracked = pushLogContext(mv, assignment.set);
+
+        loadConstant(mv, right);
+        mv.visitVarInsn(ALOAD, CONTEXT_VAR);
+        invoke(mv, right, "value", "(L" + CONTEXT + ";)Ljava/lang/Object;");
+        mv.visitVarInsn(ASTORE, VALUE_VAR);
+        Label notNull = new Label();
+        mv.visitVarInsn(ALOAD, VALUE_VAR);
+        mv.visitJumpInsn(IFNONNULL, notNull);
+        loadConstant(mv, set);
+        mv.visitVarInsn(ALOAD, CONTEXT_VAR);
+        mv.visitMethodInsn(INVOKEVIRTUAL, SET, "invalidSet", "(L" + CONTEXT + ";)V", false);
+        mv.visitLabel(notNull);
+        writeText(mv, assignment.postfix);
+        loadConstant(mv, left);
+        mv.visitVarInsn(ALOAD, CONTEXT_VAR);
+        mv.visitVarInsn(ALOAD, VALUE_VAR);
+        mv.visitMethodInsn(INVOKEVIRTUAL, REFERENCE, "setValue", "(L" + CONTEXT + ";Ljava/lang/Object;)Z", false);
+        mv.visitInsn(POP);
+
+        popLogContext(mv, tracked);
+    }
+
+    /*
+     * if (condition0.evaluate(context)) { body0 } else if (condition1.evaluate(context)) { body1 } ... else { bodyN }
+     */
+    private void writeConditional(MethodVisitor mv, Conditional conditional)
+    {
+        /* a chain too large for a single method gets all its blocks outlined */
+        boolean outlineAll = conditional.weight() > METHOD_WEIGHT;
+        Label end = new Label();
+        for (int i = 0; i < conditional.conditions.length; ++i)
+        {
+            Label next = new Label();
+            Node condition = conditional.conditions[i];
+            if (condition != null)
+            {
+                int index = node(condition, Node.class);
+                loadConstant(mv, index);
+                mv.visitVarInsn(ALOAD, CONTEXT_VAR);
+                invoke(mv, index, "evaluate", "(L" + CONTEXT + ";)Z");
+                mv.visitJumpInsn(IFEQ, next);
+            }
+            List<Part> body = conditional.bodies.get(i);
+            int weight = NodeCompiler.weight(body);
+            if (weight > INLINE_WEIGHT || outlineAll && weight > 1)
+            {
+                outline(mv, body);
+            }
+            else
+            {
+                writeParts(mv, body);
+            }
+            mv.visitJumpInsn(GOTO, end);
+            mv.visitLabel(next);
+        }
+        mv.visitLabel(end);
+    }
+
+    /*
+     * foreach.render(context, writer, node, body, elseBody)
+     */
+    private void writeLoop(MethodVisitor mv, Loop loop)
+    {
+        int foreach = constant(loop.directive.getDirective(), Foreach.class);
+        int node = node(loop.directive, Node.class);
+        Label[] tracked = pushLogContext(mv, loop.directive);
+
+        loadConstant(mv, foreach);
+        mv.visitVarInsn(ALOAD, CONTEXT_VAR);
+        mv.visitVarInsn(ALOAD, WRITER_VAR);
+        loadConstant(mv, node);
+        loadConstant(mv, entryFields[loop.body]);
+        if (loop.elseBody == -1)
+        {
+            mv.visitInsn(ACONST_NULL);
+        }
+        else
+        {
+            loadConstant(mv, entryFields[loop.elseBody]);
+        }
+        String renderable = Type.getDescriptor(Renderable.class);
+        mv.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(Foreach.class), "render",
+            "(L" + CONTEXT + ";L" + WRITER + ";" + Type.getDescriptor(Node.class) + renderable + renderable + ")Z", false);
+        mv.visitInsn(POP);
+
+        popLogContext(mv, tracked);
+    }
+
+    /*
+     * logContext.pushLogContext(node); try {
+     */
+    private Label[] pushLogContext(MethodVisitor mv, SimpleNode node)
+    {
+        if (logContext == null)
+        {
+            return null;
+        }
+        Label start = new Label(), end = new Label(), handler = new Label();
+        mv.visitTryCatchBlock(start, end, handler, null);
+        loadConstant(mv, logContextField);
+        loadConstant(mv, node(node, SimpleNode.class));
+        mv.visitMethodInsn(INVOKEVIRTUAL, LOG_CONTEXT, "pushLogContext", "(" + Type.getDescriptor(SimpleNode.class) + ")V", false);
+        mv.visitLabel(start);
+        return new Label[] { start, end, handler };
+    }
+
+    /*
+     * } finally { logContext.popLogContext(); }
+     */
+    private void popLogContext(MethodVisitor mv, Label[] tracked)
+    {
+        if (tracked == null)
+        {
+            return;
+        }
+        Label done = new Label();
+        mv.visitLabel(tracked[1]);
+        loadConstant(mv, logContextField);
+        mv.visitMethodInsn(INVOKEVIRTUAL, LOG_CONTEXT, "popLogContext", "()V", false);
+        mv.visitJumpInsn(GOTO, done);
+        mv.visitLabel(tracked[2]);
+        mv.visitVarInsn(ASTORE, THROWABLE_VAR);
+        loadConstant(mv, logContextField);
+        mv.visitMethodInsn(INVOKEVIRTUAL, LOG_CONTEXT, "popLogContext", "()V", false);
+        mv.visitVarInsn(ALOAD, THROWABLE_VAR);
+        mv.visitInsn(ATHROW);
+        mv.visitLabel(done);
+    }
+
+    /*
+     * fields, constructor and field initializers
+     */
+    private void writeFields()
+    {
+        classWriter.visitField(ACC_PRIVATE | ACC_FINAL, "entry", "I", null, null).visitEnd();
+        for (int i = 0; i < constants.size(); ++i)
+        {
+            classWriter.visitField(ACC_PRIVATE, "c" + i, constantTypes.get(i), null, null).visitEnd();
+        }
+
+        MethodVisitor mv = classWriter.visitMethod(ACC_PUBLIC, "<init>", "(I[Ljava/lang/Object;)V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, OBJECT, "<init>", "()V", false);
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(ILOAD, 1);
+        mv.visitFieldInsn(PUTFIELD, className, "entry", "I");
+        for (int start = 0; start < constants.size(); start += FIELDS_PER_METHOD)
+        {
+            String name = "init" + start / FIELDS_PER_METHOD;
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitVarInsn(ALOAD, 2);
+            mv.visitMethodInsn(INVOKESPECIAL, className, name, "([Ljava/lang/Object;)V", false);
+
+            MethodVisitor init = classWriter.visitMethod(ACC_PRIVATE, name, "([Ljava/lang/Object;)V", null, null);
+            init.visitCode();
+            for (int i = start; i < Math.min(start + FIELDS_PER_METHOD, constants.size()); ++i)
+            {
+                String type = constantTypes.get(i);
+                init.visitVarInsn(ALOAD, 0);
+                init.visitVarInsn(ALOAD, 1);
+                push(init, i);
+                init.visitInsn(AALOAD);
+                init.visitTypeInsn(CHECKCAST, Type.getType(type).getInternalName());
+                init.visitFieldInsn(PUTFIELD, className, "c" + i, type);
+            }
+            init.visitInsn(RETURN);
+            init.visitMaxs(0, 0);
+            init.visitEnd();
+        }
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private void loadConstant(MethodVisitor mv, int index)
+    {
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitFieldInsn(GETFIELD, className, "c" + index, constantTypes.get(index));
+    }
+
+    /*
+     * call a method of a constant, through its declared type
+     */
+    private void invoke(MethodVisitor mv, int index, String name, String descriptor)
+    {
+        Type type = Type.getType(constantTypes.get(index));
+        boolean isInterface = type.getInternalName().equals(Type.getInternalName(Node.class));
+        mv.visitMethodInsn(isInterface ? INVOKEINTERFACE : INVOKEVIRTUAL, type.getInternalName(), name, descriptor, isInterface);
+    }
+
+    /**
+     * Register a node, typed by its most specific class usable by the generated code
+     * @param node node
+     * @param bound type to use if the node class and its superclasses cannot be used
+     * @return constant index
+     */
+    private int node(Node node, Class<?> bound)
+    {
+        for (Class<?> type = node.getClass(); type != null && bound.isAssignableFrom(type); type = type.getSuperclass())
+        {
+            if (isAccessible(type))
+            {
+                return constant(node, type);
+            }
+        }
+        return constant(node, bound);
+    }
+
+    private int constant(Object value, Class<?> type)
+    {
+        Integer index = constantIndexes.get(value);
+        if (index == null)
+        {
+            index = constants.size();
+            constants.add(value);
+            constantTypes.add(Type.getDescriptor(type));
+            constantIndexes.put(value, index);
+        }
+        return index;
+    }
+
+    /*
+     * whether the generated class can link against a class
+     */
+    private boolean isAccessible(Class<?> type)
+    {
+        for (Class<?> cls = type; cls != null; cls = cls.getEnclosingClass())
+        {
+            if (!Modifier.isPublic(cls.getModifiers()))
+            {
+                return false;
+            }
+        }
+        try
+        {
+            return Class.forName(type.getName(), false, parent) == type;
+        }
+        catch (ClassNotFoundException | LinkageError e)
+        {
+            return false;
+        }
+    }
+
+    private static void push(MethodVisitor mv, int value)
+    {
+        if (value >= -1 && value <= 5)
+        {
+            mv.visitInsn(ICONST_0 + value);
+        }
+        else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE)
+        {
+            mv.visitIntInsn(BIPUSH, value);
+        }
+        else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE)
+        {
+            mv.visitIntInsn(SIPUSH, value);
+        }
+        else
+        {
+            mv.visitLdcInsn(value);
+        }
+    }
+
+    /**
+     * Class loader of a compiled template class
+     */
+    private static final class CompiledClassLoader extends ClassLoader
+    {
+        CompiledClassLoader(ClassLoader parent)
+        {
+            super(parent);
+        }
+
+        Class<?> define(String name, byte[] bytes)
+        {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
@@ -0,0 +1,534 @@
+package org.apache.velocity.runtime.parser.node;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.velocity.runtime.Renderable;
+import org.apache.velocity.runtime.RuntimeConstants;
+import org.apache.velocity.runtime.RuntimeConstants.SpaceGobbling;
+import org.apache.velocity.runtime.RuntimeServices;
+import org.apache.velocity.runtime.directive.Foreach;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>Compiles an initialized AST into a generated JVM class, one class per template.</p>
+ * <p>The generated class writes static text (including the space gobbling prefixes and
+ * postfixes, which are constant once the engine is configured) as merged character arrays,
+ * and replaces the tree walk by straight-line code with direct calls on the AST nodes:</p>
+ * <ul>
+ *     <li>references are resolved by the generated code itself: it gets the root value, calls
+ *     <code>execute()</code> on each child, and hands the value to
+ *     {@link ASTReference#renderValue}; null values go through {@link ASTReference#resolveNull}
+ *     so that the invalid reference events are the same as with the interpreter;</li>
+ *     <li><code>#set</code> directives evaluate their right hand side and call
+ *     {@link ASTReference#setValue} on their left hand side;</li>
+ *     <li><code>#if</code>/<code>#elseif</code>/<code>#else</code> chains evaluate their conditions
+ *     and branch to their inlined blocks;</li>
+ *     <li><code>#foreach</code> bodies are compiled in the same class, as additional entry points
+ *     handed to {@link Foreach#render(org.apache.velocity.context.InternalContextAdapter, java.io.Writer, Node, Renderable, Renderable)}.</li>
+ * </ul>
+ * <p>Every other node, as well as escaped, strict or defaulted references, is rendered by the
+ * interpreter, through a direct call to its <code>render()</code> method.</p>
+ * <p>Bytecode is generated with the ASM library, which is an optional dependency: without it,
+ * or if a template cannot be compiled, templates are interpreted. The generated class keeps
+ * references to the AST nodes, so it must be rebuilt whenever the tree is replaced or cloned.</p>
+ *
+ * @see org.apache.velocity.runtime.RuntimeConstants#RUNTIME_RENDER_COMPILE
+ * @since 2.6
+ */
+public class NodeCompiler
+{
+    private static final boolean AVAILABLE = isAsmAvailable();
+
+    private static final AtomicBoolean warnedUnavailable = new AtomicBoolean(false);
+
+    private final SpaceGobbling spaceGobbling;
+    private final boolean trackLocation;
+    private final RuntimeServices rsvc;
+    private final Logger log;
+
+    /**
+     * @param rsvc runtime services
+     */
+    public NodeCompiler(RuntimeServices rsvc)
+    {
+        this.rsvc = rsvc;
+        spaceGobbling = rsvc.getSpaceGobbling();
+        trackLocation = rsvc.getBoolean(RuntimeConstants.RUNTIME_LOG_TRACK_LOCATION, false);
+        log = rsvc.getLog("rendering");
+    }
+
+    /**
+     * Whether the bytecode library is available
+     * @return true if templates can be compiled
+     */
+    public static boolean isAvailable()
+    {
+        return AVAILABLE;
+    }
+
+    private static boolean isAsmAvailable()
+    {
+        try
+        {
+            Class.forName("org.objectweb.asm.ClassWriter", false, NodeCompiler.class.getClassLoader());
+            return true;
+        }
+        catch (ClassNotFoundException | LinkageError e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Compile an initialized node.
+     * @param node node to compile
+     * @return compiled renderable, or null if the node cannot be compiled and must be interpreted
+     */
+    public Renderable compile(Node node)
+    {
+        if (!AVAILABLE)
+        {
+            if (warnedUnavailable.compareAndSet(false, true))
+            {
+                log.warn("{} is set but the ASM library is not available, templates will be interpreted",
+                    RuntimeConstants.RUNTIME_RENDER_COMPILE);
+            }
+            return null;
+        }
+        try
+        {
+            List<List<Part>> entries = new ArrayList<>();
+            entry(entries, node);
+            return new NodeClassWriter(node.getTemplateName(), trackLocation ? rsvc.getLogContext() : null)
+                .define(entries);
+        }
+        catch (RuntimeException | LinkageError e)
+        {
+            /* too large methods or classes, inaccessible classes... */
+            log.warn("could not compile template {}, it will be interpreted", node.getTemplateName(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Compiles a node as a new entry point
+     * @param entries entry points
+     * @param node node
+     * @return entry point index
+     */
+    private int entry(List<List<Part>> entries, Node node)
+    {
+        /* the index is allocated before compiling the node, so that nested loops get greater indices */
+        int index = entries.size();
+        entries.add(null);
+        entries.set(index, compile(entries, node));
+        return index;
+    }
+
+    private List<Part> compile(List<List<Part>> entries, Node node)
+    {
+        Sequence sequence = new Sequence();
+        append(entries, sequence, node);
+        return sequence.build();
+    }
+
+    private void append(List<List<Part>> entries, Sequence sequence, Node node)
+    {
+        if (node instanceof ASTprocess)
+        {
+            appendChildren(entries, sequence, node);
+        }
+        else if (node instanceof ASTText)
+        {
+            sequence.text(((ASTText)node).getCtext());
+        }
+        else if (node instanceof ASTBlock)
+        {
+            ASTBlock block = (ASTBlock)node;
+            if (spaceGobbling == SpaceGobbling.NONE)
+            {
+                sequence.text(block.getPrefix());
+            }
+            appendChildren(entries, sequence, block);
+            if (block.getMorePostfix().length() > 0 || spaceGobbling.compareTo(SpaceGobbling.LINES) < 0)
+            {
+                sequence.text(block.getPostfix());
+            }
+            sequence.text(block.getMorePostfix());
+        }
+        else if (node instanceof ASTReference && ((ASTReference)node).isCompilable())
+        {
+            sequence.part(new Reference((ASTReference)node));
+        }
+        else if (node instanceof ASTSetDirective)
+        {
+            ASTSetDirective set = (ASTSetDirective)node;
+            String morePrefix = set.getMorePrefix();
+            if (morePrefix.length() > 0 || spaceGobbling.compareTo(SpaceGobbling.LINES) < 0)
+            {
+                sequence.text(set.getPrefix());
+            }
+            sequence.text(morePrefix);
+            String postfix = morePrefix.length() > 0 || spaceGobbling == SpaceGobbling.NONE ? set.getPostfix() : "";
+            sequence.part(new Assignment(set, unwrap(set.jjtGetChild(1)), (ASTReference)set.jjtGetChild(0), postfix));
+        }
+        else if (node instanceof ASTIfStatement)
+        {
+            ASTIfStatement ifStatement = (ASTIfStatement)node;
+            String morePrefix = ifStatement.getMorePrefix();
+            if (morePrefix.length() > 0 || spaceGobbling.compareTo(SpaceGobbling.LINES) < 0)
+            {
+                sequence.text(ifStatement.getPrefix());
+            }
+            sequence.text(morePrefix);
+            sequence.part(compileConditional(entries, ifStatement));
+            if (morePrefix.length() > 0 || spaceGobbling == SpaceGobbling.NONE)
+            {
+                sequence.text(ifStatement.getPostfix());
+            }
+        }
+        else if (node instanceof ASTDirective && isForeach(((ASTDirective)node).getDirective()))
+        {
+            ASTDirective directive = (ASTDirective)node;
+            String morePrefix = directive.getMorePrefix();
+            if (morePrefix.length() > 0 || spaceGobbling.compareTo(SpaceGobbling.LINES) < 0)
+            {
+                sequence.text(directive.getPrefix());
+            }
+            sequence.text(morePrefix);
+            sequence.part(compileLoop(entries, directive));
+            if (morePrefix.length() > 0 || spaceGobbling == SpaceGobbling.NONE)
+            {
+                sequence.text(directive.getPostfix());
+            }
+        }
+        else
+        {
+            sequence.part(new Interpreted(node));
+        }
+    }
+
+    /*
+     * subclasses of Foreach may override how the blocks are rendered
+     */
+    private static boolean isForeach(Object directive)
+    {
+        return directive != null && directive.getClass() == Foreach.class;
+    }
+
+    /*
+     * expressions just delegate to their single child
+     */
+    private static Node unwrap(Node node)
+    {
+        while (node instanceof ASTExpression && node.jjtGetNumChildren() == 1)
+        {
+            node = node.jjtGetChild(0);
+        }
+        return node;
+    }
+
+    private void appendChildren(List<List<Part>> entries, Sequence sequence, Node node)
+    {
+        for (int i = 0; i < node.jjtGetNumChildren(); ++i)
+        {
+            append(entries, sequence, node.jjtGetChild(i));
+        }
+    }
+
+    private Part compileConditional(List<List<Part>> entries, ASTIfStatement ifStatement)
+    {
+        int branches = ifStatement.jjtGetNumChildren() - 1;
+        Node[] conditions = new Node[branches];
+        List<List<Part>> bodies = new ArrayList<>(branches);
+
+        conditions[0] = unwrap(ifStatement.jjtGetChild(0));
+        bodies.add(compile(entries, ifStatement.jjtGetChild(1)));
+        for (int i = 1; i < branches; ++i)
+        {
+            Node branch = ifStatement.jjtGetChild(i + 1);
+            if (branch instanceof ASTElseIfStatement)
+            {
+                conditions[i] = unwrap(branch.jjtGetChild(0));
+                bodies.add(compile(entries, branch.jjtGetChild(1)));
+            }
+            else
+            {
+                /* #else: no condition */
+                bodies.add(compile(entries, branch.jjtGetChild(0)));
+            }
+        }
+        return new Conditional(ifStatement, conditions, bodies);
+    }
+
+    private Part compileLoop(List<List<Part>> entries, ASTDirective directive)
+    {
+        int last = directive.jjtGetNumChildren() - 1;
+        Node body = directive.jjtGetChild(last);
+        Node elseBody = null;
+        if (directive.jjtGetChild(last - 1) instanceof ASTBlock)
+        {
+            elseBody = body;
+            body = directive.jjtGetChild(last - 1);
+        }
+        int bodyEntry = entry(entries, body);
+        int elseEntry = elseBody == null ? -1 : entry(entries, elseBody);
+        return new Loop(directive, bodyEntry, elseEntry);
+    }
+
+    /**
+     * Accumulates compiled parts, merging adjacent static text.
+     */
+    private static class Sequence
+    {
+        private final List<Part> parts = new ArrayList<>();
+        private final StringBuilder text = new StringBuilder();
+
+        void text(String str)
+        {
+            text.append(str);
+        }
+
+        void part(Part part)
+        {
+            flushText();
+            parts.add(part);
+        }
+
+        private void flushText()
+        {
+            if (text.length() > 0)
+            {
+                parts.add(new Text(text.toString()));
+                text.setLength(0);
+            }
+        }
+
+        List<Part> build()
+        {
+            flushText();
+            return parts;
+        }
+    }
+
+    /**
+     * Compiled construct
+     */
+    abstract static class Part
+    {
+        /**
+         * @return rough size of the code generated for this part, not counting outlined blocks
+         */
+        abstract int weight();
+
+        /**
+         * @return source node, or null
+         */
+        abstract Node node();
+    }
+
+    /**
+     * Static text
+     */
+    static final class Text extends Part
+    {
+        final String text;
+
+        Text(String text)
+        {
+            this.text = text;
+        }
+
+        @Override
+        int weight()
+        {
+            return 1;
+        }
+
+        @Override
+        Node node()
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Reference resolved and rendered by the generated code
+     */
+    static final class Reference extends Part
+    {
+        final ASTReference reference;
+
+        Reference(ASTReference reference)
+        {
+            this.reference = reference;
+        }
+
+        @Override
+        int weight()
+        {
+            return 3 + reference.jjtGetNumChildren();
+        }
+
+        @Override
+        Node node()
+        {
+            return reference;
+        }
+    }
+
+    /**
+     * #set directive
+     */
+    static final class Assignment extends Part
+    {
+        final ASTSetDirective set;
+        final Node right;
+        final ASTReference left;
+        final String postfix;
+
+        Assignment(ASTSetDirective set, Node right, ASTReference left, String postfix)
+        {
+            this.set = set;
+            this.right = right;
+            this.left = left;
+            this.postfix = postfix;
+        }
+
+        @Override
+        int weight()
+        {
+            return 4;
+        }
+
+        @Override
+        Node node()
+        {
+            return set;
+        }
+    }
+
+    /**
+     * #if/#elseif/#else chain
+     */
+    static final class Conditional extends Part
+    {
+        final ASTIfStatement ifStatement;
+        /* a null condition stands for #else */
+        final Node[] conditions;
+        final List<List<Part>> bodies;
+
+        Conditional(ASTIfStatement ifStatement, Node[] conditions, List<List<Part>> bodies)
+        {
+            this.ifStatement = ifStatement;
+            this.conditions = conditions;
+            this.bodies = bodies;
+        }
+
+        @Override
+        int weight()
+        {
+            int weight = 0;
+            for (List<Part> body : bodies)
+            {
+                weight += 1 + Math.min(NodeClassWriter.INLINE_WEIGHT, NodeCompiler.weight(body));
+            }
+            return weight;
+        }
+
+        @Override
+        Node node()
+        {
+            return ifStatement;
+        }
+    }
+
+    /**
+     * #foreach loop, whose blocks are other entry points
+     */
+    static final class Loop extends Part
+    {
+        final ASTDirective directive;
+        final int body;
+        final int elseBody;
+
+        Loop(ASTDirective directive, int body, int elseBody)
+        {
+            this.directive = directive;
+            this.body = body;
+            this.elseBody = elseBody;
+        }
+
+        @Override
+        int weight()
+        {
+            return 3;
+        }
+
+        @Override
+        Node node()
+        {
+            return directive;
+        }
+    }
+
+    /**
+     * Interpreter fallback for nodes the compiler does not handle.
+     */
+    static final class Interpreted extends Part
+    {
+        final Node node;
+
+        Interpreted(Node node)
+        {
+            this.node = node;
+        }
+
+        @Override
+        int weight()
+        {
+            return 1;
+        }
+
+        @Override
+        Node node()
+        {
+            return node;
+        }
+    }
+
+    /**
+     * @param parts compiled parts
+     * @return total weight of the parts
+     */
+    static int weight(List<Part> parts)
+    {
+        int weight = 0;
+        for (Part part : parts)
+        {
+            weight += part.weight();
+        }
+        return weight;
+    }
+}
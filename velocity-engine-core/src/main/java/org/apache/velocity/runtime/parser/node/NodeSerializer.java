@@ -0,0 +1,370 @@
+package org.apache.velocity.runtime.parser.node;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.velocity.Template;
+import org.apache.velocity.runtime.parser.Parser;
+import org.apache.velocity.runtime.parser.Token;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Writes a freshly parsed (not yet initialized) AST in a compact binary form, and reads it back.</p>
+ * <p>The token chain of the template is written once, special tokens included, and every node refers
+ * to its first and last tokens by index. Besides its type and children, a node only carries the few
+ * values set on it by the parser (directive names, space gobbling prefixes and postfixes, reference
+ * notation, escapes); everything else is derived from the tokens by <code>init()</code>.</p>
+ *
+ * @see org.apache.velocity.runtime.resource.ASTDiskCache
+ * @since 2.6
+ */
+public class NodeSerializer
+{
+    /**
+     * Version of the binary form, to be incremented whenever it changes.
+     */
+    public static final int FORMAT = 1;
+
+    private static final int HEAD = -1;
+
+    private static final int NONE = -2;
+
+    private final Constructor<?>[] constructors = new Constructor<?>[StandardParserTreeConstants.jjtNodeName.length];
+
+    /**
+     * Writes a parsed AST.
+     * @param root root node, as returned by the parser
+     * @param out output
+     * @throws IOException if writing fails
+     */
+    public void write(SimpleNode root, DataOutput out) throws IOException
+    {
+        List<Token> tokens = new ArrayList<>();
+        Map<Token, Integer> indices = new IdentityHashMap<>();
+        for (Token t = root.getFirstToken(); t != null; t = t.next)
+        {
+            indices.put(t, tokens.size());
+            tokens.add(t);
+        }
+
+        out.writeInt(tokens.size());
+        for (Token token : tokens)
+        {
+            List<Token> special = new ArrayList<>();
+            for (Token s = token.specialToken; s != null; s = s.specialToken)
+            {
+                special.add(0, s);
+            }
+            writeToken(token, out);
+            out.writeInt(special.size());
+            for (Token s : special)
+            {
+                writeToken(s, out);
+            }
+        }
+        writeNode(root, tokens, indices, out);
+    }
+
+    private static void writeToken(Token token, DataOutput out) throws IOException
+    {
+        out.writeInt(token.kind);
+        out.writeInt(token.beginLine);
+        out.writeInt(token.beginColumn);
+        out.writeInt(token.endLine);
+        out.writeInt(token.endColumn);
+        writeString(token.image, out);
+    }
+
+    private static int index(Token token, List<Token> tokens, Map<Token, Integer> indices) throws IOException
+    {
+        if (token == null)
+        {
+            return NONE;
+        }
+        Integer index = indices.get(token);
+        if (index != null)
+        {
+            return index;
+        }
+        if (!tokens.isEmpty() && token.next == tokens.get(0))
+        {
+            /* the token preceding the first one, seen by nodes which did not consume any token */
+            return HEAD;
+        }
+        throw new IOException("token '" + token.image + "' is not part of the template token chain");
+    }
+
+    private void writeNode(Node node, List<Token> tokens, Map<Token, Integer> indices, DataOutput out) throws IOException
+    {
+        if (node.getClass() != constructor(node.getType()).getDeclaringClass())
+        {
+            throw new IOException("cannot write node " + node.getClass().getName());
+        }
+        out.writeShort(node.getType());
+        out.writeInt(index(node.getFirstToken(), tokens, indices));
+        out.writeInt(index(node.getLastToken(), tokens, indices));
+
+        if (node instanceof ASTDirective)
+        {
+            ASTDirective directive = (ASTDirective)node;
+            writeString(directive.getDirectiveName(), out);
+            writeString(directive.getPrefix(), out);
+            writeString(directive.getPostfix(), out);
+        }
+        else if (node instanceof ASTBlock)
+        {
+            ASTBlock block = (ASTBlock)node;
+            writeString(block.getPrefix(), out);
+            writeString(block.getPostfix(), out);
+            writeString(block.getMorePostfix(), out);
+        }
+        else if (node instanceof ASTIfStatement)
+        {
+            ASTIfStatement statement = (ASTIfStatement)node;
+            writeString(statement.getPrefix(), out);
+            writeString(statement.getPostfix(), out);
+        }
+        else if (node instanceof ASTSetDirective)
+        {
+            ASTSetDirective directive = (ASTSetDirective)node;
+            writeString(directive.getPrefix(), out);
+            writeString(directive.getPostfix(), out);
+        }
+        else if (node instanceof ASTReference)
+        {
+            ASTReference reference = (ASTReference)node;
+            out.writeBoolean(reference.isFormal());
+            out.writeBoolean(reference.hasExtraDollar());
+        }
+        else if (node instanceof ASTEscape)
+        {
+            writeString(((ASTEscape)node).val, out);
+        }
+
+        int count = node.jjtGetNumChildren();
+        out.writeInt(count);
+        for (int i = 0; i < count; ++i)
+        {
+            writeNode(node.jjtGetChild(i), tokens, indices, out);
+        }
+    }
+
+    /**
+     * Reads an AST written by {@link #write(SimpleNode, DataOutput)}. The returned tree is
+     * in the same state as a tree returned by the parser, and still has to be initialized.
+     * @param in input
+     * @param parser parser the nodes will refer to
+     * @param template template the nodes belong to
+     * @return root node
+     * @throws IOException if reading fails or the input is malformed
+     */
+    public SimpleNode read(DataInput in, Parser parser, Template template) throws IOException
+    {
+        int count = in.readInt();
+        Token[] tokens = new Token[count];
+        Token previous = null;
+        for (int i = 0; i < count; ++i)
+        {
+            Token token = readToken(in);
+            int specials = in.readInt();
+            Token special = null;
+            for (int j = 0; j < specials; ++j)
+            {
+                Token s = readToken(in);
+                if (special != null)
+                {
+                    special.next = s;
+                    s.specialToken = special;
+                }
+                special = s;
+            }
+            token.specialToken = special;
+            if (previous != null)
+            {
+                previous.next = token;
+            }
+            tokens[i] = previous = token;
+        }
+        Token head = new Token();
+        head.next = count > 0 ? tokens[0] : null;
+
+        Node root = readNode(in, tokens, head, parser, template);
+        if (!(root instanceof ASTprocess))
+        {
+            throw new IOException("malformed AST: unexpected root node " + root.getClass().getName());
+        }
+        return (SimpleNode)root;
+    }
+
+    private static Token readToken(DataInput in) throws IOException
+    {
+        Token token = new Token();
+        token.kind = in.readInt();
+        token.beginLine = in.readInt();
+        token.beginColumn = in.readInt();
+        token.endLine = in.readInt();
+        token.endColumn = in.readInt();
+        token.image = readString(in);
+        return token;
+    }
+
+    private static Token token(int index, Token[] tokens, Token head) throws IOException
+    {
+        switch (index)
+        {
+            case NONE:
+                return null;
+            case HEAD:
+                return head;
+            default:
+                if (index < 0 || index >= tokens.length)
+                {
+                    throw new IOException("malformed AST: invalid token index " + index);
+                }
+                return tokens[index];
+        }
+    }
+
+    private SimpleNode readNode(DataInput in, Token[] tokens, Token head, Parser parser, Template template) throws IOException
+    {
+        int id = in.readShort();
+        SimpleNode node = newNode(id, parser);
+        node.template = template;
+        node.first = token(in.readInt(), tokens, head);
+        node.last = token(in.readInt(), tokens, head);
+
+        if (node instanceof ASTDirective)
+        {
+            ASTDirective directive = (ASTDirective)node;
+            directive.setDirectiveName(readString(in));
+            directive.setPrefix(readString(in));
+            directive.setPostfix(readString(in));
+        }
+        else if (node instanceof ASTBlock)
+        {
+            ASTBlock block = (ASTBlock)node;
+            block.setPrefix(readString(in));
+            block.setPostfix(readString(in));
+            block.setMorePostfix(readString(in));
+        }
+        else if (node instanceof ASTIfStatement)
+        {
+            ASTIfStatement statement = (ASTIfStatement)node;
+            statement.setPrefix(readString(in));
+            statement.setPostfix(readString(in));
+        }
+        else if (node instanceof ASTSetDirective)
+        {
+            ASTSetDirective directive = (ASTSetDirective)node;
+            directive.setPrefix(readString(in));
+            directive.setPostfix(readString(in));
+        }
+        else if (node instanceof ASTReference)
+        {
+            ASTReference reference = (ASTReference)node;
+            reference.setFormal(in.readBoolean());
+            reference.setExtraDollar(in.readBoolean());
+        }
+        else if (node instanceof ASTEscape)
+        {
+            ((ASTEscape)node).val = readString(in);
+        }
+
+        int count = in.readInt();
+        for (int i = 0; i < count; ++i)
+        {
+            Node child = readNode(in, tokens, head, parser, template);
+            child.jjtSetParent(node);
+            node.jjtAddChild(child, i);
+        }
+        return node;
+    }
+
+    private Constructor<?> constructor(int id) throws IOException
+    {
+        if (id < 0 || id >= constructors.length)
+        {
+            throw new IOException("malformed AST: unknown node type " + id);
+        }
+        Constructor<?> constructor = constructors[id];
+        if (constructor == null)
+        {
+            String className = SimpleNode.class.getPackage().getName() + ".AST" + StandardParserTreeConstants.jjtNodeName[id];
+            try
+            {
+                constructor = Class.forName(className).getConstructor(Parser.class, int.class);
+            }
+            catch (ClassNotFoundException | NoSuchMethodException e)
+            {
+                throw new IOException("cannot instantiate " + className, e);
+            }
+            constructors[id] = constructor;
+        }
+        return constructor;
+    }
+
+    private SimpleNode newNode(int id, Parser parser) throws IOException
+    {
+        Constructor<?> constructor = constructor(id);
+        try
+        {
+            return (SimpleNode)constructor.newInstance(parser, id);
+        }
+        catch (InstantiationException | IllegalAccessException | InvocationTargetException e)
+        {
+            throw new IOException("cannot instantiate " + constructor.getDeclaringClass().getName(), e);
+        }
+    }
+
+    private static void writeString(String value, DataOutput out) throws IOException
+    {
+        if (value == null)
+        {
+            out.writeInt(-1);
+        }
+        else
+        {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException
+    {
+        int length = in.readInt();
+        if (length < 0)
+        {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
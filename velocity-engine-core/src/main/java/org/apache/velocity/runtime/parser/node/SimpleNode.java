@@ -212,6 +212,19 @@ else if (i >= children.length)
         children[i] = n;
     }
 
+    /**
+     * Removes a child node, shifting the following children to the left.
+     * @param i index of the child to remove
+     * @since 2.6
+     */
+    public void removeChild(int i)
+    {
+        Node c[] = new Node[children.length - 1];
+        System.arraycopy(children, 0, c, 0, i);
+        System.arraycopy(children, i + 1, c, i, children.length - i - 1);
+        children = c.length == 0 ? null : c;
+    }
+
     /**
      * @see org.apache.velocity.runtime.parser.node.Node#jjtGetChild(int)
      */
@@ -0,0 +1,362 @@
+package org.apache.velocity.runtime.resource;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.velocity.Template;
+import org.apache.velocity.exception.VelocityException;
+import org.apache.velocity.runtime.RuntimeConstants;
+import org.apache.velocity.runtime.RuntimeServices;
+import org.apache.velocity.runtime.VelocityEngineVersion;
+import org.apache.velocity.runtime.directive.Directive;
+import org.apache.velocity.runtime.parser.Parser;
+import org.apache.velocity.runtime.parser.Token;
+import org.apache.velocity.runtime.parser.node.ASTDirective;
+import org.apache.velocity.runtime.parser.node.ASTEscape;
+import org.apache.velocity.runtime.parser.node.ASTEscapedDirective;
+import org.apache.velocity.runtime.parser.node.Node;
+import org.apache.velocity.runtime.parser.node.NodeSerializer;
+import org.apache.velocity.runtime.parser.node.SimpleNode;
+import org.apache.velocity.runtime.parser.node.StandardParserTreeConstants;
+import org.slf4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * <p>Persistent cache of parsed templates, kept in a local directory so that templates do not have
+ * to be parsed again after a restart.</p>
+ *
+ * <p>Each template is stored in its own file, named after a hash of the template name and of the
+ * resource loader class. The file records the hash of the template source, the Velocity version and
+ * the parser configuration (parser class, special characters, space gobbling, escaping and
+ * identifier options), as well as the type of every directive the template uses, and whether the
+ * other names it calls or escapes are velocimacros: the stored tree is only used when all of them
+ * still match, and the template is parsed (and stored again) otherwise.
+ * Unreadable or corrupted files are likewise ignored.</p>
+ *
+ * @see RuntimeConstants#RESOURCE_MANAGER_AST_CACHE_DIRECTORY
+ * @since 2.6
+ */
+public class ASTDiskCache
+{
+    private static final int MAGIC = 0x56544C41;
+
+    private static final String SUFFIX = ".ast";
+
+    private final RuntimeServices rsvc;
+
+    private final Logger log;
+
+    private final File directory;
+
+    private final NodeSerializer serializer = new NodeSerializer();
+
+    /**
+     * Parser referenced by loaded nodes, created once the runtime is initialized
+     */
+    private volatile Parser parser;
+
+    private String configuration;
+
+    /**
+     * @param rsvc runtime services
+     * @param directory cache directory, created if needed
+     */
+    public ASTDiskCache(RuntimeServices rsvc, File directory)
+    {
+        this.rsvc = rsvc;
+        this.log = rsvc.getLog("loader");
+        this.directory = directory;
+        if (!directory.isDirectory() && !directory.mkdirs())
+        {
+            throw new VelocityException("Cannot create AST cache directory " + directory, null, rsvc.getLogContext().getStackTrace());
+        }
+    }
+
+    private Parser parser()
+    {
+        Parser p = parser;
+        if (p == null)
+        {
+            synchronized (this)
+            {
+                p = parser;
+                if (p == null)
+                {
+                    p = rsvc.createNewParser();
+                    configuration = NodeSerializer.FORMAT
+                        + "|" + VelocityEngineVersion.VERSION
+                        + "|" + p.getClass().getName()
+                        + "|" + p.dollar() + p.hash() + p.at() + p.asterisk()
+                        + "|" + rsvc.getSpaceGobbling()
+                        + "|" + rsvc.getBoolean(RuntimeConstants.RUNTIME_REFERENCES_STRICT_ESCAPE, false)
+                        + "|" + rsvc.getBoolean(RuntimeConstants.PARSER_HYPHEN_ALLOWED, false)
+                        + "|" + String.join(",", StandardParserTreeConstants.jjtNodeName);
+                    parser = p;
+                }
+            }
+        }
+        return p;
+    }
+
+    private File file(Template template)
+    {
+        byte[] key = digest(template.getName() + '\n' + loaderName(template));
+        StringBuilder name = new StringBuilder(key.length * 2 + SUFFIX.length());
+        for (byte b : key)
+        {
+            name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return new File(directory, name.append(SUFFIX).toString());
+    }
+
+    private static String loaderName(Template template)
+    {
+        return template.getResourceLoader() == null ? "" : template.getResourceLoader().getClassName();
+    }
+
+    private static byte[] digest(CharSequence text)
+    {
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException nsae)
+        {
+            throw new IllegalStateException(nsae);
+        }
+        byte[] buffer = new byte[8192];
+        int length = text.length();
+        int pos = 0;
+        for (int i = 0; i < length; ++i)
+        {
+            char c = text.charAt(i);
+            buffer[pos++] = (byte)(c >> 8);
+            buffer[pos++] = (byte)c;
+            if (pos == buffer.length)
+            {
+                digest.update(buffer, 0, pos);
+                pos = 0;
+            }
+        }
+        digest.update(buffer, 0, pos);
+        return digest.digest();
+    }
+
+    /**
+     * Types of the directives used in a tree: a directive's type decides how the
+     * parser builds its node, so the tree is stale if one of them changes. Names which are
+     * not directives are recorded as well, along with whether they are velocimacros: this
+     * decides how escaped directives are rendered and which macro calls are valid.
+     */
+    private void directiveTypes(Node node, Template template, Map<String, Integer> types)
+    {
+        String name = null;
+        if (node instanceof ASTDirective)
+        {
+            name = ((ASTDirective)node).getDirectiveName();
+        }
+        else if (node instanceof ASTEscapedDirective)
+        {
+            /* the escaped #name or #{name} */
+            String image = node.getFirstToken().image;
+            name = image.substring(image.lastIndexOf('\\') + 2);
+            if (name.startsWith("{") && name.endsWith("}"))
+            {
+                name = name.substring(1, name.length() - 1);
+            }
+        }
+        else if (node instanceof ASTEscape)
+        {
+            /* the escapes are rendered according to the directive which follows them */
+            Token next = node.getLastToken().next;
+            if (next != null && next.image != null && next.image.length() > 1)
+            {
+                name = next.image.substring(1);
+            }
+        }
+        if (name != null)
+        {
+            types.put(name, directiveType(name, template));
+        }
+        for (int i = 0; i < node.jjtGetNumChildren(); ++i)
+        {
+            directiveTypes(node.jjtGetChild(i), template, types);
+        }
+    }
+
+    private int directiveType(String name, Template template)
+    {
+        Directive directive = rsvc.getDirective(name);
+        if (directive != null)
+        {
+            return directive.getType();
+        }
+        return rsvc.isVelocimacro(name, template) ? -1 : 0;
+    }
+
+    /**
+     * Loads the stored tree of a template.
+     * @param template template being processed
+     * @param source current template source
+     * @return root node of the stored tree, not initialized, or null if there is no
+     *         usable stored tree for this source
+     */
+    public SimpleNode load(Template template, CharSequence source)
+    {
+        File file = file(template);
+        if (!file.isFile())
+        {
+            return null;
+        }
+        Parser p = parser();
+        try
+        {
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            if (in.readInt() != MAGIC
+                || !configuration.equals(in.readUTF())
+                || !template.getName().equals(in.readUTF())
+                || !loaderName(template).equals(in.readUTF()))
+            {
+                log.debug("AST cache: ignoring {} stored for another configuration", template.getName());
+                return null;
+            }
+            byte[] hash = new byte[in.readUnsignedByte()];
+            in.readFully(hash);
+            if (!Arrays.equals(hash, digest(source)))
+            {
+                log.debug("AST cache: source of {} has changed", template.getName());
+                return null;
+            }
+            int directives = in.readInt();
+            for (int i = 0; i < directives; ++i)
+            {
+                String name = in.readUTF();
+                if (in.readInt() != directiveType(name, template))
+                {
+                    log.debug("AST cache: directive {} used by {} has changed", name, template.getName());
+                    return null;
+                }
+            }
+            int length = in.readInt();
+            long checksum = in.readLong();
+            int offset = bytes.length - in.available();
+            CRC32 crc = new CRC32();
+            crc.update(bytes, offset, Math.max(0, Math.min(length, bytes.length - offset)));
+            if (length != bytes.length - offset || crc.getValue() != checksum)
+            {
+                log.warn("AST cache: {} is corrupted", file);
+                return null;
+            }
+            SimpleNode root = serializer.read(in, p, template);
+            log.debug("AST cache: loaded {} from {}", template.getName(), file);
+            return root;
+        }
+        catch (IOException | RuntimeException e)
+        {
+            log.warn("AST cache: cannot load {} from {}", template.getName(), file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the tree of a template. Failures are logged and otherwise ignored.
+     * @param template template being processed
+     * @param source template source
+     * @param root root node as returned by the parser, before initialization
+     */
+    public void store(Template template, CharSequence source, SimpleNode root)
+    {
+        parser();
+        File file = file(template);
+        File temp = null;
+        try
+        {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            serializer.write(root, new DataOutputStream(payload));
+            byte[] data = payload.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, data.length);
+
+            Map<String, Integer> directives = new LinkedHashMap<>();
+            directiveTypes(root, template, directives);
+
+            temp = File.createTempFile("ast", ".tmp", directory);
+            try (OutputStream stream = Files.newOutputStream(temp.toPath()))
+            {
+                DataOutputStream out = new DataOutputStream(stream);
+                out.writeInt(MAGIC);
+                out.writeUTF(configuration);
+                out.writeUTF(template.getName());
+                out.writeUTF(loaderName(template));
+                byte[] hash = digest(source);
+                out.writeByte(hash.length);
+                out.write(hash);
+                out.writeInt(directives.size());
+                for (Map.Entry<String, Integer> directive : directives.entrySet())
+                {
+                    out.writeUTF(directive.getKey());
+                    out.writeInt(directive.getValue());
+                }
+                out.writeInt(data.length);
+                out.writeLong(crc.getValue());
+                out.write(data);
+                out.flush();
+            }
+            try
+            {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException amnse)
+            {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            temp = null;
+            log.debug("AST cache: stored {} in {}", template.getName(), file);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            log.warn("AST cache: cannot store {} in {}", template.getName(), file, e);
+        }
+        finally
+        {
+            if (temp != null && !temp.delete())
+            {
+                temp.deleteOnExit();
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.apache.velocity.runtime.resource;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.velocity.runtime.parser.node.Node;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * <p>Weighs resources by their estimated size, expressed in AST nodes.</p>
+ * <p>A template weighs the number of nodes of its AST. A content resource
+ * (used by <code>#include</code>) weighs one unit per 64 characters.</p>
+ *
+ * @since 2.6
+ */
+public class ASTSizeWeigher implements ResourceWeigher
+{
+    /**
+     * Number of characters of a content resource counted as one node
+     */
+    private static final int CHARS_PER_NODE = 64;
+
+    /**
+     * @see ResourceWeigher#weigh(Object, Resource)
+     */
+    @Override
+    public int weigh(Object key, Resource resource)
+    {
+        Object data = resource.getData();
+        if (data instanceof Node)
+        {
+            return countNodes((Node)data);
+        }
+        else if (data instanceof String)
+        {
+            return 1 + ((String)data).length() / CHARS_PER_NODE;
+        }
+        return 1;
+    }
+
+    private static int countNodes(Node root)
+    {
+        int count = 0;
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty())
+        {
+            Node node = pending.pop();
+            ++count;
+            for (int i = 0; i < node.jjtGetNumChildren(); ++i)
+            {
+                pending.push(node.jjtGetChild(i));
+            }
+        }
+        return count;
+    }
+}
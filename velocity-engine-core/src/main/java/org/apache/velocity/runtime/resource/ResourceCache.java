@@ -49,6 +49,21 @@
      */
     Resource get(Object resourceKey);
 
+    /**
+     *  retrieves a Resource from the cache without recording
+     *  an access, for maintenance tasks like the background
+     *  modification checks which should not alter the eviction
+     *  policy. Defaults to <code>get()</code>.
+     *
+     *  @param resourceKey key for Resource to be retrieved
+     *  @return Resource specified or null if not found
+     *  @since 2.6
+     */
+    default Resource peek(Object resourceKey)
+    {
+        return get(resourceKey);
+    }
+
     /**
      *  stores a Resource in the cache
      *
@@ -23,6 +23,9 @@
 import org.apache.velocity.exception.ResourceNotFoundException;
 import org.apache.velocity.runtime.RuntimeServices;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Class to manage the text resource for the Velocity
  * Runtime.
@@ -78,4 +81,17 @@ Resource getResource(String resourceName, int resourceType, String encoding)
      */
     String getLoaderNameForResource(String resourceName);
 
+    /**
+     * Lists the names of the resources provided by the resource loaders which are able to
+     * enumerate them.
+     *
+     * @return resource names
+     * @see org.apache.velocity.runtime.resource.loader.ResourceLoader#getResourceNames()
+     * @since 2.6
+     */
+    default List<String> getResourceNames()
+    {
+        return Collections.emptyList();
+    }
+
 }
@@ -19,6 +19,7 @@
  * under the License.
  */
 
+import org.apache.velocity.Template;
 import org.apache.velocity.exception.ParseErrorException;
 import org.apache.velocity.exception.ResourceNotFoundException;
 import org.apache.velocity.exception.VelocityException;
@@ -33,10 +34,23 @@
 
 import org.slf4j.Logger;
 
+import java.io.File;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -87,6 +101,21 @@
     /** Logging. */
     protected Logger log = null;
 
+    /**
+     * Loads and refreshes in progress, by resource key
+     */
+    private final ConcurrentHashMap<String, PendingLoad> pendingLoads = new ConcurrentHashMap<>();
+
+    /**
+     * Whether modification checks are done in the background rather than on request threads
+     */
+    private boolean backgroundCheck = false;
+
+    /**
+     * Persistent cache of parsed templates, if configured
+     */
+    private ASTDiskCache astCache = null;
+
     /**
      * Initialize the ResourceManager.
      *
@@ -200,6 +229,26 @@ public synchronized void initialize(final RuntimeServices rs)
 
         globalCache.initialize(rsvc);
 
+        /*
+         * is a persistent cache of parsed templates specified?
+         */
+        String astCacheDirectory = StringUtils.trim(rsvc.getString(RuntimeConstants.RESOURCE_MANAGER_AST_CACHE_DIRECTORY));
+        if (StringUtils.isNotEmpty(astCacheDirectory))
+        {
+            astCache = new ASTDiskCache(rsvc, new File(astCacheDirectory));
+            log.debug("ResourceManager: parsed templates are cached in {}", astCacheDirectory);
+        }
+
+        /*
+         * start the background modification checks if asked to
+         */
+        backgroundCheck = rsvc.getBoolean(RuntimeConstants.RESOURCE_MANAGER_BACKGROUND_CHECK, false);
+        if (backgroundCheck)
+        {
+            long interval = Math.max(1, rsvc.getConfiguration().getLong(RuntimeConstants.RESOURCE_MANAGER_BACKGROUND_CHECK_INTERVAL, 1));
+            startBackgroundCheck(interval);
+        }
+
         isInit = true;
 
         log.trace("Default ResourceManager initialization complete.");
@@ -263,7 +312,9 @@ private void assembleResourceLoaderInitializers()
      * RESOURCE_TEMPLATE</code>).
      *
      * This method is now unsynchronized which requires that ResourceCache
-     * implementations be thread safe (as the default is).
+     * implementations be thread safe (as the default is). Concurrent loads
+     * or refreshes of the same resource are coalesced: only one thread loads
+     * and parses the resource, and the other ones wait for its result.
      *
      * @param  resourceName  The name of the resource to retrieve.
      * @param  resourceType  The type of resource (<code>RESOURCE_TEMPLATE</code>, <code>RESOURCE_CONTENT</code>, etc.).
@@ -297,25 +348,21 @@ public Resource getResource(final String resourceName, final int resourceType, f
             try
             {
                 // avoids additional method call to refreshResource
-                if (resource.requiresChecking())
+                if (!backgroundCheck && resource.requiresChecking())
                 {
                     /*
                      * both loadResource() and refreshResource() now return
                      * a new Resource instance when they are called
-                     * (put in the cache when appropriate) in order to allow
-                     * several threads to parse the same template simultaneously.
-                     * It is redundant work and will cause more garbage collection but the
-                     * benefit is that it allows concurrent parsing and processing
-                     * without race conditions when multiple requests try to
-                     * refresh/load the same template at the same time.
+                     * (put in the cache when appropriate), so that a template
+                     * in use in another thread is never partially overwritten.
                      *
-                     * Another alternative is to limit template parsing/retrieval
-                     * so that only one thread can parse each template at a time
-                     * but that creates a scalability bottleneck.
+                     * Concurrent refreshes of the same resource are coalesced,
+                     * so that only one thread checks and parses it again.
                      *
                      * See VELOCITY-606, VELOCITY-595 and VELOCITY-24
                      */
-                    resource = refreshResource(resource, encoding);
+                    final Resource cached = resource;
+                    resource = loadOnce(resourceKey, () -> refreshResource(cached, encoding));
                 }
             }
             catch (ResourceNotFoundException rnfe)
@@ -341,14 +388,18 @@ public Resource getResource(final String resourceName, final int resourceType, f
             try
             {
                 /*
-                 *  it's not in the cache, so load it.
+                 *  it's not in the cache, so load it, unless another
+                 *  thread is already doing so.
                  */
-                resource = loadResource(resourceName, resourceType, encoding);
-
-                if (resource.getResourceLoader().isCachingOn())
+                resource = loadOnce(resourceKey, () ->
                 {
-                    globalCache.put(resourceKey, resource);
-                }
+                    Resource loaded = loadResource(resourceName, resourceType, encoding);
+                    if (loaded.getResourceLoader().isCachingOn())
+                    {
+                        globalCache.put(resourceKey, loaded);
+                    }
+                    return loaded;
+                });
             }
             catch (ResourceNotFoundException rnfe)
             {
@@ -370,6 +421,150 @@ public Resource getResource(final String resourceName, final int resourceType, f
         return resource;
     }
 
+    /**
+     * Schedules the periodic background modification checks. The scheduler thread only weakly
+     * references this resource manager, and stops as soon as it has been garbage collected.
+     *
+     * @param  interval  interval between two checks, in seconds
+     */
+    private void startBackgroundCheck(long interval)
+    {
+        final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable ->
+        {
+            Thread thread = new Thread(runnable, "velocity-resource-checker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final WeakReference<ResourceManagerImpl> manager = new WeakReference<>(this);
+        scheduler.scheduleWithFixedDelay(() ->
+        {
+            ResourceManagerImpl resourceManager = manager.get();
+            if (resourceManager == null)
+            {
+                scheduler.shutdown();
+            }
+            else
+            {
+                resourceManager.checkResources();
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+        log.debug("ResourceManager: checking resources modifications in the background every {}s", interval);
+    }
+
+    /**
+     * Checks all the cached resources which are due for a modification check, and refreshes
+     * the modified ones. The refreshed resources replace the cached ones, so rendering threads
+     * never wait for the loaders.
+     */
+    protected void checkResources()
+    {
+        List<Object> keys = new ArrayList<>();
+        try
+        {
+            for (Iterator<?> it = globalCache.enumerateKeys(); it.hasNext(); )
+            {
+                keys.add(it.next());
+            }
+        }
+        catch (ConcurrentModificationException cme)
+        {
+            /* non concurrent cache modified meanwhile, the remaining keys will be checked next time */
+        }
+        for (Object key : keys)
+        {
+            /* not a template request, the cache eviction policy is left alone */
+            final Resource resource = globalCache.peek(key);
+            if (resource == null || !resource.requiresChecking())
+            {
+                continue;
+            }
+            try
+            {
+                loadOnce(String.valueOf(key), () -> refreshResource(resource, resource.getEncoding()));
+            }
+            catch (ResourceNotFoundException rnfe)
+            {
+                log.debug("ResourceManager: resource '{}' has been removed", resource.getName());
+                globalCache.remove(key);
+            }
+            catch (RuntimeException re)
+            {
+                /* keep the current version */
+                log.error("ResourceManager: could not refresh resource '{}'", resource.getName(), re);
+            }
+        }
+    }
+
+    /**
+     * Runs a resource load or refresh, unless the same resource is already being
+     * loaded or refreshed by another thread, in which case its result is awaited.
+     *
+     * @param  resourceKey  resource cache key
+     * @param  loader  load or refresh action
+     * @return  loaded resource
+     */
+    private Resource loadOnce(String resourceKey, Callable<Resource> loader)
+    {
+        PendingLoad load = new PendingLoad(loader);
+        PendingLoad pending = pendingLoads.putIfAbsent(resourceKey, load);
+        if (pending == null)
+        {
+            try
+            {
+                load.run();
+            }
+            finally
+            {
+                pendingLoads.remove(resourceKey, load);
+            }
+            pending = load;
+        }
+        else if (pending.owner == Thread.currentThread())
+        {
+            /* reentrant load of the same resource: waiting would deadlock */
+            pending = load;
+            load.run();
+        }
+
+        try
+        {
+            return pending.get();
+        }
+        catch (InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+            throw new VelocityException("Interrupted while waiting for resource '" + resourceKey + "'", ie,
+                rsvc.getLogContext().getStackTrace());
+        }
+        catch (ExecutionException ee)
+        {
+            Throwable cause = ee.getCause();
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException)cause;
+            }
+            else if (cause instanceof Error)
+            {
+                throw (Error)cause;
+            }
+            throw new VelocityException("Could not load resource '" + resourceKey + "'", cause,
+                rsvc.getLogContext().getStackTrace());
+        }
+    }
+
+    /**
+     * Load or refresh in progress
+     */
+    private static class PendingLoad extends FutureTask<Resource>
+    {
+        final Thread owner = Thread.currentThread();
+
+        PendingLoad(Callable<Resource> loader)
+        {
+            super(loader);
+        }
+    }
+
     /**
      * Create a new Resource of the specified type.
      *
@@ -383,6 +578,14 @@ protected Resource createResource(String resourceName, int resourceType)
         return ResourceFactory.getResource(resourceName, resourceType);
     }
 
+    private void setASTCache(Resource resource)
+    {
+        if (astCache != null && resource instanceof Template)
+        {
+            ((Template)resource).setASTCache(astCache);
+        }
+    }
+
     /**
      * Loads a resource from the current set of resource loaders.
      *
@@ -400,6 +603,7 @@ protected Resource loadResource(String resourceName, int resourceType, String en
             ParseErrorException
     {
         Resource resource = createResource(resourceName, resourceType);
+        setASTCache(resource);
         resource.setRuntimeServices(rsvc);
         resource.setName(resourceName);
         resource.setEncoding(encoding);
@@ -552,6 +756,7 @@ protected Resource refreshResource(Resource resource, final String encoding)
             Resource newResource =
                 ResourceFactory.getResource(resource.getName(), resource.getType());
 
+            setASTCache(newResource);
             newResource.setRuntimeServices(rsvc);
             newResource.setName(resource.getName());
             newResource.setEncoding(resource.getEncoding());
@@ -588,6 +793,21 @@ public String getLoaderNameForResource(String resourceName)
         return loader.getClass().toString();
     }
 
+    /**
+     * @see ResourceManager#getResourceNames()
+     * @since 2.6
+     */
+    @Override
+    public List<String> getResourceNames()
+    {
+        Set<String> names = new LinkedHashSet<>();
+        for (ResourceLoader loader : resourceLoaders)
+        {
+            names.addAll(loader.getResourceNames());
+        }
+        return new ArrayList<>(names);
+    }
+
     /**
      * Returns the first {@link ResourceLoader} in which the specified
      * resource exists.
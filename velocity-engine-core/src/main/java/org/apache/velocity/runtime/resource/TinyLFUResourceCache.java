@@ -0,0 +1,684 @@
+package org.apache.velocity.runtime.resource;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.velocity.exception.VelocityException;
+import org.apache.velocity.runtime.RuntimeConstants;
+import org.apache.velocity.runtime.RuntimeServices;
+import org.apache.velocity.util.ClassUtils;
+import org.slf4j.Logger;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>Concurrent resource cache using the W-TinyLFU eviction policy.</p>
+ * <p>New entries are first admitted in a small LRU <i>window</i>. Entries evicted from the
+ * window then compete with the least recently used entries of the main space, and the
+ * entry with the lowest estimated access frequency is evicted. The main space is a
+ * segmented LRU, where entries accessed again are promoted from the <i>probation</i>
+ * segment to the <i>protected</i> one. Access frequencies are estimated by a
+ * count-min sketch of 4-bit counters, which is periodically aged.</p>
+ * <p>Reads never lock: they hit a concurrent map, and record the access in a striped,
+ * lossy buffer. The buffers are replayed against the policy when they fill up, or on
+ * the next write, by whichever thread gets the eviction lock.</p>
+ * <p>The cache is bounded by the <code>resource.manager.cache.default_size</code> property
+ * (a value of <code>0</code> or less means unbounded). If a weigher class is specified with
+ * <code>resource.manager.cache.weigher.class</code>, the cache is rather bounded by the total
+ * weight given by <code>resource.manager.cache.max_weight</code>.</p>
+ * <p>To use it:</p>
+ * <pre><code>
+ * resource.manager.cache.class = org.apache.velocity.runtime.resource.TinyLFUResourceCache
+ * </code></pre>
+ *
+ * @see ASTSizeWeigher
+ * @since 2.6
+ */
+public class TinyLFUResourceCache implements ResourceCache
+{
+    /**
+     * Percentage of the maximum weight allowed to the admission window
+     */
+    private static final int WINDOW_PERCENT = 1;
+
+    /**
+     * Percentage of the main space allowed to the protected segment
+     */
+    private static final int PROTECTED_PERCENT = 80;
+
+    /**
+     * Default maximum weight, when a weigher is used
+     */
+    private static final long DEFAULT_MAX_WEIGHT = 100000L;
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+    private static final int REMOVED = 3;
+
+    /**
+     * Runtime services, initialized by the
+     * <code>initialize()</code> method.
+     */
+    protected RuntimeServices rsvc = null;
+
+    protected Logger log;
+
+    private final ConcurrentHashMap<Object, Node> data = new ConcurrentHashMap<>(512, 0.5f, 30);
+
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    private ReadBuffer[] readBuffers;
+
+    private ResourceWeigher weigher = null;
+
+    /* policy state, guarded by the eviction lock */
+    private long maximum = 0;
+    private long windowMaximum;
+    private long protectedMaximum;
+    private long totalWeight = 0;
+    private long windowWeight = 0;
+    private long protectedWeight = 0;
+    private final AccessQueue window = new AccessQueue();
+    private final AccessQueue probation = new AccessQueue();
+    private final AccessQueue protectedSegment = new AccessQueue();
+    private FrequencySketch sketch;
+
+    /**
+     * @see org.apache.velocity.runtime.resource.ResourceCache#initialize(org.apache.velocity.runtime.RuntimeServices)
+     */
+    @Override
+    public void initialize(RuntimeServices rs)
+    {
+        rsvc = rs;
+        log = rsvc.getLog("cache");
+
+        String weigherClassName = rsvc.getString(RuntimeConstants.RESOURCE_MANAGER_CACHE_WEIGHER_CLASS);
+        if (StringUtils.isNotEmpty(weigherClassName))
+        {
+            Object weigherObject;
+            try
+            {
+                weigherObject = ClassUtils.getNewInstance(weigherClassName);
+            }
+            catch (ClassNotFoundException | IllegalAccessException | InstantiationException e)
+            {
+                String msg = "Could not instantiate resource weigher class '" + weigherClassName + "'";
+                log.error(msg, e);
+                throw new VelocityException(msg, e);
+            }
+            if (!(weigherObject instanceof ResourceWeigher))
+            {
+                String msg = "The specified resource weigher class (" + weigherClassName +
+                    ") must implement " + ResourceWeigher.class.getName();
+                log.error(msg);
+                throw new VelocityException(msg);
+            }
+            weigher = (ResourceWeigher)weigherObject;
+            maximum = rsvc.getConfiguration().getLong(RuntimeConstants.RESOURCE_MANAGER_CACHE_MAX_WEIGHT, DEFAULT_MAX_WEIGHT);
+        }
+        else
+        {
+            maximum = rsvc.getInt(RuntimeConstants.RESOURCE_MANAGER_DEFAULTCACHE_SIZE, 89);
+        }
+
+        if (maximum > 0)
+        {
+            /* small caches still need a window, so that new entries do not compete right away */
+            windowMaximum = Math.max(1, maximum * WINDOW_PERCENT / 100);
+            protectedMaximum = (maximum - windowMaximum) * PROTECTED_PERCENT / 100;
+            sketch = new FrequencySketch(weigher == null ? (int)Math.min(maximum, 1 << 20) : 256);
+            int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)) * 2;
+            readBuffers = new ReadBuffer[stripes];
+            for (int i = 0; i < stripes; ++i)
+            {
+                readBuffers[i] = new ReadBuffer();
+            }
+        }
+        log.debug("initialized ({}) with maximum {} {}", getClass(), maximum > 0 ? maximum : "unbounded",
+            weigher == null ? "entries" : "weight");
+    }
+
+    /**
+     * @see org.apache.velocity.runtime.resource.ResourceCache#get(java.lang.Object)
+     */
+    @Override
+    public Resource get(Object key)
+    {
+        Node node = data.get(key);
+        if (node == null)
+        {
+            return null;
+        }
+        if (maximum > 0)
+        {
+            recordAccess(node);
+        }
+        return node.value;
+    }
+
+    /**
+     * @see org.apache.velocity.runtime.resource.ResourceCache#peek(java.lang.Object)
+     * @since 2.6
+     */
+    @Override
+    public Resource peek(Object key)
+    {
+        Node node = data.get(key);
+        return node == null ? null : node.value;
+    }
+
+    /**
+     * @see org.apache.velocity.runtime.resource.ResourceCache#put(java.lang.Object, org.apache.velocity.runtime.resource.Resource)
+     */
+    @Override
+    public Resource put(Object key, Resource value)
+    {
+        if (maximum <= 0)
+        {
+            Node previous = data.put(key, new Node(key, value, 1));
+            return previous == null ? null : previous.value;
+        }
+        int weight = weigher == null ? 1 : Math.max(1, weigher.weigh(key, value));
+        evictionLock.lock();
+        try
+        {
+            drainReadBuffers();
+            Resource previous = null;
+            Node node = data.get(key);
+            if (node == null)
+            {
+                node = new Node(key, value, weight);
+                data.put(key, node);
+                sketch.ensureCapacity(data.size());
+                sketch.increment(key);
+                node.queue = WINDOW;
+                window.addLast(node);
+                windowWeight += weight;
+                totalWeight += weight;
+            }
+            else
+            {
+                previous = node.value;
+                node.value = value;
+                int delta = weight - node.weight;
+                node.weight = weight;
+                totalWeight += delta;
+                if (node.queue == WINDOW)
+                {
+                    windowWeight += delta;
+                }
+                else if (node.queue == PROTECTED)
+                {
+                    protectedWeight += delta;
+                }
+                onAccess(node);
+            }
+            evict();
+            return previous;
+        }
+        finally
+        {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * @see org.apache.velocity.runtime.resource.ResourceCache#remove(java.lang.Object)
+     */
+    @Override
+    public Resource remove(Object key)
+    {
+        if (maximum <= 0)
+        {
+            Node previous = data.remove(key);
+            return previous == null ? null : previous.value;
+        }
+        evictionLock.lock();
+        try
+        {
+            Node node = data.remove(key);
+            if (node == null)
+            {
+                return null;
+            }
+            unlink(node);
+            return node.value;
+        }
+        finally
+        {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * @see org.apache.velocity.runtime.resource.ResourceCache#clear()
+     */
+    @Override
+    public void clear()
+    {
+        if (maximum <= 0)
+        {
+            data.clear();
+            return;
+        }
+        evictionLock.lock();
+        try
+        {
+            drainReadBuffers();
+            for (Node node : data.values())
+            {
+                node.queue = REMOVED;
+            }
+            data.clear();
+            window.clear();
+            probation.clear();
+            protectedSegment.clear();
+            totalWeight = windowWeight = protectedWeight = 0;
+        }
+        finally
+        {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * @see org.apache.velocity.runtime.resource.ResourceCache#enumerateKeys()
+     */
+    @Override
+    public Iterator<Object> enumerateKeys()
+    {
+        return Collections.unmodifiableSet(data.keySet()).iterator();
+    }
+
+    /**
+     * Get the current total weight of the cache (or entries count if no weigher is used).
+     * @return total weight
+     */
+    public long getTotalWeight()
+    {
+        if (maximum <= 0)
+        {
+            return data.size();
+        }
+        evictionLock.lock();
+        try
+        {
+            return totalWeight;
+        }
+        finally
+        {
+            evictionLock.unlock();
+        }
+    }
+
+    private void recordAccess(Node node)
+    {
+        ReadBuffer buffer = readBuffers[(int)Thread.currentThread().getId() & (readBuffers.length - 1)];
+        if (!buffer.offer(node) && evictionLock.tryLock())
+        {
+            try
+            {
+                drainReadBuffers();
+            }
+            finally
+            {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    /* Methods below must be called with the eviction lock held */
+
+    private void drainReadBuffers()
+    {
+        for (ReadBuffer buffer : readBuffers)
+        {
+            buffer.drain(this);
+        }
+    }
+
+    private void onAccess(Node node)
+    {
+        sketch.increment(node.key);
+        switch (node.queue)
+        {
+            case WINDOW:
+                window.moveToBack(node);
+                break;
+            case PROBATION:
+                probation.remove(node);
+                node.queue = PROTECTED;
+                protectedSegment.addLast(node);
+                protectedWeight += node.weight;
+                while (protectedWeight > protectedMaximum && protectedSegment.first != node)
+                {
+                    Node demoted = protectedSegment.removeFirst();
+                    protectedWeight -= demoted.weight;
+                    demoted.queue = PROBATION;
+                    probation.addLast(demoted);
+                }
+                break;
+            case PROTECTED:
+                protectedSegment.moveToBack(node);
+                break;
+            default:
+                /* removed meanwhile */
+                break;
+        }
+    }
+
+    private void evict()
+    {
+        /* move overflowing window entries to the probation segment, as admission candidates */
+        while (windowWeight > windowMaximum && window.first != null)
+        {
+            Node candidate = window.removeFirst();
+            windowWeight -= candidate.weight;
+            candidate.queue = PROBATION;
+            probation.addLast(candidate);
+        }
+        while (totalWeight > maximum)
+        {
+            Node victim = probation.first;
+            Node candidate = probation.last;
+            Node evicted;
+            if (victim == null)
+            {
+                evicted = protectedSegment.first != null ? protectedSegment.first : window.first;
+            }
+            else if (victim == candidate || sketch.frequency(candidate.key) > sketch.frequency(victim.key))
+            {
+                evicted = victim;
+            }
+            else
+            {
+                evicted = candidate;
+            }
+            if (evicted == null)
+            {
+                break;
+            }
+            data.remove(evicted.key, evicted);
+            unlink(evicted);
+        }
+    }
+
+    private void unlink(Node node)
+    {
+        switch (node.queue)
+        {
+            case WINDOW:
+                window.remove(node);
+                windowWeight -= node.weight;
+                break;
+            case PROBATION:
+                probation.remove(node);
+                break;
+            case PROTECTED:
+                protectedSegment.remove(node);
+                protectedWeight -= node.weight;
+                break;
+            default:
+                return;
+        }
+        totalWeight -= node.weight;
+        node.queue = REMOVED;
+    }
+
+    /**
+     * Cache entry, also element of one of the policy queues
+     */
+    private static final class Node
+    {
+        final Object key;
+        volatile Resource value;
+        int weight;
+        int queue = WINDOW;
+        Node previous;
+        Node next;
+
+        Node(Object key, Resource value, int weight)
+        {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Doubly linked access order queue, from the least to the most recently accessed
+     */
+    private static final class AccessQueue
+    {
+        Node first;
+        Node last;
+
+        void addLast(Node node)
+        {
+            node.previous = last;
+            node.next = null;
+            if (last == null)
+            {
+                first = node;
+            }
+            else
+            {
+                last.next = node;
+            }
+            last = node;
+        }
+
+        void remove(Node node)
+        {
+            if (node.previous == null)
+            {
+                first = node.next;
+            }
+            else
+            {
+                node.previous.next = node.next;
+            }
+            if (node.next == null)
+            {
+                last = node.previous;
+            }
+            else
+            {
+                node.next.previous = node.previous;
+            }
+            node.previous = node.next = null;
+        }
+
+        Node removeFirst()
+        {
+            Node node = first;
+            remove(node);
+            return node;
+        }
+
+        void moveToBack(Node node)
+        {
+            if (node != last)
+            {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+        void clear()
+        {
+            first = last = null;
+        }
+    }
+
+    /**
+     * Lossy bounded buffer of recorded reads. Offers are lock-free, and are dropped
+     * when the buffer is full; draining happens under the eviction lock.
+     */
+    private static final class ReadBuffer
+    {
+        private static final int SIZE = 32;
+        private static final int MASK = SIZE - 1;
+
+        private final AtomicReferenceArray<Node> buffer = new AtomicReferenceArray<>(SIZE);
+        private final AtomicLong writeCount = new AtomicLong();
+        private volatile long readCount = 0;
+
+        /**
+         * @return false if the buffer is full and should be drained
+         */
+        boolean offer(Node node)
+        {
+            long head = readCount;
+            long tail = writeCount.get();
+            if (tail - head >= SIZE)
+            {
+                return false;
+            }
+            if (writeCount.compareAndSet(tail, tail + 1))
+            {
+                buffer.lazySet((int)(tail & MASK), node);
+            }
+            return true;
+        }
+
+        void drain(TinyLFUResourceCache cache)
+        {
+            long head = readCount;
+            long tail = writeCount.get();
+            for (; head < tail; ++head)
+            {
+                int index = (int)(head & MASK);
+                Node node = buffer.get(index);
+                if (node == null)
+                {
+                    /* not published yet */
+                    break;
+                }
+                buffer.lazySet(index, null);
+                cache.onAccess(node);
+            }
+            readCount = head;
+        }
+    }
+
+    /**
+     * Count-min sketch of 4-bit counters, halved when the number of increments reaches
+     * ten times the table size.
+     */
+    private static final class FrequencySketch
+    {
+        private static final long[] SEEDS =
+        {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+        };
+        private static final long RESET_MASK = 0x7777777777777777L;
+        private static final long ONE_MASK = 0x1111111111111111L;
+
+        private long[] table;
+        private int tableMask;
+        private int sampleSize;
+        private int size;
+
+        FrequencySketch(int capacity)
+        {
+            ensureCapacity(capacity);
+        }
+
+        void ensureCapacity(int capacity)
+        {
+            int length = Integer.highestOneBit(Math.max(16, capacity - 1)) << 1;
+            if (table == null || length > table.length)
+            {
+                table = new long[length];
+                tableMask = length - 1;
+                sampleSize = 10 * length;
+                size = 0;
+            }
+        }
+
+        int frequency(Object key)
+        {
+            int hash = spread(key.hashCode());
+            int start = (hash & 3) << 2;
+            int frequency = Integer.MAX_VALUE;
+            for (int i = 0; i < 4; ++i)
+            {
+                int offset = (start + i) << 2;
+                int count = (int)((table[indexOf(hash, i)] >>> offset) & 0xfL);
+                frequency = Math.min(frequency, count);
+            }
+            return frequency;
+        }
+
+        void increment(Object key)
+        {
+            int hash = spread(key.hashCode());
+            int start = (hash & 3) << 2;
+            boolean added = false;
+            for (int i = 0; i < 4; ++i)
+            {
+                int index = indexOf(hash, i);
+                int offset = (start + i) << 2;
+                long mask = 0xfL << offset;
+                if ((table[index] & mask) != mask)
+                {
+                    table[index] += 1L << offset;
+                    added = true;
+                }
+            }
+            if (added && ++size >= sampleSize)
+            {
+                reset();
+            }
+        }
+
+        private void reset()
+        {
+            int odd = 0;
+            for (int i = 0; i < table.length; ++i)
+            {
+                odd += Long.bitCount(table[i] & ONE_MASK);
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            }
+            size = (size >>> 1) - (odd >>> 2);
+        }
+
+        private int indexOf(int hash, int i)
+        {
+            long h = (hash + SEEDS[i]) * SEEDS[i];
+            h += h >>> 32;
+            return (int)h & tableMask;
+        }
+
+        private static int spread(int x)
+        {
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            return (x >>> 16) ^ x;
+        }
+    }
+}
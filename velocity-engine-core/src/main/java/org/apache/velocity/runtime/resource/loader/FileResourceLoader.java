@@ -33,18 +33,41 @@
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
+import java.lang.ref.WeakReference;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A loader for templates stored on the file system.  Treats the template
  * as relative to the configured root path.  If the root path is empty
  * treats the template name as an absolute path.
  *
+ * <p>When the <code>watch</code> property is true, the loader paths are watched
+ * for changes by a {@link WatchService}, and checking whether a resource has been
+ * modified only costs a memory read as long as no change event has been received
+ * for it. The loader falls back to polling the files if the paths cannot be
+ * watched.</p>
+ *
  * @author <a href="mailto:wglass@forio.com">Will Glass-Husain</a>
  * @author <a href="mailto:mailmur@yahoo.com">Aki Nieminen</a>
  * @author <a href="mailto:jvanzyl@apache.org">Jason van Zyl</a>
@@ -65,6 +88,11 @@ public class FileResourceLoader extends ResourceLoader
      */
     private Map<String, String> templatePaths = Collections.synchronizedMap(new HashMap<>());
 
+    /**
+     * Paths watcher, if watching is enabled and supported
+     */
+    private Watcher watcher = null;
+
     /**
      * @see ResourceLoader#init(org.apache.velocity.util.ExtProperties)
      */
@@ -82,6 +110,11 @@ public void init(ExtProperties configuration)
             it.set(path);
             log.debug("FileResourceLoader: adding path '{}'", path);
         }
+
+        if (configuration.getBoolean(RuntimeConstants.RESOURCE_LOADER_WATCH, false))
+        {
+            watcher = Watcher.start(this, paths);
+        }
         log.trace("FileResourceLoader: initialization complete.");
     }
 
@@ -183,6 +216,54 @@ public boolean resourceExists(String name)
         return false;
     }
 
+    /**
+     * Lists the files found under the loader paths.
+     * @return names of the resources this loader provides
+     * @since 2.6
+     */
+    @Override
+    public List<String> getResourceNames()
+    {
+        Set<String> names = new LinkedHashSet<>();
+        for (String path : paths)
+        {
+            final Path root = Paths.get(path);
+            if (!Files.isDirectory(root))
+            {
+                continue;
+            }
+            try
+            {
+                Files.walkFileTree(root, new SimpleFileVisitor<Path>()
+                {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+                    {
+                        if (attrs.isRegularFile())
+                        {
+                            StringBuilder name = new StringBuilder();
+                            for (Path element : root.relativize(file))
+                            {
+                                if (name.length() > 0)
+                                {
+                                    name.append('/');
+                                }
+                                name.append(element.toString());
+                            }
+                            names.add(name.toString());
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            }
+            catch (IOException ioe)
+            {
+                log.warn("FileResourceLoader: cannot list templates under {}", path, ioe);
+            }
+        }
+        return new ArrayList<>(names);
+    }
+
     /**
      * Try to find a template given a normalized path.
      *
@@ -254,6 +335,34 @@ private void closeQuiet(final InputStream is)
     @Override
     public boolean isSourceModified(Resource resource)
     {
+        int root = paths.indexOf(templatePaths.get(resource.getName()));
+        if (watcher != null && watcher.isActive() && root >= 0)
+        {
+            /*
+             * only check the files for which a change has been notified, in the path
+             * the resource was loaded from or in the paths which take precedence over it
+             */
+            boolean check = false;
+            for (int i = 0; i <= root && !check; ++i)
+            {
+                Long version = watcher.getVersion(i, resource.getName());
+                if (version == null)
+                {
+                    continue;
+                }
+                else if (i == root && version != Watcher.DELETED)
+                {
+                    return version != resource.getLastModified();
+                }
+                /* the file has been deleted, or may now be shadowed */
+                check = true;
+            }
+            if (!check)
+            {
+                return false;
+            }
+        }
+
         /*
          * we assume that the file needs to be reloaded;
          * if we find the original file and it's unchanged,
@@ -350,4 +459,199 @@ private File getFile(String path, String template)
 
         return file;
     }
+
+    /**
+     * Watches the loader paths for changes, and keeps the modification date of each file
+     * for which a change event has been received. The watching thread only weakly references
+     * the loader, and stops once the loader has been garbage collected.
+     */
+    private static class Watcher implements Runnable
+    {
+        /**
+         * Version of deleted files, and of files whose modification date cannot be read
+         */
+        static final long DELETED = -1L;
+
+        private final WeakReference<FileResourceLoader> loader;
+        private final WatchService watchService;
+        private final List<Path> roots = new ArrayList<>();
+        private final Map<WatchKey, Path> directories = new ConcurrentHashMap<>();
+        private final Map<Path, Long> versions = new ConcurrentHashMap<>();
+        private volatile boolean active = true;
+
+        private Watcher(FileResourceLoader loader, WatchService watchService)
+        {
+            this.loader = new WeakReference<>(loader);
+            this.watchService = watchService;
+        }
+
+        /**
+         * Start watching the given paths
+         * @return watcher, or null if the paths cannot be watched
+         */
+        static Watcher start(FileResourceLoader loader, List<String> paths)
+        {
+            WatchService watchService = null;
+            try
+            {
+                watchService = FileSystems.getDefault().newWatchService();
+                Watcher watcher = new Watcher(loader, watchService);
+                for (String path : paths)
+                {
+                    Path root = Paths.get(path).toAbsolutePath().normalize();
+                    if ("".equals(path) || !Files.isDirectory(root))
+                    {
+                        loader.log.info("FileResourceLoader: cannot watch path '{}', falling back to polling", path);
+                        watchService.close();
+                        return null;
+                    }
+                    watcher.roots.add(root);
+                    watcher.register(root);
+                }
+                Thread thread = new Thread(watcher, "velocity-file-watcher");
+                thread.setDaemon(true);
+                thread.start();
+                loader.log.debug("FileResourceLoader: watching paths {}", paths);
+                return watcher;
+            }
+            catch (IOException | UnsupportedOperationException e)
+            {
+                loader.log.info("FileResourceLoader: watch service unavailable, falling back to polling", e);
+                if (watchService != null)
+                {
+                    try
+                    {
+                        watchService.close();
+                    }
+                    catch (IOException ioe)
+                    {
+                        // Ignore
+                    }
+                }
+                return null;
+            }
+        }
+
+        boolean isActive()
+        {
+            return active;
+        }
+
+        /**
+         * @param root index of the path
+         * @param name resource name
+         * @return modification date notified for this resource in this path, DELETED, or null if no change was notified
+         */
+        Long getVersion(int root, String name)
+        {
+            return versions.get(roots.get(root).resolve(normalize(name)).normalize());
+        }
+
+        private static String normalize(String name)
+        {
+            if (name.startsWith("/"))
+            {
+                name = name.substring(1);
+            }
+            return name.replace('\\', '/');
+        }
+
+        private void register(Path directory) throws IOException
+        {
+            Files.walkFileTree(directory, new SimpleFileVisitor<Path>()
+            {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException
+                {
+                    WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                    directories.put(key, dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                while (active)
+                {
+                    WatchKey key = watchService.poll(1, TimeUnit.SECONDS);
+                    if (loader.get() == null)
+                    {
+                        break;
+                    }
+                    if (key == null)
+                    {
+                        continue;
+                    }
+                    Path directory = directories.get(key);
+                    for (WatchEvent<?> event : key.pollEvents())
+                    {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+                        {
+                            /* events have been lost, so we cannot trust the watcher anymore */
+                            deactivate("too many changes");
+                            return;
+                        }
+                        if (directory != null)
+                        {
+                            changed(directory.resolve((Path)event.context()));
+                        }
+                    }
+                    if (!key.reset())
+                    {
+                        directories.remove(key);
+                    }
+                }
+            }
+            catch (InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+                deactivate("interrupted");
+            }
+            catch (ClosedWatchServiceException | IOException e)
+            {
+                deactivate(e.getMessage());
+            }
+            finally
+            {
+                try
+                {
+                    watchService.close();
+                }
+                catch (IOException ioe)
+                {
+                    // Ignore
+                }
+            }
+        }
+
+        private void changed(Path file) throws IOException
+        {
+            if (Files.isDirectory(file))
+            {
+                register(file);
+                return;
+            }
+            /*
+             * same source, and thus same precision, as the modification date of the
+             * resources, see getLastModified(); zero means the file cannot be read
+             */
+            long version = file.toFile().lastModified();
+            versions.put(file, version == 0L ? DELETED : version);
+        }
+
+        private void deactivate(String reason)
+        {
+            active = false;
+            FileResourceLoader fileResourceLoader = loader.get();
+            if (fileResourceLoader != null)
+            {
+                fileResourceLoader.log.warn("FileResourceLoader: stopped watching paths ({}), falling back to polling", reason);
+            }
+        }
+    }
 }
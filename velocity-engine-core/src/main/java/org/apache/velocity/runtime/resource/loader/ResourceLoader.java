@@ -35,6 +35,8 @@
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.UnsupportedEncodingException;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * This is abstract class the all text resource loaders should
@@ -270,6 +272,18 @@ public boolean resourceExists(final String resourceName)
         return (reader != null);
     }
 
+    /**
+     * Lists the names of the resources provided by this loader, for the loaders which
+     * are able to enumerate them. The default implementation returns an empty list.
+     *
+     * @return names of the resources this loader provides
+     * @since 2.6
+     */
+    public List<String> getResourceNames()
+    {
+        return Collections.emptyList();
+    }
+
     /**
      * Builds a Reader given a raw InputStream and an encoding. Should be use
      * by every subclass that whishes to accept optional BOMs in resources.
@@ -227,6 +227,17 @@ public Object visit(ASTModNode node, Object data)
         return data;
     }
 
+    /**
+     * @see org.apache.velocity.runtime.parser.node.StandardParserVisitor#visit(org.apache.velocity.runtime.parser.node.ASTNegateNode, java.lang.Object)
+     * @since 2.6
+     */
+    @Override
+    public Object visit(ASTNegateNode node, Object data)
+    {
+        data = node.childrenAccept(this, data);
+        return data;
+    }
+
     /**
      * @see org.apache.velocity.runtime.parser.node.StandardParserVisitor#visit(org.apache.velocity.runtime.parser.node.ASTNotNode, java.lang.Object)
      */
@@ -0,0 +1,352 @@
+package org.apache.velocity.runtime.visitor;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.velocity.context.InternalContextAdapter;
+import org.apache.velocity.runtime.RuntimeConstants;
+import org.apache.velocity.runtime.RuntimeServices;
+import org.apache.velocity.runtime.parser.node.ASTAndNode;
+import org.apache.velocity.runtime.parser.node.ASTBlock;
+import org.apache.velocity.runtime.parser.node.ASTComment;
+import org.apache.velocity.runtime.parser.node.ASTComparisonNode;
+import org.apache.velocity.runtime.parser.node.ASTElseIfStatement;
+import org.apache.velocity.runtime.parser.node.ASTExpression;
+import org.apache.velocity.runtime.parser.node.ASTFalse;
+import org.apache.velocity.runtime.parser.node.ASTFloatingPointLiteral;
+import org.apache.velocity.runtime.parser.node.ASTIfStatement;
+import org.apache.velocity.runtime.parser.node.ASTIntegerLiteral;
+import org.apache.velocity.runtime.parser.node.ASTIntegerRange;
+import org.apache.velocity.runtime.parser.node.ASTMathNode;
+import org.apache.velocity.runtime.parser.node.ASTNegateNode;
+import org.apache.velocity.runtime.parser.node.ASTNotNode;
+import org.apache.velocity.runtime.parser.node.ASTOrNode;
+import org.apache.velocity.runtime.parser.node.ASTStringLiteral;
+import org.apache.velocity.runtime.parser.node.ASTText;
+import org.apache.velocity.runtime.parser.node.ASTTrue;
+import org.apache.velocity.runtime.parser.node.ASTprocess;
+import org.apache.velocity.runtime.parser.node.ConstantNode;
+import org.apache.velocity.runtime.parser.node.Node;
+import org.apache.velocity.runtime.parser.node.SimpleNode;
+
+/**
+ * <p>Optimization pass run on an initialized AST, which:</p>
+ * <ul>
+ *     <li>replaces operators and integer ranges whose operands are literals by a {@link ConstantNode}
+ *     holding their value;</li>
+ *     <li>removes the <code>#elseif</code> and <code>#else</code> branches which follow a constant
+ *     true condition, and empties or removes the branches whose condition is constant false;</li>
+ *     <li>merges adjacent text and comment nodes into a single text node.</li>
+ * </ul>
+ *
+ * <p>Expressions whose evaluation fails or gives null are kept, so that the error is
+ * reported at render time as before. Integer ranges are only folded when ranges are
+ * immutable, since the same value is then shared by all merges.</p>
+ *
+ * @since 2.6
+ */
+public class ConstantFolder extends BaseVisitor
+{
+    private final boolean immutableRanges;
+
+    /**
+     * @param rsvc runtime services
+     */
+    public ConstantFolder(RuntimeServices rsvc)
+    {
+        immutableRanges = rsvc.getBoolean(RuntimeConstants.IMMUTABLE_RANGES, true);
+    }
+
+    /**
+     * Optimize a node tree
+     * @param root root node, which must be initialized
+     * @param context context used to evaluate constant expressions
+     */
+    public void fold(Node root, InternalContextAdapter context)
+    {
+        setContext(context);
+        root.jjtAccept(this, null);
+    }
+
+    /**
+     * Math and comparison nodes inherit their <code>jjtAccept</code> method from
+     * {@link ASTMathNode} and {@link ASTComparisonNode}, and are visited here.
+     * @see org.apache.velocity.runtime.parser.node.StandardParserVisitor#visit(org.apache.velocity.runtime.parser.node.SimpleNode, java.lang.Object)
+     */
+    @Override
+    public Object visit(SimpleNode node, Object data)
+    {
+        data = super.visit(node, data);
+        if (node instanceof ASTMathNode || node instanceof ASTComparisonNode)
+        {
+            foldNode(node);
+        }
+        return data;
+    }
+
+    /**
+     * @see org.apache.velocity.runtime.parser.node.StandardParserVisitor#visit(org.apache.velocity.runtime.parser.node.ASTOrNode, java.lang.Object)
+     */
+    @Override
+    public Object visit(ASTOrNode node, Object data)
+    {
+        data = super.visit(node, data);
+        foldNode(node);
+        return data;
+    }
+
+    /**
+     * @see org.apache.velocity.runtime.parser.node.StandardParserVisitor#visit(org.apache.velocity.runtime.parser.node.ASTAndNode, java.lang.Object)
+     */
+    @Override
+    public Object visit(ASTAndNode node, Object data)
+    {
+        data = super.visit(node, data);
+        foldNode(node);
+        return data;
+    }
+
+    /**
+     * @see org.apache.velocity.runtime.parser.node.StandardParserVisitor#visit(org.apache.velocity.runtime.parser.node.ASTNotNode, java.lang.Object)
+     */
+    @Override
+    public Object visit(ASTNotNode node, Object data)
+    {
+        data = super.visit(node, data);
+        foldNode(node);
+        return data;
+    }
+
+    /**
+     * @see org.apache.velocity.runtime.parser.node.StandardParserVisitor#visit(org.apache.velocity.runtime.parser.node.ASTNegateNode, java.lang.Object)
+     */
+    @Override
+    public Object visit(ASTNegateNode node, Object data)
+    {
+        data = super.visit(node, data);
+        foldNode(node);
+        return data;
+    }
+
+    /**
+     * @see org.apache.velocity.runtime.parser.node.StandardParserVisitor#visit(org.apache.velocity.runtime.parser.node.ASTIntegerRange, java.lang.Object)
+     */
+    @Override
+    public Object visit(ASTIntegerRange node, Object data)
+    {
+        data = super.visit(node, data);
+        if (immutableRanges)
+        {
+            foldNode(node);
+        }
+        return data;
+    }
+
+    /**
+     * @see org.apache.velocity.runtime.parser.node.StandardParserVisitor#visit(org.apache.velocity.runtime.parser.node.ASTprocess, java.lang.Object)
+     */
+    @Override
+    public Object visit(ASTprocess node, Object data)
+    {
+        data = super.visit(node, data);
+        mergeText(node);
+        return data;
+    }
+
+    /**
+     * @see org.apache.velocity.runtime.parser.node.StandardParserVisitor#visit(org.apache.velocity.runtime.parser.node.ASTBlock, java.lang.Object)
+     */
+    @Override
+    public Object visit(ASTBlock node, Object data)
+    {
+        data = super.visit(node, data);
+        mergeText(node);
+        return data;
+    }
+
+    /**
+     * @see org.apache.velocity.runtime.parser.node.StandardParserVisitor#visit(org.apache.velocity.runtime.parser.node.ASTIfStatement, java.lang.Object)
+     */
+    @Override
+    public Object visit(ASTIfStatement node, Object data)
+    {
+        data = super.visit(node, data);
+
+        Node condition = node.jjtGetChild(0);
+        if (isConstant(condition))
+        {
+            if (condition.evaluate(context))
+            {
+                truncate(node, 2);
+                return data;
+            }
+            /* the #if block is never rendered, but the node has to stay */
+            SimpleNode block = (SimpleNode)node.jjtGetChild(1);
+            truncate(block, 0);
+        }
+
+        int i = 2;
+        while (i < node.jjtGetNumChildren())
+        {
+            Node branch = node.jjtGetChild(i);
+            if (branch instanceof ASTElseIfStatement && isConstant(branch.jjtGetChild(0)))
+            {
+                if (branch.jjtGetChild(0).evaluate(context))
+                {
+                    truncate(node, i + 1);
+                    break;
+                }
+                node.removeChild(i);
+            }
+            else
+            {
+                ++i;
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Replace a node by its value if all its operands are constant
+     * @param node operator node
+     */
+    private void foldNode(SimpleNode node)
+    {
+        for (int i = 0; i < node.jjtGetNumChildren(); ++i)
+        {
+            if (!isConstant(node.jjtGetChild(i)))
+            {
+                return;
+            }
+        }
+
+        Object value;
+        boolean truth;
+        try
+        {
+            value = node.value(context);
+            truth = node.evaluate(context);
+        }
+        catch (RuntimeException e)
+        {
+            return;
+        }
+        if (value == null)
+        {
+            return;
+        }
+
+        replace(node, new ConstantNode(node, value, truth));
+    }
+
+    /**
+     * Replace a node by another one in its parent
+     * @param node replaced node
+     * @param replacement replacement node
+     */
+    protected static void replace(Node node, Node replacement)
+    {
+        Node parent = node.jjtGetParent();
+        for (int i = 0; i < parent.jjtGetNumChildren(); ++i)
+        {
+            if (parent.jjtGetChild(i) == node)
+            {
+                replacement.jjtSetParent(parent);
+                parent.jjtAddChild(replacement, i);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Merge each run of adjacent text and comment nodes in the first text node of the run
+     * @param node parent node
+     */
+    private static void mergeText(SimpleNode node)
+    {
+        for (int i = 0; i < node.jjtGetNumChildren(); ++i)
+        {
+            int end = i;
+            ASTText text = null;
+            StringBuilder builder = new StringBuilder();
+            while (end < node.jjtGetNumChildren())
+            {
+                Node child = node.jjtGetChild(end);
+                if (child instanceof ASTText)
+                {
+                    if (text == null)
+                    {
+                        text = (ASTText)child;
+                    }
+                    builder.append(((ASTText)child).getCtext());
+                }
+                else if (child instanceof ASTComment)
+                {
+                    builder.append(((ASTComment)child).getCarr());
+                }
+                else
+                {
+                    break;
+                }
+                ++end;
+            }
+            if (text != null && end - i > 1)
+            {
+                text.setCtext(builder.toString());
+                node.jjtAddChild(text, i);
+                while (--end > i)
+                {
+                    node.removeChild(end);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove the children of a node from the given index
+     * @param node parent node
+     * @param from index of the first child to remove
+     */
+    private static void truncate(SimpleNode node, int from)
+    {
+        for (int i = node.jjtGetNumChildren() - 1; i >= from; --i)
+        {
+            node.removeChild(i);
+        }
+    }
+
+    /**
+     * Check whether a node has a constant value
+     * @param node node
+     * @return whether the node is a literal or a folded expression
+     */
+    protected static boolean isConstant(Node node)
+    {
+        if (node instanceof ASTExpression)
+        {
+            return isConstant(node.jjtGetChild(0));
+        }
+        return node instanceof ConstantNode
+            || node instanceof ASTIntegerLiteral
+            || node instanceof ASTFloatingPointLiteral
+            || node instanceof ASTTrue
+            || node instanceof ASTFalse
+            || node instanceof ASTStringLiteral && ((ASTStringLiteral)node).isConstant();
+    }
+}
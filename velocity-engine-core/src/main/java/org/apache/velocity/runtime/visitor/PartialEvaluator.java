@@ -0,0 +1,263 @@
+package org.apache.velocity.runtime.visitor;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.velocity.app.event.EventCartridge;
+import org.apache.velocity.context.Context;
+import org.apache.velocity.context.InternalContextAdapter;
+import org.apache.velocity.context.InternalEventContext;
+import org.apache.velocity.runtime.RuntimeServices;
+import org.apache.velocity.runtime.directive.BlockMacro;
+import org.apache.velocity.runtime.directive.Define;
+import org.apache.velocity.runtime.directive.Directive;
+import org.apache.velocity.runtime.directive.Foreach;
+import org.apache.velocity.runtime.directive.Macro;
+import org.apache.velocity.runtime.parser.node.ASTBlock;
+import org.apache.velocity.runtime.parser.node.ASTDirective;
+import org.apache.velocity.runtime.parser.node.ASTReference;
+import org.apache.velocity.runtime.parser.node.ASTSetDirective;
+import org.apache.velocity.runtime.parser.node.ASTStringLiteral;
+import org.apache.velocity.runtime.parser.node.ASTprocess;
+import org.apache.velocity.runtime.parser.node.ConstantNode;
+import org.apache.velocity.runtime.parser.node.Node;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>Partial evaluation pass, which specializes an initialized AST for a set of constants,
+ * that is values which are the same for every merge.</p>
+ *
+ * <p>References whose root is a constant, and whose parameters only depend on constants,
+ * are evaluated once and replaced by a {@link ConstantNode}, which holds the rendered value of
+ * rendered references. Rendered references are only left as is when reference insertion event
+ * handlers are configured on the engine or attached to the constants context: the handlers attached
+ * to the merge contexts only see the references which could not be specialized. A top level
+ * <code>#set</code> of a plain reference whose right hand side is constant makes this reference
+ * a constant for the rest of the template. The constant folding and <code>#if</code> pruning
+ * of {@link ConstantFolder} then apply to the result.</p>
+ *
+ * <p>Names assigned by the template itself with <code>#set</code>, <code>#foreach</code>
+ * or <code>#define</code> are never considered constant. Macro definitions and block macro
+ * calls are left as is, since macro arguments can shadow any name. The constants, and the
+ * objects they reference, must not be modified while the specialized tree is in use, and their
+ * methods are assumed to have no side effects. Neither templates nor macros called from the
+ * specialized tree may assign them.</p>
+ *
+ * @since 2.6
+ */
+public class PartialEvaluator extends ConstantFolder
+{
+    private final RuntimeServices rsvc;
+
+    private final Context constants;
+
+    /**
+     * Number of assignments in the tree, by reference name
+     */
+    private final Map<String, Integer> assigned = new HashMap<>();
+
+    /**
+     * Names bound to a constant by a top level <code>#set</code>
+     */
+    private final Set<String> bound = new HashSet<>();
+
+    /**
+     * Whether rendered references have to go through reference insertion event handlers
+     */
+    private boolean insertionHandlers = false;
+
+    /**
+     * @param rsvc runtime services
+     * @param constants constant values
+     */
+    public PartialEvaluator(RuntimeServices rsvc, Context constants)
+    {
+        super(rsvc);
+        this.rsvc = rsvc;
+        this.constants = constants;
+    }
+
+    /**
+     * Specialize a node tree
+     * @param root root node, which must be initialized
+     * @param context context holding the constants, used to evaluate the constant parts
+     */
+    public void specialize(Node root, InternalContextAdapter context)
+    {
+        EventCartridge cartridge = constants instanceof InternalEventContext ? ((InternalEventContext)constants).getEventCartridge() : null;
+        insertionHandlers = rsvc.getApplicationEventCartridge().hasReferenceInsertionEventHandler()
+            || cartridge != null && cartridge.hasReferenceInsertionEventHandler();
+        countAssignments(root);
+        fold(root, context);
+    }
+
+    /**
+     * @see org.apache.velocity.runtime.parser.node.StandardParserVisitor#visit(org.apache.velocity.runtime.parser.node.ASTReference, java.lang.Object)
+     */
+    @Override
+    public Object visit(ASTReference node, Object data)
+    {
+        data = super.visit(node, data);
+
+        /* a rendered reference has to go through the configured reference insertion handlers */
+        Node parent = node.jjtGetParent();
+        boolean rendered = parent instanceof ASTprocess || parent instanceof ASTBlock;
+        if (rendered && insertionHandlers || !isConstant(node))
+        {
+            return data;
+        }
+
+        Object value;
+        try
+        {
+            value = node.value(context);
+        }
+        catch (RuntimeException e)
+        {
+            return data;
+        }
+        if (value == null)
+        {
+            /* keep the reference, so that it is reported at render time */
+            return data;
+        }
+
+        if (rendered)
+        {
+            ConstantNode constant = node.renderConstant(value, node.evaluate(context));
+            if (constant != null)
+            {
+                replace(node, constant);
+            }
+        }
+        else
+        {
+            replace(node, new ConstantNode(node, value, node.evaluate(context)));
+        }
+        return data;
+    }
+
+    /**
+     * @see org.apache.velocity.runtime.parser.node.StandardParserVisitor#visit(org.apache.velocity.runtime.parser.node.ASTSetDirective, java.lang.Object)
+     */
+    @Override
+    public Object visit(ASTSetDirective node, Object data)
+    {
+        data = super.visit(node, data);
+
+        /* only a top level assignment is known to happen before the following nodes */
+        ASTReference left = (ASTReference)node.jjtGetChild(0);
+        Node right = node.jjtGetChild(1);
+        String name = left.getRootString();
+        if (node.jjtGetParent() instanceof ASTprocess && left.jjtGetNumChildren() == 0
+            && assigned.get(name) == 1 && isConstant(right))
+        {
+            Object value = right.value(context);
+            if (value != null)
+            {
+                context.put(name, value);
+                bound.add(name);
+            }
+        }
+        return data;
+    }
+
+    /**
+     * @see org.apache.velocity.runtime.parser.node.StandardParserVisitor#visit(org.apache.velocity.runtime.parser.node.ASTDirective, java.lang.Object)
+     */
+    @Override
+    public Object visit(ASTDirective node, Object data)
+    {
+        /* macro arguments can shadow constants, in macro bodies and in block macro calls bodies */
+        Directive directive = node.getDirective();
+        if (directive instanceof Macro || directive instanceof BlockMacro)
+        {
+            return data;
+        }
+        return super.visit(node, data);
+    }
+
+    /**
+     * Check whether a reference only depends on constants
+     * @param node reference
+     * @return whether the reference can be evaluated
+     */
+    private boolean isConstant(ASTReference node)
+    {
+        String name = node.getRootString();
+        if (name == null || !bound.contains(name) && (assigned.containsKey(name) || !constants.containsKey(name)))
+        {
+            return false;
+        }
+        return hasConstantParameters(node);
+    }
+
+    /**
+     * Check that the descendants of a reference only depend on constants
+     * @param node node
+     * @return whether the parameters are constant
+     */
+    private boolean hasConstantParameters(Node node)
+    {
+        for (int i = 0; i < node.jjtGetNumChildren(); ++i)
+        {
+            Node child = node.jjtGetChild(i);
+            if (child instanceof ASTReference
+                || child instanceof ASTStringLiteral && !((ASTStringLiteral)child).isConstant()
+                || !hasConstantParameters(child))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Count the assignments of each reference name in a tree
+     * @param node node
+     */
+    private void countAssignments(Node node)
+    {
+        Node target = null;
+        if (node instanceof ASTSetDirective)
+        {
+            target = node.jjtGetChild(0);
+        }
+        else if (node instanceof ASTDirective)
+        {
+            Directive directive = ((ASTDirective)node).getDirective();
+            if (directive instanceof Foreach || directive instanceof Define)
+            {
+                target = node.jjtGetChild(0);
+            }
+        }
+        if (target instanceof ASTReference)
+        {
+            assigned.merge(((ASTReference)target).getRootString(), 1, Integer::sum);
+        }
+        for (int i = 0; i < node.jjtGetNumChildren(); ++i)
+        {
+            countAssignments(node.jjtGetChild(i));
+        }
+    }
+}
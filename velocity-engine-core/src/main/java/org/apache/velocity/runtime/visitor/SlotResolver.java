@@ -0,0 +1,264 @@
+package org.apache.velocity.runtime.visitor;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.velocity.runtime.directive.Break;
+import org.apache.velocity.runtime.directive.Directive;
+import org.apache.velocity.runtime.directive.Foreach;
+import org.apache.velocity.runtime.directive.Macro;
+import org.apache.velocity.runtime.parser.node.ASTBlock;
+import org.apache.velocity.runtime.parser.node.ASTDirective;
+import org.apache.velocity.runtime.parser.node.ASTReference;
+import org.apache.velocity.runtime.parser.node.ASTSetDirective;
+import org.apache.velocity.runtime.parser.node.ASTStringLiteral;
+import org.apache.velocity.runtime.parser.node.Node;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>Resolution pass run on an initialized AST, which binds <code>#foreach</code> loop
+ * variables and macro arguments to slots of the rendering frame. Bound variables are no
+ * longer put in the context: the references to them read their root value with an array
+ * load, and the <code>#set</code> directives targeting them write the slot. Other names
+ * are still looked up in and written to the context.</p>
+ *
+ * <p>Velocity scoping is dynamic: templates, macros and evaluated strings rendered from a
+ * loop body see the loop variable by name. So a loop variable is only bound if the loop body
+ * contains no other directive than <code>#foreach</code> and <code>#break</code>, interpolated
+ * strings included. Macro arguments are bound under the same condition on the macro body,
+ * which must not reference the macro body content nor <code>#set</code> an argument,
+ * since such a <code>#set</code> is seen by the caller once the macro returns. Macro
+ * definitions are resolved by their macro, see {@link #resolveMacro}.</p>
+ *
+ * <p>Slots are allocated by lexical nesting depth, starting at zero for each template or
+ * macro body, and each loop or macro call saves and restores the slots it binds, so that
+ * distinct node trees rendered with the same context can share slot indices.</p>
+ *
+ * @since 2.6
+ */
+public class SlotResolver extends BaseVisitor
+{
+    /**
+     * Slots of the variables in scope
+     */
+    private final Map<String, Integer> bindings = new HashMap<>();
+
+    /**
+     * Number of slots in use
+     */
+    private int depth = 0;
+
+    /**
+     * Resolve the loop variables of a template tree, macro definitions excluded
+     * @param root root node, which must be initialized
+     */
+    public void resolve(Node root)
+    {
+        root.jjtAccept(this, null);
+    }
+
+    /**
+     * Resolve the loop variables and the arguments of a macro body. When the arguments can be
+     * bound, the argument at index <i>i</i> in <code>arguments</code> is bound to the slot <i>i</i>.
+     * @param body macro body, which must be initialized
+     * @param arguments argument names, or null if the arguments cannot be bound
+     * @param bodyReference name of the reference to the body content of a block macro call
+     * @return whether the arguments are bound to slots
+     */
+    public boolean resolveMacro(Node body, List<String> arguments, String bodyReference)
+    {
+        boolean bound = arguments != null && isResolvable(body) && !observes(body, new HashSet<>(arguments), bodyReference);
+        if (bound)
+        {
+            for (String argument : arguments)
+            {
+                bindings.put(argument, depth++);
+            }
+        }
+        body.jjtAccept(this, null);
+        return bound;
+    }
+
+    /**
+     * @see org.apache.velocity.runtime.parser.node.StandardParserVisitor#visit(org.apache.velocity.runtime.parser.node.ASTReference, java.lang.Object)
+     */
+    @Override
+    public Object visit(ASTReference node, Object data)
+    {
+        Integer slot = bindings.get(node.getRootString());
+        if (slot != null)
+        {
+            node.setSlot(slot);
+        }
+        return super.visit(node, data);
+    }
+
+    /**
+     * @see org.apache.velocity.runtime.parser.node.StandardParserVisitor#visit(org.apache.velocity.runtime.parser.node.ASTStringLiteral, java.lang.Object)
+     */
+    @Override
+    public Object visit(ASTStringLiteral node, Object data)
+    {
+        Node tree = node.getInterpolatedTree();
+        if (tree != null)
+        {
+            tree.jjtAccept(this, data);
+        }
+        return super.visit(node, data);
+    }
+
+    /**
+     * @see org.apache.velocity.runtime.parser.node.StandardParserVisitor#visit(org.apache.velocity.runtime.parser.node.ASTDirective, java.lang.Object)
+     */
+    @Override
+    public Object visit(ASTDirective node, Object data)
+    {
+        Directive directive = node.getDirective();
+        if (directive instanceof Macro)
+        {
+            /* resolved by the macro itself */
+            return data;
+        }
+        if (directive == null || directive.getClass() != Foreach.class || !(node.jjtGetChild(0) instanceof ASTReference))
+        {
+            return super.visit(node, data);
+        }
+
+        Node block = node.jjtGetChild(node.jjtGetNumChildren() - 1);
+        Node elseBlock = null;
+        Node previous = node.jjtGetChild(node.jjtGetNumChildren() - 2);
+        if (previous instanceof ASTBlock)
+        {
+            elseBlock = block;
+            block = previous;
+        }
+
+        /* the iterable and the #else block are evaluated outside of the loop scope */
+        node.jjtGetChild(2).jjtAccept(this, data);
+        if (elseBlock != null)
+        {
+            elseBlock.jjtAccept(this, data);
+        }
+
+        if (!isResolvable(block))
+        {
+            block.jjtAccept(this, data);
+            return data;
+        }
+
+        String key = ((ASTReference)node.jjtGetChild(0)).getRootString();
+        int slot = depth++;
+        ((Foreach)directive).setSlot(slot);
+        Integer shadowed = bindings.put(key, slot);
+        try
+        {
+            block.jjtAccept(this, data);
+        }
+        finally
+        {
+            if (shadowed == null)
+            {
+                bindings.remove(key);
+            }
+            else
+            {
+                bindings.put(key, shadowed);
+            }
+            --depth;
+        }
+        return data;
+    }
+
+    /**
+     * Check that a loop or macro body cannot see its variables through the context
+     * @param node loop or macro body
+     * @return whether the variables can be bound to slots
+     */
+    private static boolean isResolvable(Node node)
+    {
+        if (node instanceof ASTDirective)
+        {
+            Directive directive = ((ASTDirective)node).getDirective();
+            if (directive == null || directive.getClass() != Foreach.class && directive.getClass() != Break.class)
+            {
+                return false;
+            }
+        }
+        else if (node instanceof ASTStringLiteral)
+        {
+            Node tree = ((ASTStringLiteral)node).getInterpolatedTree();
+            if (tree != null && !isResolvable(tree))
+            {
+                return false;
+            }
+        }
+        for (int i = 0; i < node.jjtGetNumChildren(); ++i)
+        {
+            if (!isResolvable(node.jjtGetChild(i)))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check whether a macro body renders its body content, or sets one of its arguments
+     * @param node macro body
+     * @param arguments argument names
+     * @param bodyReference name of the reference to the body content
+     * @return whether the caller could see the arguments
+     */
+    private static boolean observes(Node node, Set<String> arguments, String bodyReference)
+    {
+        if (node instanceof ASTReference && ((ASTReference)node).getRootString().equals(bodyReference))
+        {
+            return true;
+        }
+        if (node instanceof ASTSetDirective && node.jjtGetChild(0) instanceof ASTReference)
+        {
+            ASTReference left = (ASTReference)node.jjtGetChild(0);
+            if (left.jjtGetNumChildren() == 0 && arguments.contains(left.getRootString()))
+            {
+                return true;
+            }
+        }
+        if (node instanceof ASTStringLiteral)
+        {
+            Node tree = ((ASTStringLiteral)node).getInterpolatedTree();
+            if (tree != null && observes(tree, arguments, bodyReference))
+            {
+                return true;
+            }
+        }
+        for (int i = 0; i < node.jjtGetNumChildren(); ++i)
+        {
+            if (observes(node.jjtGetChild(i), arguments, bodyReference))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -172,6 +172,27 @@ public static InputStream getResourceAsStream(Class<?> claz, String name)
     public static VelMethod getMethod(String methodName, Object[] params,
                                     Class<?>[] paramClasses, Object o, InternalContextAdapter context,
                                     SimpleNode node, boolean strictRef)
+    {
+        return getMethod(methodName, params, paramClasses, o, context, node, strictRef, null);
+    }
+
+    /**
+    * Lookup a VelMethod object given the method signature that is specified in
+    * the passed in parameters, reusing the introspection info of the calling node.
+    * @param methodName Name of method
+    * @param params Array of objects that are parameters to the method
+    * @param paramClasses Array of Classes corresponding to the types in params.
+    * @param o Object to introspect for the given method.
+    * @param context Context from which the method cache is acquired
+    * @param node ASTNode, used for error reporting.
+    * @param strictRef If no method is found, throw an exception, never return null in this case
+    * @param info introspection info for the node, or null to build a new one
+    * @return VelMethod object if the object is found, null if not matching method is found
+    * @since 2.6
+    */
+    public static VelMethod getMethod(String methodName, Object[] params,
+                                    Class<?>[] paramClasses, Object o, InternalContextAdapter context,
+                                    SimpleNode node, boolean strictRef, Info info)
     {
         VelMethod method = null;
         try
@@ -200,8 +221,11 @@ public static VelMethod getMethod(String methodName, Object[] params,
                 /*
                 * otherwise, do the introspection, and then cache it
                 */
-                method = node.getRuntimeServices().getUberspect().getMethod(o, methodName, params,
-                    new Info(node.getTemplateName(), node.getLine(), node.getColumn()));
+                if (info == null)
+                {
+                    info = new Info(node.getTemplateName(), node.getLine(), node.getColumn());
+                }
+                method = node.getRuntimeServices().getUberspect().getMethod(o, methodName, params, info);
 
                 if (method != null)
                 {
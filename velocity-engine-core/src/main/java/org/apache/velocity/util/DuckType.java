@@ -19,12 +19,14 @@
  * under the License.
  */
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.math.BigDecimal;
-import java.util.HashMap;
-import java.util.Map;
 
 import static org.apache.velocity.runtime.parser.node.MathUtils.isZero;
 
@@ -47,26 +49,50 @@
         SIZE("size");
 
         final String name;
-        final Map<Class<?>, Object> cache = new HashMap<>();
+
+        /*
+         * method handle (or method) of each class, or NO_METHOD; replaced as a whole when cleared.
+         * Values only reference JDK classes, so that they do not keep Velocity's class loader
+         * alive through the JDK classes they are attached to.
+         */
+        volatile ClassValue<Object> cache = newCache();
 
         Types(String name)
         {
             this.name = name;
         }
 
-        void set(Class<?> c, Object o)
+        private ClassValue<Object> newCache()
         {
-            cache.put(c, o);
+            return new ClassValue<Object>()
+            {
+                @Override
+                protected Object computeValue(Class<?> c)
+                {
+                    Object accessor = bind(c, Types.this);
+                    return accessor == null ? NO_METHOD : accessor;
+                }
+            };
         }
 
         Object get(Class<?> c)
         {
             return cache.get(c);
         }
+
+        void clear()
+        {
+            cache = newCache();
+        }
     }
 
     protected static final Object NO_METHOD = new Object();
 
+    /**
+     * Type of the bound method handles
+     */
+    private static final MethodType ACCESSOR_TYPE = MethodType.methodType(Object.class, Object.class);
+
     /**
      * Clears the internal cache of all the underlying Types.
      */
@@ -74,7 +100,7 @@ public static void clearCache()
     {
         for(Types type : Types.values())
         {
-            type.cache.clear();
+            type.clear();
         }
     }
         
@@ -246,36 +272,67 @@ public static Number asNumber(Object value, boolean coerceType)
 
     protected static Object get(Object value, Types type)
     {
-        try
+        // the cache searches the class at first use
+        Object cached = type.get(value.getClass());
+        if (cached == NO_METHOD)
+        {
+            return cached;
+        }
+        if (cached instanceof MethodHandle)
         {
-            // check cache
-            Class<?> c = value.getClass();
-            Object cached = type.get(c);
-            if (cached == NO_METHOD)
+            try
+            {
+                return (Object)((MethodHandle)cached).invokeExact(value);
+            }
+            catch (Error e)
             {
-                return cached;
+                throw e;
             }
-            if (cached != null)
+            catch (Throwable t)
             {
-                return ((Method)cached).invoke(value);
+                // report exceptions like a reflective call, no checked exceptions, please
+                throw new RuntimeException(new InvocationTargetException(t));
             }
-            // ok, search the class
-            Method method = findMethod(c, type);
-            if (method == null)
+        }
+        try
+        {
+            return ((Method)cached).invoke(value);
+        }
+        catch (InvocationTargetException ite)
+        {
+            if (ite.getCause() instanceof Error)
             {
-                type.set(c, NO_METHOD);
-                return NO_METHOD;
+                throw (Error)ite.getCause();
             }
-            type.set(c, method);
-            return method.invoke(value);
+            throw new RuntimeException(ite);
+        }
+        catch (IllegalAccessException iae)
+        {
+            throw new RuntimeException(iae);// no checked exceptions, please
+        }
+    }
+
+    /**
+     * Binds the method of the given type found in the given class, if any, as a method handle,
+     * or as a reflective method if it cannot be accessed through a method handle.
+     * @param c class
+     * @param type type
+     * @return method handle or method, or null
+     */
+    private static Object bind(Class<?> c, Types type)
+    {
+        Method method = findMethod(c, type);
+        if (method == null)
+        {
+            return null;
         }
-        catch (RuntimeException re)
+        try
         {
-            throw re;
+            return MethodHandles.publicLookup().unreflect(method).asType(ACCESSOR_TYPE);
         }
-        catch (Exception e)
+        catch (IllegalAccessException iae)
         {
-            throw new RuntimeException(e);// no checked exceptions, please
+            return method;
         }
     }
 
@@ -65,6 +65,17 @@ public void init()
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>Changes whenever the cache of this uberspector or of the wrapped one is cleared.</p>
+     * @since 2.6
+     */
+    @Override
+    public long getCacheGeneration()
+    {
+        return super.getCacheGeneration() + (inner == null ? 0L : inner.getCacheGeneration());
+    }
+
     /**
      * {@inheritDoc}
      *
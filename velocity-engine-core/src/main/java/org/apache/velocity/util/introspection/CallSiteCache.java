@@ -0,0 +1,247 @@
+package org.apache.velocity.util.introspection;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * <p>Polymorphic inline cache owned by an AST node, holding the introspection results
+ * ({@link VelMethod}, {@link VelPropertyGet}, ...) of a single call site.</p>
+ * <p>Entries are keyed by the receiver class and by the argument classes. The cache holds at most
+ * {@link #MAX_ENTRIES} entries: beyond that, the call site is considered megamorphic and
+ * new results are not cached anymore.</p>
+ * <p>The cache is shared by all merges and all threads: lookups are lock-free reads of an
+ * immutable snapshot, and updates replace the snapshot atomically. Lookups and updates are given
+ * the current {@link Uberspect#getCacheGeneration() generation} of the uberspector owning the call
+ * site: all entries are dropped whenever it changes, that is whenever one of the introspector
+ * caches of this uberspector is cleared.</p>
+ *
+ * @param <T> cached introspection result type
+ * @since 2.6
+ */
+public class CallSiteCache<T>
+{
+    /**
+     * Maximum number of receiver/arguments combinations cached for one call site
+     */
+    public static final int MAX_ENTRIES = 4;
+
+    private static final Class<?>[] NO_ARGS = new Class<?>[0];
+
+    private static final Entry[] NO_ENTRIES = new Entry[0];
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<CallSiteCache, Snapshot> SNAPSHOT_UPDATER =
+        AtomicReferenceFieldUpdater.newUpdater(CallSiteCache.class, Snapshot.class, "snapshot");
+
+    private volatile Snapshot snapshot = new Snapshot(Long.MIN_VALUE, NO_ENTRIES);
+
+    /**
+     * Lookup a cached result.
+     * @param generation current generation of the uberspector
+     * @param receiver receiver class (or target class for static calls on a Class object)
+     * @param classObject whether the receiver object is a Class object
+     * @param args argument classes, with null elements for null arguments
+     * @return cached result or null
+     */
+    @SuppressWarnings("unchecked")
+    public T get(long generation, Class<?> receiver, boolean classObject, Class<?>[] args)
+    {
+        Snapshot current = snapshot;
+        if (current.generation != generation)
+        {
+            return null;
+        }
+        for (Entry entry : current.entries)
+        {
+            if (entry.matches(receiver, classObject, args))
+            {
+                return (T)entry.target;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Lookup a cached result for a call site without arguments.
+     * @param generation current generation of the uberspector
+     * @param receiver receiver class
+     * @param classObject whether the receiver object is a Class object
+     * @return cached result or null
+     */
+    public T get(long generation, Class<?> receiver, boolean classObject)
+    {
+        return get(generation, receiver, classObject, NO_ARGS);
+    }
+
+    /**
+     * Lookup a cached result for a call site with one argument.
+     * @param generation current generation of the uberspector
+     * @param receiver receiver class (or target class for static calls on a Class object)
+     * @param classObject whether the receiver object is a Class object
+     * @param arg0 argument class, or null for a null argument
+     * @return cached result or null
+     */
+    @SuppressWarnings("unchecked")
+    public T get(long generation, Class<?> receiver, boolean classObject, Class<?> arg0)
+    {
+        Snapshot current = snapshot;
+        if (current.generation != generation)
+        {
+            return null;
+        }
+        for (Entry entry : current.entries)
+        {
+            if (entry.matches(receiver, classObject, 1) && entry.args[0] == arg0)
+            {
+                return (T)entry.target;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Lookup a cached result for a call site with two arguments.
+     * @param generation current generation of the uberspector
+     * @param receiver receiver class (or target class for static calls on a Class object)
+     * @param classObject whether the receiver object is a Class object
+     * @param arg0 first argument class, or null for a null argument
+     * @param arg1 second argument class, or null for a null argument
+     * @return cached result or null
+     */
+    @SuppressWarnings("unchecked")
+    public T get(long generation, Class<?> receiver, boolean classObject, Class<?> arg0, Class<?> arg1)
+    {
+        Snapshot current = snapshot;
+        if (current.generation != generation)
+        {
+            return null;
+        }
+        for (Entry entry : current.entries)
+        {
+            if (entry.matches(receiver, classObject, 2) && entry.args[0] == arg0 && entry.args[1] == arg1)
+            {
+                return (T)entry.target;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Cache a result.
+     * @param generation current generation of the uberspector
+     * @param receiver receiver class (or target class for static calls on a Class object)
+     * @param classObject whether the receiver object is a Class object
+     * @param args argument classes, with null elements for null arguments
+     * @param target result to cache
+     */
+    public void put(long generation, Class<?> receiver, boolean classObject, Class<?>[] args, T target)
+    {
+        Entry entry = new Entry(receiver, classObject, args.length == 0 ? NO_ARGS : args.clone(), target);
+        while (true)
+        {
+            Snapshot current = snapshot;
+            Entry[] entries = current.generation == generation ? current.entries : NO_ENTRIES;
+            if (entries.length >= MAX_ENTRIES)
+            {
+                /* megamorphic call site */
+                return;
+            }
+            for (Entry existing : entries)
+            {
+                if (existing.matches(receiver, classObject, args))
+                {
+                    return;
+                }
+            }
+            Entry[] updated = new Entry[entries.length + 1];
+            System.arraycopy(entries, 0, updated, 0, entries.length);
+            updated[entries.length] = entry;
+            if (SNAPSHOT_UPDATER.compareAndSet(this, current, new Snapshot(generation, updated)))
+            {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Cache a result for a call site without arguments.
+     * @param generation current generation of the uberspector
+     * @param receiver receiver class
+     * @param classObject whether the receiver object is a Class object
+     * @param target result to cache
+     */
+    public void put(long generation, Class<?> receiver, boolean classObject, T target)
+    {
+        put(generation, receiver, classObject, NO_ARGS, target);
+    }
+
+    /**
+     * Immutable view of the cache content
+     */
+    private static final class Snapshot
+    {
+        final long generation;
+        final Entry[] entries;
+
+        Snapshot(long generation, Entry[] entries)
+        {
+            this.generation = generation;
+            this.entries = entries;
+        }
+    }
+
+    private static final class Entry
+    {
+        final Class<?> receiver;
+        final boolean classObject;
+        final Class<?>[] args;
+        final Object target;
+
+        Entry(Class<?> receiver, boolean classObject, Class<?>[] args, Object target)
+        {
+            this.receiver = receiver;
+            this.classObject = classObject;
+            this.args = args;
+            this.target = target;
+        }
+
+        boolean matches(Class<?> receiver, boolean classObject, int argCount)
+        {
+            return this.receiver == receiver && this.classObject == classObject && this.args.length == argCount;
+        }
+
+        boolean matches(Class<?> receiver, boolean classObject, Class<?>[] args)
+        {
+            if (!matches(receiver, classObject, args.length))
+            {
+                return false;
+            }
+            for (int i = 0; i < args.length; ++i)
+            {
+                if (this.args[i] != args[i])
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package org.apache.velocity.util.introspection;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * <p>Lazily computed values, by class.</p>
+ *
+ * <p>The values of classes loaded by the Velocity class loader, or by one of its descendants, are
+ * attached to their class through a {@link ClassValue}: lookups do not lock, and the values go
+ * away with their class. The values of the other classes, like the JDK ones, are kept in a map
+ * owned by this cache instead: attached to such a class, a value referencing Velocity classes
+ * would keep the Velocity class loader alive as long as the class itself, that is forever for
+ * the JDK classes, and prevent a web application using Velocity from being unloaded.</p>
+ *
+ * @param <V> value type
+ * @since 2.6
+ */
+final class ClassCache<V>
+{
+    /**
+     * Whether a class is loaded by the Velocity class loader or one of its descendants
+     */
+    private static final ClassValue<Boolean> LOCAL = new ClassValue<Boolean>()
+    {
+        @Override
+        protected Boolean computeValue(Class<?> type)
+        {
+            ClassLoader velocity = ClassCache.class.getClassLoader();
+            if (velocity == null)
+            {
+                return true;
+            }
+            try
+            {
+                for (ClassLoader loader = type.getClassLoader(); loader != null; loader = loader.getParent())
+                {
+                    if (loader == velocity)
+                    {
+                        return true;
+                    }
+                }
+            }
+            catch (SecurityException se)
+            {
+                /* keep the value in the map */
+            }
+            return false;
+        }
+    };
+
+    private final Function<Class<?>, V> factory;
+
+    private final ClassValue<V> local;
+
+    private final Map<Class<?>, V> foreign = new ConcurrentHashMap<>();
+
+    /**
+     * @param factory computes the value of a class; the values must not reference this cache
+     */
+    ClassCache(final Function<Class<?>, V> factory)
+    {
+        this.factory = factory;
+        local = new ClassValue<V>()
+        {
+            @Override
+            protected V computeValue(Class<?> type)
+            {
+                return factory.apply(type);
+            }
+        };
+    }
+
+    /**
+     * Gets the value of a class, computing it if needed
+     * @param type class
+     * @return value
+     */
+    V get(Class<?> type)
+    {
+        if (LOCAL.get(type))
+        {
+            return local.get(type);
+        }
+        V value = foreign.get(type);
+        if (value == null)
+        {
+            /* like ClassValue, compute outside of any lock and keep the first value stored */
+            value = factory.apply(type);
+            V previous = foreign.putIfAbsent(type, value);
+            if (previous != null)
+            {
+                value = previous;
+            }
+        }
+        return value;
+    }
+}
@@ -23,14 +23,15 @@
 
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A cache of introspection information for a specific class instance.
- * Keys {@link java.lang.reflect.Method} objects by a concatenation of the
- * method name and the names of classes that make up the parameters.
+ * Keys {@link java.lang.reflect.Method} objects by the method name
+ * and the classes that make up the parameters.
  *
  * @author <a href="mailto:jvanzyl@apache.org">Jason van Zyl</a>
  * @author <a href="mailto:bob@werken.com">Bob McWhirter</a>
@@ -75,6 +76,20 @@ public ClassMap(final Class<?> clazz, final Logger log)
      * @since 2.0
      */
     public ClassMap(final Class<?> clazz, final Logger log, final TypeConversionHandler conversionHandler)
+    {
+        this(clazz, log, conversionHandler, null);
+    }
+
+    /**
+     * Constructor sharing method resolutions with the other class maps using the same conversion handler
+     * @param clazz The class for which this ClassMap gets constructed.
+     * @param log logger
+     * @param conversionHandler conversion handler
+     * @param sharedResolutions shared resolutions, or null
+     * @since 2.6
+     */
+    ClassMap(final Class<?> clazz, final Logger log, final TypeConversionHandler conversionHandler,
+             final MethodMap.SharedResolutions sharedResolutions)
     {
         this.clazz = clazz;
         this.log = log;
@@ -85,7 +100,7 @@ public ClassMap(final Class<?> clazz, final Logger log, final TypeConversionHand
             log.debug("== Class: {}", clazz);
         }
 
-        methodCache = createMethodCache(conversionHandler);
+        methodCache = createMethodCache(conversionHandler, sharedResolutions);
 
         if (debugReflection)
         {
@@ -122,9 +137,9 @@ public Method findMethod(final String name, final Object[] params)
      * are taken from all the public methods
      * that our class, its parents and their implemented interfaces provide.
      */
-    private MethodCache createMethodCache(TypeConversionHandler conversionHandler)
+    private MethodCache createMethodCache(TypeConversionHandler conversionHandler, MethodMap.SharedResolutions sharedResolutions)
     {
-        MethodCache methodCache = new MethodCache(log, conversionHandler);
+        MethodCache methodCache = new MethodCache(log, conversionHandler, sharedResolutions);
     //
     // Looks through all elements in the class hierarchy. This one is bottom-first (i.e. we start
     // with the actual declaring class and its interfaces and then move up (superclass etc.) until we
@@ -198,6 +213,9 @@ private void populateMethodCacheWith(MethodCache methodCache, Class<?> classToRe
     /**
      * This is the cache to store and look up the method information.
      *
+     * Methods are looked up by name, then by number of arguments, then by the
+     * exact classes of the arguments, so that a cache hit does not allocate.
+     *
      * @author <a href="mailto:henning@apache.org">Henning P. Schmiedehausen</a>
      * @version $Id$
      */
@@ -205,38 +223,38 @@ private void populateMethodCacheWith(MethodCache methodCache, Class<?> classToRe
     {
         private static final Object CACHE_MISS = new Object();
 
-        private static final String NULL_ARG = Object.class.getName();
+        private static final Class<?> NULL_ARG = Object.class;
 
-        private static final Map<Class<?>, String> convertPrimitives = new HashMap();
+        private static final Map<Class<?>, Class<?>> convertPrimitives = new HashMap<>();
 
         static
         {
-            convertPrimitives.put(Boolean.TYPE,   Boolean.class.getName());
-            convertPrimitives.put(Byte.TYPE,      Byte.class.getName());
-            convertPrimitives.put(Character.TYPE, Character.class.getName());
-            convertPrimitives.put(Double.TYPE,    Double.class.getName());
-            convertPrimitives.put(Float.TYPE,     Float.class.getName());
-            convertPrimitives.put(Integer.TYPE,   Integer.class.getName());
-            convertPrimitives.put(Long.TYPE,      Long.class.getName());
-            convertPrimitives.put(Short.TYPE,     Short.class.getName());
+            convertPrimitives.put(Boolean.TYPE,   Boolean.class);
+            convertPrimitives.put(Byte.TYPE,      Byte.class);
+            convertPrimitives.put(Character.TYPE, Character.class);
+            convertPrimitives.put(Double.TYPE,    Double.class);
+            convertPrimitives.put(Float.TYPE,     Float.class);
+            convertPrimitives.put(Integer.TYPE,   Integer.class);
+            convertPrimitives.put(Long.TYPE,      Long.class);
+            convertPrimitives.put(Short.TYPE,     Short.class);
         }
 
-    	/** Class logger */
+        /** Class logger */
         private final Logger log;
 
         /**
          * Cache of Methods, or CACHE_MISS, keyed by method
-         * name and actual arguments used to find it.
+         * name and then by the classes of the actual arguments used to find it.
          */
-        private final Map<Object, Object> cache = new ConcurrentHashMap<>();
+        private final Map<String, Signatures> cache = new ConcurrentHashMap<>();
 
         /** Map of methods that are searchable according to method parameters to find a match */
         private final MethodMap methodMap;
 
-        private MethodCache(Logger log, TypeConversionHandler conversionHandler)
+        private MethodCache(Logger log, TypeConversionHandler conversionHandler, MethodMap.SharedResolutions sharedResolutions)
         {
             this.log = log;
-            methodMap = new MethodMap(conversionHandler);
+            methodMap = new MethodMap(conversionHandler, sharedResolutions);
         }
 
         /**
@@ -258,9 +276,8 @@ private MethodCache(Logger log, TypeConversionHandler conversionHandler)
         public Method get(final String name, final Object [] params)
                 throws MethodMap.AmbiguousException
         {
-            String methodKey = makeMethodKey(name, params);
-
-            Object cacheEntry = cache.get(methodKey);
+            Signatures signatures = cache.get(name);
+            Object cacheEntry = signatures == null ? null : signatures.get(params);
             if (cacheEntry == CACHE_MISS)
             {
                 // We looked this up before and failed.
@@ -269,6 +286,11 @@ public Method get(final String name, final Object [] params)
 
             if (cacheEntry == null)
             {
+                if (signatures == null)
+                {
+                    signatures = cache.computeIfAbsent(name, key -> new Signatures());
+                }
+                Class<?>[] types = argumentTypes(params);
                 try
                 {
                     // That one is expensive...
@@ -279,11 +301,11 @@ public Method get(final String name, final Object [] params)
                     /*
                      *  that's a miss :-)
                      */
-                    cache.put(methodKey, CACHE_MISS);
+                    signatures.add(types, CACHE_MISS);
                     throw ae;
                 }
 
-                cache.put(methodKey,
+                signatures.add(types,
                         (cacheEntry != null) ? cacheEntry : CACHE_MISS);
             }
 
@@ -293,15 +315,15 @@ public Method get(final String name, final Object [] params)
 
         private void put(Method method)
         {
-            String methodKey = makeMethodKey(method);
+            Class<?>[] types = parameterTypes(method);
+            Signatures signatures = cache.computeIfAbsent(method.getName(), key -> new Signatures());
 
             // We don't overwrite methods because we fill the
             // cache from defined class towards java.lang.Object
             // and that would cause overridden methods to appear
             // as if they were not overridden.
-            if (cache.get(methodKey) == null)
+            if (signatures.add(types, method))
             {
-                cache.put(methodKey, method);
                 methodMap.add(method);
                 if (debugReflection)
                 {
@@ -311,71 +333,165 @@ private void put(Method method)
         }
 
         /**
-         * Make a methodKey for the given method using
-         * the concatenation of the name and the
-         * types of the method parameters.
+         * Get the key types of the given method: its parameter types,
+         * with primitive types converted to the corresponding Object type
+         * so introspection for methods with primitive types will work correctly.
          *
-         * @param method to be stored as key
-         * @return key for ClassMap
+         * @param method to be stored
+         * @return key types
          */
-        private String makeMethodKey(final Method method)
+        private static Class<?>[] parameterTypes(final Method method)
         {
             Class<?>[] parameterTypes = method.getParameterTypes();
-            int args = parameterTypes.length;
-            if (args == 0)
-            {
-                return method.getName();
-            }
-
-            StringBuilder methodKey = new StringBuilder((args+1)*16).append(method.getName());
-
-            for (Class<?> parameterType : parameterTypes)
+            for (int i = 0; i < parameterTypes.length; ++i)
             {
                 /*
-                 * If the argument type is primitive then we want
-                 * to convert our primitive type signature to the
-                 * corresponding Object type so introspection for
-                 * methods with primitive types will work correctly.
-                 *
                  * The lookup map (convertPrimitives) contains all eight
                  * primitives (boolean, byte, char, double, float, int, long, short)
                  * known to Java. So it should never return null for the key passed in.
                  */
-                if (parameterType.isPrimitive())
+                if (parameterTypes[i].isPrimitive())
                 {
-                    methodKey.append((String) convertPrimitives.get(parameterType));
-                } else
-                {
-                    methodKey.append(parameterType.getName());
+                    parameterTypes[i] = convertPrimitives.get(parameterTypes[i]);
                 }
             }
-
-            return methodKey.toString();
+            return parameterTypes;
         }
 
-        private String makeMethodKey(String method, Object[] params)
+        private static Class<?>[] argumentTypes(final Object[] params)
         {
-            int args = params.length;
-            if (args == 0)
+            Class<?>[] types = new Class<?>[params.length];
+            for (int i = 0; i < params.length; ++i)
             {
-                return method;
+                types[i] = argumentType(params[i]);
             }
+            return types;
+        }
+
+        private static Class<?> argumentType(final Object arg)
+        {
+            return arg == null ? NULL_ARG : arg.getClass();
+        }
+
+        /**
+         * The cache entries of a method name, indexed by number of arguments.
+         * The first entries of each arity are kept in an array which lookups scan without
+         * locking or allocating, and which is replaced as a whole when an entry is added.
+         * Since this is only fast for a few entries, the following ones go to a hash map.
+         */
+        private static final class Signatures
+        {
+            /**
+             * Maximum number of entries of an arity kept in its array
+             */
+            private static final int MAX_SCANNED = 8;
+
+            private static final Signature[] NO_SIGNATURES = new Signature[0];
+
+            private volatile Signature[][] byArity = new Signature[0][];
 
-            StringBuilder methodKey = new StringBuilder((args+1)*16).append(method);
+            /**
+             * Entries in excess of the arrays, created when first needed
+             */
+            private volatile Map<Signature, Object> overflow;
 
-            for (Object arg : params)
+            Object get(final Object[] params)
             {
-                if (arg == null)
+                Signature[][] arities = byArity;
+                if (params.length >= arities.length)
                 {
-                    methodKey.append(NULL_ARG);
+                    return null;
                 }
-                else
+                for (Signature signature : arities[params.length])
                 {
-                    methodKey.append(arg.getClass().getName());
+                    if (signature.matches(params))
+                    {
+                        return signature.entry;
+                    }
                 }
+                Map<Signature, Object> others = overflow;
+                return others == null ? null : others.get(new Signature(argumentTypes(params), null));
             }
 
-            return methodKey.toString();
+            /**
+             * Adds an entry, unless one already exists for the same types.
+             * @param types argument types
+             * @param entry Method or CACHE_MISS
+             * @return whether the entry was added
+             */
+            synchronized boolean add(final Class<?>[] types, final Object entry)
+            {
+                Signature[][] arities = byArity;
+                int arity = types.length;
+                Signature[] signatures = arity < arities.length ? arities[arity] : NO_SIGNATURES;
+                for (Signature signature : signatures)
+                {
+                    if (Arrays.equals(signature.types, types))
+                    {
+                        return false;
+                    }
+                }
+                Signature added = new Signature(types, entry);
+                if (signatures.length == MAX_SCANNED)
+                {
+                    if (overflow == null)
+                    {
+                        overflow = new ConcurrentHashMap<>();
+                    }
+                    return overflow.putIfAbsent(added, entry) == null;
+                }
+                Signature[] extended = Arrays.copyOf(signatures, signatures.length + 1);
+                extended[signatures.length] = added;
+                Signature[][] updated = Arrays.copyOf(arities, Math.max(arities.length, arity + 1));
+                for (int i = arities.length; i < arity; ++i)
+                {
+                    updated[i] = NO_SIGNATURES;
+                }
+                updated[arity] = extended;
+                byArity = updated;
+                return true;
+            }
+        }
+
+        /**
+         * A cache entry with the argument types it applies to, which are its key.
+         */
+        private static final class Signature
+        {
+            final Class<?>[] types;
+            final Object entry;
+            private final int hash;
+
+            Signature(final Class<?>[] types, final Object entry)
+            {
+                this.types = types;
+                this.entry = entry;
+                hash = Arrays.hashCode(types);
+            }
+
+            boolean matches(final Object[] params)
+            {
+                for (int i = 0; i < types.length; ++i)
+                {
+                    if (types[i] != argumentType(params[i]))
+                    {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public boolean equals(Object o)
+            {
+                return o instanceof Signature && Arrays.equals(types, ((Signature)o).types);
+            }
+
+            @Override
+            public int hashCode()
+            {
+                return hash;
+            }
         }
     }
 }
@@ -92,11 +92,6 @@ public Method getMethod(final Class<?> c, final String name, final Object[] para
         IntrospectorCache ic = getIntrospectorCache();
 
         ClassMap classMap = ic.get(Validate.notNull(c, "class object is null!"));
-        if (classMap == null)
-        {
-            classMap = ic.put(c);
-        }
-
         return classMap.findMethod(name, Validate.notNull(params, "params object is null!"));
     }
 
@@ -115,15 +110,28 @@ public Field getField(final Class<?> c, final String name)
         IntrospectorCache ic = getIntrospectorCache();
 
         ClassFieldMap classFieldMap = ic.getFieldMap(Validate.notNull(c, "class object is null!"));
-        if (classFieldMap == null)
-        {
-            ic.put(c);
-            classFieldMap = ic.getFieldMap(c);
-        }
-
         return classFieldMap.findField(name);
     }
 
+    /**
+     * Clears the introspection cache.
+     * @since 2.6
+     */
+    public void clearCache()
+    {
+        getIntrospectorCache().clear();
+    }
+
+    /**
+     * Get the current generation of the introspection cache, incremented each time it is cleared.
+     * @return current generation
+     * @since 2.6
+     */
+    public long getCacheGeneration()
+    {
+        return getIntrospectorCache().getGeneration();
+    }
+
     /**
      * Return the internal IntrospectorCache object.
      *
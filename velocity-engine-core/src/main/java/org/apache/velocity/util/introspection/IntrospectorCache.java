@@ -23,14 +23,18 @@
 
 import org.slf4j.Logger;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This is the internal introspector cache implementation.
  *
+ * <p>Class and field maps are kept in a {@link ClassCache}, so lookups do not lock, introspection
+ * of distinct classes proceeds in parallel, and cached entries keep neither their class loader
+ * nor the Velocity one alive.</p>
+ *
  * @author <a href="mailto:henning@apache.org">Henning P. Schmiedehausen</a>
  * @author <a href="mailto:cdauth@cdauth.eu">Candid Dauth</a>
  * @version $Id$
@@ -44,32 +48,53 @@
     public final static String CACHEDUMP_MSG =
             "IntrospectorCache detected classloader change. Dumping cache.";
 
+    /**
+     * Incremented each time this cache is cleared, so that caches built on top of
+     * its introspection results (like {@link CallSiteCache}) can detect staleness.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
     /** Class logger */
     private final Logger log;
 
     /**
-     * Holds the method maps for the classes we know about. Map: Class --&gt; ClassMap object.
+     * Method and field maps of the classes we know about. Replaced as a whole when the cache is cleared.
      */
-    private final Map<Class<?>, ClassMap> classMapCache = new HashMap<>();
+    private volatile ClassCache<Entry> entries = new ClassCache<>(this::create);
 
     /**
-     * Holds the field maps for the classes we know about. Map: Class --&gt; ClassFieldMap object.
+     * Method resolutions shared by the class maps of this cache. Replaced when the cache is cleared.
      */
-    private final Map<Class<?>, ClassFieldMap> classFieldMapCache = new HashMap<>();
+    private volatile MethodMap.SharedResolutions resolutions = new MethodMap.SharedResolutions();
 
     /**
      * Keep the names of the classes in another map. This is needed for a multi-classloader environment where it is possible
      * to have Class 'Foo' loaded by a classloader and then get asked to introspect on 'Foo' from another class loader. While these
-     * two Class objects have the same name, a <code>classMethodMaps.get(Foo.class)</code> will return null. For that case, we
-     * keep a set of class names to recognize this case.
+     * two Class objects have the same name, they have distinct cache entries. For that case, we
+     * keep the introspected class of each name, weakly referenced, to recognize this case.
      */
-    private final Set<String> classNameCache = new HashSet<>();
+    private final ConcurrentMap<String, WeakReference<Class<?>>> classNameCache = new ConcurrentHashMap<>();
 
     /**
      * Conversion handler
      */
     private final TypeConversionHandler conversionHandler;
 
+    /**
+     * Cached introspection data of a class
+     */
+    private static final class Entry
+    {
+        final ClassMap classMap;
+        final ClassFieldMap classFieldMap;
+
+        Entry(ClassMap classMap, ClassFieldMap classFieldMap)
+        {
+            this.classMap = classMap;
+            this.classFieldMap = classFieldMap;
+        }
+    }
+
     /**
      * C'tor
      * @param log logger.
@@ -82,98 +107,86 @@ public IntrospectorCache(final Logger log, final TypeConversionHandler conversio
     }
 
     /**
-     * Clears the internal cache.
+     * Builds the class and field maps of a class not yet in the cache, after having
+     * checked whether this is due to a class change and purged the caches eventually.
+     * @param c class
+     * @return cache entry
      */
-    public void clear()
+    private Entry create(final Class<?> c)
     {
-        synchronized (classMapCache)
+        /*
+         * check to see if we have it by name.
+         * if so, then we have an object with the same
+         * name but loaded through a different class loader.
+         * In that case, we will just dump the cache to be sure.
+         */
+        WeakReference<Class<?>> known = classNameCache.get(c.getName());
+        if (known != null && known.get() != c)
         {
-            classMapCache.clear();
-            classFieldMapCache.clear();
-            classNameCache.clear();
-            log.debug(CACHEDUMP_MSG);
+            clear();
         }
+        classNameCache.put(c.getName(), new WeakReference<Class<?>>(c));
+        return new Entry(new ClassMap(c, log, conversionHandler, resolutions), new ClassFieldMap(c, log));
+    }
+
+    /**
+     * Clears the internal cache.
+     */
+    public void clear()
+    {
+        entries = new ClassCache<>(this::create);
+        resolutions = new MethodMap.SharedResolutions();
+        classNameCache.clear();
+        generation.incrementAndGet();
+        log.debug(CACHEDUMP_MSG);
+    }
+
+    /**
+     * Get the current generation of this cache, incremented each time it is cleared.
+     * @return current generation
+     * @since 2.6
+     */
+    public long getGeneration()
+    {
+        return generation.get();
     }
 
     /**
      * Lookup a given Class object in the cache. If it does not exist,
      * check whether this is due to a class change and purge the caches
-     * eventually.
+     * eventually, then introspect the class.
      *
      * @param c The class to look up.
-     * @return A ClassMap object or null if it does not exist in the cache.
+     * @return The ClassMap object of the class.
      */
     public ClassMap get(final Class<?> c)
     {
-        ClassMap classMap = classMapCache.get(Validate.notNull(c));
-        if (classMap == null)
-        {
-            /*
-             * check to see if we have it by name.
-             * if so, then we have an object with the same
-             * name but loaded through a different class loader.
-             * In that case, we will just dump the cache to be sure.
-             */
-            synchronized (classMapCache)
-            {
-                if (classNameCache.contains(c.getName()))
-                {
-                    clear();
-                }
-            }
-        }
-        return classMap;
+        return entries.get(Validate.notNull(c)).classMap;
     }
 
     /**
      * Lookup a given Class object in the cache. If it does not exist,
      * check whether this is due to a class change and purge the caches
-     * eventually.
+     * eventually, then introspect the class.
      *
      * @param c The class to look up.
-     * @return A ClassFieldMap object or null if it does not exist in the cache.
+     * @return The ClassFieldMap object of the class.
      */
     public ClassFieldMap getFieldMap(final Class<?> c)
     {
-        ClassFieldMap classFieldMap = classFieldMapCache.get(Validate.notNull(c));
-        if (classFieldMap == null)
-        {
-            /*
-             * check to see if we have it by name.
-             * if so, then we have an object with the same
-             * name but loaded through a different class loader.
-             * In that case, we will just dump the cache to be sure.
-             */
-            synchronized (classMapCache)
-            {
-                if (classNameCache.contains(c.getName()))
-                {
-                    clear();
-                }
-            }
-        }
-        return classFieldMap;
+        return entries.get(Validate.notNull(c)).classFieldMap;
     }
 
     /**
-     * Creates a class map for specific class and registers it in the
-     * cache.  Also adds the qualified name to the name-&gt;class map
-     * for later Classloader change detection.
+     * Makes sure a class map is registered in the cache for the given class.
+     * Since {@link #get(Class)} now populates the cache itself, this is equivalent to it.
      *
      * @param c The class for which the class map gets generated.
      * @return A ClassMap object.
      */
     public ClassMap put(final Class<?> c)
     {
-        final ClassMap classMap = new ClassMap(c, log, conversionHandler);
-        final ClassFieldMap classFieldMap = new ClassFieldMap(c, log);
-        synchronized (classMapCache)
-        {
-            classMapCache.put(c, classMap);
-            classFieldMapCache.put(c, classFieldMap);
-            classNameCache.add(c.getName());
-        }
-        return classMap;
+        return get(c);
     }
 
 }
@@ -65,6 +65,17 @@ public void init()
         rightUberspect.init();
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>Changes whenever the cache of either linked uberspector is cleared.</p>
+     * @since 2.6
+     */
+    @Override
+    public long getCacheGeneration()
+    {
+        return leftUberspect.getCacheGeneration() + rightUberspect.getCacheGeneration();
+    }
+
     /**
      * {@inheritDoc}
      *
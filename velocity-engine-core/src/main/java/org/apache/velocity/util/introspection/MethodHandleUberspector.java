@@ -0,0 +1,398 @@
+package org.apache.velocity.util.introspection;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.velocity.runtime.parser.node.AbstractExecutor;
+import org.apache.velocity.runtime.parser.node.BooleanPropertyExecutor;
+import org.apache.velocity.runtime.parser.node.GetExecutor;
+import org.apache.velocity.runtime.parser.node.PropertyExecutor;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * <p>Chainable uberspector which invokes the methods and property getters found by the
+ * wrapped uberspector through pre-adapted {@link MethodHandle}s rather than through
+ * {@link Method#invoke(Object, Object...)}.</p>
+ * <p>Handles are built once per introspection result, and are then shared by the node
+ * call site caches and the introspection caches. Arguments conversion, varargs handling
+ * and array wrapping are left unchanged. Whenever a handle cannot be built (non public
+ * class, inaccessible module, custom executor...), the result of the wrapped uberspector
+ * is returned as is. This is also the case of map getters, whose {@link
+ * org.apache.velocity.runtime.parser.node.MapGetExecutor} already calls <code>Map.get()</code>
+ * directly, without reflection.</p>
+ * <p>Invalid calls are reported as {@link Method#invoke(Object, Object...)} does: arguments
+ * are checked before invoking the handle, so that an {@link IllegalArgumentException} is thrown
+ * for a wrong receiver or argument, and exceptions thrown by the target are wrapped in an
+ * {@link InvocationTargetException}.</p>
+ * <p>To use it, append it to the uberspectors list:</p>
+ * <pre><code>
+ * introspector.uberspect.class = org.apache.velocity.util.introspection.UberspectImpl, \
+ *   org.apache.velocity.util.introspection.MethodHandleUberspector
+ * </code></pre>
+ *
+ * @since 2.6
+ */
+public class MethodHandleUberspector extends AbstractChainableUberspector
+{
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    private static final MethodType GETTER_TYPE = MethodType.genericMethodType(1);
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public VelMethod getMethod(Object obj, String methodName, Object[] args, Info i)
+    {
+        VelMethod velMethod = super.getMethod(obj, methodName, args, i);
+        if (velMethod != null && velMethod.getClass() == VelMethodImpl.class)
+        {
+            VelMethodImpl impl = (VelMethodImpl)velMethod;
+            MethodHandle handle = methodHandle(impl.method);
+            if (handle != null)
+            {
+                int arity = impl.method.getParameterTypes().length;
+                return new VelMethodHandleImpl(impl, handle.asSpreader(Object[].class, arity),
+                    arity == 1 || arity == 2 ? handle : null);
+            }
+        }
+        return velMethod;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public VelPropertyGet getPropertyGet(Object obj, String identifier, Info i)
+    {
+        VelPropertyGet getter = super.getPropertyGet(obj, identifier, i);
+        if (getter != null && getter.getClass() == VelGetterImpl.class)
+        {
+            AbstractExecutor executor = ((VelGetterImpl)getter).getExecutor;
+            MethodHandle invoker = getterInvoker(obj, identifier, executor);
+            if (invoker != null)
+            {
+                return new VelGetterHandleImpl(executor, invoker);
+            }
+        }
+        return getter;
+    }
+
+    /**
+     * Adapt a method to the <code>(Object, Object...)Object</code> type of its arity.
+     * @param method method
+     * @return method handle, or null if the method is not accessible
+     */
+    private MethodHandle methodHandle(Method method)
+    {
+        try
+        {
+            MethodHandle handle = LOOKUP.unreflect(method).asFixedArity();
+            if (Modifier.isStatic(method.getModifiers()))
+            {
+                handle = MethodHandles.dropArguments(handle, 0, Object.class);
+            }
+            int arity = method.getParameterTypes().length;
+            return handle.asType(MethodType.genericMethodType(arity + 1));
+        }
+        catch (IllegalAccessException | RuntimeException e)
+        {
+            log.debug("cannot build method handle for {}, using reflection", method, e);
+            return null;
+        }
+    }
+
+    /**
+     * Adapt a property getter to the <code>(Object)Object</code> type.
+     * @param obj target object
+     * @param identifier property name
+     * @param executor getter executor
+     * @return method handle, or null if the getter cannot be adapted
+     */
+    private MethodHandle getterInvoker(Object obj, String identifier, AbstractExecutor executor)
+    {
+        Method method = executor.getMethod();
+        if (method == null || Modifier.isStatic(method.getModifiers())
+            || !method.getDeclaringClass().isInstance(obj))
+        {
+            /* arrays wrapped into lists, or executors not backed by a method */
+            return null;
+        }
+        Class<?> executorClass = executor.getClass();
+        try
+        {
+            MethodHandle handle = LOOKUP.unreflect(method).asFixedArity();
+            if (executorClass == PropertyExecutor.class || executorClass == BooleanPropertyExecutor.class)
+            {
+                if (method.getParameterTypes().length != 0)
+                {
+                    return null;
+                }
+            }
+            else if (executorClass == GetExecutor.class)
+            {
+                Class<?>[] formal = method.getParameterTypes();
+                if (formal.length != 1 || !formal[0].isInstance(identifier))
+                {
+                    return null;
+                }
+                handle = MethodHandles.insertArguments(handle, 1, identifier);
+            }
+            else
+            {
+                return null;
+            }
+            return handle.asType(GETTER_TYPE);
+        }
+        catch (IllegalAccessException | RuntimeException e)
+        {
+            log.debug("cannot build method handle for {}, using reflection", method, e);
+            return null;
+        }
+    }
+
+    /**
+     * VelMethod invoking its method through a method handle, once arguments have been
+     * prepared by {@link VelMethodImpl#invoke(Object, Object[])}. Calls with one or two
+     * arguments go through a handle of their arity, without any arguments array.
+     */
+    public static class VelMethodHandleImpl extends VelMethodImpl
+    {
+        private final MethodHandle invoker;
+        private final MethodHandle fixedArityInvoker;
+        private final Class<?>[] parameterTypes;
+
+        /**
+         * @param velMethod reflection based VelMethod
+         * @param invoker <code>(Object, Object[])Object</code> method handle
+         */
+        protected VelMethodHandleImpl(VelMethodImpl velMethod, MethodHandle invoker)
+        {
+            this(velMethod, invoker, null);
+        }
+
+        /**
+         * @param velMethod reflection based VelMethod
+         * @param invoker <code>(Object, Object[])Object</code> method handle
+         * @param fixedArityInvoker <code>(Object, Object)Object</code> or <code>(Object, Object, Object)Object</code>
+         * method handle for methods with one or two parameters, or null
+         * @since 2.6
+         */
+        protected VelMethodHandleImpl(VelMethodImpl velMethod, MethodHandle invoker, MethodHandle fixedArityInvoker)
+        {
+            super(velMethod.method, velMethod.wrapArray, velMethod.converters);
+            this.invoker = invoker;
+            this.fixedArityInvoker = fixedArityInvoker;
+            this.parameterTypes = velMethod.method.getParameterTypes();
+        }
+
+        /**
+         * @see VelMethodImpl#doInvoke(Object, Object[])
+         */
+        @Override
+        protected Object doInvoke(Object o, Object[] actual)
+            throws IllegalAccessException, InvocationTargetException
+        {
+            /* keep Method.invoke() behavior for invalid calls */
+            if (actual.length != parameterTypes.length)
+            {
+                throw new IllegalArgumentException("wrong number of arguments");
+            }
+            checkReceiver(o);
+            for (int i = 0; i < parameterTypes.length; ++i)
+            {
+                checkArgument(i, actual[i]);
+            }
+            try
+            {
+                return (Object)invoker.invokeExact(o, actual);
+            }
+            catch (Throwable t)
+            {
+                throw new InvocationTargetException(t);
+            }
+        }
+
+        /**
+         * @see VelMethodImpl#invoke(Object, Object)
+         * @since 2.6
+         */
+        @Override
+        public Object invoke(Object o, Object arg0)
+            throws IllegalAccessException, InvocationTargetException
+        {
+            if (fixedArityInvoker == null || parameterTypes.length != 1 || wrapArray || isVarArg())
+            {
+                return invoke(o, new Object[] { arg0 });
+            }
+            arg0 = convert(0, arg0);
+            checkReceiver(o);
+            checkArgument(0, arg0);
+            try
+            {
+                return (Object)fixedArityInvoker.invokeExact(o, arg0);
+            }
+            catch (Throwable t)
+            {
+                throw new InvocationTargetException(t);
+            }
+        }
+
+        /**
+         * @see VelMethodImpl#invoke(Object, Object, Object)
+         * @since 2.6
+         */
+        @Override
+        public Object invoke(Object o, Object arg0, Object arg1)
+            throws IllegalAccessException, InvocationTargetException
+        {
+            if (fixedArityInvoker == null || parameterTypes.length != 2 || wrapArray || isVarArg())
+            {
+                return invoke(o, new Object[] { arg0, arg1 });
+            }
+            arg0 = convert(0, arg0);
+            arg1 = convert(1, arg1);
+            checkReceiver(o);
+            checkArgument(0, arg0);
+            checkArgument(1, arg1);
+            try
+            {
+                return (Object)fixedArityInvoker.invokeExact(o, arg0, arg1);
+            }
+            catch (Throwable t)
+            {
+                throw new InvocationTargetException(t);
+            }
+        }
+
+        private void checkReceiver(Object o)
+        {
+            if (!Modifier.isStatic(method.getModifiers()) && !method.getDeclaringClass().isInstance(o))
+            {
+                throw new IllegalArgumentException("object is not an instance of declaring class");
+            }
+        }
+
+        /* so that the handle adaptations cannot fail, and only the target can throw */
+        private void checkArgument(int index, Object arg)
+        {
+            if (!isConvertible(parameterTypes[index], arg))
+            {
+                throw new IllegalArgumentException("argument type mismatch");
+            }
+        }
+    }
+
+    /**
+     * Whether an argument can be passed to a parameter by {@link Method#invoke(Object, Object...)},
+     * that is whether it is an instance of the parameter type, or its unboxed value can be converted
+     * to the primitive parameter type by a widening conversion.
+     * @param formal parameter type
+     * @param arg argument
+     * @return whether the argument is accepted
+     */
+    private static boolean isConvertible(Class<?> formal, Object arg)
+    {
+        if (!formal.isPrimitive())
+        {
+            return arg == null || formal.isInstance(arg);
+        }
+        if (arg == null)
+        {
+            return false;
+        }
+        Class<?> actual = IntrospectionUtils.getUnboxedClass(arg.getClass());
+        if (actual == formal)
+        {
+            return true;
+        }
+        if (formal == Short.TYPE)
+        {
+            return actual == Byte.TYPE;
+        }
+        if (formal == Integer.TYPE)
+        {
+            return actual == Byte.TYPE || actual == Short.TYPE || actual == Character.TYPE;
+        }
+        if (formal == Long.TYPE)
+        {
+            return actual == Byte.TYPE || actual == Short.TYPE || actual == Character.TYPE || actual == Integer.TYPE;
+        }
+        if (formal == Float.TYPE)
+        {
+            return actual == Byte.TYPE || actual == Short.TYPE || actual == Character.TYPE || actual == Integer.TYPE
+                || actual == Long.TYPE;
+        }
+        if (formal == Double.TYPE)
+        {
+            return actual == Byte.TYPE || actual == Short.TYPE || actual == Character.TYPE || actual == Integer.TYPE
+                || actual == Long.TYPE || actual == Float.TYPE;
+        }
+        return false;
+    }
+
+    /**
+     * VelPropertyGet invoking its getter through a method handle.
+     */
+    public static class VelGetterHandleImpl extends VelGetterImpl
+    {
+        private final MethodHandle invoker;
+        private final Class<?> declaringClass;
+
+        /**
+         * @param executor getter executor
+         * @param invoker <code>(Object)Object</code> method handle
+         */
+        protected VelGetterHandleImpl(AbstractExecutor executor, MethodHandle invoker)
+        {
+            super(executor);
+            this.invoker = invoker;
+            this.declaringClass = executor.getMethod().getDeclaringClass();
+        }
+
+        /**
+         * @see VelPropertyGet#invoke(Object)
+         */
+        @Override
+        public Object invoke(Object o)
+            throws IllegalAccessException, InvocationTargetException
+        {
+            if (!declaringClass.isInstance(o))
+            {
+                /* not the receiver the handle was built for */
+                return super.invoke(o);
+            }
+            /* the receiver is checked and the identifier of get() bound at build time, so only the target can throw */
+            try
+            {
+                return (Object)invoker.invokeExact(o);
+            }
+            catch (Throwable t)
+            {
+                throw new InvocationTargetException(t);
+            }
+        }
+    }
+}
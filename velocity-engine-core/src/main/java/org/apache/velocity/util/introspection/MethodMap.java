@@ -60,8 +60,19 @@
 
     private static final Method TRY_SET_ACCESSIBLE = MethodUtils.getMethodObject(Method.class, "trySetAccessible");
 
+    /* Shared marker for ambiguous resolutions */
+    private static final Object AMBIGUOUS = new Object();
+
+    /* Shared marker for resolutions which found no applicable method */
+    private static final Object NOT_FOUND = new Object();
+
     TypeConversionHandler conversionHandler;
 
+    /**
+     * Resolutions shared with the method maps of other classes, if any
+     */
+    private final SharedResolutions sharedResolutions;
+
     /**
      * Default constructor
      */
@@ -76,8 +87,21 @@ public MethodMap()
      * @since 2.0
      */
     public MethodMap(TypeConversionHandler conversionHandler)
+    {
+        this(conversionHandler, null);
+    }
+
+    /**
+     * Constructor with provided conversion handler and resolutions shared between method maps
+     * using this conversion handler
+     * @param conversionHandler conversion handler
+     * @param sharedResolutions shared resolutions, or null
+     * @since 2.6
+     */
+    MethodMap(TypeConversionHandler conversionHandler, SharedResolutions sharedResolutions)
     {
         this.conversionHandler = conversionHandler;
+        this.sharedResolutions = sharedResolutions;
     }
 
     /**
@@ -85,6 +109,147 @@ public MethodMap(TypeConversionHandler conversionHandler)
      */
     Map<String, List<Method>> methodByNameMap = new ConcurrentHashMap<>();
 
+    /**
+     * Candidate tables of the methods with the same name, built at first lookup.
+     */
+    private final Map<String, Candidates> candidatesByName = new ConcurrentHashMap<>();
+
+    /**
+     * A candidate method, with its parameter types.
+     */
+    private static final class Candidate
+    {
+        final Method method;
+
+        final Type[] types;
+
+        /* whether the last parameter is an array, which makes the method callable with varargs */
+        final boolean varargs;
+
+        Candidate(Method method)
+        {
+            this.method = method;
+            types = method.getGenericParameterTypes();
+            varargs = types.length > 0 && TypeUtils.isArrayType(types[types.length - 1]);
+        }
+    }
+
+    /**
+     * The methods of a given name, partitioned by the number of arguments they can be called with.
+     * Methods without a trailing array parameter only accept their exact number of parameters,
+     * while the other ones accept one argument less or any greater number of arguments.
+     */
+    private static final class Candidates
+    {
+        /* applicable candidates for each number of arguments, in declaration order; the last
+         * slot holds the candidates for any greater number of arguments */
+        final Candidate[][] byArity;
+
+        /* declaring class of all the candidates, or null if they are declared by several classes */
+        final Class<?> declaringClass;
+
+        Candidates(List<Method> methods)
+        {
+            Candidate[] all = new Candidate[methods.size()];
+            int maxParameters = 0;
+            Class<?> declarer = null;
+            boolean sameDeclarer = true;
+            for (int i = 0; i < all.length; ++i)
+            {
+                all[i] = new Candidate(methods.get(i));
+                maxParameters = Math.max(maxParameters, all[i].types.length);
+                Class<?> methodDeclarer = all[i].method.getDeclaringClass();
+                if (i == 0)
+                {
+                    declarer = methodDeclarer;
+                }
+                else if (methodDeclarer != declarer)
+                {
+                    sameDeclarer = false;
+                }
+            }
+            declaringClass = sameDeclarer ? declarer : null;
+            byArity = new Candidate[maxParameters + 2][];
+            List<Candidate> applicable = new ArrayList<>();
+            for (int arity = 0; arity < byArity.length; ++arity)
+            {
+                applicable.clear();
+                for (Candidate candidate : all)
+                {
+                    int parameters = candidate.types.length;
+                    if (parameters == arity || candidate.varargs && parameters <= arity + 1)
+                    {
+                        applicable.add(candidate);
+                    }
+                }
+                byArity[arity] = applicable.toArray(new Candidate[0]);
+            }
+        }
+
+        Candidate[] get(int arity)
+        {
+            return byArity[Math.min(arity, byArity.length - 1)];
+        }
+    }
+
+    /**
+     * <p>Method resolutions shared between the method maps of all the classes introspected
+     * with a given conversion handler.</p>
+     * <p>The resolution of a method name is only shared when all its candidates are declared
+     * by the same class, which is then the same for all its subclasses. Resolutions are kept
+     * by declaring class in a {@link ClassCache}, so that they do not outlive it.</p>
+     * @since 2.6
+     */
+    static final class SharedResolutions
+    {
+        private final ClassCache<Map<ResolutionKey, Object>> byDeclaringClass = new ClassCache<>(type -> new ConcurrentHashMap<>());
+
+        Map<ResolutionKey, Object> get(Class<?> declaringClass)
+        {
+            return byDeclaringClass.get(declaringClass);
+        }
+    }
+
+    /**
+     * Key of a shared resolution: the method name and the classes of the actual arguments.
+     */
+    private static final class ResolutionKey
+    {
+        private final String name;
+
+        private final Class<?>[] classes;
+
+        private final int hash;
+
+        ResolutionKey(String name, Class<?>[] classes)
+        {
+            this.name = name;
+            this.classes = classes;
+            hash = 31 * name.hashCode() + Arrays.hashCode(classes);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+            {
+                return true;
+            }
+            if (!(obj instanceof ResolutionKey))
+            {
+                return false;
+            }
+            ResolutionKey other = (ResolutionKey)obj;
+            return hash == other.hash && name.equals(other.name) && Arrays.equals(classes, other.classes);
+        }
+    }
+
     /**
      * Add a method to a list of methods by name.
      * For a particular class we are keeping track
@@ -104,6 +269,7 @@ public void add(Method method)
         }
 
         l.add(method);
+        candidatesByName.remove(methodName);
     }
 
     /**
@@ -148,9 +314,22 @@ public List<Method> get(String key)
     public Method find(String methodName, Object[] args)
         throws AmbiguousException
     {
-        List<Method> methodList = get(methodName);
+        Candidates candidates = candidatesByName.get(methodName);
+        if (candidates == null)
+        {
+            List<Method> methodList = get(methodName);
+
+            if (methodList == null)
+            {
+                return null;
+            }
+
+            candidates = new Candidates(methodList);
+            candidatesByName.put(methodName, candidates);
+        }
 
-        if (methodList == null)
+        Candidate[] applicable = candidates.get(args.length);
+        if (applicable.length == 0)
         {
             return null;
         }
@@ -170,7 +349,32 @@ public Method find(String methodName, Object[] args)
                     arg == null ? null : arg.getClass();
         }
 
-        return getBestMatch(methodList, classes);
+        if (sharedResolutions == null || candidates.declaringClass == null)
+        {
+            return getBestMatch(applicable, classes);
+        }
+
+        Map<ResolutionKey, Object> resolutions = sharedResolutions.get(candidates.declaringClass);
+        ResolutionKey key = new ResolutionKey(methodName, classes);
+        Object resolution = resolutions.get(key);
+        if (resolution == null)
+        {
+            try
+            {
+                Method method = getBestMatch(applicable, classes);
+                resolution = method == null ? NOT_FOUND : method;
+            }
+            catch (AmbiguousException ae)
+            {
+                resolution = AMBIGUOUS;
+            }
+            resolutions.put(key, resolution);
+        }
+        if (resolution == AMBIGUOUS)
+        {
+            throw new AmbiguousException();
+        }
+        return resolution == NOT_FOUND ? null : (Method)resolution;
     }
 
     private class Match
@@ -192,13 +396,13 @@ public Method find(String methodName, Object[] args)
         /* whether the method has varrags */
         boolean varargs;
 
-        Match(Method method, int applicability, Class<?>[] unboxedArgs)
+        Match(Candidate candidate, int applicability, Class<?>[] unboxedArgs)
         {
-            this.method = method;
+            this.method = candidate.method;
             this.applicability = applicability;
-            this.methodTypes = method.getGenericParameterTypes();
+            this.methodTypes = candidate.types;
             this.specificity = compare(methodTypes, unboxedArgs);
-            this.varargs = methodTypes.length > 0 && TypeUtils.isArrayType(methodTypes[methodTypes.length - 1]);
+            this.varargs = candidate.varargs;
         }
     }
 
@@ -211,7 +415,7 @@ private static boolean onlyNullOrObjects(Class<?>[] args)
         return args.length > 0;
     }
 
-    private Method getBestMatch(List<Method> methods, Class<?>[] args)
+    private Method getBestMatch(Candidate[] candidates, Class<?>[] args)
     {
         List<Match> bestMatches = new LinkedList<>();
         Class<?>[] unboxedArgs = new Class<?>[args.length];
@@ -219,12 +423,12 @@ private Method getBestMatch(List<Method> methods, Class<?>[] args)
         {
             unboxedArgs[i] = IntrospectionUtils.getUnboxedClass(args[i]);
         }
-        for (Method method : methods)
+        for (Candidate candidate : candidates)
         {
-            int applicability = getApplicability(method, unboxedArgs);
+            int applicability = getApplicability(candidate.types, unboxedArgs);
             if (applicability > NOT_CONVERTIBLE)
             {
-                Match match = new Match(method, applicability, unboxedArgs);
+                Match match = new Match(candidate, applicability, unboxedArgs);
                 if (bestMatches.size() == 0)
                 {
                     bestMatches.add(match);
@@ -640,7 +844,7 @@ else if (fromC2toC1 > fromC1toC2)
     /**
      * Returns the applicability of the supplied method against actual argument types.
      *
-     * @param method method that will be called
+     * @param methodArgs parameter types of the method that will be called
      * @param classes arguments to method
      * @return the level of applicability:
      *         0 = not applicable
@@ -648,9 +852,8 @@ else if (fromC2toC1 > fromC1toC2)
      *         2 = implicitly applicable (i.e. using JAva implicit boxing/unboxing and primitive types widening)
      *         3 = strictly applicable
      */
-    private int getApplicability(Method method, Class<?>[] classes)
+    private int getApplicability(Type[] methodArgs, Class<?>[] classes)
     {
-        Type[] methodArgs = method.getGenericParameterTypes();
         int ret = STRICTLY_CONVERTIBLE;
         if (methodArgs.length > classes.length)
         {
@@ -23,7 +23,10 @@
 
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * <p>Prevent "dangerous" classloader/reflection related calls.  Use this
@@ -40,9 +43,12 @@
  */
 public class SecureIntrospectorImpl extends Introspector implements SecureIntrospectorControl
 {
-    private String[] badClasses;
-    private String[] badPackages;
-    private List<RestrictedMethod> badMethods;
+    private final Rules rules;
+
+    /**
+     * Cached permission decisions, replaced when the introspection cache of this introspector is cleared.
+     */
+    private volatile Decisions decisions;
 
     /**
      * Backwards-compatible constructor without method-level restrictions.
@@ -63,9 +69,10 @@ public SecureIntrospectorImpl(String[] badClasses, String[] badPackages, Logger
     public SecureIntrospectorImpl(String[] badClasses, String[] badPackages, String[] badMethods, Logger log)
     {
         super(log);
-        this.badClasses = badClasses == null ? new String[0] : badClasses;
-        this.badPackages = badPackages == null ? new String[0] : badPackages;
-        this.badMethods = parseRestrictedMethods(badMethods, log);
+        rules = new Rules(badClasses == null ? new String[0] : badClasses.clone(),
+                          badPackages == null ? new String[0] : badPackages.clone(),
+                          parseRestrictedMethods(badMethods, log));
+        decisions = new Decisions(getCacheGeneration(), rules);
     }
 
     private static List<RestrictedMethod> parseRestrictedMethods(String[] entries, Logger log)
@@ -148,94 +155,190 @@ public Method getMethod(Class<?> clazz, String methodName, Object[] params)
     @Override
     public boolean checkObjectExecutePermission(Class<?> clazz, String methodName)
     {
-        /*
-         * check for wait and notify
-         */
-        if (methodName != null &&
-            (methodName.equals("wait") || methodName.equals("notify")) )
+        Decisions current = decisions;
+        long generation = getCacheGeneration();
+        if (current.generation != generation)
         {
-            return false;
+            current = new Decisions(generation, rules);
+            decisions = current;
         }
+        return current.get(clazz).isAllowed(methodName);
+    }
 
-        /*
-         * Always allow the most common classes - Number, Boolean and String
-         */
-        else if (Number.class.isAssignableFrom(clazz))
-        {
-            return true;
-        }
-        else if (Boolean.class.isAssignableFrom(clazz))
-        {
-            return true;
-        }
-        else if (String.class.isAssignableFrom(clazz))
+    /**
+     * Restrictions of an introspector. Decisions reference them rather than the
+     * introspector, so that they do not keep it alive.
+     */
+    private static final class Rules
+    {
+        final String[] badClasses;
+        final String[] badPackages;
+        final List<RestrictedMethod> badMethods;
+
+        Rules(String[] badClasses, String[] badPackages, List<RestrictedMethod> badMethods)
         {
-            return true;
+            this.badClasses = badClasses;
+            this.badPackages = badPackages;
+            this.badMethods = Collections.unmodifiableList(badMethods);
         }
 
-        /*
-         * Always allow Class.getName()
+        /**
+         * Compute the permission returned by {@link SecureIntrospectorImpl#checkObjectExecutePermission(Class, String)}
+         * the first time a class and method name are checked.
+         *
+         * @param clazz Class on which method will be called
+         * @param methodName Name of method to be called
+         * @return whether the method is allowed
          */
-        else if (Class.class.isAssignableFrom(clazz) &&
-                 (methodName != null) && methodName.equals("getName"))
+        boolean allows(Class<?> clazz, String methodName)
         {
+            /*
+             * check for wait and notify
+             */
+            if (methodName != null &&
+                (methodName.equals("wait") || methodName.equals("notify")) )
+            {
+                return false;
+            }
+
+            /*
+             * Always allow the most common classes - Number, Boolean and String
+             */
+            else if (Number.class.isAssignableFrom(clazz))
+            {
+                return true;
+            }
+            else if (Boolean.class.isAssignableFrom(clazz))
+            {
+                return true;
+            }
+            else if (String.class.isAssignableFrom(clazz))
+            {
+                return true;
+            }
+
+            /*
+             * Always allow Class.getName()
+             */
+            else if (Class.class.isAssignableFrom(clazz) &&
+                     (methodName != null) && methodName.equals("getName"))
+            {
+                return true;
+            }
+
+           /*
+           * Always disallow ClassLoader, Thread and subclasses
+           */
+            if (ClassLoader.class.isAssignableFrom(clazz) ||
+                    Thread.class.isAssignableFrom(clazz))
+            {
+                return false;
+            }
+
+            /*
+             * check the classname (minus any array info)
+             * whether it matches disallowed classes or packages
+             */
+            String className = clazz.getName();
+            if (className.startsWith("[L") && className.endsWith(";"))
+            {
+                className = className.substring(2, className.length() - 1);
+            }
+
+            int dotPos = className.lastIndexOf('.');
+            String packageName = (dotPos == -1) ? "" : className.substring(0, dotPos);
+
+            for (String badPackage : badPackages)
+            {
+                if (packageName.equals(badPackage))
+                {
+                    return false;
+                }
+            }
+
+            for (String badClass : badClasses)
+            {
+                if (className.equals(badClass))
+                {
+                    return false;
+                }
+            }
+
+            /*
+             * check method-level restrictions: blocked if methodName matches and the
+             * restricted class is assignable from the target class (covers subclasses)
+             */
+            if (methodName != null)
+            {
+                for (RestrictedMethod bad : badMethods)
+                {
+                    if (bad.methodName.equals(methodName) && bad.clazz.isAssignableFrom(clazz))
+                    {
+                        return false;
+                    }
+                }
+            }
+
             return true;
         }
+    }
+
+    /**
+     * Permission decisions of each class, computed lazily.
+     */
+    private static final class Decisions
+    {
+        final long generation;
 
-       /*
-       * Always disallow ClassLoader, Thread and subclasses
-       */
-        if (ClassLoader.class.isAssignableFrom(clazz) ||
-                Thread.class.isAssignableFrom(clazz))
+        final ClassCache<ClassDecisions> byClass;
+
+        Decisions(long generation, Rules rules)
         {
-            return false;
+            this.generation = generation;
+            byClass = new ClassCache<>(clazz -> new ClassDecisions(clazz, rules));
         }
 
-        /*
-         * check the classname (minus any array info)
-         * whether it matches disallowed classes or packages
-         */
-        String className = clazz.getName();
-        if (className.startsWith("[L") && className.endsWith(";"))
+        ClassDecisions get(Class<?> clazz)
         {
-            className = className.substring(2, className.length() - 1);
+            return byClass.get(clazz);
         }
+    }
+
+    /**
+     * Permission decisions of a class, per method name.
+     */
+    private static final class ClassDecisions
+    {
+        final Class<?> clazz;
 
-        int dotPos = className.lastIndexOf('.');
-        String packageName = (dotPos == -1) ? "" : className.substring(0, dotPos);
+        final Rules rules;
 
-        for (String badPackage : badPackages)
+        /* decision for a null method name, as checked for iterators */
+        final boolean allowed;
+
+        final Map<String, Boolean> byMethod = new ConcurrentHashMap<>();
+
+        ClassDecisions(Class<?> clazz, Rules rules)
         {
-            if (packageName.equals(badPackage))
-            {
-                return false;
-            }
+            this.clazz = clazz;
+            this.rules = rules;
+            allowed = rules.allows(clazz, null);
         }
 
-        for (String badClass : badClasses)
+        boolean isAllowed(String methodName)
         {
-            if (className.equals(badClass))
+            if (methodName == null)
             {
-                return false;
+                return allowed;
             }
-        }
-
-        /*
-         * check method-level restrictions: blocked if methodName matches and the
-         * restricted class is assignable from the target class (covers subclasses)
-         */
-        if (methodName != null)
-        {
-            for (RestrictedMethod bad : badMethods)
+            Boolean decision = byMethod.get(methodName);
+            if (decision == null)
             {
-                if (bad.methodName.equals(methodName) && bad.clazz.isAssignableFrom(clazz))
-                {
-                    return false;
-                }
+                decision = rules.allows(clazz, methodName);
+                byMethod.put(methodName, decision);
             }
+            return decision;
         }
-
-        return true;
     }
 
     private static final class RestrictedMethod
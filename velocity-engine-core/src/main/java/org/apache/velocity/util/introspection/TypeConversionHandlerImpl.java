@@ -21,7 +21,6 @@
 
 import org.apache.commons.lang3.LocaleUtils;
 import org.apache.commons.lang3.reflect.TypeUtils;
-import org.apache.commons.lang3.tuple.Pair;
 
 import java.lang.reflect.Type;
 import java.math.BigDecimal;
@@ -45,9 +44,9 @@
 public class TypeConversionHandlerImpl implements TypeConversionHandler
 {
     /**
-     * standard narrowing and string parsing conversions.
+     * standard narrowing and string parsing conversions, indexed by formal class, then by actual class.
      */
-    static Map<Pair<String, String>, Converter<?>> standardConverterMap;
+    static Map<Class<?>, Map<Class<?>, Converter<?>>> standardConverterMap;
 
     /**
      * basic toString converter
@@ -60,31 +59,39 @@ public class TypeConversionHandlerImpl implements TypeConversionHandler
     static Converter<?> cacheMiss;
 
     /**
-     * a converters cache map, initialized with the standard narrowing and string parsing conversions.
+     * a converters cache, indexed by formal class, then by actual class. Standard conversions
+     * take precedence over its content.
      */
-    Map<Pair<String, String>, Converter<?>> converterCacheMap;
-
-    static final String BOOLEAN_TYPE = "boolean";
-    static final String BYTE_TYPE = "byte";
-    static final String SHORT_TYPE = "short";
-    static final String INTEGER_TYPE = "int";
-    static final String LONG_TYPE = "long";
-    static final String FLOAT_TYPE = "float";
-    static final String DOUBLE_TYPE = "double";
-    static final String CHARACTER_TYPE = "char";
-    static final String BOOLEAN_CLASS = "java.lang.Boolean";
-    static final String BYTE_CLASS = "java.lang.Byte";
-    static final String SHORT_CLASS = "java.lang.Short";
-    static final String INTEGER_CLASS = "java.lang.Integer";
-    static final String LONG_CLASS = "java.lang.Long";
-    static final String BIG_INTEGER_CLASS = "java.math.BigInteger";
-    static final String FLOAT_CLASS = "java.lang.Float";
-    static final String DOUBLE_CLASS = "java.lang.Double";
-    static final String BIG_DECIMAL_CLASS = "java.math.BigDecimal";
-    static final String NUMBER_CLASS = "java.lang.Number";
-    static final String CHARACTER_CLASS = "java.lang.Character";
-    static final String STRING_CLASS = "java.lang.String";
-    static final String LOCALE_CLASS = "java.util.Locale";
+    private final ClassCache<Map<Class<?>, Converter<?>>> converterCache = new ClassCache<>(formal -> new ConcurrentHashMap<>());
+
+    /**
+     * a converters cache for formal types which are not classes (parameterized types, type variables...),
+     * indexed by formal type name, then by actual class. Type implementations do not agree on hash codes
+     * (the JDK ones and the commons-lang ones differ), hence the names.
+     */
+    private final Map<String, Map<Class<?>, Converter<?>>> typeConverterCache = new ConcurrentHashMap<>();
+
+    static final Class<?> BOOLEAN_TYPE = Boolean.TYPE;
+    static final Class<?> BYTE_TYPE = Byte.TYPE;
+    static final Class<?> SHORT_TYPE = Short.TYPE;
+    static final Class<?> INTEGER_TYPE = Integer.TYPE;
+    static final Class<?> LONG_TYPE = Long.TYPE;
+    static final Class<?> FLOAT_TYPE = Float.TYPE;
+    static final Class<?> DOUBLE_TYPE = Double.TYPE;
+    static final Class<?> CHARACTER_TYPE = Character.TYPE;
+    static final Class<?> BOOLEAN_CLASS = Boolean.class;
+    static final Class<?> BYTE_CLASS = Byte.class;
+    static final Class<?> SHORT_CLASS = Short.class;
+    static final Class<?> INTEGER_CLASS = Integer.class;
+    static final Class<?> LONG_CLASS = Long.class;
+    static final Class<?> BIG_INTEGER_CLASS = BigInteger.class;
+    static final Class<?> FLOAT_CLASS = Float.class;
+    static final Class<?> DOUBLE_CLASS = Double.class;
+    static final Class<?> BIG_DECIMAL_CLASS = BigDecimal.class;
+    static final Class<?> NUMBER_CLASS = Number.class;
+    static final Class<?> CHARACTER_CLASS = Character.class;
+    static final Class<?> STRING_CLASS = String.class;
+    static final Class<?> LOCALE_CLASS = Locale.class;
 
     /*
      * Bounds checking helper
@@ -100,6 +107,15 @@ static boolean checkBounds(Number n, double min, double max)
         return true;
     }
 
+    /*
+     * Standard converters registration helper
+     */
+
+    private static void addStandardConverter(Class<?> formal, Class<?> actual, Converter<?> converter)
+    {
+        standardConverterMap.computeIfAbsent(formal, k -> new HashMap<>()).put(actual, converter);
+    }
+
     static
     {
         standardConverterMap = new HashMap<>();
@@ -116,52 +132,52 @@ static boolean checkBounds(Number n, double min, double max)
         Converter<Boolean> bigIntegerToBool = o -> Optional.ofNullable((BigInteger)o).map(bi -> bi.signum() != 0).orElse(null);
         Converter<Boolean> bigDecimalToBool = o -> Optional.ofNullable((BigDecimal)o).map(bi -> bi.signum() != 0).orElse(null);
 
-        standardConverterMap.put(Pair.of(BOOLEAN_CLASS, BYTE_CLASS), numberToBool);
-        standardConverterMap.put(Pair.of(BOOLEAN_CLASS, SHORT_CLASS), numberToBool);
-        standardConverterMap.put(Pair.of(BOOLEAN_CLASS, INTEGER_CLASS), numberToBool);
-        standardConverterMap.put(Pair.of(BOOLEAN_CLASS, LONG_CLASS), numberToBool);
-        standardConverterMap.put(Pair.of(BOOLEAN_CLASS, BIG_INTEGER_CLASS), bigIntegerToBool);
-        standardConverterMap.put(Pair.of(BOOLEAN_CLASS, FLOAT_CLASS), numberToBool);
-        standardConverterMap.put(Pair.of(BOOLEAN_CLASS, DOUBLE_CLASS), numberToBool);
-        standardConverterMap.put(Pair.of(BOOLEAN_CLASS, BIG_DECIMAL_CLASS), bigDecimalToBool);
-        standardConverterMap.put(Pair.of(BOOLEAN_CLASS, NUMBER_CLASS), numberToBool);
-        standardConverterMap.put(Pair.of(BOOLEAN_CLASS, BYTE_TYPE), numberToBool);
-        standardConverterMap.put(Pair.of(BOOLEAN_CLASS, SHORT_TYPE), numberToBool);
-        standardConverterMap.put(Pair.of(BOOLEAN_CLASS, INTEGER_TYPE), numberToBool);
-        standardConverterMap.put(Pair.of(BOOLEAN_CLASS, LONG_TYPE), numberToBool);
-        standardConverterMap.put(Pair.of(BOOLEAN_CLASS, FLOAT_TYPE), numberToBool);
-        standardConverterMap.put(Pair.of(BOOLEAN_CLASS, DOUBLE_TYPE), numberToBool);
-        standardConverterMap.put(Pair.of(BOOLEAN_TYPE, BYTE_CLASS), numberToBool);
-        standardConverterMap.put(Pair.of(BOOLEAN_TYPE, SHORT_CLASS), numberToBool);
-        standardConverterMap.put(Pair.of(BOOLEAN_TYPE, INTEGER_CLASS), numberToBool);
-        standardConverterMap.put(Pair.of(BOOLEAN_TYPE, BIG_INTEGER_CLASS), bigIntegerToBool);
-        standardConverterMap.put(Pair.of(BOOLEAN_TYPE, LONG_CLASS), numberToBool);
-        standardConverterMap.put(Pair.of(BOOLEAN_TYPE, FLOAT_CLASS), numberToBool);
-        standardConverterMap.put(Pair.of(BOOLEAN_TYPE, DOUBLE_CLASS), numberToBool);
-        standardConverterMap.put(Pair.of(BOOLEAN_TYPE, BIG_DECIMAL_CLASS), bigDecimalToBool);
-        standardConverterMap.put(Pair.of(BOOLEAN_TYPE, NUMBER_CLASS), numberToBool);
-        standardConverterMap.put(Pair.of(BOOLEAN_TYPE, BYTE_TYPE), numberToBool);
-        standardConverterMap.put(Pair.of(BOOLEAN_TYPE, SHORT_TYPE), numberToBool);
-        standardConverterMap.put(Pair.of(BOOLEAN_TYPE, INTEGER_TYPE), numberToBool);
-        standardConverterMap.put(Pair.of(BOOLEAN_TYPE, LONG_TYPE), numberToBool);
-        standardConverterMap.put(Pair.of(BOOLEAN_TYPE, FLOAT_TYPE), numberToBool);
-        standardConverterMap.put(Pair.of(BOOLEAN_TYPE, DOUBLE_TYPE), numberToBool);
+        addStandardConverter(BOOLEAN_CLASS, BYTE_CLASS, numberToBool);
+        addStandardConverter(BOOLEAN_CLASS, SHORT_CLASS, numberToBool);
+        addStandardConverter(BOOLEAN_CLASS, INTEGER_CLASS, numberToBool);
+        addStandardConverter(BOOLEAN_CLASS, LONG_CLASS, numberToBool);
+        addStandardConverter(BOOLEAN_CLASS, BIG_INTEGER_CLASS, bigIntegerToBool);
+        addStandardConverter(BOOLEAN_CLASS, FLOAT_CLASS, numberToBool);
+        addStandardConverter(BOOLEAN_CLASS, DOUBLE_CLASS, numberToBool);
+        addStandardConverter(BOOLEAN_CLASS, BIG_DECIMAL_CLASS, bigDecimalToBool);
+        addStandardConverter(BOOLEAN_CLASS, NUMBER_CLASS, numberToBool);
+        addStandardConverter(BOOLEAN_CLASS, BYTE_TYPE, numberToBool);
+        addStandardConverter(BOOLEAN_CLASS, SHORT_TYPE, numberToBool);
+        addStandardConverter(BOOLEAN_CLASS, INTEGER_TYPE, numberToBool);
+        addStandardConverter(BOOLEAN_CLASS, LONG_TYPE, numberToBool);
+        addStandardConverter(BOOLEAN_CLASS, FLOAT_TYPE, numberToBool);
+        addStandardConverter(BOOLEAN_CLASS, DOUBLE_TYPE, numberToBool);
+        addStandardConverter(BOOLEAN_TYPE, BYTE_CLASS, numberToBool);
+        addStandardConverter(BOOLEAN_TYPE, SHORT_CLASS, numberToBool);
+        addStandardConverter(BOOLEAN_TYPE, INTEGER_CLASS, numberToBool);
+        addStandardConverter(BOOLEAN_TYPE, BIG_INTEGER_CLASS, bigIntegerToBool);
+        addStandardConverter(BOOLEAN_TYPE, LONG_CLASS, numberToBool);
+        addStandardConverter(BOOLEAN_TYPE, FLOAT_CLASS, numberToBool);
+        addStandardConverter(BOOLEAN_TYPE, DOUBLE_CLASS, numberToBool);
+        addStandardConverter(BOOLEAN_TYPE, BIG_DECIMAL_CLASS, bigDecimalToBool);
+        addStandardConverter(BOOLEAN_TYPE, NUMBER_CLASS, numberToBool);
+        addStandardConverter(BOOLEAN_TYPE, BYTE_TYPE, numberToBool);
+        addStandardConverter(BOOLEAN_TYPE, SHORT_TYPE, numberToBool);
+        addStandardConverter(BOOLEAN_TYPE, INTEGER_TYPE, numberToBool);
+        addStandardConverter(BOOLEAN_TYPE, LONG_TYPE, numberToBool);
+        addStandardConverter(BOOLEAN_TYPE, FLOAT_TYPE, numberToBool);
+        addStandardConverter(BOOLEAN_TYPE, DOUBLE_TYPE, numberToBool);
 
         /* character -> boolean */
 
         Converter<Boolean> charToBoolean = o -> Optional.ofNullable((Character)o).map(c -> c != 0).orElse(null);
 
-        standardConverterMap.put(Pair.of(BOOLEAN_CLASS, CHARACTER_CLASS), charToBoolean);
-        standardConverterMap.put(Pair.of(BOOLEAN_CLASS, CHARACTER_TYPE), charToBoolean);
-        standardConverterMap.put(Pair.of(BOOLEAN_TYPE, CHARACTER_CLASS), charToBoolean);
-        standardConverterMap.put(Pair.of(BOOLEAN_TYPE, CHARACTER_TYPE), charToBoolean);
+        addStandardConverter(BOOLEAN_CLASS, CHARACTER_CLASS, charToBoolean);
+        addStandardConverter(BOOLEAN_CLASS, CHARACTER_TYPE, charToBoolean);
+        addStandardConverter(BOOLEAN_TYPE, CHARACTER_CLASS, charToBoolean);
+        addStandardConverter(BOOLEAN_TYPE, CHARACTER_TYPE, charToBoolean);
 
         /* string -> boolean */
 
         Converter<Boolean> stringToBoolean = o -> Boolean.valueOf(String.valueOf(o));
 
-        standardConverterMap.put(Pair.of(BOOLEAN_CLASS, STRING_CLASS), stringToBoolean);
-        standardConverterMap.put(Pair.of(BOOLEAN_TYPE, STRING_CLASS), stringToBoolean);
+        addStandardConverter(BOOLEAN_CLASS, STRING_CLASS, stringToBoolean);
+        addStandardConverter(BOOLEAN_TYPE, STRING_CLASS, stringToBoolean);
 
         /*
          * Conversions towards byte
@@ -182,39 +198,39 @@ static boolean checkBounds(Number n, double min, double max)
             .map(BigDecimal::byteValueExact)
             .orElse(null);
 
-        standardConverterMap.put(Pair.of(BYTE_CLASS, SHORT_CLASS), narrowingToByte);
-        standardConverterMap.put(Pair.of(BYTE_CLASS, INTEGER_CLASS), narrowingToByte);
-        standardConverterMap.put(Pair.of(BYTE_CLASS, LONG_CLASS), narrowingToByte);
-        standardConverterMap.put(Pair.of(BYTE_CLASS, BIG_INTEGER_CLASS), narrowingBigIntegerToByte);
-        standardConverterMap.put(Pair.of(BYTE_CLASS, FLOAT_CLASS), narrowingToByte);
-        standardConverterMap.put(Pair.of(BYTE_CLASS, DOUBLE_CLASS), narrowingToByte);
-        standardConverterMap.put(Pair.of(BYTE_CLASS, BIG_DECIMAL_CLASS), narrowingBigDecimalToByte);
-        standardConverterMap.put(Pair.of(BYTE_CLASS, NUMBER_CLASS), narrowingToByte);
-        standardConverterMap.put(Pair.of(BYTE_CLASS, SHORT_TYPE), narrowingToByte);
-        standardConverterMap.put(Pair.of(BYTE_CLASS, INTEGER_TYPE), narrowingToByte);
-        standardConverterMap.put(Pair.of(BYTE_CLASS, LONG_TYPE), narrowingToByte);
-        standardConverterMap.put(Pair.of(BYTE_CLASS, FLOAT_TYPE), narrowingToByte);
-        standardConverterMap.put(Pair.of(BYTE_CLASS, DOUBLE_TYPE), narrowingToByte);
-        standardConverterMap.put(Pair.of(BYTE_TYPE, SHORT_CLASS), narrowingToByte);
-        standardConverterMap.put(Pair.of(BYTE_TYPE, INTEGER_CLASS), narrowingToByte);
-        standardConverterMap.put(Pair.of(BYTE_TYPE, LONG_CLASS), narrowingToByte);
-        standardConverterMap.put(Pair.of(BYTE_TYPE, BIG_INTEGER_CLASS), narrowingBigIntegerToByte);
-        standardConverterMap.put(Pair.of(BYTE_TYPE, FLOAT_CLASS), narrowingToByte);
-        standardConverterMap.put(Pair.of(BYTE_TYPE, DOUBLE_CLASS), narrowingToByte);
-        standardConverterMap.put(Pair.of(BYTE_TYPE, BIG_DECIMAL_CLASS), narrowingBigDecimalToByte);
-        standardConverterMap.put(Pair.of(BYTE_TYPE, NUMBER_CLASS), narrowingToByte);
-        standardConverterMap.put(Pair.of(BYTE_TYPE, SHORT_TYPE), narrowingToByte);
-        standardConverterMap.put(Pair.of(BYTE_TYPE, INTEGER_TYPE), narrowingToByte);
-        standardConverterMap.put(Pair.of(BYTE_TYPE, LONG_TYPE), narrowingToByte);
-        standardConverterMap.put(Pair.of(BYTE_TYPE, FLOAT_TYPE), narrowingToByte);
-        standardConverterMap.put(Pair.of(BYTE_TYPE, DOUBLE_TYPE), narrowingToByte);
+        addStandardConverter(BYTE_CLASS, SHORT_CLASS, narrowingToByte);
+        addStandardConverter(BYTE_CLASS, INTEGER_CLASS, narrowingToByte);
+        addStandardConverter(BYTE_CLASS, LONG_CLASS, narrowingToByte);
+        addStandardConverter(BYTE_CLASS, BIG_INTEGER_CLASS, narrowingBigIntegerToByte);
+        addStandardConverter(BYTE_CLASS, FLOAT_CLASS, narrowingToByte);
+        addStandardConverter(BYTE_CLASS, DOUBLE_CLASS, narrowingToByte);
+        addStandardConverter(BYTE_CLASS, BIG_DECIMAL_CLASS, narrowingBigDecimalToByte);
+        addStandardConverter(BYTE_CLASS, NUMBER_CLASS, narrowingToByte);
+        addStandardConverter(BYTE_CLASS, SHORT_TYPE, narrowingToByte);
+        addStandardConverter(BYTE_CLASS, INTEGER_TYPE, narrowingToByte);
+        addStandardConverter(BYTE_CLASS, LONG_TYPE, narrowingToByte);
+        addStandardConverter(BYTE_CLASS, FLOAT_TYPE, narrowingToByte);
+        addStandardConverter(BYTE_CLASS, DOUBLE_TYPE, narrowingToByte);
+        addStandardConverter(BYTE_TYPE, SHORT_CLASS, narrowingToByte);
+        addStandardConverter(BYTE_TYPE, INTEGER_CLASS, narrowingToByte);
+        addStandardConverter(BYTE_TYPE, LONG_CLASS, narrowingToByte);
+        addStandardConverter(BYTE_TYPE, BIG_INTEGER_CLASS, narrowingBigIntegerToByte);
+        addStandardConverter(BYTE_TYPE, FLOAT_CLASS, narrowingToByte);
+        addStandardConverter(BYTE_TYPE, DOUBLE_CLASS, narrowingToByte);
+        addStandardConverter(BYTE_TYPE, BIG_DECIMAL_CLASS, narrowingBigDecimalToByte);
+        addStandardConverter(BYTE_TYPE, NUMBER_CLASS, narrowingToByte);
+        addStandardConverter(BYTE_TYPE, SHORT_TYPE, narrowingToByte);
+        addStandardConverter(BYTE_TYPE, INTEGER_TYPE, narrowingToByte);
+        addStandardConverter(BYTE_TYPE, LONG_TYPE, narrowingToByte);
+        addStandardConverter(BYTE_TYPE, FLOAT_TYPE, narrowingToByte);
+        addStandardConverter(BYTE_TYPE, DOUBLE_TYPE, narrowingToByte);
 
         /* string to byte */
 
         Converter<Byte> stringToByte = o -> Byte.valueOf(String.valueOf(o));
 
-        standardConverterMap.put(Pair.of(BYTE_CLASS, STRING_CLASS), stringToByte);
-        standardConverterMap.put(Pair.of(BYTE_TYPE, STRING_CLASS), stringToByte);
+        addStandardConverter(BYTE_CLASS, STRING_CLASS, stringToByte);
+        addStandardConverter(BYTE_TYPE, STRING_CLASS, stringToByte);
 
         /*
          * Conversions towards short
@@ -235,28 +251,28 @@ static boolean checkBounds(Number n, double min, double max)
             .map(BigDecimal::shortValueExact)
             .orElse(null);
 
-        standardConverterMap.put(Pair.of(SHORT_CLASS, INTEGER_CLASS), narrowingToShort);
-        standardConverterMap.put(Pair.of(SHORT_CLASS, LONG_CLASS), narrowingToShort);
-        standardConverterMap.put(Pair.of(SHORT_CLASS, BIG_INTEGER_CLASS), narrowingBigIntegerToShort);
-        standardConverterMap.put(Pair.of(SHORT_CLASS, FLOAT_CLASS), narrowingToShort);
-        standardConverterMap.put(Pair.of(SHORT_CLASS, DOUBLE_CLASS), narrowingToShort);
-        standardConverterMap.put(Pair.of(SHORT_CLASS, BIG_DECIMAL_CLASS), narrowingBigDecimalToShort);
-        standardConverterMap.put(Pair.of(SHORT_CLASS, NUMBER_CLASS), narrowingToShort);
-        standardConverterMap.put(Pair.of(SHORT_CLASS, INTEGER_TYPE), narrowingToShort);
-        standardConverterMap.put(Pair.of(SHORT_CLASS, LONG_TYPE), narrowingToShort);
-        standardConverterMap.put(Pair.of(SHORT_CLASS, FLOAT_TYPE), narrowingToShort);
-        standardConverterMap.put(Pair.of(SHORT_CLASS, DOUBLE_TYPE), narrowingToShort);
-        standardConverterMap.put(Pair.of(SHORT_TYPE, INTEGER_CLASS), narrowingToShort);
-        standardConverterMap.put(Pair.of(SHORT_TYPE, LONG_CLASS), narrowingToShort);
-        standardConverterMap.put(Pair.of(SHORT_TYPE, BIG_INTEGER_CLASS), narrowingBigIntegerToShort);
-        standardConverterMap.put(Pair.of(SHORT_TYPE, FLOAT_CLASS), narrowingToShort);
-        standardConverterMap.put(Pair.of(SHORT_TYPE, DOUBLE_CLASS), narrowingToShort);
-        standardConverterMap.put(Pair.of(SHORT_TYPE, BIG_DECIMAL_CLASS), narrowingBigDecimalToShort);
-        standardConverterMap.put(Pair.of(SHORT_TYPE, NUMBER_CLASS), narrowingToShort);
-        standardConverterMap.put(Pair.of(SHORT_TYPE, INTEGER_TYPE), narrowingToShort);
-        standardConverterMap.put(Pair.of(SHORT_TYPE, LONG_TYPE), narrowingToShort);
-        standardConverterMap.put(Pair.of(SHORT_TYPE, FLOAT_TYPE), narrowingToShort);
-        standardConverterMap.put(Pair.of(SHORT_TYPE, DOUBLE_TYPE), narrowingToShort);
+        addStandardConverter(SHORT_CLASS, INTEGER_CLASS, narrowingToShort);
+        addStandardConverter(SHORT_CLASS, LONG_CLASS, narrowingToShort);
+        addStandardConverter(SHORT_CLASS, BIG_INTEGER_CLASS, narrowingBigIntegerToShort);
+        addStandardConverter(SHORT_CLASS, FLOAT_CLASS, narrowingToShort);
+        addStandardConverter(SHORT_CLASS, DOUBLE_CLASS, narrowingToShort);
+        addStandardConverter(SHORT_CLASS, BIG_DECIMAL_CLASS, narrowingBigDecimalToShort);
+        addStandardConverter(SHORT_CLASS, NUMBER_CLASS, narrowingToShort);
+        addStandardConverter(SHORT_CLASS, INTEGER_TYPE, narrowingToShort);
+        addStandardConverter(SHORT_CLASS, LONG_TYPE, narrowingToShort);
+        addStandardConverter(SHORT_CLASS, FLOAT_TYPE, narrowingToShort);
+        addStandardConverter(SHORT_CLASS, DOUBLE_TYPE, narrowingToShort);
+        addStandardConverter(SHORT_TYPE, INTEGER_CLASS, narrowingToShort);
+        addStandardConverter(SHORT_TYPE, LONG_CLASS, narrowingToShort);
+        addStandardConverter(SHORT_TYPE, BIG_INTEGER_CLASS, narrowingBigIntegerToShort);
+        addStandardConverter(SHORT_TYPE, FLOAT_CLASS, narrowingToShort);
+        addStandardConverter(SHORT_TYPE, DOUBLE_CLASS, narrowingToShort);
+        addStandardConverter(SHORT_TYPE, BIG_DECIMAL_CLASS, narrowingBigDecimalToShort);
+        addStandardConverter(SHORT_TYPE, NUMBER_CLASS, narrowingToShort);
+        addStandardConverter(SHORT_TYPE, INTEGER_TYPE, narrowingToShort);
+        addStandardConverter(SHORT_TYPE, LONG_TYPE, narrowingToShort);
+        addStandardConverter(SHORT_TYPE, FLOAT_TYPE, narrowingToShort);
+        addStandardConverter(SHORT_TYPE, DOUBLE_TYPE, narrowingToShort);
 
         /* widening towards short */
 
@@ -264,15 +280,15 @@ static boolean checkBounds(Number n, double min, double max)
             .map(Number::shortValue)
             .orElse(null);
 
-        standardConverterMap.put(Pair.of(SHORT_CLASS, BYTE_CLASS), wideningToShort);
-        standardConverterMap.put(Pair.of(SHORT_CLASS, BYTE_TYPE), wideningToShort);
+        addStandardConverter(SHORT_CLASS, BYTE_CLASS, wideningToShort);
+        addStandardConverter(SHORT_CLASS, BYTE_TYPE, wideningToShort);
 
         /* string to short */
 
         Converter<Short> stringToShort = o -> Short.valueOf(String.valueOf(o));
 
-        standardConverterMap.put(Pair.of(SHORT_CLASS, STRING_CLASS), stringToShort);
-        standardConverterMap.put(Pair.of(SHORT_TYPE, STRING_CLASS), stringToShort);
+        addStandardConverter(SHORT_CLASS, STRING_CLASS, stringToShort);
+        addStandardConverter(SHORT_TYPE, STRING_CLASS, stringToShort);
 
         /*
          * Conversions towards int
@@ -293,24 +309,24 @@ static boolean checkBounds(Number n, double min, double max)
             .map(BigDecimal::intValueExact)
             .orElse(null);
 
-        standardConverterMap.put(Pair.of(INTEGER_CLASS, LONG_CLASS), narrowingToInteger);
-        standardConverterMap.put(Pair.of(INTEGER_CLASS, BIG_INTEGER_CLASS), narrowingBigIntegerToInteger);
-        standardConverterMap.put(Pair.of(INTEGER_CLASS, FLOAT_CLASS), narrowingToInteger);
-        standardConverterMap.put(Pair.of(INTEGER_CLASS, DOUBLE_CLASS), narrowingToInteger);
-        standardConverterMap.put(Pair.of(INTEGER_CLASS, BIG_DECIMAL_CLASS), narrowingBigDecimalToInteger);
-        standardConverterMap.put(Pair.of(INTEGER_CLASS, NUMBER_CLASS), narrowingToInteger);
-        standardConverterMap.put(Pair.of(INTEGER_CLASS, LONG_TYPE), narrowingToInteger);
-        standardConverterMap.put(Pair.of(INTEGER_CLASS, FLOAT_TYPE), narrowingToInteger);
-        standardConverterMap.put(Pair.of(INTEGER_CLASS, DOUBLE_TYPE), narrowingToInteger);
-        standardConverterMap.put(Pair.of(INTEGER_TYPE, LONG_CLASS), narrowingToInteger);
-        standardConverterMap.put(Pair.of(INTEGER_TYPE, BIG_INTEGER_CLASS), narrowingBigIntegerToInteger);
-        standardConverterMap.put(Pair.of(INTEGER_TYPE, FLOAT_CLASS), narrowingToInteger);
-        standardConverterMap.put(Pair.of(INTEGER_TYPE, DOUBLE_CLASS), narrowingToInteger);
-        standardConverterMap.put(Pair.of(INTEGER_TYPE, BIG_DECIMAL_CLASS), narrowingBigDecimalToInteger);
-        standardConverterMap.put(Pair.of(INTEGER_TYPE, NUMBER_CLASS), narrowingToInteger);
-        standardConverterMap.put(Pair.of(INTEGER_TYPE, LONG_TYPE), narrowingToInteger);
-        standardConverterMap.put(Pair.of(INTEGER_TYPE, FLOAT_TYPE), narrowingToInteger);
-        standardConverterMap.put(Pair.of(INTEGER_TYPE, DOUBLE_TYPE), narrowingToInteger);
+        addStandardConverter(INTEGER_CLASS, LONG_CLASS, narrowingToInteger);
+        addStandardConverter(INTEGER_CLASS, BIG_INTEGER_CLASS, narrowingBigIntegerToInteger);
+        addStandardConverter(INTEGER_CLASS, FLOAT_CLASS, narrowingToInteger);
+        addStandardConverter(INTEGER_CLASS, DOUBLE_CLASS, narrowingToInteger);
+        addStandardConverter(INTEGER_CLASS, BIG_DECIMAL_CLASS, narrowingBigDecimalToInteger);
+        addStandardConverter(INTEGER_CLASS, NUMBER_CLASS, narrowingToInteger);
+        addStandardConverter(INTEGER_CLASS, LONG_TYPE, narrowingToInteger);
+        addStandardConverter(INTEGER_CLASS, FLOAT_TYPE, narrowingToInteger);
+        addStandardConverter(INTEGER_CLASS, DOUBLE_TYPE, narrowingToInteger);
+        addStandardConverter(INTEGER_TYPE, LONG_CLASS, narrowingToInteger);
+        addStandardConverter(INTEGER_TYPE, BIG_INTEGER_CLASS, narrowingBigIntegerToInteger);
+        addStandardConverter(INTEGER_TYPE, FLOAT_CLASS, narrowingToInteger);
+        addStandardConverter(INTEGER_TYPE, DOUBLE_CLASS, narrowingToInteger);
+        addStandardConverter(INTEGER_TYPE, BIG_DECIMAL_CLASS, narrowingBigDecimalToInteger);
+        addStandardConverter(INTEGER_TYPE, NUMBER_CLASS, narrowingToInteger);
+        addStandardConverter(INTEGER_TYPE, LONG_TYPE, narrowingToInteger);
+        addStandardConverter(INTEGER_TYPE, FLOAT_TYPE, narrowingToInteger);
+        addStandardConverter(INTEGER_TYPE, DOUBLE_TYPE, narrowingToInteger);
 
         /* widening towards int */
 
@@ -318,17 +334,17 @@ static boolean checkBounds(Number n, double min, double max)
             .map(Number::intValue)
             .orElse(null);
 
-        standardConverterMap.put(Pair.of(INTEGER_CLASS, BYTE_CLASS), wideningToInteger);
-        standardConverterMap.put(Pair.of(INTEGER_CLASS, SHORT_CLASS), wideningToInteger);
-        standardConverterMap.put(Pair.of(INTEGER_CLASS, BYTE_TYPE), wideningToInteger);
-        standardConverterMap.put(Pair.of(INTEGER_CLASS, SHORT_TYPE), wideningToInteger);
+        addStandardConverter(INTEGER_CLASS, BYTE_CLASS, wideningToInteger);
+        addStandardConverter(INTEGER_CLASS, SHORT_CLASS, wideningToInteger);
+        addStandardConverter(INTEGER_CLASS, BYTE_TYPE, wideningToInteger);
+        addStandardConverter(INTEGER_CLASS, SHORT_TYPE, wideningToInteger);
 
         /* string to int */
 
         Converter<Integer> stringToInteger = o -> Integer.valueOf(String.valueOf(o));
 
-        standardConverterMap.put(Pair.of(INTEGER_CLASS, STRING_CLASS), stringToInteger);
-        standardConverterMap.put(Pair.of(INTEGER_TYPE, STRING_CLASS), stringToInteger);
+        addStandardConverter(INTEGER_CLASS, STRING_CLASS, stringToInteger);
+        addStandardConverter(INTEGER_TYPE, STRING_CLASS, stringToInteger);
 
         /*
          * Conversions towards long
@@ -349,20 +365,20 @@ static boolean checkBounds(Number n, double min, double max)
             .map(BigDecimal::longValueExact)
             .orElse(null);
 
-        standardConverterMap.put(Pair.of(LONG_CLASS, BIG_INTEGER_CLASS), narrowingBigIntegerToLong);
-        standardConverterMap.put(Pair.of(LONG_CLASS, FLOAT_CLASS), narrowingToLong);
-        standardConverterMap.put(Pair.of(LONG_CLASS, DOUBLE_CLASS), narrowingToLong);
-        standardConverterMap.put(Pair.of(LONG_CLASS, BIG_DECIMAL_CLASS), narrowingBigDecimalToLong);
-        standardConverterMap.put(Pair.of(LONG_CLASS, NUMBER_CLASS), narrowingToLong);
-        standardConverterMap.put(Pair.of(LONG_CLASS, FLOAT_TYPE), narrowingToLong);
-        standardConverterMap.put(Pair.of(LONG_CLASS, DOUBLE_TYPE), narrowingToLong);
-        standardConverterMap.put(Pair.of(LONG_TYPE, BIG_INTEGER_CLASS), narrowingBigIntegerToLong);
-        standardConverterMap.put(Pair.of(LONG_TYPE, FLOAT_CLASS), narrowingToLong);
-        standardConverterMap.put(Pair.of(LONG_TYPE, DOUBLE_CLASS), narrowingToLong);
-        standardConverterMap.put(Pair.of(LONG_TYPE, BIG_DECIMAL_CLASS), narrowingBigDecimalToLong);
-        standardConverterMap.put(Pair.of(LONG_TYPE, NUMBER_CLASS), narrowingToLong);
-        standardConverterMap.put(Pair.of(LONG_TYPE, FLOAT_TYPE), narrowingToLong);
-        standardConverterMap.put(Pair.of(LONG_TYPE, DOUBLE_TYPE), narrowingToLong);
+        addStandardConverter(LONG_CLASS, BIG_INTEGER_CLASS, narrowingBigIntegerToLong);
+        addStandardConverter(LONG_CLASS, FLOAT_CLASS, narrowingToLong);
+        addStandardConverter(LONG_CLASS, DOUBLE_CLASS, narrowingToLong);
+        addStandardConverter(LONG_CLASS, BIG_DECIMAL_CLASS, narrowingBigDecimalToLong);
+        addStandardConverter(LONG_CLASS, NUMBER_CLASS, narrowingToLong);
+        addStandardConverter(LONG_CLASS, FLOAT_TYPE, narrowingToLong);
+        addStandardConverter(LONG_CLASS, DOUBLE_TYPE, narrowingToLong);
+        addStandardConverter(LONG_TYPE, BIG_INTEGER_CLASS, narrowingBigIntegerToLong);
+        addStandardConverter(LONG_TYPE, FLOAT_CLASS, narrowingToLong);
+        addStandardConverter(LONG_TYPE, DOUBLE_CLASS, narrowingToLong);
+        addStandardConverter(LONG_TYPE, BIG_DECIMAL_CLASS, narrowingBigDecimalToLong);
+        addStandardConverter(LONG_TYPE, NUMBER_CLASS, narrowingToLong);
+        addStandardConverter(LONG_TYPE, FLOAT_TYPE, narrowingToLong);
+        addStandardConverter(LONG_TYPE, DOUBLE_TYPE, narrowingToLong);
 
         /* widening towards long */
 
@@ -370,19 +386,19 @@ static boolean checkBounds(Number n, double min, double max)
             .map(Number::longValue)
             .orElse(null);
 
-        standardConverterMap.put(Pair.of(LONG_CLASS, BYTE_CLASS), wideningToLong);
-        standardConverterMap.put(Pair.of(LONG_CLASS, SHORT_CLASS), wideningToLong);
-        standardConverterMap.put(Pair.of(LONG_CLASS, INTEGER_CLASS), wideningToLong);
-        standardConverterMap.put(Pair.of(LONG_CLASS, BYTE_TYPE), wideningToLong);
-        standardConverterMap.put(Pair.of(LONG_CLASS, SHORT_TYPE), wideningToLong);
-        standardConverterMap.put(Pair.of(LONG_CLASS, INTEGER_TYPE), wideningToLong);
+        addStandardConverter(LONG_CLASS, BYTE_CLASS, wideningToLong);
+        addStandardConverter(LONG_CLASS, SHORT_CLASS, wideningToLong);
+        addStandardConverter(LONG_CLASS, INTEGER_CLASS, wideningToLong);
+        addStandardConverter(LONG_CLASS, BYTE_TYPE, wideningToLong);
+        addStandardConverter(LONG_CLASS, SHORT_TYPE, wideningToLong);
+        addStandardConverter(LONG_CLASS, INTEGER_TYPE, wideningToLong);
 
         /* string to long */
 
         Converter<Long> stringToLong = o -> Long.valueOf(String.valueOf(o));
 
-        standardConverterMap.put(Pair.of(LONG_CLASS, STRING_CLASS), stringToLong);
-        standardConverterMap.put(Pair.of(LONG_TYPE, STRING_CLASS), stringToLong);
+        addStandardConverter(LONG_CLASS, STRING_CLASS, stringToLong);
+        addStandardConverter(LONG_TYPE, STRING_CLASS, stringToLong);
 
         /*
          * Conversions towards BigInteger
@@ -394,14 +410,14 @@ static boolean checkBounds(Number n, double min, double max)
             .map(n -> BigInteger.valueOf(n.longValue()))
             .orElse(null);
 
-        standardConverterMap.put(Pair.of(BIG_INTEGER_CLASS, BYTE_CLASS), toBigInteger);
-        standardConverterMap.put(Pair.of(BIG_INTEGER_CLASS, SHORT_CLASS), toBigInteger);
-        standardConverterMap.put(Pair.of(BIG_INTEGER_CLASS, INTEGER_CLASS), toBigInteger);
-        standardConverterMap.put(Pair.of(BIG_INTEGER_CLASS, LONG_CLASS), toBigInteger);
-        standardConverterMap.put(Pair.of(BIG_INTEGER_CLASS, BYTE_TYPE), toBigInteger);
-        standardConverterMap.put(Pair.of(BIG_INTEGER_CLASS, SHORT_TYPE), toBigInteger);
-        standardConverterMap.put(Pair.of(BIG_INTEGER_CLASS, INTEGER_TYPE), toBigInteger);
-        standardConverterMap.put(Pair.of(BIG_INTEGER_CLASS, LONG_TYPE), toBigInteger);
+        addStandardConverter(BIG_INTEGER_CLASS, BYTE_CLASS, toBigInteger);
+        addStandardConverter(BIG_INTEGER_CLASS, SHORT_CLASS, toBigInteger);
+        addStandardConverter(BIG_INTEGER_CLASS, INTEGER_CLASS, toBigInteger);
+        addStandardConverter(BIG_INTEGER_CLASS, LONG_CLASS, toBigInteger);
+        addStandardConverter(BIG_INTEGER_CLASS, BYTE_TYPE, toBigInteger);
+        addStandardConverter(BIG_INTEGER_CLASS, SHORT_TYPE, toBigInteger);
+        addStandardConverter(BIG_INTEGER_CLASS, INTEGER_TYPE, toBigInteger);
+        addStandardConverter(BIG_INTEGER_CLASS, LONG_TYPE, toBigInteger);
         
         /* approximate types towards BigInteger */
 
@@ -413,7 +429,7 @@ static boolean checkBounds(Number n, double min, double max)
             .map(BigDecimal::toBigIntegerExact)
             .orElse(null);
 
-        standardConverterMap.put(Pair.of(BIG_INTEGER_CLASS, BIG_DECIMAL_CLASS), bigDecimalToBigInteger);
+        addStandardConverter(BIG_INTEGER_CLASS, BIG_DECIMAL_CLASS, bigDecimalToBigInteger);
 
         /* string to BigInteger */
 
@@ -421,7 +437,7 @@ static boolean checkBounds(Number n, double min, double max)
             .map(s -> new BigInteger(String.valueOf(s)))
             .orElse(null);
 
-        standardConverterMap.put(Pair.of(BIG_INTEGER_CLASS, STRING_CLASS), stringToBigInteger);
+        addStandardConverter(BIG_INTEGER_CLASS, STRING_CLASS, stringToBigInteger);
 
         /*
          * Conversions towards float
@@ -433,34 +449,34 @@ static boolean checkBounds(Number n, double min, double max)
 
         /* narrowing towards float */
 
-        standardConverterMap.put(Pair.of(FLOAT_CLASS, BIG_INTEGER_CLASS), toFloat);
-        standardConverterMap.put(Pair.of(FLOAT_CLASS, DOUBLE_CLASS), toFloat);
-        standardConverterMap.put(Pair.of(FLOAT_CLASS, BIG_DECIMAL_CLASS), toFloat);
-        standardConverterMap.put(Pair.of(FLOAT_CLASS, NUMBER_CLASS), toFloat);
-        standardConverterMap.put(Pair.of(FLOAT_CLASS, DOUBLE_TYPE), toFloat);
-        standardConverterMap.put(Pair.of(FLOAT_TYPE, BIG_INTEGER_CLASS), toFloat);
-        standardConverterMap.put(Pair.of(FLOAT_TYPE, DOUBLE_CLASS), toFloat);
-        standardConverterMap.put(Pair.of(FLOAT_TYPE, BIG_DECIMAL_CLASS), toFloat);
-        standardConverterMap.put(Pair.of(FLOAT_TYPE, NUMBER_CLASS), toFloat);
-        standardConverterMap.put(Pair.of(FLOAT_TYPE, DOUBLE_TYPE), toFloat);
+        addStandardConverter(FLOAT_CLASS, BIG_INTEGER_CLASS, toFloat);
+        addStandardConverter(FLOAT_CLASS, DOUBLE_CLASS, toFloat);
+        addStandardConverter(FLOAT_CLASS, BIG_DECIMAL_CLASS, toFloat);
+        addStandardConverter(FLOAT_CLASS, NUMBER_CLASS, toFloat);
+        addStandardConverter(FLOAT_CLASS, DOUBLE_TYPE, toFloat);
+        addStandardConverter(FLOAT_TYPE, BIG_INTEGER_CLASS, toFloat);
+        addStandardConverter(FLOAT_TYPE, DOUBLE_CLASS, toFloat);
+        addStandardConverter(FLOAT_TYPE, BIG_DECIMAL_CLASS, toFloat);
+        addStandardConverter(FLOAT_TYPE, NUMBER_CLASS, toFloat);
+        addStandardConverter(FLOAT_TYPE, DOUBLE_TYPE, toFloat);
 
         /* exact types towards float */
 
-        standardConverterMap.put(Pair.of(FLOAT_CLASS, BYTE_CLASS), toFloat);
-        standardConverterMap.put(Pair.of(FLOAT_CLASS, SHORT_CLASS), toFloat);
-        standardConverterMap.put(Pair.of(FLOAT_CLASS, INTEGER_CLASS), toFloat);
-        standardConverterMap.put(Pair.of(FLOAT_CLASS, LONG_CLASS), toFloat);
-        standardConverterMap.put(Pair.of(FLOAT_CLASS, BYTE_TYPE), toFloat);
-        standardConverterMap.put(Pair.of(FLOAT_CLASS, SHORT_TYPE), toFloat);
-        standardConverterMap.put(Pair.of(FLOAT_CLASS, INTEGER_TYPE), toFloat);
-        standardConverterMap.put(Pair.of(FLOAT_CLASS, LONG_TYPE), toFloat);
+        addStandardConverter(FLOAT_CLASS, BYTE_CLASS, toFloat);
+        addStandardConverter(FLOAT_CLASS, SHORT_CLASS, toFloat);
+        addStandardConverter(FLOAT_CLASS, INTEGER_CLASS, toFloat);
+        addStandardConverter(FLOAT_CLASS, LONG_CLASS, toFloat);
+        addStandardConverter(FLOAT_CLASS, BYTE_TYPE, toFloat);
+        addStandardConverter(FLOAT_CLASS, SHORT_TYPE, toFloat);
+        addStandardConverter(FLOAT_CLASS, INTEGER_TYPE, toFloat);
+        addStandardConverter(FLOAT_CLASS, LONG_TYPE, toFloat);
 
         /* string to float */
 
         Converter<Float> stringToFloat = o -> Float.valueOf(String.valueOf(o));
 
-        standardConverterMap.put(Pair.of(FLOAT_CLASS, STRING_CLASS), stringToFloat);
-        standardConverterMap.put(Pair.of(FLOAT_TYPE, STRING_CLASS), stringToFloat);
+        addStandardConverter(FLOAT_CLASS, STRING_CLASS, stringToFloat);
+        addStandardConverter(FLOAT_TYPE, STRING_CLASS, stringToFloat);
 
         /*
          * Conversions towards double
@@ -472,32 +488,32 @@ static boolean checkBounds(Number n, double min, double max)
 
         /* narrowing towards double */
 
-        standardConverterMap.put(Pair.of(DOUBLE_CLASS, BIG_INTEGER_CLASS), toDouble);
-        standardConverterMap.put(Pair.of(DOUBLE_CLASS, BIG_DECIMAL_CLASS), toDouble);
-        standardConverterMap.put(Pair.of(DOUBLE_TYPE, BIG_INTEGER_CLASS), toDouble);
-        standardConverterMap.put(Pair.of(DOUBLE_TYPE, BIG_DECIMAL_CLASS), toDouble);
+        addStandardConverter(DOUBLE_CLASS, BIG_INTEGER_CLASS, toDouble);
+        addStandardConverter(DOUBLE_CLASS, BIG_DECIMAL_CLASS, toDouble);
+        addStandardConverter(DOUBLE_TYPE, BIG_INTEGER_CLASS, toDouble);
+        addStandardConverter(DOUBLE_TYPE, BIG_DECIMAL_CLASS, toDouble);
         
         /* exact types or widening towards double */
 
-        standardConverterMap.put(Pair.of(DOUBLE_CLASS, BYTE_CLASS), toDouble);
-        standardConverterMap.put(Pair.of(DOUBLE_CLASS, SHORT_CLASS), toDouble);
-        standardConverterMap.put(Pair.of(DOUBLE_CLASS, INTEGER_CLASS), toDouble);
-        standardConverterMap.put(Pair.of(DOUBLE_CLASS, LONG_CLASS), toDouble);
-        standardConverterMap.put(Pair.of(DOUBLE_CLASS, FLOAT_CLASS), toDouble);
-        standardConverterMap.put(Pair.of(DOUBLE_CLASS, NUMBER_CLASS), toDouble);
-        standardConverterMap.put(Pair.of(DOUBLE_CLASS, BYTE_TYPE), toDouble);
-        standardConverterMap.put(Pair.of(DOUBLE_CLASS, SHORT_TYPE), toDouble);
-        standardConverterMap.put(Pair.of(DOUBLE_CLASS, INTEGER_TYPE), toDouble);
-        standardConverterMap.put(Pair.of(DOUBLE_CLASS, LONG_TYPE), toDouble);
-        standardConverterMap.put(Pair.of(DOUBLE_CLASS, FLOAT_TYPE), toDouble);
-        standardConverterMap.put(Pair.of(DOUBLE_TYPE, NUMBER_CLASS), toDouble);
+        addStandardConverter(DOUBLE_CLASS, BYTE_CLASS, toDouble);
+        addStandardConverter(DOUBLE_CLASS, SHORT_CLASS, toDouble);
+        addStandardConverter(DOUBLE_CLASS, INTEGER_CLASS, toDouble);
+        addStandardConverter(DOUBLE_CLASS, LONG_CLASS, toDouble);
+        addStandardConverter(DOUBLE_CLASS, FLOAT_CLASS, toDouble);
+        addStandardConverter(DOUBLE_CLASS, NUMBER_CLASS, toDouble);
+        addStandardConverter(DOUBLE_CLASS, BYTE_TYPE, toDouble);
+        addStandardConverter(DOUBLE_CLASS, SHORT_TYPE, toDouble);
+        addStandardConverter(DOUBLE_CLASS, INTEGER_TYPE, toDouble);
+        addStandardConverter(DOUBLE_CLASS, LONG_TYPE, toDouble);
+        addStandardConverter(DOUBLE_CLASS, FLOAT_TYPE, toDouble);
+        addStandardConverter(DOUBLE_TYPE, NUMBER_CLASS, toDouble);
 
         /* string to double */
 
         Converter<Double> stringToDouble = o -> Double.valueOf(String.valueOf(o));
 
-        standardConverterMap.put(Pair.of(DOUBLE_CLASS, STRING_CLASS), stringToDouble);
-        standardConverterMap.put(Pair.of(DOUBLE_TYPE, STRING_CLASS), stringToDouble);
+        addStandardConverter(DOUBLE_CLASS, STRING_CLASS, stringToDouble);
+        addStandardConverter(DOUBLE_TYPE, STRING_CLASS, stringToDouble);
 
         /*
          * Conversions towards BigDecimal
@@ -513,15 +529,15 @@ static boolean checkBounds(Number n, double min, double max)
             .map(bi -> new BigDecimal(bi))
             .orElse(null);
 
-        standardConverterMap.put(Pair.of(BIG_DECIMAL_CLASS, BYTE_CLASS), exactToBigDecimal);
-        standardConverterMap.put(Pair.of(BIG_DECIMAL_CLASS, SHORT_CLASS), exactToBigDecimal);
-        standardConverterMap.put(Pair.of(BIG_DECIMAL_CLASS, INTEGER_CLASS), exactToBigDecimal);
-        standardConverterMap.put(Pair.of(BIG_DECIMAL_CLASS, LONG_CLASS), exactToBigDecimal);
-        standardConverterMap.put(Pair.of(BIG_DECIMAL_CLASS, BIG_INTEGER_CLASS), bigIntegerToBigDecimal);
-        standardConverterMap.put(Pair.of(BIG_DECIMAL_CLASS, BYTE_TYPE), exactToBigDecimal);
-        standardConverterMap.put(Pair.of(BIG_DECIMAL_CLASS, SHORT_TYPE), exactToBigDecimal);
-        standardConverterMap.put(Pair.of(BIG_DECIMAL_CLASS, INTEGER_TYPE), exactToBigDecimal);
-        standardConverterMap.put(Pair.of(BIG_DECIMAL_CLASS, LONG_TYPE), exactToBigDecimal);
+        addStandardConverter(BIG_DECIMAL_CLASS, BYTE_CLASS, exactToBigDecimal);
+        addStandardConverter(BIG_DECIMAL_CLASS, SHORT_CLASS, exactToBigDecimal);
+        addStandardConverter(BIG_DECIMAL_CLASS, INTEGER_CLASS, exactToBigDecimal);
+        addStandardConverter(BIG_DECIMAL_CLASS, LONG_CLASS, exactToBigDecimal);
+        addStandardConverter(BIG_DECIMAL_CLASS, BIG_INTEGER_CLASS, bigIntegerToBigDecimal);
+        addStandardConverter(BIG_DECIMAL_CLASS, BYTE_TYPE, exactToBigDecimal);
+        addStandardConverter(BIG_DECIMAL_CLASS, SHORT_TYPE, exactToBigDecimal);
+        addStandardConverter(BIG_DECIMAL_CLASS, INTEGER_TYPE, exactToBigDecimal);
+        addStandardConverter(BIG_DECIMAL_CLASS, LONG_TYPE, exactToBigDecimal);
 
         /* approximate types towards BigDecimal */
 
@@ -529,10 +545,10 @@ static boolean checkBounds(Number n, double min, double max)
             .map(n -> BigDecimal.valueOf(n.doubleValue()))
             .orElse(null);
 
-        standardConverterMap.put(Pair.of(BIG_DECIMAL_CLASS, FLOAT_CLASS), approxToBigDecimal);
-        standardConverterMap.put(Pair.of(BIG_DECIMAL_CLASS, DOUBLE_CLASS), approxToBigDecimal);
-        standardConverterMap.put(Pair.of(BIG_DECIMAL_CLASS, FLOAT_TYPE), approxToBigDecimal);
-        standardConverterMap.put(Pair.of(BIG_DECIMAL_CLASS, DOUBLE_TYPE), approxToBigDecimal);
+        addStandardConverter(BIG_DECIMAL_CLASS, FLOAT_CLASS, approxToBigDecimal);
+        addStandardConverter(BIG_DECIMAL_CLASS, DOUBLE_CLASS, approxToBigDecimal);
+        addStandardConverter(BIG_DECIMAL_CLASS, FLOAT_TYPE, approxToBigDecimal);
+        addStandardConverter(BIG_DECIMAL_CLASS, DOUBLE_TYPE, approxToBigDecimal);
 
         /* string to BigDecimal */
 
@@ -540,7 +556,7 @@ static boolean checkBounds(Number n, double min, double max)
             .map(s -> new BigDecimal(String.valueOf(s)))
             .orElse(null);
 
-        standardConverterMap.put(Pair.of(BIG_DECIMAL_CLASS, STRING_CLASS), stringToBigDecimal);
+        addStandardConverter(BIG_DECIMAL_CLASS, STRING_CLASS, stringToBigDecimal);
 
         /*
          * Conversions from boolean to numeric type
@@ -552,10 +568,10 @@ static boolean checkBounds(Number n, double min, double max)
             .map(b -> b ? (byte)1 : (byte)0)
             .orElse(null);
 
-        standardConverterMap.put(Pair.of(BYTE_CLASS, BOOLEAN_CLASS), booleanToByte);
-        standardConverterMap.put(Pair.of(BYTE_CLASS, BOOLEAN_TYPE), booleanToByte);
-        standardConverterMap.put(Pair.of(BYTE_TYPE, BOOLEAN_CLASS), booleanToByte);
-        standardConverterMap.put(Pair.of(BYTE_TYPE, BOOLEAN_TYPE), booleanToByte);
+        addStandardConverter(BYTE_CLASS, BOOLEAN_CLASS, booleanToByte);
+        addStandardConverter(BYTE_CLASS, BOOLEAN_TYPE, booleanToByte);
+        addStandardConverter(BYTE_TYPE, BOOLEAN_CLASS, booleanToByte);
+        addStandardConverter(BYTE_TYPE, BOOLEAN_TYPE, booleanToByte);
 
         /* boolean to short */
 
@@ -563,10 +579,10 @@ static boolean checkBounds(Number n, double min, double max)
             .map(b -> b ? (short)1 : (short)0)
             .orElse(null);
 
-        standardConverterMap.put(Pair.of(SHORT_CLASS, BOOLEAN_CLASS), booleanToShort);
-        standardConverterMap.put(Pair.of(SHORT_CLASS, BOOLEAN_TYPE), booleanToShort);
-        standardConverterMap.put(Pair.of(SHORT_TYPE, BOOLEAN_CLASS), booleanToShort);
-        standardConverterMap.put(Pair.of(SHORT_TYPE, BOOLEAN_TYPE), booleanToShort);
+        addStandardConverter(SHORT_CLASS, BOOLEAN_CLASS, booleanToShort);
+        addStandardConverter(SHORT_CLASS, BOOLEAN_TYPE, booleanToShort);
+        addStandardConverter(SHORT_TYPE, BOOLEAN_CLASS, booleanToShort);
+        addStandardConverter(SHORT_TYPE, BOOLEAN_TYPE, booleanToShort);
 
         /* boolean to integer */
 
@@ -574,10 +590,10 @@ static boolean checkBounds(Number n, double min, double max)
             .map(b -> b ? (int)1 : (int)0)
             .orElse(null);
 
-        standardConverterMap.put(Pair.of(INTEGER_CLASS, BOOLEAN_CLASS), booleanToInteger);
-        standardConverterMap.put(Pair.of(INTEGER_CLASS, BOOLEAN_TYPE), booleanToInteger);
-        standardConverterMap.put(Pair.of(INTEGER_TYPE, BOOLEAN_CLASS), booleanToInteger);
-        standardConverterMap.put(Pair.of(INTEGER_TYPE, BOOLEAN_TYPE), booleanToInteger);
+        addStandardConverter(INTEGER_CLASS, BOOLEAN_CLASS, booleanToInteger);
+        addStandardConverter(INTEGER_CLASS, BOOLEAN_TYPE, booleanToInteger);
+        addStandardConverter(INTEGER_TYPE, BOOLEAN_CLASS, booleanToInteger);
+        addStandardConverter(INTEGER_TYPE, BOOLEAN_TYPE, booleanToInteger);
 
         /* boolean to long */
 
@@ -585,10 +601,10 @@ static boolean checkBounds(Number n, double min, double max)
             .map(b -> b ? 1l : 0l)
             .orElse(null);
 
-        standardConverterMap.put(Pair.of(LONG_CLASS, BOOLEAN_CLASS), booleanToLong);
-        standardConverterMap.put(Pair.of(LONG_CLASS, BOOLEAN_TYPE), booleanToLong);
-        standardConverterMap.put(Pair.of(LONG_TYPE, BOOLEAN_CLASS), booleanToLong);
-        standardConverterMap.put(Pair.of(LONG_TYPE, BOOLEAN_TYPE), booleanToLong);
+        addStandardConverter(LONG_CLASS, BOOLEAN_CLASS, booleanToLong);
+        addStandardConverter(LONG_CLASS, BOOLEAN_TYPE, booleanToLong);
+        addStandardConverter(LONG_TYPE, BOOLEAN_CLASS, booleanToLong);
+        addStandardConverter(LONG_TYPE, BOOLEAN_TYPE, booleanToLong);
 
         /* to string */
 
@@ -599,7 +615,7 @@ static boolean checkBounds(Number n, double min, double max)
             .map(l -> LocaleUtils.toLocale(String.valueOf(l)))
             .orElse(null);
 
-        standardConverterMap.put(Pair.of(LOCALE_CLASS, STRING_CLASS), stringToLocale);
+        addStandardConverter(LOCALE_CLASS, STRING_CLASS, stringToLocale);
     }
 
     /**
@@ -607,7 +623,6 @@ static boolean checkBounds(Number n, double min, double max)
      */
     public TypeConversionHandlerImpl()
     {
-        converterCacheMap = new ConcurrentHashMap<>();
     }
 
     /**
@@ -661,35 +676,56 @@ public Converter<?> getNeededConverter(Type formal, Class<?> actual)
         {
             return null;
         }
-        Pair<String, String> key = Pair.of(formal.getTypeName(), actual.getTypeName());
 
         /* first check for a standard conversion */
-        Converter<?> converter = standardConverterMap.get(key);
-        if (converter == null)
+        if (formal instanceof Class)
         {
-            /* then the converters cache map */
-            converter = converterCacheMap.get(key);
-            if (converter == null)
+            Map<Class<?>, Converter<?>> standardConverters = standardConverterMap.get(formal);
+            if (standardConverters != null)
             {
-                Class<?> formalClass = IntrospectionUtils.getTypeClass(formal);
-                /* check for conversion towards string */
-                if (formal == String.class)
+                Converter<?> converter = standardConverters.get(actual);
+                if (converter != null)
                 {
-                    converter = toString;
-                }
-                /* check for String -> Enum constant conversion */
-                else if (formalClass != null && formalClass.isEnum() && actual == String.class)
-                {
-                    final Class<Enum> enumClass = (Class<Enum>)formalClass;
-                    converter = o -> Enum.valueOf(enumClass, (String)o);
+                    return converter;
                 }
+            }
+        }
 
-                converterCacheMap.put(key, converter == null ? cacheMiss : converter);
+        /* then the converters cache */
+        Map<Class<?>, Converter<?>> cachedConverters = getCachedConverters(formal);
+        Converter<?> converter = cachedConverters.get(actual);
+        if (converter == null)
+        {
+            Class<?> formalClass = IntrospectionUtils.getTypeClass(formal);
+            /* check for conversion towards string */
+            if (formal == String.class)
+            {
+                converter = toString;
             }
+            /* check for String -> Enum constant conversion */
+            else if (formalClass != null && formalClass.isEnum() && actual == String.class)
+            {
+                final Class<Enum> enumClass = (Class<Enum>)formalClass;
+                converter = o -> Enum.valueOf(enumClass, (String)o);
+            }
+
+            cachedConverters.put(actual, converter == null ? cacheMiss : converter);
         }
         return converter == cacheMiss ? null : converter;
     }
 
+    /**
+     * Get the cached converters towards the given formal type
+     * @param formal expected formal type
+     * @return cached converters, indexed by actual class
+     */
+    private Map<Class<?>, Converter<?>> getCachedConverters(Type formal)
+    {
+        return formal instanceof Class
+            ? converterCache.get((Class<?>)formal)
+            : typeConverterCache.computeIfAbsent(formal.getTypeName(), k -> new ConcurrentHashMap<>());
+    }
+
     /**
      * Add the given converter to the handler.
      *
@@ -701,23 +737,20 @@ else if (formalClass != null && formalClass.isEnum() && actual == String.class)
     @Override
     public void addConverter(Type formal, Class<?> actual, Converter<?> converter)
     {
-        Pair<String, String> key = Pair.of(formal.getTypeName(), actual.getTypeName());
-        converterCacheMap.put(key, converter);
+        getCachedConverters(formal).put(actual, converter);
         Class<?> formalClass = IntrospectionUtils.getTypeClass(formal);
         if (formalClass != null)
         {
             if (formalClass.isPrimitive())
             {
-                key = Pair.of(IntrospectionUtils.getBoxedClass(formalClass).getTypeName(), actual.getTypeName());
-                converterCacheMap.put(key, converter);
+                converterCache.get(IntrospectionUtils.getBoxedClass(formalClass)).put(actual, converter);
             }
             else
             {
                 Class<?> unboxedFormal = IntrospectionUtils.getUnboxedClass(formalClass);
                 if (unboxedFormal != formalClass)
                 {
-                    key = Pair.of(unboxedFormal.getTypeName(), actual.getTypeName());
-                    converterCacheMap.put(key, converter);
+                    converterCache.get(unboxedFormal).put(actual, converter);
                 }
             }
         }
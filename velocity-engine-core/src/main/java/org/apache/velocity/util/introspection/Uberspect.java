@@ -71,4 +71,16 @@
      * @return A Velocity Setter.
      */
     VelPropertySet getPropertySet(Object obj, String identifier, Object arg, Info info);
+
+    /**
+     * Get the generation of the introspection caches backing this uberspector. It changes
+     * whenever one of them is cleared, so that introspection results cached outside of the
+     * uberspector, like in {@link CallSiteCache}, can be dropped.
+     * @return current generation
+     * @since 2.6
+     */
+    default long getCacheGeneration()
+    {
+        return 0L;
+    }
 }
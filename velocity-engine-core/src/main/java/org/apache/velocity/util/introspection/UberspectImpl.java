@@ -88,6 +88,16 @@ public void init()
         introspector = new Introspector(log, conversionHandler);
     }
 
+    /**
+     * {@inheritDoc}
+     * @since 2.6
+     */
+    @Override
+    public long getCacheGeneration()
+    {
+        return introspector == null ? 0L : introspector.getCacheGeneration();
+    }
+
     public TypeConversionHandler getConversionHandler()
     {
         return conversionHandler;
@@ -462,6 +472,12 @@ public VelPropertySet getPropertySet(Object obj, String identifier,
      */
     public static class VelMethodImpl implements VelMethod
     {
+        /**
+         * Per-thread arguments arrays of the calls with one and two arguments, which reflection needs
+         */
+        private static final ThreadLocal<Object[][]> ARGUMENTS =
+            ThreadLocal.withInitial(() -> new Object[][] { new Object[1], new Object[2] });
+
         final Method method;
         Boolean isVarArg;
         boolean wrapArray;
@@ -554,6 +570,104 @@ public Object invoke(Object o, Object[] actual)
             return doInvoke(o, actual);
         }
 
+        /**
+         * Invocation of a method taking a single argument. Unless the method is a varargs one, or is called
+         * on an array wrapper, the arguments array given to {@link #doInvoke(Object, Object[])} is reused.
+         * @param o target object
+         * @param arg0 argument
+         * @return invocation result
+         * @see VelMethod#invoke(java.lang.Object, java.lang.Object)
+         * @since 2.6
+         */
+        @Override
+        public Object invoke(Object o, Object arg0)
+            throws IllegalAccessException, InvocationTargetException
+        {
+            if (!reusesArguments())
+            {
+                return invoke(o, new Object[] { arg0 });
+            }
+            arg0 = convert(0, arg0);
+            Object[] actual = ARGUMENTS.get()[0];
+            actual[0] = arg0;
+            try
+            {
+                return doInvoke(o, actual);
+            }
+            finally
+            {
+                actual[0] = null;
+            }
+        }
+
+        /**
+         * Invocation of a method taking two arguments. Unless the method is a varargs one, or is called
+         * on an array wrapper, the arguments array given to {@link #doInvoke(Object, Object[])} is reused.
+         * @param o target object
+         * @param arg0 first argument
+         * @param arg1 second argument
+         * @return invocation result
+         * @see VelMethod#invoke(java.lang.Object, java.lang.Object, java.lang.Object)
+         * @since 2.6
+         */
+        @Override
+        public Object invoke(Object o, Object arg0, Object arg1)
+            throws IllegalAccessException, InvocationTargetException
+        {
+            if (!reusesArguments())
+            {
+                return invoke(o, new Object[] { arg0, arg1 });
+            }
+            arg0 = convert(0, arg0);
+            arg1 = convert(1, arg1);
+            Object[] actual = ARGUMENTS.get()[1];
+            actual[0] = arg0;
+            actual[1] = arg1;
+            try
+            {
+                return doInvoke(o, actual);
+            }
+            finally
+            {
+                actual[0] = null;
+                actual[1] = null;
+            }
+        }
+
+        /*
+         * Method.invoke() reads the arguments before calling the target, so the same array can serve
+         * nested calls. Subclasses overriding doInvoke() may keep it, so they get their own arrays.
+         */
+        private boolean reusesArguments()
+        {
+            return getClass() == VelMethodImpl.class && !wrapArray && !isVarArg();
+        }
+
+        /**
+         * Convert an argument to the type of its parameter, if needed
+         * @param index parameter index
+         * @param arg argument
+         * @return converted argument
+         * @since 2.6
+         */
+        protected Object convert(int index, Object arg)
+        {
+            if (converters == null || converters[index] == null)
+            {
+                return arg;
+            }
+            // some converters may throw an ArithmeticException
+            // which we want to wrap into an IllegalArgumentException
+            try
+            {
+                return converters[index].convert(arg);
+            }
+            catch (ArithmeticException ae)
+            {
+                throw new IllegalArgumentException(ae);
+            }
+        }
+
         /**
          * Offers an extension point for subclasses (in alternate Uberspects)
          * to alter the invocation after any array wrapping or varargs handling
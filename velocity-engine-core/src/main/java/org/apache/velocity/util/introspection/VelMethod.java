@@ -45,6 +45,39 @@
     Object invoke(Object o, Object[] params)
         throws IllegalAccessException, InvocationTargetException;
 
+    /**
+     *  invocation of a method taking a single argument. Implementations can
+     *  override it to avoid allocating an arguments array.
+     * @param o target object
+     * @param arg0 argument
+     * @return The resulting object.
+     * @throws IllegalAccessException
+     * @throws InvocationTargetException
+     * @since 2.6
+     */
+    default Object invoke(Object o, Object arg0)
+        throws IllegalAccessException, InvocationTargetException
+    {
+        return invoke(o, new Object[] { arg0 });
+    }
+
+    /**
+     *  invocation of a method taking two arguments. Implementations can
+     *  override it to avoid allocating an arguments array.
+     * @param o target object
+     * @param arg0 first argument
+     * @param arg1 second argument
+     * @return The resulting object.
+     * @throws IllegalAccessException
+     * @throws InvocationTargetException
+     * @since 2.6
+     */
+    default Object invoke(Object o, Object arg0, Object arg1)
+        throws IllegalAccessException, InvocationTargetException
+    {
+        return invoke(o, new Object[] { arg0, arg1 });
+    }
+
     /**
      *  specifies if this VelMethod is cacheable and able to be
      *  reused for this class of object it was returned for
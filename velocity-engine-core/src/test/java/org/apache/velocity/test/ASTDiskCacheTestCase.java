@@ -0,0 +1,249 @@
+package org.apache.velocity.test;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.velocity.Template;
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.runtime.RuntimeConstants;
+import org.apache.velocity.runtime.RuntimeInstance;
+import org.apache.velocity.runtime.parser.Token;
+import org.apache.velocity.runtime.parser.node.ASTBlock;
+import org.apache.velocity.runtime.parser.node.ASTDirective;
+import org.apache.velocity.runtime.parser.node.ASTIfStatement;
+import org.apache.velocity.runtime.parser.node.ASTReference;
+import org.apache.velocity.runtime.parser.node.Node;
+import org.apache.velocity.runtime.parser.node.SimpleNode;
+import org.apache.velocity.runtime.resource.ASTDiskCache;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+/**
+ * Tests the persistent cache of parsed templates.
+ */
+public class ASTDiskCacheTestCase extends BaseTestCase
+{
+    private static final String[] SOURCES =
+    {
+        "",
+        "plain text",
+        "## comment\nHello $name! ${name} $!{missing} $name.length() $list.get(0)\n",
+        "#* block\ncomment *#\\$escaped \\\\$name \\#if #[[ $raw #if ]]#\n",
+        "#set($map = {'a' : 1, 'b' : [1..3]})#set($sum = $map.a + 2 * 3)$sum $map.b\n",
+        "  #if($name == 'world')\n    yes\n  #elseif($list.size() > 1)\n    more\n  #else\n    no\n  #end\n",
+        "#foreach($i in $list)\n\t$i#if($foreach.hasNext),#end\n#end\n",
+        "#macro(greet $who $punct='!')Hi $who$punct#end\n#greet($name)#greet('you', '?')\n",
+        "#define($block)[$name]#end$block \"#if(true)\"${name}\"#end\" '$name'\n",
+        "#@wrap()body#end #stop trailing",
+    };
+
+    private File directory;
+
+    public ASTDiskCacheTestCase(String name)
+    {
+        super(name);
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        directory = new File(TEST_RESULT_DIR, "astcache");
+        File[] files = directory.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                file.delete();
+            }
+        }
+        super.setUp();
+    }
+
+    @Override
+    protected void setUpEngine(VelocityEngine engine)
+    {
+        engine.setProperty(RuntimeConstants.RESOURCE_MANAGER_AST_CACHE_DIRECTORY, directory.getPath());
+    }
+
+    @Override
+    protected void setUpContext(VelocityContext context)
+    {
+        context.put("name", "world");
+        context.put("list", Arrays.asList("a", "b", "c"));
+    }
+
+    private static RuntimeInstance createRuntime(String spaceGobbling)
+    {
+        RuntimeInstance runtime = new RuntimeInstance();
+        runtime.setProperty(RuntimeConstants.SPACE_GOBBLING, spaceGobbling);
+        runtime.init();
+        return runtime;
+    }
+
+    private static Template createTemplate(RuntimeInstance runtime, String name)
+    {
+        Template template = new Template();
+        template.setName(name);
+        template.setRuntimeServices(runtime);
+        return template;
+    }
+
+    private static String token(Token token)
+    {
+        return token == null ? "-" : token.kind + "@" + token.beginLine + ":" + token.beginColumn + "'" + token.image + "'";
+    }
+
+    /**
+     * Describes a tree, with the values set by the parser.
+     */
+    private static void dump(Node node, StringBuilder out)
+    {
+        out.append('(').append(node.getClass().getSimpleName())
+            .append(' ').append(token(node.getFirstToken())).append(' ').append(token(node.getLastToken()));
+        if (node instanceof ASTDirective)
+        {
+            ASTDirective directive = (ASTDirective)node;
+            out.append(' ').append(directive.getDirectiveName()).append('|').append(directive.getPrefix()).append('|').append(directive.getPostfix());
+        }
+        else if (node instanceof ASTBlock)
+        {
+            ASTBlock block = (ASTBlock)node;
+            out.append(' ').append(block.getPrefix()).append('|').append(block.getPostfix()).append('|').append(block.getMorePostfix());
+        }
+        else if (node instanceof ASTIfStatement)
+        {
+            ASTIfStatement statement = (ASTIfStatement)node;
+            out.append(' ').append(statement.getPrefix()).append('|').append(statement.getPostfix());
+        }
+        else if (node instanceof ASTReference)
+        {
+            ASTReference reference = (ASTReference)node;
+            out.append(' ').append(reference.isFormal()).append('|').append(reference.hasExtraDollar());
+        }
+        for (int i = 0; i < node.jjtGetNumChildren(); ++i)
+        {
+            dump(node.jjtGetChild(i), out);
+        }
+        out.append(')');
+    }
+
+    private static String dump(Node node)
+    {
+        StringBuilder out = new StringBuilder();
+        dump(node, out);
+        return out.toString();
+    }
+
+    private String render(Template template, Object data)
+    {
+        template.setData(data);
+        template.initDocument();
+        StringWriter writer = new StringWriter();
+        template.merge(new VelocityContext(context), writer);
+        return writer.toString();
+    }
+
+    public void testRoundTrip() throws Exception
+    {
+        RuntimeInstance runtime = createRuntime("lines");
+        ASTDiskCache cache = new ASTDiskCache(runtime, directory);
+        for (int i = 0; i < SOURCES.length; ++i)
+        {
+            String source = SOURCES[i];
+            String name = "template" + i;
+            SimpleNode parsed = runtime.parse(source, createTemplate(runtime, name));
+            String expected = dump(parsed);
+            cache.store(createTemplate(runtime, name), source, parsed);
+
+            Template template = createTemplate(runtime, name);
+            SimpleNode loaded = cache.load(template, source);
+            assertNotNull(name, loaded);
+            assertEquals(name, expected, dump(loaded));
+            assertSame(template, loaded.getTemplate());
+
+            String rendered = render(createTemplate(runtime, name), parsed);
+            assertEquals(name, rendered, render(template, loaded));
+        }
+    }
+
+    public void testStaleEntries() throws Exception
+    {
+        String source = "#foreach($i in $list)\n  $i\n#end\n";
+        RuntimeInstance runtime = createRuntime("lines");
+        ASTDiskCache cache = new ASTDiskCache(runtime, directory);
+        cache.store(createTemplate(runtime, "t"), source, runtime.parse(source, createTemplate(runtime, "t")));
+        assertNotNull(cache.load(createTemplate(runtime, "t"), source));
+
+        /* another template, or another source */
+        assertNull(cache.load(createTemplate(runtime, "u"), source));
+        assertNull(cache.load(createTemplate(runtime, "t"), source + " "));
+
+        /* another parser configuration */
+        RuntimeInstance other = createRuntime("bc");
+        assertNull(new ASTDiskCache(other, directory).load(createTemplate(other, "t"), source));
+
+        /* a corrupted file */
+        File[] files = directory.listFiles();
+        assertEquals(1, files.length);
+        try (RandomAccessFile file = new RandomAccessFile(files[0], "rw"))
+        {
+            file.seek(file.length() - 1);
+            int last = file.read();
+            file.seek(file.length() - 1);
+            file.write(last ^ 0xFF);
+        }
+        assertNull(cache.load(createTemplate(runtime, "t"), source));
+    }
+
+    public void testMacroNames() throws Exception
+    {
+        String source = "\\#item \\\\#item #item(x)\n";
+        RuntimeInstance runtime = createRuntime("lines");
+        ASTDiskCache cache = new ASTDiskCache(runtime, directory);
+        cache.store(createTemplate(runtime, "t"), source, runtime.parse(source, createTemplate(runtime, "t")));
+        assertNotNull(cache.load(createTemplate(runtime, "t"), source));
+
+        /* escapes and calls are parsed differently once #item is a global macro */
+        runtime.evaluate(new VelocityContext(), new StringWriter(), "library", "#macro(item $x)<$x>#end");
+        assertNull(cache.load(createTemplate(runtime, "t"), source));
+    }
+
+    public void testRestart() throws Exception
+    {
+        String source = "#macro(item $x)<$x>#end\n#foreach($i in $list)\n  #item($i)\n#end\n$name\n";
+        addTemplate("page", source);
+        assertTmplEquals("<a><b><c>world\n", "page");
+        assertEquals(1, directory.listFiles().length);
+
+        /* a new engine finds the parsed template */
+        engine = createEngine();
+        addTemplate("page", source);
+        assertTmplEquals("<a><b><c>world\n", "page");
+        assertEquals(1, directory.listFiles().length);
+
+        /* and parses it again once modified */
+        engine = createEngine();
+        addTemplate("page", source + "!");
+        assertTmplEquals("<a><b><c>world\n!", "page");
+    }
+}
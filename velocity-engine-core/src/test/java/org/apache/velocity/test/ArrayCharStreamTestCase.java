@@ -0,0 +1,210 @@
+package org.apache.velocity.test;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.exception.ParseErrorException;
+import org.apache.velocity.runtime.parser.ArrayCharStream;
+import org.apache.velocity.runtime.parser.CharStream;
+import org.apache.velocity.runtime.parser.VelocityCharStream;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks that {@link ArrayCharStream} reports the same characters, images and positions
+ * as {@link VelocityCharStream}.
+ */
+public class ArrayCharStreamTestCase extends TestCase
+{
+    private static final String[] SOURCES =
+    {
+        "",
+        "a",
+        "\n",
+        "\r\n",
+        "\r",
+        "ab\ncd\r\nef\rgh\n\r\n",
+        "\tx\t\ty\n  \tz\r\n\t",
+        "#foreach($i in $list)\n\t$i\r\n#end\r",
+    };
+
+    public ArrayCharStreamTestCase(String name)
+    {
+        super(name);
+    }
+
+    private static String random(Random random, int length)
+    {
+        char[] alphabet = { 'a', 'b', ' ', '\t', '\n', '\r', '#', '$', '\u00e9' };
+        char[] chars = new char[length];
+        for (int i = 0; i < length; ++i)
+        {
+            chars[i] = alphabet[random.nextInt(alphabet.length)];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Drives both streams through the same random sequence of token starts, reads and backups.
+     */
+    private static void compare(String source, CharStream actual, Random random)
+    {
+        CharStream expected = new VelocityCharStream(new StringReader(source), 1, 1);
+        while (true)
+        {
+            char c;
+            try
+            {
+                c = expected.BeginToken();
+            }
+            catch (IOException e)
+            {
+                try
+                {
+                    actual.BeginToken();
+                    fail("expected end of input in '" + source + "'");
+                }
+                catch (IOException ioe)
+                {
+                    return;
+                }
+                continue;
+            }
+            try
+            {
+                assertEquals(c, actual.BeginToken());
+                int read = 0;
+                int count = random.nextInt(6);
+                try
+                {
+                    for (; read < count; ++read)
+                    {
+                        c = expected.readChar();
+                        assertEquals(c, actual.readChar());
+                    }
+                }
+                catch (IOException e)
+                {
+                    try
+                    {
+                        actual.readChar();
+                        fail("expected end of input in '" + source + "'");
+                    }
+                    catch (IOException ioe)
+                    {
+                        // both streams are exhausted
+                    }
+                }
+                int backup = read == 0 ? 0 : random.nextInt(read + 1);
+                expected.backup(backup);
+                actual.backup(backup);
+                read -= backup;
+
+                String where = "in '" + source + "' at '" + expected.GetImage() + "'";
+                assertEquals(where, expected.getBeginLine(), actual.getBeginLine());
+                assertEquals(where, expected.getBeginColumn(), actual.getBeginColumn());
+                assertEquals(where, expected.getEndLine(), actual.getEndLine());
+                assertEquals(where, expected.getEndColumn(), actual.getEndColumn());
+                assertEquals(where, expected.GetImage(), actual.GetImage());
+                assertTrue(where, Arrays.equals(expected.GetSuffix(read + 1), actual.GetSuffix(read + 1)));
+            }
+            catch (IOException e)
+            {
+                fail("unexpected end of input in '" + source + "'");
+            }
+        }
+    }
+
+    public void testSources()
+    {
+        Random random = new Random(17);
+        for (String source : SOURCES)
+        {
+            compare(source, new ArrayCharStream(source), random);
+        }
+    }
+
+    public void testRandomSources()
+    {
+        Random random = new Random(42);
+        for (int i = 0; i < 200; ++i)
+        {
+            String source = random(random, random.nextInt(200));
+            compare(source, new ArrayCharStream(source), random);
+        }
+    }
+
+    public void testCharArrayRange()
+    {
+        Random random = new Random(7);
+        for (String source : SOURCES)
+        {
+            char[] chars = ("<<" + source + ">>").toCharArray();
+            compare(source, new ArrayCharStream(chars, 2, source.length()), random);
+            compare(source, new ArrayCharStream(CharBuffer.wrap(chars, 2, source.length())), random);
+        }
+    }
+
+    public void testReInit()
+    {
+        Random random = new Random(3);
+        ArrayCharStream stream = new ArrayCharStream("");
+        for (String source : SOURCES)
+        {
+            stream.ReInit(source);
+            compare(source, stream, random);
+        }
+    }
+
+    public void testParseErrorPosition()
+    {
+        VelocityEngine engine = new VelocityEngine();
+        engine.init();
+        String template = "a\r\n\tb\r#if(\n$x\n";
+        ParseErrorException fromString = null, fromReader = null;
+        try
+        {
+            engine.evaluate(new VelocityContext(), new StringWriter(), "string", template);
+            fail("expected a parse error");
+        }
+        catch (ParseErrorException e)
+        {
+            fromString = e;
+        }
+        try
+        {
+            engine.evaluate(new VelocityContext(), new StringWriter(), "reader", new StringReader(template));
+            fail("expected a parse error");
+        }
+        catch (ParseErrorException e)
+        {
+            fromReader = e;
+        }
+        assertEquals(fromReader.getLineNumber(), fromString.getLineNumber());
+        assertEquals(fromReader.getColumnNumber(), fromString.getColumnNumber());
+    }
+}
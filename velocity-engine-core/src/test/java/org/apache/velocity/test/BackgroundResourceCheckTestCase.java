@@ -0,0 +1,200 @@
+package org.apache.velocity.test;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.velocity.Template;
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.exception.ResourceNotFoundException;
+import org.apache.velocity.runtime.RuntimeConstants;
+import org.apache.velocity.runtime.resource.Resource;
+import org.apache.velocity.runtime.resource.loader.ResourceLoader;
+import org.apache.velocity.util.ExtProperties;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks that modified templates are refreshed by the background checker.
+ */
+public class BackgroundResourceCheckTestCase extends BaseTestCase
+{
+    public BackgroundResourceCheckTestCase(String name)
+    {
+        super(name);
+    }
+
+    private static String render(Template template)
+    {
+        StringWriter writer = new StringWriter();
+        template.merge(new VelocityContext(), writer);
+        return writer.toString();
+    }
+
+    private VelocityEngine createEngine(MutableResourceLoader loader)
+    {
+        VelocityEngine ve = new VelocityEngine();
+        ve.setProperty(RuntimeConstants.RUNTIME_LOG_INSTANCE, log);
+        ve.setProperty(RuntimeConstants.RESOURCE_LOADERS, "mutable");
+        ve.setProperty("resource.loader.mutable.instance", loader);
+        ve.setProperty("resource.loader.mutable.cache", true);
+        ve.setProperty("resource.loader.mutable.modification_check_interval", 1);
+        ve.setProperty(RuntimeConstants.RESOURCE_MANAGER_BACKGROUND_CHECK, true);
+        ve.setProperty(RuntimeConstants.RESOURCE_MANAGER_BACKGROUND_CHECK_INTERVAL, 1);
+        ve.init();
+        return ve;
+    }
+
+    public void testBackgroundRefresh() throws Exception
+    {
+        MutableResourceLoader loader = new MutableResourceLoader();
+        VelocityEngine ve = createEngine(loader);
+
+        Template first = ve.getTemplate("mutable.vtl");
+        assertEquals("version 1", render(first));
+
+        loader.update("version 2");
+        Template current = first;
+        for (int i = 0; i < 100 && current == first; ++i)
+        {
+            Thread.sleep(50);
+            current = ve.getTemplate("mutable.vtl");
+        }
+        assertNotSame(first, current);
+        assertEquals("version 2", render(current));
+        /* the template in use is left untouched */
+        assertEquals("version 1", render(first));
+
+        for (String thread : loader.checkingThreads)
+        {
+            assertTrue(thread, thread.startsWith("velocity-resource-checker"));
+        }
+    }
+
+    public void testParseFailureKeepsOldVersion() throws Exception
+    {
+        MutableResourceLoader loader = new MutableResourceLoader();
+        VelocityEngine ve = createEngine(loader);
+
+        Template first = ve.getTemplate("mutable.vtl");
+        int reads = loader.reads.get();
+        loader.update("#if(");
+        for (int i = 0; i < 100 && loader.reads.get() == reads; ++i)
+        {
+            Thread.sleep(50);
+        }
+        assertTrue("the modified template has not been reparsed", loader.reads.get() > reads);
+        assertSame(first, ve.getTemplate("mutable.vtl"));
+        assertEquals("version 1", render(ve.getTemplate("mutable.vtl")));
+
+        /* the next valid version replaces it */
+        loader.update("version 3");
+        Template current = first;
+        for (int i = 0; i < 100 && current == first; ++i)
+        {
+            Thread.sleep(50);
+            current = ve.getTemplate("mutable.vtl");
+        }
+        assertEquals("version 3", render(current));
+    }
+
+    public void testRemovedSourceIsEvicted() throws Exception
+    {
+        MutableResourceLoader loader = new MutableResourceLoader();
+        VelocityEngine ve = createEngine(loader);
+
+        Template first = ve.getTemplate("mutable.vtl");
+        assertEquals("version 1", render(first));
+        loader.remove();
+        boolean evicted = false;
+        for (int i = 0; i < 100 && !evicted; ++i)
+        {
+            Thread.sleep(50);
+            try
+            {
+                /* served from the cache until the checker evicts it */
+                assertSame(first, ve.getTemplate("mutable.vtl"));
+            }
+            catch (ResourceNotFoundException rnfe)
+            {
+                evicted = true;
+            }
+        }
+        assertTrue("the removed template is still cached", evicted);
+        /* the template in use is left untouched */
+        assertEquals("version 1", render(first));
+    }
+
+    /**
+     * Resource loader whose single template can be modified
+     */
+    public static class MutableResourceLoader extends ResourceLoader
+    {
+        private volatile String content = "version 1";
+        private volatile long lastModified = 1;
+        final Set<String> checkingThreads = ConcurrentHashMap.newKeySet();
+        final AtomicInteger reads = new AtomicInteger();
+
+        void update(String content)
+        {
+            this.content = content;
+            ++lastModified;
+        }
+
+        void remove()
+        {
+            update(null);
+        }
+
+        @Override
+        public void init(ExtProperties configuration)
+        {
+        }
+
+        @Override
+        public Reader getResourceReader(String source, String encoding) throws ResourceNotFoundException
+        {
+            String current = content;
+            if (current == null)
+            {
+                throw new ResourceNotFoundException("removed: " + source);
+            }
+            reads.incrementAndGet();
+            return new StringReader(current);
+        }
+
+        @Override
+        public boolean isSourceModified(Resource resource)
+        {
+            checkingThreads.add(Thread.currentThread().getName());
+            return resource.getLastModified() != lastModified;
+        }
+
+        @Override
+        public long getLastModified(Resource resource)
+        {
+            return lastModified;
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package org.apache.velocity.test;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.velocity.Template;
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.app.event.EventCartridge;
+import org.apache.velocity.app.event.InvalidReferenceEventHandler;
+import org.apache.velocity.app.event.ReferenceInsertionEventHandler;
+import org.apache.velocity.context.Context;
+import org.apache.velocity.context.InternalContextAdapter;
+import org.apache.velocity.exception.MethodInvocationException;
+import org.apache.velocity.runtime.Renderable;
+import org.apache.velocity.runtime.RuntimeConstants;
+import org.apache.velocity.runtime.RuntimeConstants.SpaceGobbling;
+import org.apache.velocity.runtime.parser.node.NodeCompiler;
+import org.apache.velocity.runtime.resource.loader.StringResourceLoader;
+import org.apache.velocity.runtime.resource.util.StringResourceRepository;
+import org.apache.velocity.util.introspection.Info;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks that compiled templates render exactly like interpreted ones.
+ */
+public class CompiledRenderTestCase extends BaseTestCase
+{
+    public CompiledRenderTestCase(String name)
+    {
+        super(name);
+    }
+
+    private VelocityEngine createEngine(SpaceGobbling mode, boolean compile)
+    {
+        VelocityEngine ve = new VelocityEngine();
+        ve.setProperty(RuntimeConstants.RUNTIME_LOG_INSTANCE, log);
+        ve.setProperty(RuntimeConstants.RESOURCE_LOADERS, "file");
+        ve.setProperty(RuntimeConstants.FILE_RESOURCE_LOADER_PATH, TEST_COMPARE_DIR + "/gobbling");
+        ve.setProperty(RuntimeConstants.SPACE_GOBBLING, mode.toString());
+        ve.setProperty(RuntimeConstants.RUNTIME_RENDER_COMPILE, compile);
+        ve.init();
+        return ve;
+    }
+
+    private String merge(VelocityEngine ve, String templateName)
+    {
+        VelocityContext context = new VelocityContext();
+        context.put("flag", Boolean.TRUE);
+        StringWriter writer = new StringWriter();
+        Template template = ve.getTemplate(templateName);
+        template.merge(context, writer);
+        return writer.toString();
+    }
+
+    public void testGobblingTemplates() throws Exception
+    {
+        File[] templates = new File(TEST_COMPARE_DIR + "/gobbling").listFiles();
+        assertNotNull(templates);
+        for (SpaceGobbling mode : SpaceGobbling.values())
+        {
+            VelocityEngine interpreted = createEngine(mode, false);
+            VelocityEngine compiled = createEngine(mode, true);
+            for (File file : templates)
+            {
+                if (file.isFile())
+                {
+                    assertEquals("template " + file.getName() + ", mode " + mode,
+                        merge(interpreted, file.getName()), merge(compiled, file.getName()));
+                }
+            }
+        }
+    }
+
+    public void testConditionals() throws Exception
+    {
+        engine.setProperty(RuntimeConstants.RUNTIME_RENDER_COMPILE, true);
+        context.put("x", 2);
+        addTemplate("if", "a#if($x == 1)one#elseif($x == 2)two#{else}other#end b\n"
+            + "#if($x > 5)\n  big\n#else\n  small\n#end\n"
+            + "#foreach($i in [1..2])#if($i == $x)[$i]#else$i#end#end");
+        assertTmplEquals("atwo b\n  small\n1[2]", "if");
+    }
+
+    public void testLoops() throws Exception
+    {
+        engine.setProperty(RuntimeConstants.RUNTIME_RENDER_COMPILE, true);
+        context.put("list", Arrays.asList(1, 2, 3));
+        context.put("empty", Collections.emptyList());
+        addTemplate("loops", "#foreach($i in $list)#if($i == 2)two#else$i#end;#end|"
+            + "#foreach($i in $empty)$i#{else}none#end|"
+            + "#foreach($i in $list)#foreach($j in $list)#if($j > $i)#break#end$j#end;#end|"
+            + "#foreach($i in $list)#if($i == 2)#break#end$i$foreach.hasNext#end");
+        assertTmplEquals("1;two;3;|none|1;12;123;|1true", "loops");
+    }
+
+    public void testCompiledClass() throws Exception
+    {
+        assertTrue(NodeCompiler.isAvailable());
+        VelocityEngine ve = createStringEngine(true, false);
+        getRepository(ve).putStringResource("class", "$name");
+        Object renderer = getCompiled(ve.getTemplate("class"));
+        assertNotNull(renderer);
+        assertTrue(renderer.getClass().getName(), renderer.getClass().getName().startsWith("org.apache.velocity.runtime.compiled.Template_class_"));
+    }
+
+    public void testReferences() throws Exception
+    {
+        assertSameRendering("5 b v $missing [] $list.foo [] world R $missing.bar [] orld",
+            "$name.toUpperCase().length() $list.get(1) $map.k $missing [$!missing] $list.foo [$!list.foo] ${name} $r $missing.bar [$!{missing}] $name.substring(1)");
+        assertSameRendering("$name $name.substring(7, 1) worlds a",
+            "\\$name $name.substring(7, 1) ${name}s $list[0]");
+        assertSameRendering("[world] [default]", "[${name|'none'}] [${missing|'default'}]");
+    }
+
+    public void testSet() throws Exception
+    {
+        assertSameRendering("5 [] [z, b] w\n1 1",
+            "#set($a = $name.length())$a #set($b = $missing)[$!b] #set($list[0] = 'z')$list #set($map.k2 = 'w')$map.k2\n"
+            + "  #set($c = 1)\n$c #set($d = $c)$d");
+        assertSameRendering("[1][2][3]", "#foreach($i in [1..3])#set($j = $i)[$j]#end");
+    }
+
+    public void testNestedLoops() throws Exception
+    {
+        assertSameRendering("a:1,2;b:1,2;|(none)",
+            "#foreach($x in ['a', 'b'])$x:#foreach($i in [1..2])$i#if($foreach.hasNext),#end#end;#end|"
+            + "#foreach($x in [])$x#{else}(#foreach($y in ['none'])$y#end)#end");
+    }
+
+    public void testMethodException() throws Exception
+    {
+        for (boolean compile : new boolean[] { false, true })
+        {
+            try
+            {
+                render(createStringEngine(compile, true), "before $thrower.fail() after", null);
+                fail("expected a MethodInvocationException");
+            }
+            catch (MethodInvocationException mie)
+            {
+                assertEquals("thrower", mie.getReferenceName());
+                assertEquals("fail", mie.getMethodName());
+            }
+        }
+    }
+
+    public void testTrackLocation() throws Exception
+    {
+        String vtl = "#set($a = $name)#foreach($i in [1..2])#if($i == 2)$a.length()#else$i#end#end $missing";
+        List<String> interpretedEvents = new ArrayList<>(), compiledEvents = new ArrayList<>();
+        assertEquals("15 $missing", render(createStringEngine(false, true), vtl, interpretedEvents));
+        assertEquals("15 $missing", render(createStringEngine(true, true), vtl, compiledEvents));
+        assertEquals(interpretedEvents, compiledEvents);
+    }
+
+    public void testLargeTemplate() throws Exception
+    {
+        /* too large for a single method */
+        StringBuilder vtl = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 2000; ++i)
+        {
+            vtl.append("$name.length()#set($v").append(i).append(" = ").append(i).append(")$v").append(i).append(',');
+            expected.append(5).append(i).append(',');
+        }
+        vtl.append("#set($n = 150)");
+        for (int i = 0; i < 300; ++i)
+        {
+            vtl.append(i == 0 ? "#if" : "#elseif").append("($n == ").append(i).append(")")
+                .append("[").append(i).append(" $name.substring(1) $list $map.k ${name}s]");
+        }
+        vtl.append("#end");
+        expected.append("[150 orld [a, b] v worlds]");
+        assertSameRendering(expected.toString(), vtl.toString());
+
+        VelocityEngine ve = createStringEngine(true, false);
+        getRepository(ve).putStringResource("large", vtl.toString());
+        assertNotNull(getCompiled(ve.getTemplate("large")));
+    }
+
+    private Object getCompiled(Template template) throws Exception
+    {
+        Field compiled = Template.class.getDeclaredField("compiled");
+        compiled.setAccessible(true);
+        return compiled.get(template);
+    }
+
+    private VelocityEngine createStringEngine(boolean compile, boolean trackLocation)
+    {
+        VelocityEngine ve = new VelocityEngine();
+        ve.setProperty(RuntimeConstants.RUNTIME_LOG_INSTANCE, log);
+        ve.setProperty(RuntimeConstants.RESOURCE_LOADERS, "string");
+        ve.setProperty("resource.loader.string.class", StringResourceLoader.class.getName());
+        ve.setProperty("resource.loader.string.repository.name", stringRepoName);
+        ve.setProperty("resource.loader.string.repository.static", "false");
+        ve.setProperty(RuntimeConstants.RUNTIME_RENDER_COMPILE, compile);
+        ve.setProperty(RuntimeConstants.RUNTIME_LOG_TRACK_LOCATION, trackLocation);
+        ve.init();
+        return ve;
+    }
+
+    private StringResourceRepository getRepository(VelocityEngine ve)
+    {
+        return (StringResourceRepository)ve.getApplicationAttribute(stringRepoName);
+    }
+
+    /**
+     * Render a template
+     * @param events list receiving the triggered events, or null to not attach event handlers
+     */
+    private String render(VelocityEngine ve, String vtl, final List<String> events)
+    {
+        getRepository(ve).putStringResource("test", vtl);
+        VelocityContext ctx = new VelocityContext();
+        ctx.put("name", "world");
+        ctx.put("list", new ArrayList<>(Arrays.asList("a", "b")));
+        Map<String, Object> map = new HashMap<>();
+        map.put("k", "v");
+        ctx.put("map", map);
+        ctx.put("r", RENDERABLE);
+        ctx.put("thrower", new Thrower());
+        if (events != null)
+        {
+            attachEventHandlers(ctx, events);
+        }
+        StringWriter writer = new StringWriter();
+        ve.getTemplate("test").merge(ctx, writer);
+        return writer.toString();
+    }
+
+    /**
+     * Record the invalid references and the inserted references
+     */
+    private void attachEventHandlers(VelocityContext ctx, final List<String> events)
+    {
+        EventCartridge cartridge = new EventCartridge();
+        cartridge.addEventHandler(new InvalidReferenceEventHandler()
+        {
+            @Override
+            public Object invalidGetMethod(Context context, String reference, Object object, String property, Info info)
+            {
+                events.add("get " + reference + " at " + info);
+                return null;
+            }
+
+            @Override
+            public boolean invalidSetMethod(Context context, String leftreference, String rightreference, Info info)
+            {
+                events.add("set " + leftreference + " = " + rightreference + " at " + info);
+                return false;
+            }
+
+            @Override
+            public Object invalidMethod(Context context, String reference, Object object, String method, Info info)
+            {
+                events.add("method " + reference + " at " + info);
+                return null;
+            }
+        });
+        cartridge.addEventHandler(new ReferenceInsertionEventHandler()
+        {
+            @Override
+            public Object referenceInsert(Context context, String reference, Object value)
+            {
+                events.add("insert " + reference + " = " + value);
+                return value;
+            }
+        });
+        cartridge.attachToContext(ctx);
+    }
+
+    /**
+     * Check that a template renders as expected, and triggers the same events, when interpreted and compiled
+     */
+    private void assertSameRendering(String expected, String vtl)
+    {
+        List<String> interpretedEvents = new ArrayList<>(), compiledEvents = new ArrayList<>();
+        assertEquals(expected, render(createStringEngine(false, false), vtl, interpretedEvents));
+        assertEquals(expected, render(createStringEngine(true, false), vtl, compiledEvents));
+        assertEquals(interpretedEvents, compiledEvents);
+    }
+
+    private static final Renderable RENDERABLE = new Renderable()
+    {
+        @Override
+        public boolean render(InternalContextAdapter context, Writer writer) throws IOException
+        {
+            writer.write("R");
+            return true;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "renderable";
+        }
+    };
+
+    public static class Thrower
+    {
+        public String fail()
+        {
+            throw new IllegalStateException("boom");
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package org.apache.velocity.test;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.velocity.Template;
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.exception.ResourceNotFoundException;
+import org.apache.velocity.runtime.RuntimeConstants;
+import org.apache.velocity.runtime.resource.Resource;
+import org.apache.velocity.runtime.resource.loader.ResourceLoader;
+import org.apache.velocity.util.ExtProperties;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks that concurrent loads of the same template are coalesced.
+ */
+public class ConcurrentResourceLoadingTestCase extends BaseTestCase
+{
+    private static final int THREADS = 16;
+
+    public ConcurrentResourceLoadingTestCase(String name)
+    {
+        super(name);
+    }
+
+    public void testSingleParse() throws Exception
+    {
+        SlowResourceLoader loader = new SlowResourceLoader();
+        VelocityEngine ve = new VelocityEngine();
+        ve.setProperty(RuntimeConstants.RUNTIME_LOG_INSTANCE, log);
+        ve.setProperty(RuntimeConstants.RESOURCE_LOADERS, "slow");
+        ve.setProperty("resource.loader.slow.instance", loader);
+        ve.setProperty("resource.loader.slow.cache", true);
+        ve.init();
+
+        final CyclicBarrier barrier = new CyclicBarrier(THREADS);
+        final Template[] templates = new Template[THREADS];
+        final AtomicInteger errors = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < THREADS; ++i)
+        {
+            final int index = i;
+            threads.add(new Thread(() ->
+            {
+                try
+                {
+                    barrier.await();
+                    templates[index] = ve.getTemplate("slow.vtl");
+                }
+                catch (Exception e)
+                {
+                    errors.incrementAndGet();
+                }
+            }));
+        }
+        for (Thread thread : threads)
+        {
+            thread.start();
+        }
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        assertEquals(0, errors.get());
+        assertEquals(1, loader.reads.get());
+        for (Template template : templates)
+        {
+            assertSame(templates[0], template);
+        }
+        StringWriter writer = new StringWriter();
+        VelocityContext context = new VelocityContext();
+        context.put("name", "world");
+        templates[0].merge(context, writer);
+        assertEquals("hello world", writer.toString());
+    }
+
+    public void testSharedFailure() throws Exception
+    {
+        SlowResourceLoader loader = new SlowResourceLoader();
+        VelocityEngine ve = new VelocityEngine();
+        ve.setProperty(RuntimeConstants.RUNTIME_LOG_INSTANCE, log);
+        ve.setProperty(RuntimeConstants.RESOURCE_LOADERS, "slow");
+        ve.setProperty("resource.loader.slow.instance", loader);
+        ve.init();
+
+        final CountDownLatch done = new CountDownLatch(THREADS);
+        final AtomicInteger notFound = new AtomicInteger();
+        for (int i = 0; i < THREADS; ++i)
+        {
+            new Thread(() ->
+            {
+                try
+                {
+                    ve.getTemplate("missing.vtl");
+                }
+                catch (ResourceNotFoundException rnfe)
+                {
+                    notFound.incrementAndGet();
+                }
+                finally
+                {
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+        assertEquals(THREADS, notFound.get());
+    }
+
+    /**
+     * Resource loader which takes some time to provide its single template
+     */
+    public static class SlowResourceLoader extends ResourceLoader
+    {
+        final AtomicInteger reads = new AtomicInteger();
+
+        @Override
+        public void init(ExtProperties configuration)
+        {
+        }
+
+        @Override
+        public Reader getResourceReader(String source, String encoding) throws ResourceNotFoundException
+        {
+            try
+            {
+                Thread.sleep(200);
+            }
+            catch (InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+            }
+            if (!"slow.vtl".equals(source))
+            {
+                throw new ResourceNotFoundException("no resource " + source);
+            }
+            reads.incrementAndGet();
+            return new StringReader("hello $name");
+        }
+
+        @Override
+        public boolean isSourceModified(Resource resource)
+        {
+            return false;
+        }
+
+        @Override
+        public long getLastModified(Resource resource)
+        {
+            return 0;
+        }
+    }
+}
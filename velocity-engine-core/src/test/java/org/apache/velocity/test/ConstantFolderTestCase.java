@@ -0,0 +1,114 @@
+package org.apache.velocity.test;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.runtime.RuntimeConstants;
+import org.apache.velocity.runtime.parser.node.ASTComment;
+import org.apache.velocity.runtime.parser.node.ASTIfStatement;
+import org.apache.velocity.runtime.parser.node.ASTText;
+import org.apache.velocity.runtime.parser.node.ConstantNode;
+import org.apache.velocity.runtime.parser.node.Node;
+
+/**
+ * Checks that folding constants and pruning the AST does not change rendering.
+ */
+public class ConstantFolderTestCase extends BaseTestCase
+{
+    public ConstantFolderTestCase(String name)
+    {
+        super(name);
+    }
+
+    @Override
+    protected void setUpEngine(VelocityEngine engine)
+    {
+        engine.setProperty(RuntimeConstants.RUNTIME_RENDER_OPTIMIZE, true);
+    }
+
+    private static int count(Node node, Class<?> type)
+    {
+        int count = type.isInstance(node) ? 1 : 0;
+        for (int i = 0; i < node.jjtGetNumChildren(); ++i)
+        {
+            count += count(node.jjtGetChild(i), type);
+        }
+        return count;
+    }
+
+    private Node tree(String name)
+    {
+        return (Node)engine.getTemplate(name).getData();
+    }
+
+    public void testExpressions()
+    {
+        addTemplate("math", "#set($x = 2 * 3 + 1)$x #set($s = 'a' + 'b')$s #set($n = -(4 - 6))$n");
+        assertTmplEquals("7 ab 2", "math");
+        assertEquals(3, count(tree("math"), ConstantNode.class));
+
+        addTemplate("logic", "#set($b = !(1 < 2) || 'a' == 'a')$b");
+        assertTmplEquals("true", "logic");
+        assertEquals(1, count(tree("logic"), ConstantNode.class));
+
+        addTemplate("range", "#foreach($i in [1..3])$i#end#foreach($i in [1..3])$i#end");
+        assertTmplEquals("123123", "range");
+        assertEquals(2, count(tree("range"), ConstantNode.class));
+    }
+
+    public void testNotConstant()
+    {
+        context.put("x", 2);
+        addTemplate("ref", "#set($y = $x + 1)$y");
+        assertTmplEquals("3", "ref");
+        assertEquals(0, count(tree("ref"), ConstantNode.class));
+
+        addTemplate("zero", "#set($z = 1 / 0)$!z");
+        assertTmplEquals("", "zero");
+        assertEquals(0, count(tree("zero"), ConstantNode.class));
+    }
+
+    public void testDeadBranches()
+    {
+        addTemplate("true", "#if(true)a#elseif($x)b#{else}c#end");
+        assertTmplEquals("a", "true");
+        assertEquals(2, tree("true").jjtGetChild(0).jjtGetNumChildren());
+
+        addTemplate("false", "#if(1 > 2)a#elseif(false)b#elseif($x)c#{else}d#end");
+        assertTmplEquals("d", "false");
+        Node ifStatement = tree("false").jjtGetChild(0);
+        assertTrue(ifStatement instanceof ASTIfStatement);
+        assertEquals(4, ifStatement.jjtGetNumChildren());
+        assertEquals(0, ifStatement.jjtGetChild(1).jjtGetNumChildren());
+
+        addTemplate("elseif", "#if($x)a#elseif(true)b#{else}c#end");
+        assertTmplEquals("b", "elseif");
+        assertEquals(3, tree("elseif").jjtGetChild(0).jjtGetNumChildren());
+    }
+
+    public void testTextMerging()
+    {
+        addTemplate("text", "a## comment\nb#* block *#c");
+        assertTmplEquals("abc", "text");
+        assertEquals(1, count(tree("text"), ASTText.class));
+        assertEquals(0, count(tree("text"), ASTComment.class));
+    }
+}
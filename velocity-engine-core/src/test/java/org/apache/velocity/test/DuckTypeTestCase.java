@@ -0,0 +1,240 @@
+package org.apache.velocity.test;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import junit.framework.TestCase;
+import org.apache.velocity.util.DuckType;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tests the DuckType coercions and their cache.
+ */
+public class DuckTypeTestCase extends TestCase
+{
+    public DuckTypeTestCase(String name)
+    {
+        super(name);
+    }
+
+    public static class Answer
+    {
+        private final String value;
+
+        public Answer(String value)
+        {
+            this.value = value;
+        }
+
+        public String getAsString()
+        {
+            return value;
+        }
+
+        public int length()
+        {
+            return value == null ? 0 : value.length();
+        }
+    }
+
+    public static class Flag
+    {
+        public boolean getAsBoolean()
+        {
+            return false;
+        }
+    }
+
+    public static class Broken extends AbstractList<Object>
+    {
+        @Override
+        public Object get(int index)
+        {
+            throw new IndexOutOfBoundsException();
+        }
+
+        @Override
+        public int size()
+        {
+            throw new IllegalStateException("not loaded");
+        }
+    }
+
+    public static class Unlinked extends AbstractList<Object>
+    {
+        @Override
+        public Object get(int index)
+        {
+            throw new IndexOutOfBoundsException();
+        }
+
+        @Override
+        public int size()
+        {
+            throw new LinkageError("not linked");
+        }
+    }
+
+    /* values and their expected emptiness */
+    private static final Object[][] VALUES =
+    {
+        { new ArrayList<>(), true },
+        { new LinkedList<>(Arrays.asList(1)), false },
+        { new HashSet<>(Arrays.asList(1, 2)), false },
+        { new TreeSet<>(), true },
+        { new ArrayDeque<>(Arrays.asList("a")), false },
+        { new HashMap<>(), true },
+        { new TreeMap<>(Collections.singletonMap("a", 1)), false },
+        { Collections.emptyList(), true },
+        { Collections.unmodifiableList(Arrays.asList(1)), false },
+        { "", true },
+        { "a", false },
+        { new StringBuilder(), true },
+        { new StringBuffer("a"), false },
+        { new int[0], true },
+        { new String[] { "a" }, false },
+        { 0, true },
+        { 1.5, false },
+        { new Answer(""), true },
+        { new Answer("a"), false },
+        { new Object(), false },
+    };
+
+    public void testEmpty()
+    {
+        for (Object[] value : VALUES)
+        {
+            assertEquals(String.valueOf(value[0]), value[1], DuckType.asEmpty(value[0]));
+            assertEquals(String.valueOf(value[0]), !(Boolean)value[1], DuckType.asBoolean(value[0], true));
+            assertTrue(DuckType.asBoolean(value[0], false));
+        }
+        assertTrue(DuckType.asEmpty(null));
+        assertFalse(DuckType.asBoolean(new Flag(), true));
+    }
+
+    public void testString()
+    {
+        assertEquals("a", DuckType.asString(new Answer("a")));
+        assertNull(DuckType.asString(new Answer(null)));
+        assertEquals("[1, 2]", DuckType.asString(new int[] { 1, 2 }));
+        assertEquals("[1, 2]", DuckType.asString(Arrays.asList(1, 2)));
+        assertNull(DuckType.asString(Arrays.asList(1, 2), false));
+        assertEquals(3, DuckType.asNumber("3").intValue());
+    }
+
+    public void testExceptions()
+    {
+        try
+        {
+            DuckType.asEmpty(new Broken());
+            fail("exception expected");
+        }
+        catch (RuntimeException re)
+        {
+            assertTrue(re.getCause() instanceof InvocationTargetException);
+            assertTrue(re.getCause().getCause() instanceof IllegalStateException);
+        }
+        try
+        {
+            DuckType.asEmpty(new Unlinked());
+            fail("error expected");
+        }
+        catch (LinkageError le)
+        {
+            assertEquals("not linked", le.getMessage());
+        }
+    }
+
+    public void testClearCache()
+    {
+        assertTrue(DuckType.asEmpty(new ArrayList<>()));
+        DuckType.clearCache();
+        assertTrue(DuckType.asEmpty(new ArrayList<>()));
+        assertFalse(DuckType.asEmpty(new Answer("a")));
+    }
+
+    /**
+     * Concurrent first use of the cache for many classes
+     * @throws Exception
+     */
+    public void testConcurrentFirstUse() throws Exception
+    {
+        final int threads = 8;
+        final CyclicBarrier barrier = new CyclicBarrier(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try
+        {
+            for (int round = 0; round < 50; ++round)
+            {
+                DuckType.clearCache();
+                List<Future<Integer>> futures = new ArrayList<>();
+                for (int t = 0; t < threads; ++t)
+                {
+                    final int offset = t;
+                    futures.add(executor.submit(new Callable<Integer>()
+                    {
+                        @Override
+                        public Integer call() throws Exception
+                        {
+                            barrier.await();
+                            int checked = 0;
+                            for (int i = 0; i < VALUES.length; ++i)
+                            {
+                                Object[] value = VALUES[(i + offset) % VALUES.length];
+                                if (DuckType.asEmpty(value[0]) != (Boolean)value[1])
+                                {
+                                    throw new AssertionError("wrong emptiness for " + value[0]);
+                                }
+                                DuckType.asString(value[0]);
+                                ++checked;
+                            }
+                            return checked;
+                        }
+                    }));
+                }
+                for (Future<Integer> future : futures)
+                {
+                    assertEquals(VALUES.length, (int)future.get());
+                }
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package org.apache.velocity.test;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.velocity.Template;
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.runtime.RuntimeConstants;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+
+/**
+ * Checks that the file resource loader notices template changes through its watch service.
+ */
+public class FileResourceLoaderWatchTestCase extends BaseTestCase
+{
+    private final String WATCH_TEMPLATE_PATH = TEST_RESULT_DIR + "/watch";
+
+    public FileResourceLoaderWatchTestCase(String name)
+    {
+        super(name);
+    }
+
+    private static void write(File file, String content) throws Exception
+    {
+        FileWriter writer = new FileWriter(file);
+        writer.write(content);
+        writer.close();
+    }
+
+    private static String render(Template template)
+    {
+        StringWriter writer = new StringWriter();
+        template.merge(new VelocityContext(), writer);
+        return writer.toString();
+    }
+
+    public void testWatchedTemplate() throws Exception
+    {
+        File dir = new File(WATCH_TEMPLATE_PATH, "sub");
+        Files.createDirectories(dir.toPath());
+        File file = new File(dir, "watched.vtl");
+        write(file, "version 1");
+
+        VelocityEngine ve = new VelocityEngine();
+        ve.setProperty(RuntimeConstants.RUNTIME_LOG_INSTANCE, log);
+        ve.setProperty("resource.loader.file.path", WATCH_TEMPLATE_PATH);
+        ve.setProperty("resource.loader.file.cache", true);
+        ve.setProperty("resource.loader.file.modification_check_interval", 1);
+        ve.setProperty("resource.loader.file.watch", true);
+        ve.init();
+
+        Template first = ve.getTemplate("sub/watched.vtl");
+        assertEquals("version 1", render(first));
+        assertSame(first, ve.getTemplate("sub/watched.vtl"));
+
+        write(file, "version 2");
+        // force a different modification date, whatever the file system timestamps resolution
+        file.setLastModified(file.lastModified() + 1000);
+
+        Template current = first;
+        for (int i = 0; i < 100 && current == first; ++i)
+        {
+            Thread.sleep(100);
+            current = ve.getTemplate("sub/watched.vtl");
+        }
+        assertEquals("version 2", render(current));
+    }
+
+    public void testMillisecondsModificationDate() throws Exception
+    {
+        File dir = new File(WATCH_TEMPLATE_PATH, "millis");
+        Files.createDirectories(dir.toPath());
+        File file = new File(dir, "millis.vtl");
+        write(file, "version 1");
+
+        VelocityEngine ve = new VelocityEngine();
+        ve.setProperty(RuntimeConstants.RUNTIME_LOG_INSTANCE, log);
+        ve.setProperty("resource.loader.file.path", WATCH_TEMPLATE_PATH);
+        ve.setProperty("resource.loader.file.cache", true);
+        ve.setProperty("resource.loader.file.modification_check_interval", 1);
+        ve.setProperty("resource.loader.file.watch", true);
+        ve.init();
+
+        Template first = ve.getTemplate("millis/millis.vtl");
+        write(file, "version 2");
+        /* a modification date with a non-zero millisecond part */
+        file.setLastModified((file.lastModified() / 1000 + 2) * 1000 + 123);
+
+        Template current = first;
+        for (int i = 0; i < 100 && !"version 2".equals(render(current)); ++i)
+        {
+            Thread.sleep(100);
+            current = ve.getTemplate("millis/millis.vtl");
+        }
+        assertEquals("version 2", render(current));
+
+        /* once reloaded, the notified modification date matches the resource one */
+        Thread.sleep(1500);
+        Template reloaded = ve.getTemplate("millis/millis.vtl");
+        for (int i = 0; i < 25; ++i)
+        {
+            Thread.sleep(100);
+            assertSame(reloaded, ve.getTemplate("millis/millis.vtl"));
+        }
+    }
+
+    public void testShadowedTemplate() throws Exception
+    {
+        File first = new File(WATCH_TEMPLATE_PATH, "first"), second = new File(WATCH_TEMPLATE_PATH, "second");
+        Files.createDirectories(first.toPath());
+        Files.createDirectories(second.toPath());
+        write(new File(first, "shadowed.vtl"), "first");
+        File shadowed = new File(second, "shadowed.vtl");
+        write(shadowed, "second");
+
+        VelocityEngine ve = new VelocityEngine();
+        ve.setProperty(RuntimeConstants.RUNTIME_LOG_INSTANCE, log);
+        ve.setProperty("resource.loader.file.path", first.getPath() + "," + second.getPath());
+        ve.setProperty("resource.loader.file.cache", true);
+        ve.setProperty("resource.loader.file.modification_check_interval", 1);
+        ve.setProperty("resource.loader.file.watch", true);
+        ve.init();
+
+        Template template = ve.getTemplate("shadowed.vtl");
+        assertEquals("first", render(template));
+
+        /* changes to a file shadowed by the loaded one must not trigger reloads */
+        write(shadowed, "second, modified");
+        shadowed.setLastModified(shadowed.lastModified() + 1000);
+        for (int i = 0; i < 25; ++i)
+        {
+            Thread.sleep(100);
+            assertSame(template, ve.getTemplate("shadowed.vtl"));
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package org.apache.velocity.test;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.velocity.Template;
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.runtime.RuntimeConstants;
+import org.apache.velocity.runtime.parser.node.ASTReference;
+import org.apache.velocity.runtime.parser.node.Node;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Checks that binding loop variables and macro arguments to frame slots does not change rendering.
+ */
+public class ForeachSlotsTestCase extends BaseTestCase
+{
+    public ForeachSlotsTestCase(String name)
+    {
+        super(name);
+    }
+
+    @Override
+    protected void setUpEngine(VelocityEngine engine)
+    {
+        engine.setProperty(RuntimeConstants.RUNTIME_RENDER_SLOTS, true);
+    }
+
+    @Override
+    protected void setUpContext(VelocityContext context)
+    {
+        context.put("list", Arrays.asList("a", "b", "c"));
+        context.put("nested", Arrays.asList(Arrays.asList(1, 2), Arrays.asList(3)));
+        context.put("holes", Arrays.asList("x", null, "z"));
+    }
+
+    private static int countSlots(Node node)
+    {
+        int count = node instanceof ASTReference && ((ASTReference)node).getSlot() >= 0 ? 1 : 0;
+        for (int i = 0; i < node.jjtGetNumChildren(); ++i)
+        {
+            count += countSlots(node.jjtGetChild(i));
+        }
+        return count;
+    }
+
+    private int slots(String name)
+    {
+        Template template = engine.getTemplate(name);
+        return countSlots((Node)template.getData());
+    }
+
+    public void testSimpleLoop()
+    {
+        addTemplate("simple", "#foreach($i in $list)$i$i.toUpperCase()#end");
+        assertTmplEquals("aAbBcC", "simple");
+        assertEquals(2, slots("simple"));
+    }
+
+    public void testNestedLoops()
+    {
+        addTemplate("nested", "#foreach($l in $nested)[#foreach($i in $l)$l.size():$i#end]#end");
+        assertTmplEquals("[2:12:2][1:3]", "nested");
+        assertEquals(3, slots("nested"));
+
+        addTemplate("shadow", "#foreach($i in $nested)#foreach($i in $i)$i#end$i.size()#end");
+        assertTmplEquals("12231", "shadow");
+    }
+
+    public void testRestoredValues()
+    {
+        context.put("i", "outer");
+        addTemplate("restored", "#foreach($i in $list)$i#end $i");
+        assertTmplEquals("abc outer", "restored");
+        assertEquals("outer", context.get("i"));
+
+        addTemplate("removed", "#foreach($j in $list)$j#end $!j");
+        assertTmplEquals("abc ", "removed");
+        assertNull(context.get("j"));
+    }
+
+    public void testContextNotWritten()
+    {
+        RecordingContext recording = new RecordingContext();
+        context = recording;
+        setUpContext(context);
+        addTemplate("written", "#foreach($i in $list)#set($i = \"<$i>\")$i#foreach($j in $nested)$j.size()#end#end");
+        assertTmplEquals("<a>21<b>21<c>21", "written");
+        assertFalse(recording.keys.contains("i"));
+        assertFalse(recording.keys.contains("j"));
+    }
+
+    public void testSetLoopVariable()
+    {
+        addTemplate("set", "#foreach($i in $list)#set($i = \"$i$i\")$i#end");
+        assertTmplEquals("aabbcc", "set");
+    }
+
+    public void testSetOtherVariables()
+    {
+        /* #set targets other than loop variables are global */
+        addTemplate("global", "#foreach($i in $list)#set($last = $i)#end$last");
+        assertTmplEquals("c", "global");
+        assertEquals("c", context.get("last"));
+    }
+
+    public void testInterpolatedStrings()
+    {
+        addTemplate("interpolated", "#foreach($i in $list)#set($s = \"[$i]\")$s#end");
+        assertTmplEquals("[a][b][c]", "interpolated");
+
+        addTemplate("sub", "#set($i = 'changed')");
+        addTemplate("interpolatedParse", "#foreach($i in $list)#set($s = \"#parse('sub')\")$i#end");
+        assertTmplEquals("changedchangedchanged", "interpolatedParse");
+        assertEquals(0, slots("interpolatedParse"));
+    }
+
+    public void testMacroArguments()
+    {
+        RecordingContext recording = new RecordingContext();
+        context = recording;
+        setUpContext(context);
+        addTemplate("args", "#macro(pair $a $b)$a$b#foreach($i in $list)$a$i#end#end#pair('x' 'y')#pair('z')");
+        assertTmplEquals("xyxaxbxcz$bzazbzc", "args");
+        assertFalse(recording.keys.contains("a"));
+        assertFalse(recording.keys.contains("b"));
+        assertFalse(recording.keys.contains("i"));
+
+        /* nested calls: the caller arguments are looked up in the context */
+        addTemplate("nestedCalls", "#macro(inner $a)[$a]#end#macro(outer $a)#inner(\"$a$a\")$a#end#outer('x')");
+        assertTmplEquals("[xx]x", "nestedCalls");
+        assertTrue(recording.keys.contains("a"));
+
+        /* an argument set by the macro is seen by the caller */
+        addTemplate("leak", "#macro(leak $a)#set($a = 'set')#end#leak('x')$a");
+        assertTmplEquals("set", "leak");
+
+        addTemplate("block", "#macro(block $a)$a$bodyContent#end#@block('x')$a#end");
+        assertTmplEquals("xx", "block");
+    }
+
+    public void testCompiledTemplate()
+    {
+        engine.setProperty(RuntimeConstants.RUNTIME_RENDER_COMPILE, true);
+        RecordingContext recording = new RecordingContext();
+        context = recording;
+        setUpContext(context);
+        addTemplate("compiled", "#macro(m $a)<$a>#end#foreach($l in $nested)#foreach($i in $l)#set($i = $i * 2)$i#end;#end#m('x')");
+        assertTmplEquals("24;6;<x>", "compiled");
+        assertFalse(recording.keys.contains("i"));
+        assertFalse(recording.keys.contains("a"));
+    }
+
+    public void testDisabledSlots()
+    {
+        VelocityEngine ve = createEngine();
+        ve.setProperty(RuntimeConstants.RUNTIME_RENDER_SLOTS, false);
+        ve.init();
+        RecordingContext recording = new RecordingContext();
+        setUpContext(recording);
+        StringWriter writer = new StringWriter();
+        ve.evaluate(recording, writer, "disabled", "#macro(m $a)$a#end#foreach($i in $list)#m($i)#end");
+        assertEquals("abc", writer.toString());
+        assertTrue(recording.keys.contains("i"));
+        assertTrue(recording.keys.contains("a"));
+    }
+
+    public void testNullElements()
+    {
+        VelocityContext inner = new VelocityContext();
+        inner.put("h", "inner");
+        context = new VelocityContext(inner);
+        setUpContext(context);
+        addTemplate("holes", "#foreach($h in $holes)$h,#end");
+        assertTmplEquals("x,inner,z,", "holes");
+    }
+
+    public void testBreak()
+    {
+        addTemplate("break", "#foreach($i in $list)#foreach($j in $list)$i$j#if($j == 'b')#break#end#end;#end");
+        assertTmplEquals("aaab;babb;cacb;", "break");
+    }
+
+    public void testUnresolvedLoops()
+    {
+        addTemplate("sub", "#set($i = 'changed')");
+        addTemplate("parse", "#foreach($i in $list)#parse('sub')$i#end");
+        assertTmplEquals("changedchangedchanged", "parse");
+        assertEquals(0, slots("parse"));
+
+        addTemplate("macro", "#macro(change)#set($i = 'macro')#end#foreach($i in $list)#change()$i#end");
+        assertTmplEquals("macromacromacro", "macro");
+    }
+
+    public void testRenderableInLoop()
+    {
+        addTemplate("define", "#define($block)#foreach($i in [1..2])$i#end#end#foreach($i in $list)$i$block$i;#end");
+        assertTmplEquals("a12a;b12b;c12c;", "define");
+    }
+
+    /**
+     * Context recording the written keys
+     */
+    public static class RecordingContext extends VelocityContext
+    {
+        final Set<String> keys = new HashSet<>();
+
+        @Override
+        public Object internalPut(String key, Object value)
+        {
+            keys.add(key);
+            return super.internalPut(key, value);
+        }
+    }
+}
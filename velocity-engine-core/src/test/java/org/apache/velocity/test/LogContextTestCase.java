@@ -0,0 +1,149 @@
+package org.apache.velocity.test;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.exception.MethodInvocationException;
+import org.apache.velocity.runtime.RuntimeConstants;
+import org.apache.velocity.runtime.RuntimeInstance;
+import org.apache.velocity.runtime.parser.LogContext;
+import org.apache.velocity.runtime.parser.node.SimpleNode;
+import org.apache.velocity.util.introspection.Info;
+import org.slf4j.MDC;
+
+import java.io.StringWriter;
+
+/**
+ * Tests location tracking, in eager and lazy modes.
+ */
+public class LogContextTestCase extends BaseTestCase
+{
+    public LogContextTestCase(String name)
+    {
+        super(name);
+    }
+
+    private RuntimeInstance createRuntime(boolean lazy)
+    {
+        RuntimeInstance ri = new RuntimeInstance();
+        ri.setProperty(RuntimeConstants.RUNTIME_LOG_INSTANCE, log);
+        ri.setProperty(RuntimeConstants.RUNTIME_LOG_TRACK_LOCATION, true);
+        ri.setProperty(RuntimeConstants.RUNTIME_LOG_TRACK_LOCATION_LAZY, lazy);
+        ri.init();
+        return ri;
+    }
+
+    private String render(RuntimeInstance ri, String vtl)
+    {
+        VelocityContext context = new VelocityContext();
+        context.put("tool", new Tool(ri.getLogContext()));
+        StringWriter writer = new StringWriter();
+        ri.evaluate(context, writer, "test", vtl);
+        return writer.toString();
+    }
+
+    public void testEagerMDC()
+    {
+        RuntimeInstance ri = createRuntime(false);
+        String location = render(ri, "#if(1)$tool.location()#end");
+        assertTrue(location, location.startsWith("test:1:"));
+        assertNull(MDC.get(LogContext.MDC_FILE));
+    }
+
+    public void testLazyMDC()
+    {
+        RuntimeInstance ri = createRuntime(true);
+        assertEquals("null:null:null", render(ri, "#if(1)$tool.location()#end"));
+        String location = render(ri, "\n$tool.updatedLocation()");
+        assertTrue(location, location.startsWith("\ntest:2:"));
+        assertNull(MDC.get(LogContext.MDC_FILE));
+    }
+
+    public void testStackTrace()
+    {
+        for (boolean lazy : new boolean[] { false, true })
+        {
+            RuntimeInstance ri = createRuntime(lazy);
+            try
+            {
+                render(ri, "#foreach($i in [1])\n  $tool.fail()#end");
+                fail("expecting an exception");
+            }
+            catch (MethodInvocationException mie)
+            {
+                String[] stackTrace = mie.getVtlStackTrace();
+                assertNotNull(stackTrace);
+                assertTrue(stackTrace.length >= 2);
+                String first = stackTrace[0], last = stackTrace[stackTrace.length - 1];
+                assertTrue(first, first.contains("[line 2, column"));
+                assertTrue(last, last.contains("#foreach"));
+                assertTrue(last, last.contains("[line 1, column 1]"));
+            }
+            assertNull(MDC.get(LogContext.MDC_FILE));
+            assertEquals("ok", render(ri, "ok"));
+        }
+    }
+
+    public void testLazyMDCRelease()
+    {
+        LogContext logContext = new LogContext(true, true);
+        SimpleNode outer = new SimpleNode(0), inner = new SimpleNode(0);
+        logContext.pushLogContext(outer, new Info("outer", 1, 1));
+        logContext.pushLogContext(inner, new Info("inner", 2, 1));
+        logContext.updateMDC();
+        assertEquals("inner", MDC.get(LogContext.MDC_FILE));
+        logContext.popLogContext();
+        assertNull("the MDC must not keep the popped location", MDC.get(LogContext.MDC_FILE));
+        logContext.updateMDC();
+        assertEquals("outer", MDC.get(LogContext.MDC_FILE));
+        logContext.pushLogContext(inner, new Info("inner", 2, 1));
+        logContext.popLogContext();
+        assertEquals("outer", MDC.get(LogContext.MDC_FILE));
+        logContext.popLogContext();
+        assertNull(MDC.get(LogContext.MDC_FILE));
+        assertNull(logContext.getStackTrace());
+    }
+
+    public static class Tool
+    {
+        private final LogContext logContext;
+
+        public Tool(LogContext logContext)
+        {
+            this.logContext = logContext;
+        }
+
+        public String location()
+        {
+            return MDC.get(LogContext.MDC_FILE) + ":" + MDC.get(LogContext.MDC_LINE) + ":" + MDC.get(LogContext.MDC_COLUMN);
+        }
+
+        public String updatedLocation()
+        {
+            logContext.updateMDC();
+            return location();
+        }
+
+        public String fail()
+        {
+            throw new IllegalStateException("failure");
+        }
+    }
+}
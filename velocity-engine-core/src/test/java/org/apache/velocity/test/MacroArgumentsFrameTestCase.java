@@ -0,0 +1,95 @@
+package org.apache.velocity.test;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.exception.VelocityException;
+import org.apache.velocity.runtime.RuntimeConstants;
+
+/**
+ * Tests macro arguments bound in a frame rather than in the user context.
+ */
+public class MacroArgumentsFrameTestCase extends BaseTestCase
+{
+    public MacroArgumentsFrameTestCase(String name)
+    {
+        super(name);
+    }
+
+    @Override
+    protected void setUpEngine(VelocityEngine engine)
+    {
+        engine.setProperty(RuntimeConstants.VM_ARGUMENTS_FRAME, true);
+    }
+
+    public void testArguments()
+    {
+        assertEvalEquals("a-b", "#macro(m $x $y)$x-$y#end#m('a' 'b')");
+        assertEvalEquals("a-d", "#macro(d $x $y='d')$x-$y#end#d('a')");
+        assertEvalEquals("$y", "#macro(u $y)$y#end#u($undefined)");
+        assertNull(context.get("x"));
+        assertNull(context.get("y"));
+    }
+
+    public void testShadowing()
+    {
+        context.put("x", "global");
+        assertEvalEquals("local global", "#macro(m $x)$x#end#m('local') $x");
+        assertEvalEquals("changed global", "#macro(s $x)#set($x = 'changed')$x#end#s('local') $x");
+        assertEquals("global", context.get("x"));
+    }
+
+    public void testArgumentsEvaluatedInCallerScope()
+    {
+        assertEvalEquals("1", "#macro(m $x)$x#end#macro(n $x)#m($x)#end#n(1)");
+        assertEvalEquals("2:1", "#macro(p $y)$y:$x#end#macro(q $x)#p(2)#end#q(1)");
+    }
+
+    public void testGlobalSet()
+    {
+        assertEvalEquals("", "#macro(m $x)#set($y = $x)#end#m('set')");
+        assertEquals("set", context.get("y"));
+    }
+
+    public void testBodyReference()
+    {
+        assertEvalEquals("[body]", "#macro(m)[$!bodyContent]#end#@m()body#end");
+        assertEvalEquals("[]", "#macro(m)[$!bodyContent]#end#macro(n)#m()#end#@n()body#end");
+        assertNull(context.get("bodyContent"));
+    }
+
+    public void testParseInMacro()
+    {
+        addTemplate("sub", "$x");
+        assertEvalEquals("arg", "#macro(m $x)#parse('sub')#end#m('arg')");
+    }
+
+    public void testLoopInMacro()
+    {
+        assertEvalEquals("x1x2", "#macro(m $x $l)#foreach($i in $l)$x$i#end#end#m('x' [1, 2])");
+        assertNull(context.get("i"));
+    }
+
+    public void testRecursion()
+    {
+        assertEvalEquals("3210", "#macro(m $n)$n#if($n > 0)#set($p = $n - 1)#m($p)#end#end#m(3)");
+        assertEvalException("#macro(r $x)#r($x)#end#r(1)", VelocityException.class);
+    }
+}
@@ -0,0 +1,124 @@
+package org.apache.velocity.test;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.context.Context;
+import org.apache.velocity.exception.MacroOverflowException;
+import org.apache.velocity.runtime.RuntimeConstants;
+
+/**
+ * Tests the in place rendering of small macros which call no other macro.
+ */
+public class MacroInliningTestCase extends BaseTestCase
+{
+    public MacroInliningTestCase(String name)
+    {
+        super(name);
+    }
+
+    @Override
+    protected void setUpEngine(VelocityEngine engine)
+    {
+        engine.setProperty(RuntimeConstants.VM_INLINING, true);
+        engine.setProperty(RuntimeConstants.VM_INLINING_MAX_NODES, 10);
+        engine.setProperty(RuntimeConstants.VM_MAX_DEPTH, 2);
+    }
+
+    @Override
+    protected void setUpContext(VelocityContext context)
+    {
+        context.put("probe", new Probe(context));
+    }
+
+    public void testInlined()
+    {
+        // arguments are bound in the context, as for regular calls
+        assertEvalEquals("1:true2:true", "#macro(m $x)$x:$probe.bound('x')#end#foreach($i in [1..2])#m($i)#end");
+        assertEvalEquals("a-d", "#macro(d $x $y='d')$x-$y#end#foreach($i in [1])#d('a')#end");
+        assertEvalEquals("[1][2]", "#macro(l $l)#foreach($i in $l)[$i]#end#end#l([1, 2])");
+        assertNull(context.get("x"));
+        assertNull(context.get("i"));
+    }
+
+    public void testArgumentsFrame()
+    {
+        engine.setProperty(RuntimeConstants.VM_ARGUMENTS_FRAME, true);
+        // arguments are bound in a frame, as for regular calls
+        assertEvalEquals("1:false2:false", "#macro(m $x)$x:$probe.bound('x')#end#foreach($i in [1..2])#m($i)#end");
+        assertEvalEquals("false", "#macro(n)#end#macro(o $x)#n()$probe.bound('x')#end#o(1)");
+        assertNull(context.get("x"));
+    }
+
+    public void testShadowing()
+    {
+        context.put("x", "global");
+        assertEvalEquals("local global", "#macro(m $x)$x#end#m('local') $x");
+        assertEquals("global", context.get("x"));
+    }
+
+    public void testNotInlined()
+    {
+        // calls another macro
+        assertEvalEquals("true", "#macro(n)#end#macro(c $x)#n()$probe.bound('x')#end#c(1)");
+        // assigns a reference
+        assertEvalEquals("true", "#macro(s $x)#set($y = 1)$probe.bound('x')#end#s(1)");
+        // too large
+        assertEvalEquals("1111111111true", "#macro(t $x)$x$x$x$x$x$x$x$x$x$x$probe.bound('x')#end#t(1)");
+        // block macro call
+        assertEvalEquals("true", "#macro(b $x)$probe.bound('x')#end#@b(1)#end");
+    }
+
+    public void testBreak()
+    {
+        assertEvalEquals("aa b", "#macro(m)a#{break}b#end#foreach($i in [1..2])#m()#end b");
+    }
+
+    public void testMaxDepth()
+    {
+        assertEvalEquals("x", "#macro(m)x#end#macro(n)#m()#end#n()");
+        assertEvalException("#macro(m)x#end#macro(n)#m()#end#macro(o)#n()#end#o()", MacroOverflowException.class);
+    }
+
+    public void testTemplates()
+    {
+        addTemplate("lib", "#macro(cell $v)<td>$v</td>#end");
+        addTemplate("row", "#parse('lib')#foreach($i in [1..3])#cell($i)#end");
+        assertTmplEquals("<td>1</td><td>2</td><td>3</td>", "row");
+        assertTmplEquals("<td>1</td><td>2</td><td>3</td>", "row");
+    }
+
+    public static class Probe
+    {
+        private final Context context;
+
+        public Probe(Context context)
+        {
+            this.context = context;
+        }
+
+        public boolean bound(String key)
+        {
+            return context.containsKey(key);
+        }
+    }
+}
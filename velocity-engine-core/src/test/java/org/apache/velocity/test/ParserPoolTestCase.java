@@ -0,0 +1,124 @@
+package org.apache.velocity.test;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import junit.framework.TestCase;
+import org.apache.velocity.runtime.ParserPoolImpl;
+import org.apache.velocity.runtime.RuntimeConstants;
+import org.apache.velocity.runtime.RuntimeInstance;
+import org.apache.velocity.runtime.parser.Parser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests the default parser pool.
+ */
+public class ParserPoolTestCase extends TestCase
+{
+    private ParserPoolImpl pool;
+
+    public ParserPoolTestCase(String name)
+    {
+        super(name);
+    }
+
+    @Override
+    public void setUp() throws Exception
+    {
+        RuntimeInstance runtime = new RuntimeInstance();
+        runtime.setProperty(RuntimeConstants.PARSER_POOL_SIZE, 2);
+        runtime.init();
+        pool = new ParserPoolImpl();
+        pool.initialize(runtime);
+    }
+
+    public void testBounds()
+    {
+        Set<Parser> pooled = Collections.newSetFromMap(new IdentityHashMap<>());
+        Parser first = pool.get();
+        Parser second = pool.get();
+        Parser extra = pool.get();
+        assertNotNull(extra);
+        pooled.add(first);
+        pooled.add(second);
+        pooled.add(extra);
+        assertEquals(3, pooled.size());
+
+        pool.put(first);
+        pool.put(second);
+        pool.put(extra);
+        assertSame(second, pool.get());
+        assertSame(first, pool.get());
+        assertFalse(pooled.contains(pool.get()));
+    }
+
+    public void testConcurrentAccess() throws Exception
+    {
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final Set<Parser> seen = Collections.synchronizedSet(new HashSet<>());
+        Parser first = pool.get();
+        Parser second = pool.get();
+        seen.add(first);
+        seen.add(second);
+        pool.put(first);
+        pool.put(second);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; ++t)
+        {
+            Thread thread = new Thread(() ->
+            {
+                try
+                {
+                    for (int i = 0; i < 1000; ++i)
+                    {
+                        Parser parser = pool.get();
+                        assertNotNull(parser);
+                        seen.add(parser);
+                        pool.put(parser);
+                    }
+                }
+                catch (Throwable e)
+                {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+        assertNull(failure.get());
+
+        /* the pool never holds more than its size */
+        assertTrue(seen.contains(pool.get()));
+        assertTrue(seen.contains(pool.get()));
+        assertFalse(seen.contains(pool.get()));
+    }
+}
@@ -0,0 +1,153 @@
+package org.apache.velocity.test;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import org.apache.velocity.app.PreloadReport;
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.exception.ParseErrorException;
+import org.apache.velocity.exception.ResourceNotFoundException;
+import org.apache.velocity.runtime.RuntimeConstants;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Tests VelocityEngine.preload().
+ */
+public class PreloadTestCase extends BaseTestCase
+{
+    private File directory;
+
+    public PreloadTestCase(String name)
+    {
+        super(name);
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        directory = new File(TEST_RESULT_DIR, "preload");
+        write("index.vm", "#parse('inc/header.vm')body#parse($dynamic)");
+        write("inc/header.vm", "#parse('inc/title.vm')header");
+        write("inc/title.vm", "title");
+        write("inc/deep/footer.vm", "footer");
+        write("other.txt", "other");
+        super.setUp();
+    }
+
+    @Override
+    protected void setUpEngine(VelocityEngine engine)
+    {
+        engine.setProperty(RuntimeConstants.FILE_RESOURCE_LOADER_PATH, directory.getPath());
+    }
+
+    private void write(String name, String content) throws IOException
+    {
+        File file = new File(directory, name);
+        file.getParentFile().mkdirs();
+        try (Writer writer = new FileWriter(file))
+        {
+            writer.write(content);
+        }
+    }
+
+    private static List<String> names(List<PreloadReport.Result> results)
+    {
+        List<String> names = new ArrayList<>();
+        for (PreloadReport.Result result : results)
+        {
+            names.add(result.getName());
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    private static PreloadReport.Result result(PreloadReport report, String name)
+    {
+        for (PreloadReport.Result result : report.getResults())
+        {
+            if (result.getName().equals(name))
+            {
+                return result;
+            }
+        }
+        fail("no result for " + name);
+        return null;
+    }
+
+    public void testFollowsParse()
+    {
+        PreloadReport report = engine.preload(Collections.singletonList("index.vm"));
+        assertTrue(report.isSuccessful());
+        assertEquals(Arrays.asList("inc/header.vm", "inc/title.vm", "index.vm"), names(report.getResults()));
+        assertEquals(Collections.singletonList("inc/header.vm"), result(report, "index.vm").getReferences());
+        assertNull(result(report, "index.vm").getReferrer());
+        assertEquals("index.vm", result(report, "inc/header.vm").getReferrer());
+        assertEquals("inc/header.vm", result(report, "inc/title.vm").getReferrer());
+    }
+
+    public void testFailures()
+    {
+        addTemplate("broken", "#if(");
+        addTemplate("fine", "#parse('missing')fine");
+        PreloadReport report = engine.preload(Arrays.asList("broken", "fine", "fine"));
+        assertFalse(report.isSuccessful());
+        assertEquals(Arrays.asList("broken", "fine", "missing"), names(report.getResults()));
+        assertEquals(Arrays.asList("broken", "missing"), names(report.getFailures()));
+        assertTrue(result(report, "broken").getFailure() instanceof ParseErrorException);
+        assertTrue(result(report, "missing").getFailure() instanceof ResourceNotFoundException);
+        assertEquals("fine", result(report, "missing").getReferrer());
+        assertTrue(result(report, "fine").isSuccessful());
+    }
+
+    public void testGlob()
+    {
+        assertEquals(Arrays.asList("inc/deep/footer.vm", "inc/header.vm", "inc/title.vm", "index.vm"),
+            names(engine.preload("**/*.vm").getResults()));
+        assertEquals(Arrays.asList("inc/header.vm", "inc/title.vm"),
+            names(engine.preload("inc/*.vm").getResults()));
+        assertEquals(Collections.singletonList("other.txt"),
+            names(engine.preload("?????.txt").getResults()));
+    }
+
+    public void testExecutor()
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try
+        {
+            PreloadReport report = engine.preload("inc/**", executor);
+            assertTrue(report.isSuccessful());
+            assertEquals(Arrays.asList("inc/deep/footer.vm", "inc/header.vm", "inc/title.vm"), names(report.getResults()));
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+}
@@ -28,11 +28,14 @@
 import org.apache.velocity.exception.ParseErrorException;
 import org.apache.velocity.exception.ResourceNotFoundException;
 import org.apache.velocity.runtime.RuntimeConstants;
+import org.apache.velocity.test.misc.TestLogger;
+import org.apache.velocity.util.introspection.SecureIntrospectorImpl;
 import org.apache.velocity.util.introspection.SecureUberspector;
 
 import java.io.IOException;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.lang.ref.WeakReference;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
@@ -268,6 +271,51 @@ public void testDefaultVelocityEngineRestriction() throws Exception
         assertFalse("VelocityEngine.reset must be blocked by default",
                     doesStringEvaluate(ve, c, "$ve.reset()"));
     }
-}
 
+    /**
+     * Cached permission decisions must match the computed ones, and survive a cleared introspector cache.
+     */
+    public void testPermissionCache()
+    {
+        SecureIntrospectorImpl introspector = new SecureIntrospectorImpl(
+            new String[] { "java.lang.Class", "java.lang.Runtime" }, new String[] { "java.lang.reflect" },
+            new String[] { Parent.class.getName() + ".forbidden" }, new TestLogger());
+        for (int pass = 0; pass < 2; ++pass)
+        {
+            long generation = introspector.getCacheGeneration();
+            assertFalse(introspector.checkObjectExecutePermission(ClassLoader.class, "loadClass"));
+            assertFalse(introspector.checkObjectExecutePermission(Thread.class, null));
+            assertFalse(introspector.checkObjectExecutePermission(String.class, "wait"));
+            assertTrue(introspector.checkObjectExecutePermission(String.class, "length"));
+            assertTrue(introspector.checkObjectExecutePermission(Class.class, "getName"));
+            assertFalse(introspector.checkObjectExecutePermission(Class.class, "forName"));
+            assertFalse(introspector.checkObjectExecutePermission(Runtime.class, "exec"));
+            assertFalse(introspector.checkObjectExecutePermission(java.lang.reflect.Method.class, "invoke"));
+            assertFalse(introspector.checkObjectExecutePermission(Child.class, "forbidden"));
+            assertTrue(introspector.checkObjectExecutePermission(Child.class, "allowed"));
+            assertTrue(introspector.checkObjectExecutePermission(Child.class, null));
+            /* decisions are recomputed once the cache of this introspector is cleared */
+            introspector.clearCache();
+            assertTrue(introspector.getCacheGeneration() != generation);
+        }
+    }
 
+    public void testIntrospectorCollected() throws Exception
+    {
+        SecureIntrospectorImpl introspector = new SecureIntrospectorImpl(
+            new String[] { "java.lang.Runtime" }, new String[0], new TestLogger());
+        assertTrue(introspector.checkObjectExecutePermission(String.class, "length"));
+        assertTrue(introspector.checkObjectExecutePermission(Child.class, "allowed"));
+        assertFalse(introspector.checkObjectExecutePermission(Runtime.class, "exec"));
+
+        /* the permission decisions attached to classes must not keep the introspector alive */
+        WeakReference<SecureIntrospectorImpl> reference = new WeakReference<>(introspector);
+        introspector = null;
+        for (int i = 0; i < 50 && reference.get() != null; ++i)
+        {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(reference.get());
+    }
+}
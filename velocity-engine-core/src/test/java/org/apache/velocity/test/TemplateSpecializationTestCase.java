@@ -0,0 +1,219 @@
+package org.apache.velocity.test;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import org.apache.velocity.Template;
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.event.EventCartridge;
+import org.apache.velocity.app.event.ReferenceInsertionEventHandler;
+import org.apache.velocity.context.Context;
+import org.apache.velocity.io.Filter;
+import org.apache.velocity.runtime.RuntimeConstants;
+import org.apache.velocity.runtime.parser.node.ASTIfStatement;
+import org.apache.velocity.runtime.parser.node.ASTReference;
+import org.apache.velocity.runtime.parser.node.Node;
+
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tests the partial evaluation of templates against constant data.
+ */
+public class TemplateSpecializationTestCase extends BaseTestCase
+{
+    private VelocityContext constants;
+    private Map<String, Object> request;
+
+    public TemplateSpecializationTestCase(String name)
+    {
+        super(name);
+    }
+
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        Map<String, Object> site = new HashMap<>();
+        site.put("name", "Acme");
+        site.put("beta", true);
+        site.put("color", "red");
+        constants = new VelocityContext();
+        constants.put("site", site);
+        constants.put("key", "color");
+        request = new HashMap<>();
+        request.put("user", "Bob");
+        request.put("field", "name");
+    }
+
+    private static int countReferences(Node node, String root)
+    {
+        int count = node instanceof ASTReference && root.equals(((ASTReference)node).getRootString()) ? 1 : 0;
+        for (int i = 0; i < node.jjtGetNumChildren(); ++i)
+        {
+            count += countReferences(node.jjtGetChild(i), root);
+        }
+        return count;
+    }
+
+    private static Node findIf(Node node)
+    {
+        if (node instanceof ASTIfStatement)
+        {
+            return node;
+        }
+        for (int i = 0; i < node.jjtGetNumChildren(); ++i)
+        {
+            Node found = findIf(node.jjtGetChild(i));
+            if (found != null)
+            {
+                return found;
+            }
+        }
+        return null;
+    }
+
+    private Template specialize(String name, String vtl)
+    {
+        addTemplate(name, vtl);
+        return engine.getTemplate(name).specialize(constants);
+    }
+
+    private String merge(Template template)
+    {
+        StringWriter writer = new StringWriter();
+        template.merge(new VelocityContext(request, constants), writer);
+        return writer.toString();
+    }
+
+    public void testReferences()
+    {
+        Template residual = specialize("refs", "<h1>$site.name</h1> $user $site.get($key) $site.get($field)#if($site.get($key) == 'red')!#end");
+        assertEquals("<h1>Acme</h1> Bob red Acme!", merge(residual));
+        assertEquals(1, countReferences((Node)residual.getData(), "site"));
+        assertEquals(4, countReferences((Node)engine.getTemplate("refs").getData(), "site"));
+
+        residual = specialize("silent", "$!site.name $site.missing \\$site.name $!site.missing|");
+        assertEquals("Acme $site.missing $site.name |", merge(residual));
+        assertEquals(3, countReferences((Node)residual.getData(), "site"));
+    }
+
+    public void testFilterWriter()
+    {
+        Template residual = specialize("filter", "<h1>$site.name</h1> $user");
+        StringWriter writer = new FilterWriter();
+        residual.merge(new VelocityContext(request, constants), writer);
+        assertEquals("<h1>{Acme}</h1> {Bob}", writer.toString());
+    }
+
+    public void testInsertionHandlers()
+    {
+        ReferenceInsertionEventHandler handler = new BracketHandler();
+
+        /* handlers attached to the merge context only see the residual references */
+        Template residual = specialize("insertion", "<h1>$site.name</h1> $user");
+        VelocityContext context = new VelocityContext(request, constants);
+        EventCartridge cartridge = new EventCartridge();
+        cartridge.addEventHandler(handler);
+        cartridge.attachToContext(context);
+        StringWriter writer = new StringWriter();
+        residual.merge(context, writer);
+        assertEquals("<h1>Acme</h1> [Bob]", writer.toString());
+
+        /* handlers attached to the constants keep the references */
+        cartridge = new EventCartridge();
+        cartridge.addEventHandler(handler);
+        cartridge.attachToContext(constants);
+        residual = engine.getTemplate("insertion").specialize(constants);
+        assertEquals(1, countReferences((Node)residual.getData(), "site"));
+        context = new VelocityContext(request, constants);
+        cartridge.attachToContext(context);
+        writer = new StringWriter();
+        residual.merge(context, writer);
+        assertEquals("<h1>[Acme]</h1> [Bob]", writer.toString());
+
+        /* as do the handlers configured on the engine */
+        Object site = constants.get("site");
+        constants = new VelocityContext();
+        constants.put("site", site);
+        engine = createEngine();
+        engine.setProperty(RuntimeConstants.EVENTHANDLER_REFERENCEINSERTION, BracketHandler.class.getName());
+        residual = specialize("insertion", "<h1>$site.name</h1> $user");
+        assertEquals(1, countReferences((Node)residual.getData(), "site"));
+        assertEquals("<h1>[Acme]</h1> [Bob]", merge(residual));
+    }
+
+    public static class BracketHandler implements ReferenceInsertionEventHandler
+    {
+        @Override
+        public Object referenceInsert(Context context, String reference, Object value)
+        {
+            return "[" + value + "]";
+        }
+    }
+
+    public void testBranches()
+    {
+        Template residual = specialize("branches", "#if($site.beta && $user)a#elseif($site.beta)b#{else}c#end");
+        assertEquals("a", merge(residual));
+        assertEquals(3, findIf((Node)residual.getData()).jjtGetNumChildren());
+
+        residual = specialize("pruned", "#if(!$site.beta)a#elseif($site.name == 'Acme')b#{else}c#end");
+        assertEquals("b", merge(residual));
+        assertEquals(3, findIf((Node)residual.getData()).jjtGetNumChildren());
+    }
+
+    public void testSet()
+    {
+        Template residual = specialize("set", "#set($title = $site.name + '!')$title $user");
+        assertEquals("Acme! Bob", merge(residual));
+        assertEquals(1, countReferences((Node)residual.getData(), "title"));
+
+        residual = specialize("nested", "#if($user)#set($title = 'a')#end$title#set($title = 'b')");
+        assertEquals("a", merge(residual));
+        assertEquals(3, countReferences((Node)residual.getData(), "title"));
+    }
+
+    public void testAssignedConstants()
+    {
+        Template residual = specialize("loop", "#foreach($site in [1, 2])$site#end");
+        assertEquals("12", merge(residual));
+
+        residual = specialize("shadow", "$site.name#set($site = 'x')$site");
+        assertEquals("Acmex", merge(residual));
+        assertEquals(2, countReferences((Node)residual.getData(), "site"));
+    }
+
+    public static class FilterWriter extends StringWriter implements Filter
+    {
+        @Override
+        public void writeReference(String ref)
+        {
+            write("{" + ref + "}");
+        }
+    }
+
+    public void testMacros()
+    {
+        Template residual = specialize("macro", "#macro(m $site)$site#end#m('arg') $site.name");
+        assertEquals("arg Acme", merge(residual));
+    }
+}
@@ -0,0 +1,238 @@
+package org.apache.velocity.test;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.velocity.runtime.RuntimeConstants;
+import org.apache.velocity.runtime.RuntimeInstance;
+import org.apache.velocity.runtime.resource.ASTSizeWeigher;
+import org.apache.velocity.runtime.resource.ContentResource;
+import org.apache.velocity.runtime.resource.Resource;
+import org.apache.velocity.runtime.resource.TinyLFUResourceCache;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests the W-TinyLFU resource cache.
+ */
+public class TinyLFUResourceCacheTestCase extends BaseTestCase
+{
+    public TinyLFUResourceCacheTestCase(String name)
+    {
+        super(name);
+    }
+
+    private TinyLFUResourceCache createCache(Object... properties)
+    {
+        RuntimeInstance ri = new RuntimeInstance();
+        ri.setProperty(RuntimeConstants.RUNTIME_LOG_INSTANCE, log);
+        for (int i = 0; i < properties.length; i += 2)
+        {
+            ri.setProperty((String)properties[i], properties[i + 1]);
+        }
+        ri.init();
+        TinyLFUResourceCache cache = new TinyLFUResourceCache();
+        cache.initialize(ri);
+        return cache;
+    }
+
+    private static Resource resource(String content)
+    {
+        Resource resource = new ContentResource();
+        resource.setName(content);
+        resource.setData(content);
+        return resource;
+    }
+
+    private static int size(TinyLFUResourceCache cache)
+    {
+        int size = 0;
+        for (Iterator<Object> keys = cache.enumerateKeys(); keys.hasNext(); keys.next())
+        {
+            ++size;
+        }
+        return size;
+    }
+
+    public void testBasicOperations()
+    {
+        TinyLFUResourceCache cache = createCache(RuntimeConstants.RESOURCE_MANAGER_DEFAULTCACHE_SIZE, 10);
+        Resource a = resource("a");
+        assertNull(cache.put("a", a));
+        assertSame(a, cache.get("a"));
+        Resource b = resource("b");
+        assertSame(a, cache.put("a", b));
+        assertSame(b, cache.get("a"));
+        assertSame(b, cache.remove("a"));
+        assertNull(cache.get("a"));
+        assertNull(cache.remove("a"));
+        cache.put("x", a);
+        cache.put("y", b);
+        cache.clear();
+        assertEquals(0, size(cache));
+        assertEquals(0, cache.getTotalWeight());
+    }
+
+    public void testPeek()
+    {
+        TinyLFUResourceCache cache = createCache(RuntimeConstants.RESOURCE_MANAGER_DEFAULTCACHE_SIZE, 10);
+        Resource a = resource("a");
+        assertNull(cache.peek("a"));
+        cache.put("a", a);
+        assertSame(a, cache.peek("a"));
+        cache.remove("a");
+        assertNull(cache.peek("a"));
+
+        TinyLFUResourceCache unbounded = createCache(RuntimeConstants.RESOURCE_MANAGER_DEFAULTCACHE_SIZE, 0);
+        unbounded.put("a", a);
+        assertSame(a, unbounded.peek("a"));
+    }
+
+    public void testBoundedSize()
+    {
+        TinyLFUResourceCache cache = createCache(RuntimeConstants.RESOURCE_MANAGER_DEFAULTCACHE_SIZE, 20);
+        for (int i = 0; i < 1000; ++i)
+        {
+            cache.put("key" + i, resource("value" + i));
+            assertTrue(cache.getTotalWeight() <= 20);
+        }
+        assertEquals(20, size(cache));
+        assertEquals(20, cache.getTotalWeight());
+    }
+
+    public void testFrequentEntriesAreRetained()
+    {
+        TinyLFUResourceCache cache = createCache(RuntimeConstants.RESOURCE_MANAGER_DEFAULTCACHE_SIZE, 50);
+        for (int i = 0; i < 10; ++i)
+        {
+            cache.put("hot" + i, resource("hot" + i));
+        }
+        for (int i = 0; i < 2000; ++i)
+        {
+            /* long tail scan, with frequent accesses to the hot entries */
+            cache.put("cold" + i, resource("cold" + i));
+            cache.get("hot" + (i % 10));
+        }
+        for (int i = 0; i < 10; ++i)
+        {
+            assertNotNull("hot" + i, cache.get("hot" + i));
+        }
+    }
+
+    public void testSmallCacheWindow()
+    {
+        TinyLFUResourceCache cache = createCache(RuntimeConstants.RESOURCE_MANAGER_DEFAULTCACHE_SIZE, 10);
+        for (int i = 0; i < 10; ++i)
+        {
+            cache.put("hot" + i, resource("hot" + i));
+        }
+        for (int round = 0; round < 5; ++round)
+        {
+            for (int i = 0; i < 10; ++i)
+            {
+                cache.get("hot" + i);
+            }
+        }
+        /* a new entry is admitted in the window, even if the other entries are more frequent */
+        cache.put("fresh", resource("fresh"));
+        assertNotNull(cache.get("fresh"));
+        assertEquals(10, size(cache));
+    }
+
+    public void testUnbounded()
+    {
+        TinyLFUResourceCache cache = createCache(RuntimeConstants.RESOURCE_MANAGER_DEFAULTCACHE_SIZE, 0);
+        for (int i = 0; i < 500; ++i)
+        {
+            cache.put("key" + i, resource("value" + i));
+        }
+        assertEquals(500, size(cache));
+    }
+
+    public void testWeigher()
+    {
+        TinyLFUResourceCache cache = createCache(
+            RuntimeConstants.RESOURCE_MANAGER_CACHE_WEIGHER_CLASS, ASTSizeWeigher.class.getName(),
+            RuntimeConstants.RESOURCE_MANAGER_CACHE_MAX_WEIGHT, 100);
+        StringBuilder big = new StringBuilder();
+        for (int i = 0; i < 64 * 30; ++i)
+        {
+            big.append('x');
+        }
+        cache.put("big", resource(big.toString()));
+        assertEquals(31, cache.getTotalWeight());
+        for (int i = 0; i < 200; ++i)
+        {
+            cache.put("small" + i, resource("small" + i));
+            assertTrue(cache.getTotalWeight() <= 100);
+        }
+    }
+
+    public void testConcurrentAccess() throws Exception
+    {
+        final TinyLFUResourceCache cache = createCache(RuntimeConstants.RESOURCE_MANAGER_DEFAULTCACHE_SIZE, 64);
+        final AtomicInteger errors = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; ++t)
+        {
+            final int seed = t;
+            threads.add(new Thread(() ->
+            {
+                try
+                {
+                    for (int i = 0; i < 20000; ++i)
+                    {
+                        String key = "key" + ((i * 31 + seed) % 200);
+                        Resource resource = cache.get(key);
+                        if (resource == null)
+                        {
+                            cache.put(key, resource(key));
+                        }
+                        else if (!key.equals(resource.getName()))
+                        {
+                            errors.incrementAndGet();
+                        }
+                        if (i % 1000 == 0)
+                        {
+                            cache.remove(key);
+                        }
+                    }
+                }
+                catch (RuntimeException e)
+                {
+                    errors.incrementAndGet();
+                }
+            }));
+        }
+        for (Thread thread : threads)
+        {
+            thread.start();
+        }
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+        assertEquals(0, errors.get());
+        assertTrue(cache.getTotalWeight() <= 64);
+        assertEquals(cache.getTotalWeight(), size(cache));
+    }
+}
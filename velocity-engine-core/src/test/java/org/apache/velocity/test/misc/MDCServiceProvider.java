@@ -0,0 +1,42 @@
+package org.apache.velocity.test.misc;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.slf4j.helpers.BasicMDCAdapter;
+import org.slf4j.simple.SimpleServiceProvider;
+import org.slf4j.spi.MDCAdapter;
+
+/**
+ * slf4j-simple provider with a working MDC (slf4j-simple alone discards the MDC values),
+ * so that tests can check the location tags set by Velocity.
+ * Selected by the <code>slf4j.provider</code> system property.
+ *
+ * @since 2.6
+ */
+public class MDCServiceProvider extends SimpleServiceProvider
+{
+    private final MDCAdapter mdcAdapter = new BasicMDCAdapter();
+
+    @Override
+    public MDCAdapter getMDCAdapter()
+    {
+        return mdcAdapter;
+    }
+}
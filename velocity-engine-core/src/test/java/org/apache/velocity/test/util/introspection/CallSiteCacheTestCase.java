@@ -0,0 +1,181 @@
+package org.apache.velocity.test.util.introspection;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.runtime.RuntimeConstants;
+import org.apache.velocity.runtime.RuntimeInstance;
+import org.apache.velocity.runtime.resource.loader.StringResourceLoader;
+import org.apache.velocity.runtime.resource.util.StringResourceRepository;
+import org.apache.velocity.test.misc.TestLogger;
+import org.apache.velocity.util.introspection.CallSiteCache;
+import org.apache.velocity.util.introspection.Introspector;
+import org.apache.velocity.util.introspection.IntrospectorCache;
+import org.apache.velocity.util.introspection.TypeConversionHandlerImpl;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.TreeMap;
+
+/**
+ * Test the call site cache
+ */
+public class CallSiteCacheTestCase extends TestCase
+{
+    public CallSiteCacheTestCase(String name)
+    {
+        super(name);
+    }
+
+    public void testLookup()
+    {
+        CallSiteCache<String> cache = new CallSiteCache<>();
+        assertNull(cache.get(0L, String.class, false));
+
+        cache.put(0L, String.class, false, "string");
+        cache.put(0L, String.class, true, "static");
+        cache.put(0L, Integer.class, false, new Class<?>[] { String.class, null }, "integer");
+
+        assertEquals("string", cache.get(0L, String.class, false));
+        assertEquals("static", cache.get(0L, String.class, true));
+        assertEquals("integer", cache.get(0L, Integer.class, false, new Class<?>[] { String.class, null }));
+        assertNull(cache.get(0L, Integer.class, false));
+        assertNull(cache.get(0L, Integer.class, false, new Class<?>[] { String.class, String.class }));
+    }
+
+    public void testArityLookups()
+    {
+        CallSiteCache<String> cache = new CallSiteCache<>();
+        cache.put(0L, String.class, false, new Class<?>[] { Integer.class }, "one");
+        cache.put(0L, String.class, false, new Class<?>[] { Integer.class, null }, "two");
+
+        assertEquals("one", cache.get(0L, String.class, false, Integer.class));
+        assertEquals("one", cache.get(0L, String.class, false, new Class<?>[] { Integer.class }));
+        assertNull(cache.get(0L, String.class, false, Long.class));
+        assertNull(cache.get(0L, String.class, true, Integer.class));
+        assertEquals("two", cache.get(0L, String.class, false, Integer.class, null));
+        assertNull(cache.get(0L, String.class, false, Integer.class, Integer.class));
+        assertNull(cache.get(0L, String.class, false));
+    }
+
+    public void testArgumentsAreCopied()
+    {
+        CallSiteCache<String> cache = new CallSiteCache<>();
+        Class<?>[] args = new Class<?>[] { String.class };
+        cache.put(0L, Object.class, false, args, "object");
+        args[0] = Integer.class;
+        assertNull(cache.get(0L, Object.class, false, args));
+        assertEquals("object", cache.get(0L, Object.class, false, new Class<?>[] { String.class }));
+    }
+
+    public void testMegamorphic()
+    {
+        CallSiteCache<String> cache = new CallSiteCache<>();
+        Class<?>[] receivers = { ArrayList.class, LinkedList.class, HashMap.class, TreeMap.class, String.class };
+        assertTrue(receivers.length > CallSiteCache.MAX_ENTRIES);
+        for (Class<?> receiver : receivers)
+        {
+            cache.put(0L, receiver, false, receiver.getName());
+        }
+        for (int i = 0; i < CallSiteCache.MAX_ENTRIES; ++i)
+        {
+            assertEquals(receivers[i].getName(), cache.get(0L, receivers[i], false));
+        }
+        assertNull(cache.get(0L, String.class, false));
+    }
+
+    public void testInvalidation()
+    {
+        CallSiteCache<String> cache = new CallSiteCache<>();
+        cache.put(0L, String.class, false, "string");
+        assertEquals("string", cache.get(0L, String.class, false));
+
+        /* the uberspector cache has been cleared */
+        assertNull(cache.get(1L, String.class, false));
+        cache.put(1L, String.class, false, "string");
+        assertEquals("string", cache.get(1L, String.class, false));
+        assertNull(cache.get(0L, String.class, false));
+    }
+
+    public void testGenerationPerCache()
+    {
+        Introspector first = new Introspector(new TestLogger(), new TypeConversionHandlerImpl());
+        Introspector second = new Introspector(new TestLogger(), new TypeConversionHandlerImpl());
+        long firstGeneration = first.getCacheGeneration();
+        long secondGeneration = second.getCacheGeneration();
+
+        first.clearCache();
+        assertTrue(first.getCacheGeneration() != firstGeneration);
+        assertEquals(secondGeneration, second.getCacheGeneration());
+
+        /* clearing an unrelated cache does not invalidate the call sites of an engine */
+        RuntimeInstance runtime = new RuntimeInstance();
+        runtime.setProperty(RuntimeConstants.RUNTIME_LOG_INSTANCE, new TestLogger());
+        runtime.init();
+        long engineGeneration = runtime.getUberspect().getCacheGeneration();
+        new IntrospectorCache(new TestLogger(), new TypeConversionHandlerImpl()).clear();
+        second.clearCache();
+        assertEquals(engineGeneration, runtime.getUberspect().getCacheGeneration());
+    }
+
+    public void testSharedAmongMerges()
+    {
+        VelocityEngine engine = new VelocityEngine();
+        engine.setProperty(RuntimeConstants.RUNTIME_LOG_INSTANCE, new TestLogger());
+        engine.setProperty(RuntimeConstants.RESOURCE_LOADERS, "string");
+        engine.setProperty("resource.loader.string.class", StringResourceLoader.class.getName());
+        engine.init();
+        StringResourceRepository repo = StringResourceLoader.getRepository();
+        repo.putStringResource("calls", "#foreach($o in $list)$o.isEmpty() $o.empty #end");
+
+        for (int i = 0; i < 2; ++i)
+        {
+            VelocityContext context = new VelocityContext();
+            context.put("list", Arrays.asList(new ArrayList<>(Arrays.asList(1, 2)), new HashSet<>(), "abc", new LinkedList<>(Arrays.asList(3))));
+            StringWriter writer = new StringWriter();
+            engine.getTemplate("calls").merge(context, writer);
+            assertEquals("false false true true false false false false ", writer.toString());
+        }
+        repo.removeStringResource("calls");
+    }
+
+    public void testArities()
+    {
+        VelocityEngine engine = new VelocityEngine();
+        engine.setProperty(RuntimeConstants.RUNTIME_LOG_INSTANCE, new TestLogger());
+        engine.init();
+        VelocityContext context = new VelocityContext();
+        context.put("list", Arrays.asList("a", "b", "c", "d"));
+        context.put("str", "abcd");
+        context.put("null", null);
+        String template = "#foreach($i in [1..2])$list.size() $str.indexOf('c') $str.substring(1, 3)"
+            + " $str.startsWith('bc', 1) $list.contains($null) $String.format('%s%s%s', 1, 2, 3)|#end";
+        context.put("String", String.class);
+        StringWriter writer = new StringWriter();
+        engine.evaluate(context, writer, "arities", template);
+        assertEquals("4 2 bc true false 123|4 2 bc true false 123|", writer.toString());
+    }
+}
@@ -73,6 +73,149 @@ public void testPrimitives()
         assertNotNull(c.findMethod("setShort",     new Object[] { (short)42 }));
     }
 
+    public void testOverloads()
+        throws Exception
+    {
+        Logger log = Velocity.getLog();
+
+        ClassMap c = new ClassMap(Overloads.class, log);
+        for (int i = 0; i < 2; ++i)
+        {
+            assertEquals(0, c.findMethod("call", new Object[0]).getParameterTypes().length);
+            assertEquals(String.class, c.findMethod("call", new Object[] { "a" }).getParameterTypes()[0]);
+            assertEquals(int.class, c.findMethod("call", new Object[] { 1 }).getParameterTypes()[0]);
+            assertEquals(Object.class, c.findMethod("call", new Object[] { 1.0 }).getParameterTypes()[0]);
+            assertEquals(Object.class, c.findMethod("call", new Object[] { null }).getParameterTypes()[0]);
+            assertEquals(int.class, c.findMethod("call", new Object[] { "a", 1 }).getParameterTypes()[1]);
+            assertEquals(String.class, c.findMethod("call", new Object[] { 1, "a" }).getParameterTypes()[1]);
+            assertEquals(4, c.findMethod("call", new Object[] { "a", "b", "c", "d" }).getParameterTypes().length);
+            assertNull(c.findMethod("call", new Object[] { 1, 2, 3 }));
+            assertNull(c.findMethod("call", new Object[] { 1, 2, 3, 4, 5 }));
+            assertNull(c.findMethod("other", new Object[0]));
+        }
+    }
+
+    public void testManySignatures()
+        throws Exception
+    {
+        Logger log = Velocity.getLog();
+
+        ClassMap c = new ClassMap(Overloads.class, log);
+        Object[] args = { "a", 1, 1.0, 1L, 1f, (short)1, (byte)1, 'c', true, null,
+                          new StringBuilder(), new Object(), new java.util.ArrayList<>(), new java.util.HashMap<>() };
+        for (int i = 0; i < 2; ++i)
+        {
+            for (Object arg : args)
+            {
+                Class<?> expected = arg instanceof String ? String.class
+                    : arg instanceof Integer || arg instanceof Short || arg instanceof Byte ? int.class
+                    : Object.class;
+                assertEquals(String.valueOf(arg), expected, c.findMethod("call", new Object[] { arg }).getParameterTypes()[0]);
+            }
+        }
+    }
+
+    public void testOverridden()
+        throws Exception
+    {
+        Logger log = Velocity.getLog();
+
+        ClassMap c = new ClassMap(Overriding.class, log);
+        assertEquals(Overriding.class, c.findMethod("call", new Object[] { "a" }).getDeclaringClass());
+        assertEquals(Overloads.class, c.findMethod("call", new Object[] { 1 }).getDeclaringClass());
+    }
+
+    public void testVarargs()
+        throws Exception
+    {
+        Logger log = Velocity.getLog();
+
+        ClassMap c = new ClassMap(Varargs.class, log);
+        assertEquals(0, c.findMethod("join", new Object[0]).getParameterTypes().length);
+        assertEquals(String.class, c.findMethod("join", new Object[] { "a" }).getParameterTypes()[0]);
+        assertEquals(String[].class, c.findMethod("join", new Object[] { "a", "b" }).getParameterTypes()[1]);
+        assertEquals(String[].class, c.findMethod("join", new Object[] { "a", "b", "c", "d", "e", "f" }).getParameterTypes()[1]);
+        assertEquals(int.class, c.findMethod("join", new Object[] { 1, 2 }).getParameterTypes()[1]);
+        assertNull(c.findMethod("join", new Object[] { 1, 2, 3 }));
+        assertEquals(1, c.findMethod("all", new Object[0]).getParameterTypes().length);
+        assertEquals(1, c.findMethod("all", new Object[] { 1, 2, 3, 4 }).getParameterTypes().length);
+    }
+
+    public static class Varargs
+    {
+        public String join()
+        {
+            return "";
+        }
+
+        public String join(String s)
+        {
+            return s;
+        }
+
+        public String join(String s, String... others)
+        {
+            return s + String.join("", others);
+        }
+
+        public String join(int a, int b)
+        {
+            return String.valueOf(a + b);
+        }
+
+        public int all(Object... values)
+        {
+            return values.length;
+        }
+    }
+
+    public static class Overloads
+    {
+        public String call()
+        {
+            return "";
+        }
+
+        public String call(String s)
+        {
+            return s;
+        }
+
+        public String call(Object o)
+        {
+            return String.valueOf(o);
+        }
+
+        public String call(int i)
+        {
+            return String.valueOf(i);
+        }
+
+        public String call(String s, int i)
+        {
+            return s + i;
+        }
+
+        public String call(int i, String s)
+        {
+            return i + s;
+        }
+
+        public String call(String a, String b, String c, String d)
+        {
+            return a + b + c + d;
+        }
+    }
+
+    public static final class Overriding extends Overloads
+    {
+        @Override
+        public String call(String s)
+        {
+            return s + s;
+        }
+    }
+
     public static final class TestClassMap
     {
         public void setBoolean(boolean b)
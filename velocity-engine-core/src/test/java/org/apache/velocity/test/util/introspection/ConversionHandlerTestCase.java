@@ -262,6 +262,35 @@ private void testConversions(VelocityEngine ve, String templateFile, String outp
         }
     }
 
+    public void testConverterLookup() throws Exception
+    {
+        TypeConversionHandler handler = new TypeConversionHandlerImpl();
+        Converter<?> narrowing = handler.getNeededConverter(Integer.TYPE, Long.class);
+        assertNotNull(narrowing);
+        assertSame(narrowing, handler.getNeededConverter(Integer.TYPE, Long.class));
+        assertEquals(3, narrowing.convert(3L));
+        assertNull(handler.getNeededConverter(Integer.TYPE, Obj.class));
+        assertNull(handler.getNeededConverter(Integer.TYPE, null));
+        assertEquals("3", handler.getNeededConverter(String.class, Integer.class).convert(3));
+        assertEquals(Locale.FRANCE, handler.getNeededConverter(Locale.class, String.class).convert("fr_FR"));
+
+        /* custom converters are registered for both primitive and boxed types, but do not override standard ones */
+        Converter<Integer> custom = o -> 42;
+        handler.addConverter(Integer.TYPE, Obj.class, custom);
+        handler.addConverter(Integer.TYPE, String.class, custom);
+        assertSame(custom, handler.getNeededConverter(Integer.TYPE, Obj.class));
+        assertSame(custom, handler.getNeededConverter(Integer.class, Obj.class));
+        assertEquals(3, handler.getNeededConverter(Integer.TYPE, String.class).convert("3"));
+
+        /* parameterized formal types */
+        Type integerList = Obj.class.getMethod("iWantAnIntegerList", List.class).getGenericParameterTypes()[0];
+        Converter<List<Integer>> toList = o -> Arrays.asList(1, 2, 3);
+        assertNull(handler.getNeededConverter(integerList, String.class));
+        handler.addConverter(integerList, String.class, toList);
+        assertSame(toList, handler.getNeededConverter(integerList, String.class));
+        assertNull(handler.getNeededConverter(List.class, String.class));
+    }
+
     public void testOtherConversions() throws Exception
     {
         VelocityEngine ve = createEngine(false);
@@ -0,0 +1,188 @@
+package org.apache.velocity.test.util.introspection;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import junit.framework.TestCase;
+import org.apache.velocity.test.misc.TestLogger;
+import org.apache.velocity.util.introspection.ClassMap;
+import org.apache.velocity.util.introspection.IntrospectorCache;
+import org.apache.velocity.util.introspection.TypeConversionHandlerImpl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Test the introspector cache
+ */
+public class IntrospectorCacheTestCase extends TestCase
+{
+    private static final Class<?>[] CLASSES =
+    {
+        String.class, Integer.class, ArrayList.class, LinkedList.class, HashMap.class,
+        TreeMap.class, StringBuilder.class, Arrays.class, Thread.class, Object.class
+    };
+
+    private IntrospectorCache cache;
+
+    public IntrospectorCacheTestCase(String name)
+    {
+        super(name);
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        cache = new IntrospectorCache(new TestLogger(), new TypeConversionHandlerImpl());
+    }
+
+    public void testLookup() throws Exception
+    {
+        ClassMap classMap = cache.get(String.class);
+        assertNotNull(classMap);
+        assertSame(String.class, classMap.getCachedClass());
+        assertSame(classMap, cache.get(String.class));
+        assertSame(classMap, cache.put(String.class));
+        assertNotNull(cache.getFieldMap(String.class));
+        assertNotNull(classMap.findMethod("length", new Object[0]));
+    }
+
+    public void testClear()
+    {
+        ClassMap classMap = cache.get(String.class);
+        long generation = cache.getGeneration();
+        cache.clear();
+        assertTrue(cache.getGeneration() > generation);
+        assertNotSame(classMap, cache.get(String.class));
+    }
+
+    public void testSeparateCaches()
+    {
+        IntrospectorCache other = new IntrospectorCache(new TestLogger(), new TypeConversionHandlerImpl());
+        assertNotSame(cache.get(String.class), other.get(String.class));
+        long generation = other.getGeneration();
+        cache.clear();
+        assertEquals(generation, other.getGeneration());
+    }
+
+    public void testSharedResolutions() throws Exception
+    {
+        ClassMap first = cache.get(First.class);
+        ClassMap second = cache.get(Second.class);
+        for (ClassMap classMap : new ClassMap[] { first, second })
+        {
+            assertEquals(Base.class.getMethod("pick", String.class), classMap.findMethod("pick", new Object[] { "s" }));
+            assertEquals(Base.class.getMethod("pick", long.class), classMap.findMethod("pick", new Object[] { 1 }));
+            assertEquals(Base.class.getMethod("pick", Object.class), classMap.findMethod("pick", new Object[] { 1.0 }));
+            assertNull(classMap.findMethod("pick", new Object[] { 1, 2 }));
+        }
+        assertEquals(First.class, first.findMethod("own", new Object[] { "s" }).getDeclaringClass());
+        assertEquals(Second.class, second.findMethod("own", new Object[] { 1 }).getDeclaringClass());
+    }
+
+    public static class Base
+    {
+        public String pick(String s)
+        {
+            return s;
+        }
+
+        public String pick(long l)
+        {
+            return String.valueOf(l);
+        }
+
+        public String pick(Object o)
+        {
+            return String.valueOf(o);
+        }
+    }
+
+    public static class First extends Base
+    {
+        public String own(String s)
+        {
+            return s;
+        }
+    }
+
+    public static class Second extends Base
+    {
+        public String own(int i)
+        {
+            return String.valueOf(i);
+        }
+    }
+
+    public void testConcurrentLookups() throws Exception
+    {
+        final int threads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try
+        {
+            List<Future<ClassMap[]>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; ++t)
+            {
+                final int offset = t;
+                futures.add(executor.submit(new Callable<ClassMap[]>()
+                {
+                    @Override
+                    public ClassMap[] call() throws Exception
+                    {
+                        start.await();
+                        ClassMap[] maps = new ClassMap[CLASSES.length];
+                        for (int i = 0; i < CLASSES.length; ++i)
+                        {
+                            int index = (i + offset) % CLASSES.length;
+                            maps[index] = cache.get(CLASSES[index]);
+                            assertNotNull(cache.getFieldMap(CLASSES[index]));
+                        }
+                        return maps;
+                    }
+                }));
+            }
+            start.countDown();
+            ClassMap[] expected = futures.get(0).get();
+            for (Future<ClassMap[]> future : futures)
+            {
+                ClassMap[] maps = future.get();
+                for (int i = 0; i < CLASSES.length; ++i)
+                {
+                    assertSame(CLASSES[i], maps[i].getCachedClass());
+                    assertSame(expected[i], maps[i]);
+                }
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+}
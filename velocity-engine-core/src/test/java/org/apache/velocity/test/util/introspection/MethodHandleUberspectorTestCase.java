@@ -0,0 +1,244 @@
+package org.apache.velocity.test.util.introspection;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.exception.MethodInvocationException;
+import org.apache.velocity.runtime.RuntimeConstants;
+import org.apache.velocity.runtime.RuntimeInstance;
+import org.apache.velocity.test.BaseTestCase;
+import org.apache.velocity.util.introspection.Info;
+import org.apache.velocity.util.introspection.MethodHandleUberspector;
+import org.apache.velocity.util.introspection.Uberspect;
+import org.apache.velocity.util.introspection.UberspectImpl;
+import org.apache.velocity.util.introspection.VelMethod;
+import org.apache.velocity.util.introspection.VelPropertyGet;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+
+/**
+ * Test the method handle based uberspector
+ */
+public class MethodHandleUberspectorTestCase extends BaseTestCase
+{
+    public MethodHandleUberspectorTestCase(String name)
+    {
+        super(name);
+    }
+
+    private static final String UBERSPECTORS =
+        UberspectImpl.class.getName() + "," + MethodHandleUberspector.class.getName();
+
+    @Override
+    protected void setUpEngine(VelocityEngine engine)
+    {
+        engine.setProperty(RuntimeConstants.UBERSPECT_CLASSNAME, UBERSPECTORS);
+    }
+
+    @Override
+    protected void setUpContext(VelocityContext context)
+    {
+        context.put("tool", new Tool());
+        context.put("map", Collections.singletonMap("key", "value"));
+        context.put("getter", new Getter());
+        context.put("array", new String[] { "a", "b" });
+        context.put("math", Math.class);
+    }
+
+    public void testUberspector()
+    {
+        RuntimeInstance ri = new RuntimeInstance();
+        ri.setProperty(RuntimeConstants.RUNTIME_LOG_INSTANCE, log);
+        ri.setProperty(RuntimeConstants.UBERSPECT_CLASSNAME, UBERSPECTORS);
+        ri.init();
+        Uberspect uberspect = ri.getUberspect();
+        Info info = new Info("test", 1, 1);
+
+        VelMethod method = uberspect.getMethod(new Tool(), "concat", new Object[] { "a", 1 }, info);
+        assertTrue(method instanceof MethodHandleUberspector.VelMethodHandleImpl);
+
+        VelPropertyGet getter = uberspect.getPropertyGet(new Tool(), "name", info);
+        assertTrue(getter instanceof MethodHandleUberspector.VelGetterHandleImpl);
+        assertEquals("getName", getter.getMethodName());
+
+        getter = uberspect.getPropertyGet(new HashMap<String, String>(), "key", info);
+        assertFalse(getter instanceof MethodHandleUberspector.VelGetterHandleImpl);
+    }
+
+    public void testMethods()
+    {
+        assertEvalEquals("a1", "$tool.concat('a', 1)");
+        assertEvalEquals("", "$tool.nothing()");
+        assertEvalEquals("3", "$math.max(2, 3)");
+        assertEvalEquals("onetwo", "$tool.var('one', 'two')");
+        assertEvalEquals("", "$tool.var()");
+        assertEvalEquals("2", "$array.size()");
+    }
+
+    public void testGetters()
+    {
+        assertEvalEquals("tool", "$tool.name");
+        assertEvalEquals("true", "$tool.valid");
+        assertEvalEquals("value", "$map.key");
+        assertEvalEquals("got foo", "$getter.foo");
+        assertEvalEquals("b", "$array.get(1)");
+    }
+
+    public void testPolymorphicCallSite()
+    {
+        context.put("list", Arrays.asList(new Tool(), new SubTool(), new Tool()));
+        assertEvalEquals("tool sub tool tool ", "#foreach($t in $list)$t.name #end");
+    }
+
+    public void testExceptions()
+    {
+        Exception e = assertEvalException("$tool.fail()", MethodInvocationException.class);
+        assertTrue(e.getCause() instanceof IllegalStateException);
+        assertEquals("failed", e.getCause().getMessage());
+
+        e = assertEvalException("$getter.fail", MethodInvocationException.class);
+        assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+
+    public void testInvalidArguments() throws Exception
+    {
+        RuntimeInstance ri = new RuntimeInstance();
+        ri.setProperty(RuntimeConstants.RUNTIME_LOG_INSTANCE, log);
+        ri.setProperty(RuntimeConstants.UBERSPECT_CLASSNAME, UBERSPECTORS);
+        ri.init();
+        Info info = new Info("test", 1, 1);
+        Tool tool = new Tool();
+        VelMethod method = ri.getUberspect().getMethod(tool, "concat", new Object[] { "a", 1 }, info);
+        assertTrue(method instanceof MethodHandleUberspector.VelMethodHandleImpl);
+
+        assertEquals("a2", method.invoke(tool, new Object[] { "a", (short)2 }));
+        assertEquals("a120", method.invoke(tool, new Object[] { "a", 'x' }));
+        for (Object[] args : new Object[][] { { "a", null }, { "a", 2L }, { "a", "b" } })
+        {
+            try
+            {
+                method.invoke(tool, args);
+                fail("IllegalArgumentException expected for " + Arrays.toString(args));
+            }
+            catch (IllegalArgumentException iae)
+            {
+                // expected, as with reflection
+            }
+        }
+
+        method = ri.getUberspect().getMethod(tool, "fail", new Object[0], info);
+        try
+        {
+            method.invoke(tool, new Object[0]);
+            fail("InvocationTargetException expected");
+        }
+        catch (InvocationTargetException ite)
+        {
+            assertTrue(ite.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    public void testFixedArityCalls() throws Exception
+    {
+        for (String uberspectors : new String[] { UberspectImpl.class.getName(), UBERSPECTORS })
+        {
+            RuntimeInstance ri = new RuntimeInstance();
+            ri.setProperty(RuntimeConstants.RUNTIME_LOG_INSTANCE, log);
+            ri.setProperty(RuntimeConstants.UBERSPECT_CLASSNAME, uberspectors);
+            ri.init();
+            Info info = new Info("test", 1, 1);
+            Tool tool = new Tool();
+
+            VelMethod twice = ri.getUberspect().getMethod(tool, "twice", new Object[] { 1 }, info);
+            assertEquals(4, twice.invoke(tool, (Object)2));
+            assertEquals(4, twice.invoke(tool, (Object)(short)2));
+            /* converted argument */
+            twice = ri.getUberspect().getMethod(tool, "twice", new Object[] { 3L }, info);
+            assertEquals(6, twice.invoke(tool, (Object)3L));
+
+            VelMethod concat = ri.getUberspect().getMethod(tool, "concat", new Object[] { "a", 1 }, info);
+            assertEquals("a2", concat.invoke(tool, "a", 2));
+            try
+            {
+                concat.invoke(tool, "a", null);
+                fail("IllegalArgumentException expected");
+            }
+            catch (IllegalArgumentException iae)
+            {
+                // expected, as with reflection
+            }
+
+            /* arguments of an enclosing call are not disturbed by nested calls */
+            VelMethod nested = ri.getUberspect().getMethod(tool, "nested", new Object[] { concat, tool }, info);
+            assertEquals("[b2]", nested.invoke(tool, concat, tool));
+            assertEquals("[b2][b2]", nested.invoke(tool, concat, tool) + "" + nested.invoke(tool, concat, tool));
+
+            VelMethod var = ri.getUberspect().getMethod(tool, "var", new Object[] { "one", "two" }, info);
+            assertEquals("onetwo", var.invoke(tool, "one", "two"));
+            assertEquals("one", var.invoke(tool, (Object)"one"));
+
+            VelMethod fail = ri.getUberspect().getMethod(tool, "fail", new Object[] { 1 }, info);
+            try
+            {
+                fail.invoke(tool, (Object)1);
+                fail("InvocationTargetException expected");
+            }
+            catch (InvocationTargetException ite)
+            {
+                assertTrue(ite.getCause() instanceof IllegalStateException);
+            }
+        }
+    }
+
+    public static class Tool
+    {
+        public String getName() { return "tool"; }
+        public boolean isValid() { return true; }
+        public String concat(String s, int i) { return s + i; }
+        public void nothing() { }
+        public String var(String... strings) { return String.join("", strings); }
+        public String fail() { throw new IllegalStateException("failed"); }
+        public String fail(int i) { throw new IllegalStateException("failed " + i); }
+        public int twice(int i) { return 2 * i; }
+        public String nested(VelMethod method, Tool tool) throws Exception { return "[" + method.invoke(tool, "b", 2) + "]"; }
+    }
+
+    public static class SubTool extends Tool
+    {
+        @Override
+        public String getName() { return "sub tool"; }
+    }
+
+    public static class Getter
+    {
+        public String get(String key)
+        {
+            if ("fail".equals(key))
+            {
+                throw new IllegalStateException(key);
+            }
+            return "got " + key;
+        }
+    }
+}